@@ -39,11 +39,17 @@ public class AuditController {
 
     // ==================== AUDIT LOGS ====================
 
-    @Operation(summary = "Get all audit logs with pagination")
+    @Operation(summary = "Get all audit logs with pagination", description = "Pass cursor (empty for the first page, then nextCursor) to switch to keyset pagination without total count")
     @SecurityRequirement(name = "Bearer Authentication")
     @PreAuthorize("hasRole('MANAGER')")
     @GetMapping("/logs")
-    public ResponseEntity<ApiResponse<PageResponse<AuditLogResponse>>> getAllAuditLogs(Pageable pageable) {
+    public ResponseEntity<ApiResponse<PageResponse<AuditLogResponse>>> getAllAuditLogs(
+            Pageable pageable,
+            @RequestParam(required = false) String cursor) {
+        if (cursor != null) {
+            PageResponse<AuditLogResponse> slice = auditService.getAllAuditLogs(cursor, pageable.getPageSize(), pageable.getSort());
+            return ResponseEntity.ok(ApiResponse.success(slice, "Audit logs retrieved successfully"));
+        }
         Page<AuditLogResponse> logs = auditService.getAllAuditLogs(pageable);
         PageResponse<AuditLogResponse> response = PageResponse.from(logs);
         return ResponseEntity.ok(ApiResponse.success(response, "Audit logs retrieved successfully"));
@@ -3,6 +3,7 @@ package com.htttql.crmmodule.audit.repository;
 import com.htttql.crmmodule.audit.entity.AuditLog;
 import com.htttql.crmmodule.common.enums.AuditAction;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -11,7 +12,7 @@ import java.util.List;
  * Repository interface for AuditLog entity
  */
 @Repository
-public interface IAuditLogRepository extends JpaRepository<AuditLog, Long> {
+public interface IAuditLogRepository extends JpaRepository<AuditLog, Long>, JpaSpecificationExecutor<AuditLog> {
 
     /**
      * Find audit logs by user ID
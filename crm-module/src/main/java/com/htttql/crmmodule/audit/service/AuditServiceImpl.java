@@ -3,10 +3,13 @@ package com.htttql.crmmodule.audit.service;
 import com.htttql.crmmodule.audit.dto.AuditLogResponse;
 import com.htttql.crmmodule.audit.entity.AuditLog;
 import com.htttql.crmmodule.audit.repository.IAuditLogRepository;
+import com.htttql.crmmodule.common.dto.PageResponse;
 import com.htttql.crmmodule.common.exception.ResourceNotFoundException;
+import com.htttql.crmmodule.common.service.KeysetPaginator;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
 /**
@@ -17,6 +20,7 @@ import org.springframework.stereotype.Service;
 public class AuditServiceImpl implements IAuditService {
 
     private final IAuditLogRepository auditLogRepository;
+    private final KeysetPaginator keysetPaginator;
 
     @Override
     public Page<AuditLogResponse> getAllAuditLogs(Pageable pageable) {
@@ -24,6 +28,11 @@ public class AuditServiceImpl implements IAuditService {
         return auditLogs.map(this::mapToResponse);
     }
 
+    @Override
+    public PageResponse<AuditLogResponse> getAllAuditLogs(String cursor, int size, Sort sort) {
+        return keysetPaginator.scroll(auditLogRepository, AuditLog.class, cursor, size, sort).map(this::mapToResponse);
+    }
+
     @Override
     public AuditLogResponse getAuditLogById(Long id) {
         AuditLog auditLog = auditLogRepository.findById(id)
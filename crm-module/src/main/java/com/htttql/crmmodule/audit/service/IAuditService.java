@@ -1,8 +1,10 @@
 package com.htttql.crmmodule.audit.service;
 
 import com.htttql.crmmodule.audit.dto.AuditLogResponse;
+import com.htttql.crmmodule.common.dto.PageResponse;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 
 /**
  * Service interface for Audit operations
@@ -14,6 +16,11 @@ public interface IAuditService {
      */
     Page<AuditLogResponse> getAllAuditLogs(Pageable pageable);
 
+    /**
+     * Get audit logs with keyset pagination (no total count)
+     */
+    PageResponse<AuditLogResponse> getAllAuditLogs(String cursor, int size, Sort sort);
+
     /**
      * Get audit log by ID
      */
@@ -0,0 +1,123 @@
+package com.htttql.crmmodule.billing.config;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Configuration properties for Billing module
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.billing")
+@Validated
+public class BillingProperties {
+
+    private InvoiceNumber invoiceNumber = new InvoiceNumber();
+    private Retry retry = new Retry();
+    private Outbox outbox = new Outbox();
+    private Points points = new Points();
+
+    @Data
+    public static class InvoiceNumber {
+        /**
+         * Tiền tố số hóa đơn, dạng PREFIX-yyyyMMdd-000001
+         */
+        @NotBlank
+        @Pattern(regexp = "[A-Z0-9]{1,10}")
+        private String prefix = "INV";
+
+        /**
+         * Số lượng số hóa đơn mỗi node giữ trước từ database trong một lần (số chưa dùng bị bỏ qua khi restart)
+         */
+        @Min(1) @Max(10000)
+        private int blockSize = 50;
+
+        /**
+         * Số chữ số của phần thứ tự trong ngày (độ rộng cố định để số hóa đơn sắp xếp đúng theo chuỗi);
+         * quá 10^n - 1 số trong một ngày thì không cấp thêm
+         */
+        @Min(4) @Max(9)
+        private int sequenceDigits = 6;
+
+        /**
+         * Số kết nối của pool riêng dùng để giữ block (không chờ pool chính mà transaction hóa đơn đang giữ)
+         */
+        @Min(1) @Max(5)
+        private int reservePoolSize = 1;
+    }
+
+    @Data
+    public static class Retry {
+        /**
+         * Số lần thử tối đa khi ghi thanh toán / đổi trạng thái hóa đơn bị xung đột đồng thời
+         */
+        @Min(1) @Max(20)
+        private int maxAttempts = 5;
+
+        /**
+         * Thời gian chờ cơ sở giữa các lần thử (ms), tăng dần theo số lần thử
+         */
+        @Min(0) @Max(1000)
+        private long backoffMillis = 20;
+    }
+
+    @Data
+    public static class Outbox {
+        /**
+         * Số worker xử lý outbox thanh toán song song tối đa trên mỗi node
+         */
+        @Min(1) @Max(32)
+        private int workers = 2;
+
+        /**
+         * Số dòng outbox lấy trong một transaction
+         */
+        @Min(1) @Max(5000)
+        private int batchSize = 200;
+
+        /**
+         * Số lần thử tối đa cho một dòng lỗi trước khi chuyển FAILED
+         */
+        @Min(1) @Max(100)
+        private int maxAttempts = 10;
+
+        /**
+         * Thời gian chờ cơ sở trước khi thử lại dòng lỗi (giây), nhân với số lần đã thử
+         */
+        @Min(1) @Max(3600)
+        private int retryBackoffSeconds = 30;
+
+        /**
+         * Số ngày giữ lại các dòng đã xử lý
+         */
+        @Min(1) @Max(365)
+        private int retentionDays = 7;
+    }
+
+    @Data
+    public static class Points {
+        /**
+         * Tuổi tối đa của một lô điểm tích lũy (ngày), quá hạn thì phần chưa dùng bị hết hạn theo FIFO
+         */
+        @Min(1) @Max(3650)
+        private int lotAgeDays = 365;
+
+        /**
+         * Số khách xử lý trong một transaction của đợt hết hạn điểm
+         */
+        @Min(1) @Max(10000)
+        private int expiryBatchSize = 500;
+
+        /**
+         * Số ngày giữ các checkpoint số dư đã có checkpoint mới hơn (checkpoint mới nhất của mỗi khách luôn được giữ)
+         */
+        @Min(1) @Max(3650)
+        private int checkpointRetentionDays = 30;
+    }
+}
@@ -0,0 +1,37 @@
+package com.htttql.crmmodule.billing.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Invoice DDL that ddl-auto cannot express: removal of the old single-column customer and status indexes
+ * superseded by idx_invoice_customer_created and idx_invoice_status_created (ddl-auto never drops indexes)
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class InvoiceSchemaInitializer {
+
+    private static final List<String> DDL = List.of(
+            "DROP INDEX IF EXISTS billing.idx_invoice_customer",
+            "DROP INDEX IF EXISTS billing.idx_invoice_status");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        for (String ddl : DDL) {
+            try {
+                jdbcTemplate.execute(ddl);
+            } catch (Exception e) {
+                log.warn("Cannot apply invoice DDL: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.htttql.crmmodule.billing.config;
+
+import com.htttql.crmmodule.common.enums.PointTransactionType;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Point ledger DDL that ddl-auto cannot express: the partial index of unexpired EARN lots used by the
+ * expiry run, the source check constraint (ddl-auto update never widens it for new enum values) and the
+ * removal of the old single-column customer index superseded by idx_point_txn_customer_txn
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PointLedgerSchemaInitializer {
+
+    private static final String SOURCE_CHECK = Arrays.stream(PointTransactionType.values())
+            .map(type -> "'" + type.name() + "'")
+            .collect(Collectors.joining(", ", "CHECK (source IN (", "))"));
+
+    private static final List<String> DDL = List.of(
+            "DROP INDEX IF EXISTS billing.idx_point_txn_customer",
+            "CREATE INDEX IF NOT EXISTS idx_point_txn_earn_expiry ON billing.point_transaction (expires_at, customer_id) "
+                    + "WHERE source = 'EARN'",
+            "ALTER TABLE billing.point_transaction DROP CONSTRAINT IF EXISTS point_transaction_source_check",
+            "ALTER TABLE billing.point_transaction ADD CONSTRAINT point_transaction_source_check " + SOURCE_CHECK);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        for (String ddl : DDL) {
+            try {
+                jdbcTemplate.execute(ddl);
+            } catch (Exception e) {
+                log.warn("Cannot apply point ledger DDL: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -2,10 +2,17 @@ package com.htttql.crmmodule.billing.controller;
 
 import com.htttql.crmmodule.common.dto.ApiResponse;
 import com.htttql.crmmodule.common.dto.PageResponse;
+import com.htttql.crmmodule.common.enums.InvoiceStatus;
+import com.htttql.crmmodule.common.exception.BadRequestException;
+import com.htttql.crmmodule.common.service.StreamingExporter;
 import com.htttql.crmmodule.billing.dto.InvoiceRequest;
 import com.htttql.crmmodule.billing.dto.InvoiceResponse;
+import com.htttql.crmmodule.billing.dto.InvoiceSearchFilter;
+import com.htttql.crmmodule.billing.dto.InvoiceSearchResponse;
 import com.htttql.crmmodule.billing.dto.InvoiceStatusRequest;
+import com.htttql.crmmodule.billing.dto.PromotionQuoteResponse;
 import com.htttql.crmmodule.billing.service.IInvoiceService;
+import com.htttql.crmmodule.security.service.SecurityContextService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -13,15 +20,20 @@ import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.access.prepost.PreAuthorize;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @Tag(name = "Invoice Management", description = "Invoice CRUD operations")
 @RestController
@@ -30,23 +42,86 @@ import org.springframework.web.bind.annotation.*;
 public class InvoiceController {
 
     private final IInvoiceService invoiceService;
+    private final SecurityContextService securityContextService;
 
-    @Operation(summary = "Get all invoices with pagination")
+    @Operation(summary = "Get all invoices with pagination", description = "Pass cursor (empty for the first page, then nextCursor) to switch to keyset pagination without total count. " +
+                    "Pass fields=a,b,c to return only those fields (selected in SQL, page mode only)")
     @SecurityRequirement(name = "Bearer Authentication")
     @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER', 'RECEPTIONIST')")
     @GetMapping
-    public ResponseEntity<ApiResponse<PageResponse<InvoiceResponse>>> getAllInvoices(
+    public ResponseEntity<ApiResponse<PageResponse<?>>> getAllInvoices(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size,
             @RequestParam(defaultValue = "invoiceId") String sortBy,
-            @RequestParam(defaultValue = "desc") String sortDir) {
+            @RequestParam(defaultValue = "desc") String sortDir,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String fields) {
 
         Sort sort = sortDir.equalsIgnoreCase("desc") ? Sort.by(sortBy).descending() : Sort.by(sortBy).ascending();
+        if (cursor != null && fields != null) {
+            throw new BadRequestException("fields cannot be combined with cursor pagination");
+        }
+        if (cursor != null) {
+            PageResponse<InvoiceResponse> slice = invoiceService.getAllInvoices(cursor, size, sort);
+            return ResponseEntity.ok(ApiResponse.<PageResponse<?>>success(slice, "Invoices retrieved successfully"));
+        }
+
         Pageable pageable = PageRequest.of(page, size, sort);
+        if (fields != null) {
+            Page<Map<String, Object>> rows = invoiceService.getAllInvoiceFields(pageable, fields);
+            return ResponseEntity.ok(ApiResponse.<PageResponse<?>>success(PageResponse.from(rows), "Invoices retrieved successfully"));
+        }
 
         Page<InvoiceResponse> invoices = invoiceService.getAllInvoices(pageable);
         PageResponse<InvoiceResponse> response = PageResponse.from(invoices);
-        return ResponseEntity.ok(ApiResponse.success(response, "Invoices retrieved successfully"));
+        return ResponseEntity.ok(ApiResponse.<PageResponse<?>>success(response, "Invoices retrieved successfully"));
+    }
+
+    @Operation(summary = "Search invoices by customer, status, staff and creation date",
+            description = "All filters are optional (createdFrom inclusive, createdTo exclusive). Paginated by cursor on createdAt; " +
+                    "the first page also returns count and amount totals of the whole filter")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER', 'RECEPTIONIST')")
+    @GetMapping("/search")
+    public ResponseEntity<ApiResponse<InvoiceSearchResponse>> searchInvoices(
+            @RequestParam(required = false) Long customerId,
+            @RequestParam(required = false) List<InvoiceStatus> status,
+            @RequestParam(required = false) Long staffId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdTo,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "desc") String sortDir) {
+        InvoiceSearchFilter filter = InvoiceSearchFilter.builder()
+                .customerId(customerId)
+                .statuses(status)
+                .staffId(staffId)
+                .createdFrom(createdFrom)
+                .createdTo(createdTo)
+                .build();
+        Sort sort = sortDir.equalsIgnoreCase("desc") ? Sort.by("createdAt").descending() : Sort.by("createdAt").ascending();
+        InvoiceSearchResponse result = invoiceService.searchInvoices(filter, cursor, size, sort);
+        return ResponseEntity.ok(ApiResponse.success(result, "Invoices retrieved successfully"));
+    }
+
+    @Operation(summary = "Export all invoices as CSV or NDJSON",
+            description = "Rows are streamed from the database as they are read, with the staff's field masking applied. " +
+                    "Requires the history export permission")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER', 'RECEPTIONIST')")
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportInvoices(@RequestParam(defaultValue = "csv") String format) {
+        Long staffId = null;
+        try {
+            staffId = securityContextService.getCurrentStaffId();
+        } catch (Exception ignored) {
+        }
+        String resolved = StreamingExporter.resolveFormat(format);
+        StreamingResponseBody body = invoiceService.exportInvoices(resolved, staffId);
+        return ResponseEntity.ok()
+                .contentType(StreamingExporter.mediaType(resolved))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"invoices." + resolved + "\"")
+                .body(body);
     }
 
     @Operation(summary = "Get invoice by ID")
@@ -99,6 +174,24 @@ public class InvoiceController {
         return ResponseEntity.ok(ApiResponse.success(invoice, "Invoice status updated successfully"));
     }
 
+    @Operation(summary = "Get best applicable promotion for invoice", description = "Evaluates active promotions without reserving usage")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER', 'RECEPTIONIST')")
+    @GetMapping("/{id}/promotions/best")
+    public ResponseEntity<ApiResponse<PromotionQuoteResponse>> getBestPromotion(@PathVariable Long id) {
+        PromotionQuoteResponse quote = invoiceService.getBestPromotion(id);
+        return ResponseEntity.ok(ApiResponse.success(quote, "Best promotion evaluated successfully"));
+    }
+
+    @Operation(summary = "Apply best promotion to invoice", description = "Reserves promotion usage and reduces the invoice total")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER', 'RECEPTIONIST')")
+    @PostMapping("/{id}/promotions")
+    public ResponseEntity<ApiResponse<InvoiceResponse>> applyBestPromotion(@PathVariable Long id) {
+        InvoiceResponse invoice = invoiceService.applyBestPromotion(id);
+        return ResponseEntity.ok(ApiResponse.success(invoice, "Promotion applied successfully"));
+    }
+
     @Operation(summary = "Get invoices by customer ID")
     @SecurityRequirement(name = "Bearer Authentication")
     @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER', 'RECEPTIONIST')")
@@ -30,11 +30,17 @@ public class PaymentController {
 
     private final IPaymentService paymentService;
 
-    @Operation(summary = "Get all payments with pagination")
+    @Operation(summary = "Get all payments with pagination", description = "Pass cursor (empty for the first page, then nextCursor) to switch to keyset pagination without total count")
     @SecurityRequirement(name = "Bearer Authentication")
     @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER', 'RECEPTIONIST')")
     @GetMapping
-    public ResponseEntity<ApiResponse<PageResponse<PaymentResponse>>> getAllPayments(Pageable pageable) {
+    public ResponseEntity<ApiResponse<PageResponse<PaymentResponse>>> getAllPayments(
+            Pageable pageable,
+            @RequestParam(required = false) String cursor) {
+        if (cursor != null) {
+            PageResponse<PaymentResponse> slice = paymentService.getAllPayments(cursor, pageable.getPageSize(), pageable.getSort());
+            return ResponseEntity.ok(ApiResponse.success(slice, "Payments retrieved successfully"));
+        }
         Page<PaymentResponse> payments = paymentService.getAllPayments(pageable);
         PageResponse<PaymentResponse> response = PageResponse.from(payments);
         return ResponseEntity.ok(ApiResponse.success(response, "Payments retrieved successfully"));
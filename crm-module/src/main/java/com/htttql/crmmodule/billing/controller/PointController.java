@@ -0,0 +1,62 @@
+package com.htttql.crmmodule.billing.controller;
+
+import com.htttql.crmmodule.billing.dto.PointRedeemRequest;
+import com.htttql.crmmodule.billing.dto.PointTransactionResponse;
+import com.htttql.crmmodule.billing.service.IPointLedgerService;
+import com.htttql.crmmodule.common.dto.ApiResponse;
+import com.htttql.crmmodule.common.dto.PageResponse;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Point Ledger Controller
+ * Customer point balance, history and redemption
+ */
+@Tag(name = "Point Management", description = "Customer point balance, history and redemption")
+@RestController
+@RequestMapping("/api/customers/{customerId}/points")
+@RequiredArgsConstructor
+public class PointController {
+
+    private final IPointLedgerService pointLedgerService;
+
+    @Operation(summary = "Get point balance of a customer")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER', 'RECEPTIONIST')")
+    @GetMapping
+    public ResponseEntity<ApiResponse<Integer>> getBalance(@PathVariable Long customerId) {
+        int balance = pointLedgerService.getBalance(customerId);
+        return ResponseEntity.ok(ApiResponse.success(balance, "Point balance retrieved successfully"));
+    }
+
+    @Operation(summary = "Get point history of a customer", description = "Newest first; pass nextCursor of the previous page as cursor")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER', 'RECEPTIONIST')")
+    @GetMapping("/history")
+    public ResponseEntity<ApiResponse<PageResponse<PointTransactionResponse>>> getHistory(
+            @PathVariable Long customerId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        PageResponse<PointTransactionResponse> history = pointLedgerService.getHistory(customerId, cursor, size);
+        return ResponseEntity.ok(ApiResponse.success(history, "Point history retrieved successfully"));
+    }
+
+    @Operation(summary = "Redeem points of a customer")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER', 'RECEPTIONIST')")
+    @PostMapping("/redeem")
+    public ResponseEntity<ApiResponse<PointTransactionResponse>> redeem(
+            @PathVariable Long customerId,
+            @Valid @RequestBody PointRedeemRequest request) {
+        PointTransactionResponse transaction = pointLedgerService.redeem(customerId, request.getPoints(), request.getNote());
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body(ApiResponse.success(transaction, "Points redeemed successfully"));
+    }
+}
@@ -0,0 +1,11 @@
+package com.htttql.crmmodule.billing.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Sum of payments of one invoice, computed in SQL for a whole page of invoices at once
+ */
+public record InvoicePaidTotal(
+        Long invoiceId,
+        BigDecimal totalPaid) {
+}
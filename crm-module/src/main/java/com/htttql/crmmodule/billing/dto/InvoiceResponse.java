@@ -40,6 +40,8 @@ public class InvoiceResponse {
 
     // Invoice amounts
     private BigDecimal totalAmount;
+    private BigDecimal discountAmount;
+    private String promotionCodes;
 
     // Status and dates
     private InvoiceStatus status;
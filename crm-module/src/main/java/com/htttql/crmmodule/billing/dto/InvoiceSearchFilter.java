@@ -0,0 +1,27 @@
+package com.htttql.crmmodule.billing.dto;
+
+import com.htttql.crmmodule.common.enums.InvoiceStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Invoice search criteria, every field is optional (absent fields add no predicate)
+ * createdFrom is inclusive, createdTo is exclusive
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InvoiceSearchFilter {
+
+    private Long customerId;
+    private List<InvoiceStatus> statuses;
+    private Long staffId;
+    private LocalDateTime createdFrom;
+    private LocalDateTime createdTo;
+}
@@ -0,0 +1,36 @@
+package com.htttql.crmmodule.billing.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.htttql.crmmodule.common.dto.PageResponse;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * One cursor page of an invoice search, with the totals of the whole filter on the first page
+ * (later pages reuse them, totals is null)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class InvoiceSearchResponse {
+
+    private PageResponse<InvoiceResponse> invoices;
+    private Totals totals;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Totals {
+        private Long invoiceCount;
+        private BigDecimal totalAmount;
+        private List<InvoiceStatusTotal> byStatus;
+    }
+}
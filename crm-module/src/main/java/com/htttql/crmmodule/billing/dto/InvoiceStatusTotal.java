@@ -0,0 +1,11 @@
+package com.htttql.crmmodule.billing.dto;
+
+import com.htttql.crmmodule.common.enums.InvoiceStatus;
+
+import java.math.BigDecimal;
+
+/**
+ * Number and total amount of the invoices of one status matching a search (aggregated in SQL)
+ */
+public record InvoiceStatusTotal(InvoiceStatus status, Long invoiceCount, BigDecimal totalAmount) {
+}
@@ -0,0 +1,26 @@
+package com.htttql.crmmodule.billing.dto;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for Point Redeem Request
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PointRedeemRequest {
+
+    @NotNull(message = "Points is required")
+    @Min(value = 1, message = "Points must be greater than 0")
+    private Integer points;
+
+    @Size(max = 500, message = "Note must not exceed 500 characters")
+    private String note;
+}
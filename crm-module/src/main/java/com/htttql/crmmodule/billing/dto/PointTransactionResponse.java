@@ -0,0 +1,35 @@
+package com.htttql.crmmodule.billing.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.htttql.crmmodule.common.enums.PointTransactionType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Point Transaction Response DTO - One entry of a customer's point history
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PointTransactionResponse {
+
+    private Long pointTxnId;
+    private PointTransactionType source;
+    private Integer points;
+    private Integer balanceBefore;
+    private Integer balanceAfter;
+
+    // Related invoice (shallow)
+    private Long relatedInvoiceId;
+    private String relatedInvoiceNumber;
+
+    private String note;
+    private LocalDateTime expiresAt;
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,37 @@
+package com.htttql.crmmodule.billing.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Best applicable promotion(s) for an invoice, without reserving any usage
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PromotionQuoteResponse {
+
+    private Long invoiceId;
+    private BigDecimal invoiceAmount;
+    private BigDecimal totalDiscount;
+    private BigDecimal amountAfterDiscount;
+    private List<Item> promotions;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+        private Long promoId;
+        private String code;
+        private BigDecimal discount;
+    }
+}
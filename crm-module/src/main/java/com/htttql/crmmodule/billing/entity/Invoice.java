@@ -17,8 +17,10 @@ import java.util.List;
 @Entity
 @Table(name = "invoice", schema = SchemaConstants.BILLING_SCHEMA, indexes = {
         @Index(name = "idx_invoice_case", columnList = "case_id"),
-        @Index(name = "idx_invoice_customer", columnList = "customer_id"),
-        @Index(name = "idx_invoice_status", columnList = "status"),
+        // Tìm kiếm hóa đơn: mỗi bộ lọc bằng nhau đi kèm created_at để lọc và phân trang keyset trên cùng một index
+        @Index(name = "idx_invoice_customer_created", columnList = "customer_id, created_at DESC"),
+        @Index(name = "idx_invoice_status_created", columnList = "status, created_at DESC"),
+        @Index(name = "idx_invoice_user_created", columnList = "user_id, created_at DESC"),
         @Index(name = "idx_invoice_created", columnList = "created_at DESC"),
         @Index(name = "idx_invoice_paid_at", columnList = "paid_at")
 })
@@ -59,8 +61,8 @@ public class Invoice extends BaseEntity {
     @Column(name = "paid_at", columnDefinition = "TIMESTAMPTZ")
     private LocalDateTime paidAt;
 
-    // Invoice details
-    @Column(name = "invoice_number", unique = true, length = 50)
+    // Invoice details (allocated by InvoiceNumberAllocator)
+    @Column(name = "invoice_number", nullable = false, unique = true, length = 50)
     private String invoiceNumber;
 
     @Column(name = "due_date")
@@ -69,6 +71,18 @@ public class Invoice extends BaseEntity {
     @Column(name = "notes", columnDefinition = "TEXT")
     private String notes;
 
+    // Giảm giá khuyến mãi đã áp dụng, totalAmount là số tiền sau giảm
+    @Column(name = "discount_amount", precision = 12, scale = 2)
+    private BigDecimal discountAmount;
+
+    @Column(name = "promotion_codes", length = 200)
+    private String promotionCodes;
+
+    // Tăng khi ghi nhận thanh toán, các thanh toán đồng thời trên cùng hóa đơn xung đột và được thử lại
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "BIGINT DEFAULT 0")
+    private Long version;
+
     @OneToMany(mappedBy = "invoice", cascade = CascadeType.ALL, orphanRemoval = true)
     @Builder.Default
     private List<Payment> payments = new ArrayList<>();
@@ -76,26 +90,10 @@ public class Invoice extends BaseEntity {
     @PrePersist
     protected void onCreate() {
         super.onCreate();
-        if (invoiceNumber == null) {
-            // Generate invoice number format: INV-YYYYMMDD-XXXXX
-            invoiceNumber = String.format("INV-%tF-%05d",
-                    LocalDateTime.now(),
-                    System.currentTimeMillis() % 100000);
-        }
     }
 
     @PreUpdate
     protected void onUpdate() {
         super.onUpdate();
     }
-
-    public BigDecimal getTotalPaid() {
-        return payments.stream()
-                .map(Payment::getAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-    }
-
-    public BigDecimal getBalanceDue() {
-        return totalAmount.subtract(getTotalPaid());
-    }
 }
@@ -0,0 +1,30 @@
+package com.htttql.crmmodule.billing.entity;
+
+import com.htttql.crmmodule.common.config.SchemaConstants;
+import com.htttql.crmmodule.common.entity.BaseEntity;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+
+/**
+ * Per-day invoice number counter (one row per issue date)
+ * Holds the highest number reserved so far; nodes reserve blocks of numbers with one atomic upsert
+ * and hand them out from memory, see InvoiceNumberAllocator.
+ */
+@Entity
+@Table(name = "invoice_number_block", schema = SchemaConstants.BILLING_SCHEMA)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class InvoiceNumberBlock extends BaseEntity {
+
+    @Id
+    @Column(name = "issue_date")
+    private LocalDate issueDate;
+
+    @Column(name = "last_reserved", nullable = false)
+    private Long lastReserved;
+}
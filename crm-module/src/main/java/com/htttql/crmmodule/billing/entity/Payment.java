@@ -9,6 +9,7 @@ import lombok.*;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Entity
 @Table(name = "payment", schema = SchemaConstants.BILLING_SCHEMA, indexes = {
@@ -16,7 +17,8 @@ import java.time.LocalDateTime;
         @Index(name = "idx_payment_method", columnList = "method"),
         @Index(name = "idx_payment_paid_by", columnList = "paid_by"),
         @Index(name = "idx_payment_paid_at", columnList = "paid_at DESC"),
-        @Index(name = "idx_payment_txn_ref", columnList = "txn_ref")
+        @Index(name = "idx_payment_txn_ref", columnList = "txn_ref"),
+        @Index(name = "idx_payment_created", columnList = "created_at DESC, payment_id DESC")
 })
 @Getter
 @Setter
@@ -25,6 +27,8 @@ import java.time.LocalDateTime;
 @Builder
 public class Payment extends BaseEntity {
 
+    private static final long RECEIPT_SUFFIX_SPACE = 4_738_381_338_321_616_896L; // 36^12
+
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "payment_seq")
     @SequenceGenerator(name = "payment_seq", sequenceName = SchemaConstants.BILLING_SCHEMA
@@ -85,13 +89,17 @@ public class Payment extends BaseEntity {
             paidAt = LocalDateTime.now();
         }
         if (receiptNumber == null) {
-            // Generate receipt number format: RCP-YYYYMMDD-XXXXX
-            receiptNumber = String.format("RCP-%tF-%05d",
-                    LocalDateTime.now(),
-                    System.currentTimeMillis() % 100000);
+            // Generate receipt number format: RCP-YYYY-MM-DD-XXXXXXXXXXXX
+            // Hậu tố ngẫu nhiên 12 ký tự base 36: thanh toán đồng thời (kể cả trên nhiều node) không trùng số biên lai
+            receiptNumber = String.format("RCP-%tF-%s", LocalDateTime.now(), randomSuffix());
         }
     }
 
+    private static String randomSuffix() {
+        String suffix = Long.toString(ThreadLocalRandom.current().nextLong(RECEIPT_SUFFIX_SPACE), 36).toUpperCase();
+        return "0".repeat(12 - suffix.length()) + suffix;
+    }
+
     @PreUpdate
     private void validatePayment() {
         if (amount != null && amount.compareTo(BigDecimal.ZERO) <= 0) {
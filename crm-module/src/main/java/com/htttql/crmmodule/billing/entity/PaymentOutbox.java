@@ -0,0 +1,68 @@
+package com.htttql.crmmodule.billing.entity;
+
+import com.htttql.crmmodule.common.config.SchemaConstants;
+import com.htttql.crmmodule.common.entity.BaseEntity;
+import com.htttql.crmmodule.common.enums.OutboxStatus;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Side effects of a recorded payment still to apply (points, total spent, tier, case paid status)
+ * Written in the payment transaction, drained by PaymentOutboxServiceImpl workers.
+ */
+@Entity
+@Table(name = "payment_outbox", schema = SchemaConstants.BILLING_SCHEMA, indexes = {
+        @Index(name = "idx_payment_outbox_pending", columnList = "status, available_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PaymentOutbox extends BaseEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "payment_outbox_seq")
+    @SequenceGenerator(name = "payment_outbox_seq", sequenceName = SchemaConstants.BILLING_SCHEMA
+            + ".payment_outbox_seq", allocationSize = 1)
+    @Column(name = "outbox_id")
+    private Long outboxId;
+
+    // Mỗi thanh toán chỉ có một dòng outbox
+    @Column(name = "payment_id", nullable = false, unique = true)
+    private Long paymentId;
+
+    @Column(name = "invoice_id", nullable = false)
+    private Long invoiceId;
+
+    @Column(name = "customer_id", nullable = false)
+    private Long customerId;
+
+    @Column(name = "case_id")
+    private Long caseId;
+
+    @Column(name = "amount", nullable = false, precision = 12, scale = 2)
+    private BigDecimal amount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    @Builder.Default
+    private OutboxStatus status = OutboxStatus.PENDING;
+
+    @Column(name = "attempts", nullable = false)
+    @Builder.Default
+    private Integer attempts = 0;
+
+    @Column(name = "available_at", nullable = false, columnDefinition = "TIMESTAMPTZ")
+    @Builder.Default
+    private LocalDateTime availableAt = LocalDateTime.now();
+
+    @Column(name = "processed_at", columnDefinition = "TIMESTAMPTZ")
+    private LocalDateTime processedAt;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+}
@@ -0,0 +1,42 @@
+package com.htttql.crmmodule.billing.entity;
+
+import com.htttql.crmmodule.common.config.SchemaConstants;
+import com.htttql.crmmodule.common.entity.BaseEntity;
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Balance of a customer's point ledger up to (and including) one ledger entry
+ * Appended periodically; the balance at any later point is the checkpoint plus the entries after it,
+ * and cachedBalance records customer.total_points at the same snapshot to detect drift.
+ */
+@Entity
+@Table(name = "point_balance_checkpoint", schema = SchemaConstants.BILLING_SCHEMA, indexes = {
+        @Index(name = "idx_point_checkpoint_customer", columnList = "customer_id, checkpoint_id DESC")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PointBalanceCheckpoint extends BaseEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "point_checkpoint_seq")
+    @SequenceGenerator(name = "point_checkpoint_seq", sequenceName = SchemaConstants.BILLING_SCHEMA
+            + ".point_balance_checkpoint_seq", allocationSize = 1)
+    @Column(name = "checkpoint_id")
+    private Long checkpointId;
+
+    @Column(name = "customer_id", nullable = false)
+    private Long customerId;
+
+    @Column(name = "last_point_txn_id", nullable = false)
+    private Long lastPointTxnId;
+
+    @Column(name = "balance", nullable = false)
+    private Integer balance;
+
+    @Column(name = "cached_balance")
+    private Integer cachedBalance;
+}
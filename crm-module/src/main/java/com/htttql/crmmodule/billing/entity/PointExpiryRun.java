@@ -0,0 +1,60 @@
+package com.htttql.crmmodule.billing.entity;
+
+import com.htttql.crmmodule.common.config.SchemaConstants;
+import com.htttql.crmmodule.common.entity.BaseEntity;
+import com.htttql.crmmodule.common.enums.PointExpiryRunStatus;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * One incremental point expiry run: EARN lots expiring in (windowFrom, cutoff]
+ * The customers to visit are resolved once into PointExpiryRunCustomer; lastCustomerId is the keyset position
+ * over them, advanced in the same transaction as each batch, so an interrupted run resumes after the last
+ * committed customer.
+ */
+@Entity
+@Table(name = "point_expiry_run", schema = SchemaConstants.BILLING_SCHEMA, indexes = {
+        @Index(name = "idx_point_expiry_run_status", columnList = "status, cutoff")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PointExpiryRun extends BaseEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "point_expiry_run_seq")
+    @SequenceGenerator(name = "point_expiry_run_seq", sequenceName = SchemaConstants.BILLING_SCHEMA
+            + ".point_expiry_run_seq", allocationSize = 1)
+    @Column(name = "run_id")
+    private Long runId;
+
+    // Cutoff của lần chạy hoàn tất trước, null ở lần chạy đầu tiên (xét mọi lô đã hết hạn)
+    @Column(name = "window_from", columnDefinition = "TIMESTAMPTZ")
+    private LocalDateTime windowFrom;
+
+    @Column(name = "cutoff", nullable = false, columnDefinition = "TIMESTAMPTZ")
+    private LocalDateTime cutoff;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private PointExpiryRunStatus status;
+
+    @Column(name = "last_customer_id", nullable = false)
+    @Builder.Default
+    private Long lastCustomerId = 0L;
+
+    @Column(name = "customers_processed", nullable = false)
+    @Builder.Default
+    private Integer customersProcessed = 0;
+
+    @Column(name = "points_expired", nullable = false)
+    @Builder.Default
+    private Long pointsExpired = 0L;
+
+    @Column(name = "completed_at", columnDefinition = "TIMESTAMPTZ")
+    private LocalDateTime completedAt;
+}
@@ -0,0 +1,36 @@
+package com.htttql.crmmodule.billing.entity;
+
+import com.htttql.crmmodule.common.config.SchemaConstants;
+import com.htttql.crmmodule.common.entity.BaseEntity;
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * A customer owning EARN lots that expire in the window of a point expiry run
+ * Resolved once when the run starts (range scan of the partial expiry index), then read in customer_id order
+ * through the unique (run_id, customer_id) index by every batch; deleted when the run completes.
+ */
+@Entity
+@Table(name = "point_expiry_run_customer", schema = SchemaConstants.BILLING_SCHEMA, uniqueConstraints = {
+        @UniqueConstraint(name = "uk_point_expiry_run_customer", columnNames = {"run_id", "customer_id"})
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PointExpiryRunCustomer extends BaseEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "point_expiry_run_customer_seq")
+    @SequenceGenerator(name = "point_expiry_run_customer_seq", sequenceName = SchemaConstants.BILLING_SCHEMA
+            + ".point_expiry_run_customer_seq", allocationSize = 1)
+    @Column(name = "run_customer_id")
+    private Long runCustomerId;
+
+    @Column(name = "run_id", nullable = false)
+    private Long runId;
+
+    @Column(name = "customer_id", nullable = false)
+    private Long customerId;
+}
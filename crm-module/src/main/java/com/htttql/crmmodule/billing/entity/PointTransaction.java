@@ -9,7 +9,7 @@ import lombok.*;
 
 @Entity
 @Table(name = "point_transaction", schema = SchemaConstants.BILLING_SCHEMA, indexes = {
-        @Index(name = "idx_point_txn_customer", columnList = "customer_id"),
+        @Index(name = "idx_point_txn_customer_txn", columnList = "customer_id, point_txn_id"),
         @Index(name = "idx_point_txn_invoice", columnList = "related_invoice_id"),
         @Index(name = "idx_point_txn_type", columnList = "source"),
         @Index(name = "idx_point_txn_created", columnList = "created_at DESC")
@@ -65,20 +65,17 @@ public class PointTransaction extends BaseEntity {
     @PrePersist
     protected void onCreate() {
         super.onCreate();
-        if (referenceNumber == null) {
-            referenceNumber = String.format("PTS-%tF-%05d",
-                    java.time.LocalDateTime.now(),
-                    System.currentTimeMillis() % 100000);
-        }
+        // referenceNumber chỉ đặt khi có khóa nghiệp vụ (vd. PAY-<paymentId>) để chống ghi trùng
         if (source == PointTransactionType.EARN && expiresAt == null) {
             expiresAt = java.time.LocalDateTime.now().plusYears(1);
         }
+        validateTransaction();
     }
 
     @PreUpdate
     private void validateTransaction() {
-        if (source == PointTransactionType.REDEEM && points > 0) {
-            points = -Math.abs(points); // Ensure redemptions are negative
+        if ((source == PointTransactionType.REDEEM || source == PointTransactionType.EXPIRE) && points > 0) {
+            points = -Math.abs(points); // Ensure redemptions/expiries are negative
         }
 
         if (balanceAfter < 0) {
@@ -0,0 +1,47 @@
+package com.htttql.crmmodule.billing.entity;
+
+import com.htttql.crmmodule.common.config.SchemaConstants;
+import com.htttql.crmmodule.common.entity.BaseEntity;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+
+/**
+ * One use of a promotion by a customer on an invoice
+ * Inserted while holding the promotion row lock (see PromotionEngineImpl), which makes the per-customer
+ * limit check race-free; deleted again when the invoice is deleted or voided.
+ */
+@Entity
+@Table(name = "promotion_redemption", schema = SchemaConstants.BILLING_SCHEMA, uniqueConstraints = {
+        @UniqueConstraint(name = "uk_promo_redemption_invoice", columnNames = {"promo_id", "invoice_id"})
+}, indexes = {
+        @Index(name = "idx_promo_redemption_customer", columnList = "customer_id, promo_id"),
+        @Index(name = "idx_promo_redemption_invoice", columnList = "invoice_id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PromotionRedemption extends BaseEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "promo_redemption_seq")
+    @SequenceGenerator(name = "promo_redemption_seq", sequenceName = SchemaConstants.BILLING_SCHEMA
+            + ".promotion_redemption_seq", allocationSize = 1)
+    @Column(name = "redemption_id")
+    private Long redemptionId;
+
+    @Column(name = "promo_id", nullable = false)
+    private Long promoId;
+
+    @Column(name = "customer_id", nullable = false)
+    private Long customerId;
+
+    @Column(name = "invoice_id", nullable = false)
+    private Long invoiceId;
+
+    @Column(name = "discount_amount", nullable = false, precision = 12, scale = 2)
+    private BigDecimal discountAmount;
+}
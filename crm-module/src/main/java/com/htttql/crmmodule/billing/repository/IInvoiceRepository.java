@@ -2,7 +2,13 @@ package com.htttql.crmmodule.billing.repository;
 
 import com.htttql.crmmodule.billing.entity.Invoice;
 import com.htttql.crmmodule.common.enums.InvoiceStatus;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -11,32 +17,37 @@ import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface IInvoiceRepository extends JpaRepository<Invoice, Long> {
+public interface IInvoiceRepository extends JpaRepository<Invoice, Long>, JpaSpecificationExecutor<Invoice> {
 
-    List<Invoice> findByCustomer_CustomerId(Long customerId);
+    // Các association to-one mà InvoiceResponse đọc, nạp cùng câu lệnh để tránh lazy load từng dòng
+    @Override
+    @EntityGraph(attributePaths = {"customer", "customerCase", "staffUser"})
+    Page<Invoice> findAll(Pageable pageable);
 
-    List<Invoice> findByStatus(InvoiceStatus status);
+    @EntityGraph(attributePaths = {"customer", "customerCase", "staffUser"})
+    Optional<Invoice> findWithDetailsByInvoiceId(Long invoiceId);
 
-    List<Invoice> findByCreatedAtBetween(LocalDateTime startDate, LocalDateTime endDate);
+    @EntityGraph(attributePaths = {"customer", "customerCase", "staffUser"})
+    List<Invoice> findByCustomer_CustomerId(Long customerId);
+
+    /**
+     * Load for recording a payment: the version is incremented at commit even if the invoice row is unchanged,
+     * so two payments checked against the same paid total cannot both commit
+     */
+    @Lock(LockModeType.OPTIMISTIC_FORCE_INCREMENT)
+    @Query("SELECT i FROM Invoice i WHERE i.invoiceId = :invoiceId")
+    Optional<Invoice> findForPaymentByInvoiceId(@Param("invoiceId") Long invoiceId);
 
-    @Query("SELECT i FROM Invoice i WHERE " +
-            "(:customerId IS NULL OR i.customer.customerId = :customerId) " +
-            "AND (:status IS NULL OR i.status = :status) " +
-            "AND (:startDate IS NULL OR i.createdAt >= :startDate) " +
-            "AND (:endDate IS NULL OR i.createdAt <= :endDate)")
-    List<Invoice> findInvoicesByFilters(
-            @Param("customerId") Long customerId,
-            @Param("status") InvoiceStatus status,
-            @Param("startDate") LocalDateTime startDate,
-            @Param("endDate") LocalDateTime endDate);
+    @Query("SELECT i FROM Invoice i JOIN FETCH i.customer LEFT JOIN FETCH i.customerCase LEFT JOIN FETCH i.staffUser " +
+            "WHERE i.customer.customerId = :customerId ORDER BY i.createdAt DESC, i.invoiceId DESC")
+    List<Invoice> findRecentByCustomerId(@Param("customerId") Long customerId, Pageable pageable);
 
-    @Query("SELECT COALESCE(SUM(i.totalAmount), 0) FROM Invoice i WHERE i.customerCase.caseId = :caseId")
-    BigDecimal getTotalAmountByCaseId(@Param("caseId") Long caseId);
+    List<Invoice> findByStatus(InvoiceStatus status);
 
-    @Query("SELECT COALESCE(SUM(p.amount), 0) FROM Invoice i JOIN i.payments p WHERE i.customerCase.caseId = :caseId")
-    BigDecimal getPaidAmountByCaseId(@Param("caseId") Long caseId);
+    List<Invoice> findByCreatedAtBetween(LocalDateTime startDate, LocalDateTime endDate);
 
     /**
      * Calculate total revenue within date range
@@ -44,6 +55,12 @@ public interface IInvoiceRepository extends JpaRepository<Invoice, Long> {
     @Query("SELECT COALESCE(SUM(i.totalAmount), 0) FROM Invoice i WHERE i.createdAt BETWEEN :start AND :end")
     BigDecimal sumRevenueByDateRange(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
 
+    /**
+     * Revenue of one date as counted by the live dashboard: each amount rounded to whole VND before summing
+     */
+    @Query("SELECT COALESCE(SUM(ROUND(i.totalAmount, 0)), 0) FROM Invoice i WHERE DATE(i.createdAt) = :date")
+    BigDecimal sumRoundedRevenueByDate(@Param("date") LocalDate date);
+
     /**
      * Calculate total revenue for specific date
      */
@@ -0,0 +1,9 @@
+package com.htttql.crmmodule.billing.repository;
+
+import com.htttql.crmmodule.billing.entity.PaymentOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface IPaymentOutboxRepository extends JpaRepository<PaymentOutbox, Long> {
+}
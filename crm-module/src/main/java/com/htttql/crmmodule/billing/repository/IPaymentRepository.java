@@ -1,17 +1,33 @@
 package com.htttql.crmmodule.billing.repository;
 
+import com.htttql.crmmodule.billing.dto.InvoicePaidTotal;
 import com.htttql.crmmodule.billing.entity.Payment;
 import com.htttql.crmmodule.common.enums.PaymentMethod;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
-public interface IPaymentRepository extends JpaRepository<Payment, Long> {
+public interface IPaymentRepository extends JpaRepository<Payment, Long>, JpaSpecificationExecutor<Payment> {
 
     List<Payment> findByInvoice_InvoiceId(Long invoiceId);
 
+    /**
+     * Paid total per invoice for a page of invoices in one grouped query (invoices without payments are absent)
+     */
+    @Query("SELECT new com.htttql.crmmodule.billing.dto.InvoicePaidTotal(p.invoice.invoiceId, SUM(p.amount)) " +
+            "FROM Payment p WHERE p.invoice.invoiceId IN :invoiceIds GROUP BY p.invoice.invoiceId")
+    List<InvoicePaidTotal> sumAmountByInvoiceIds(@Param("invoiceIds") Collection<Long> invoiceIds);
+
+    @Query("SELECT COALESCE(SUM(p.amount), 0) FROM Payment p WHERE p.invoice.invoiceId = :invoiceId")
+    BigDecimal sumAmountByInvoiceId(@Param("invoiceId") Long invoiceId);
+
     List<Payment> findByMethod(PaymentMethod method);
 
     List<Payment> findByPaidBy_StaffId(Long staffId);
@@ -1,28 +1,22 @@
 package com.htttql.crmmodule.billing.repository;
 
 import com.htttql.crmmodule.billing.entity.PointTransaction;
-import com.htttql.crmmodule.core.entity.Customer;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 
+/**
+ * Append-only point ledger, balances are read from the customer row or checkpoints (see IPointLedgerService)
+ */
 @Repository
-public interface IPointTransactionRepository extends JpaRepository<PointTransaction, Long> {
+public interface IPointTransactionRepository extends JpaRepository<PointTransaction, Long>, JpaSpecificationExecutor<PointTransaction> {
 
-    List<PointTransaction> findByCustomerOrderByCreatedAtDesc(Customer customer);
-
-    @Query("SELECT pt FROM PointTransaction pt WHERE pt.customer.customerId = :customerId ORDER BY pt.createdAt DESC")
-    List<PointTransaction> findByCustomerIdOrderByCreatedAtDesc(@Param("customerId") Long customerId);
-
-    @Query("SELECT SUM(pt.points) FROM PointTransaction pt WHERE pt.customer.customerId = :customerId AND pt.source = 'EARN'")
-    Integer getTotalEarnedPointsByCustomerId(@Param("customerId") Long customerId);
-
-    @Query("SELECT SUM(pt.points) FROM PointTransaction pt WHERE pt.customer.customerId = :customerId AND pt.source = 'REDEEM'")
-    Integer getTotalRedeemedPointsByCustomerId(@Param("customerId") Long customerId);
-
-    @Query("SELECT SUM(pt.points) FROM PointTransaction pt WHERE pt.customer.customerId = :customerId")
-    Integer getNetPointsByCustomerId(@Param("customerId") Long customerId);
+    @Query("SELECT pt FROM PointTransaction pt LEFT JOIN FETCH pt.relatedInvoice " +
+            "WHERE pt.customer.customerId = :customerId ORDER BY pt.pointTxnId DESC")
+    List<PointTransaction> findRecentByCustomerId(@Param("customerId") Long customerId, Pageable pageable);
 }
@@ -0,0 +1,20 @@
+package com.htttql.crmmodule.billing.repository;
+
+import com.htttql.crmmodule.billing.entity.Promotion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface IPromotionRepository extends JpaRepository<Promotion, Long> {
+
+    /**
+     * Active promotions that have not ended yet (including those starting later), input of the rule index
+     */
+    @Query("SELECT p FROM Promotion p WHERE p.isActive = true AND p.endAt > :now")
+    List<Promotion> findActiveEndingAfter(@Param("now") LocalDateTime now);
+}
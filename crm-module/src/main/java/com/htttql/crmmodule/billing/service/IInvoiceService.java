@@ -2,16 +2,34 @@ package com.htttql.crmmodule.billing.service;
 
 import com.htttql.crmmodule.billing.dto.InvoiceRequest;
 import com.htttql.crmmodule.billing.dto.InvoiceResponse;
+import com.htttql.crmmodule.billing.dto.InvoiceSearchFilter;
+import com.htttql.crmmodule.billing.dto.InvoiceSearchResponse;
 import com.htttql.crmmodule.billing.dto.InvoiceStatusRequest;
+import com.htttql.crmmodule.billing.dto.PromotionQuoteResponse;
+import com.htttql.crmmodule.common.dto.PageResponse;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
+import java.util.Map;
 
 public interface IInvoiceService {
 
     Page<InvoiceResponse> getAllInvoices(Pageable pageable);
 
+    PageResponse<InvoiceResponse> getAllInvoices(String cursor, int size, Sort sort);
+
+    /**
+     * Filtered invoice search paginated by cursor; totals of the filter are returned with the first page
+     */
+    InvoiceSearchResponse searchInvoices(InvoiceSearchFilter filter, String cursor, int size, Sort sort);
+
+    Page<Map<String, Object>> getAllInvoiceFields(Pageable pageable, String fields);
+
+    StreamingResponseBody exportInvoices(String format, Long staffId);
+
     InvoiceResponse getInvoiceById(Long id);
 
     InvoiceResponse createInvoice(InvoiceRequest request);
@@ -22,10 +40,25 @@ public interface IInvoiceService {
 
     InvoiceResponse updateInvoiceStatus(Long id, InvoiceStatusRequest request);
 
+    /**
+     * Best applicable promotion(s) for an invoice, nothing is reserved
+     */
+    PromotionQuoteResponse getBestPromotion(Long id);
+
+    /**
+     * Applies the best promotion(s) to a DRAFT/UNPAID invoice without payments and reserves their usage
+     */
+    InvoiceResponse applyBestPromotion(Long id);
+
     /**
      * Lấy danh sách hóa đơn theo ID khách hàng
      * @param customerId ID của khách hàng
      * @return Danh sách InvoiceResponse
      */
     List<InvoiceResponse> getInvoicesByCustomerId(Long customerId);
+
+    /**
+     * Lấy tối đa limit hóa đơn mới nhất của khách hàng
+     */
+    List<InvoiceResponse> getRecentInvoicesByCustomerId(Long customerId, int limit);
 }
@@ -0,0 +1,46 @@
+package com.htttql.crmmodule.billing.service;
+
+import com.htttql.crmmodule.billing.entity.Invoice;
+import com.htttql.crmmodule.billing.entity.Payment;
+
+import java.math.BigDecimal;
+
+/**
+ * Transactional outbox for post-payment side effects
+ */
+public interface IPaymentOutboxService {
+
+    /**
+     * Records the side effects of a saved payment, must be called inside the payment transaction;
+     * workers are woken up once it commits
+     */
+    void enqueue(Payment payment, Invoice invoice);
+
+    /**
+     * Drops the not yet applied rows of an invoice that is being deleted
+     *
+     * @return total amount of the dropped payments (their effects never happened)
+     */
+    BigDecimal discardPendingForInvoice(Long invoiceId);
+
+    /**
+     * Drops the row of a payment that is being deleted if it is not applied yet
+     *
+     * @return true if the row was pending, false if its effects were already applied
+     */
+    boolean discardPending(Long paymentId);
+
+    /**
+     * Changes the amount of a payment whose effects are not applied yet
+     *
+     * @return true if the row was pending, false if its effects were already applied
+     */
+    boolean updatePendingAmount(Long paymentId, BigDecimal amount);
+
+    /**
+     * Drains pending rows in batches until none is left
+     *
+     * @return number of payments processed
+     */
+    int drain();
+}
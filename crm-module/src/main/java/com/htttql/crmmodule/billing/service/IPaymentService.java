@@ -2,8 +2,10 @@ package com.htttql.crmmodule.billing.service;
 
 import com.htttql.crmmodule.billing.dto.PaymentRequest;
 import com.htttql.crmmodule.billing.dto.PaymentResponse;
+import com.htttql.crmmodule.common.dto.PageResponse;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 
 /**
  * Service interface for Payment operations
@@ -15,6 +17,11 @@ public interface IPaymentService {
      */
     Page<PaymentResponse> getAllPayments(Pageable pageable);
 
+    /**
+     * Get payments with keyset pagination (no total count)
+     */
+    PageResponse<PaymentResponse> getAllPayments(String cursor, int size, Sort sort);
+
     /**
      * Get payment by ID
      */
@@ -0,0 +1,16 @@
+package com.htttql.crmmodule.billing.service;
+
+/**
+ * FIFO expiry of point lots (EARN entries older than the configured lot age)
+ */
+public interface IPointExpiryService {
+
+    /**
+     * Resumes the unfinished run or starts a new one covering lots expired since the last completed run,
+     * then processes the affected customers in keyset batches until done
+     */
+    Result expire();
+
+    record Result(Long runId, int customersProcessed, long pointsExpired) {
+    }
+}
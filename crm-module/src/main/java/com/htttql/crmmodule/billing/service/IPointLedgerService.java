@@ -0,0 +1,54 @@
+package com.htttql.crmmodule.billing.service;
+
+import com.htttql.crmmodule.billing.dto.PointTransactionResponse;
+import com.htttql.crmmodule.billing.entity.PointTransaction;
+import com.htttql.crmmodule.common.dto.PageResponse;
+import com.htttql.crmmodule.common.enums.PointTransactionType;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Append-only point ledger of a customer
+ * Every balance change is one ledger entry written in the same transaction as the atomic update of the
+ * cached balance on the customer row, so the balance is read in O(1) and periodic checkpoints verify it.
+ */
+public interface IPointLedgerService {
+
+    /**
+     * Appends entries for one customer, must be called inside the transaction that causes them.
+     * The customer row stays locked until commit, so entries of one customer are serialized and
+     * their before/after balances form a gapless chain.
+     *
+     * @param spentDelta amount to add to the customer's total spent (may be zero)
+     */
+    List<PointTransaction> post(Long customerId, BigDecimal spentDelta, List<Entry> entries);
+
+    /**
+     * Redeems points, rejected with BadRequestException if the balance is insufficient
+     */
+    PointTransactionResponse redeem(Long customerId, int points, String note);
+
+    int getBalance(Long customerId);
+
+    /**
+     * Ledger entries of a customer, newest first, paginated by cursor
+     */
+    PageResponse<PointTransactionResponse> getHistory(Long customerId, String cursor, int size);
+
+    List<PointTransactionResponse> getRecent(Long customerId, int limit);
+
+    /**
+     * Appends a checkpoint for every customer with entries after their last checkpoint
+     *
+     * @return number of checkpoints written
+     */
+    int checkpoint();
+
+    /**
+     * One ledger entry to post; points are signed (negative for redeem)
+     */
+    record Entry(PointTransactionType source, int points, Long relatedInvoiceId, String referenceNumber,
+                 String note) {
+    }
+}
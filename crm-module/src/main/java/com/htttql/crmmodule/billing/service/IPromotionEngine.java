@@ -0,0 +1,60 @@
+package com.htttql.crmmodule.billing.service;
+
+import com.htttql.crmmodule.billing.entity.Invoice;
+import com.htttql.crmmodule.common.enums.TierCode;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Promotion evaluation over an in-memory index of the active promotions, and atomic usage reservation
+ */
+public interface IPromotionEngine {
+
+    /**
+     * Best discount for the invoice (customer tier, case services and per-customer usage loaded with two queries)
+     */
+    Quote evaluate(Invoice invoice);
+
+    /**
+     * Best discount for an already loaded context, evaluated in memory only
+     */
+    Quote evaluate(Context context);
+
+    /**
+     * Reserves one use of every promotion of the quote for the customer, must be called inside the
+     * transaction that applies the discount. Throws BadRequestException if a promotion is no longer available
+     * or the customer reached its limit (the caller's transaction is then rolled back, nothing is reserved).
+     */
+    void reserve(Quote quote, Long customerId, Long invoiceId);
+
+    /**
+     * Returns the uses reserved for an invoice that is deleted or voided
+     *
+     * @return number of uses released
+     */
+    int release(Long invoiceId);
+
+    /**
+     * Recompiles the rule index from the database
+     */
+    void rebuild();
+
+    record Context(TierCode tier, BigDecimal total, Map<Long, BigDecimal> amountByService,
+                   Map<Long, Integer> usedByPromo, LocalDateTime at) {
+    }
+
+    record AppliedPromotion(Long promoId, String code, BigDecimal discount) {
+    }
+
+    record Quote(List<AppliedPromotion> promotions, BigDecimal totalDiscount) {
+
+        public static final Quote NONE = new Quote(List.of(), BigDecimal.ZERO);
+
+        public boolean isEmpty() {
+            return promotions.isEmpty();
+        }
+    }
+}
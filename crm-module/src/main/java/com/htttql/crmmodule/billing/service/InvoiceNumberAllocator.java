@@ -0,0 +1,122 @@
+package com.htttql.crmmodule.billing.service;
+
+import com.htttql.crmmodule.billing.config.BillingProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Allocates invoice numbers of the form PREFIX-yyyyMMdd-000001
+ * Each node reserves a block of numbers for the day from billing.invoice_number_block with one atomic
+ * upsert and hands them out from memory with a CAS increment. The upsert autocommits on a small dedicated
+ * pool: the counter row is never locked for the length of an invoice transaction, and a refill never waits
+ * for a second connection from the application pool while the calling transaction already holds one. Numbers are unique across nodes and
+ * increase within a node; numbers of a block that is not used up (restart, rolled back invoice) are
+ * skipped, never reused. The sequence part has a fixed width (sequence-digits), so numbers of a day sort
+ * lexically in numeric order; a day that would exceed that width gets no more numbers.
+ */
+@Slf4j
+@Component
+public class InvoiceNumberAllocator {
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+    // last_reserved là số lớn nhất đã được giữ trong ngày, block vừa giữ là (last_reserved - size, last_reserved]
+    private static final String RESERVE_SQL = """
+            INSERT INTO billing.invoice_number_block AS b (issue_date, last_reserved, created_at, updated_at)
+            VALUES (?, ?, now(), now())
+            ON CONFLICT (issue_date) DO UPDATE
+            SET last_reserved = b.last_reserved + EXCLUDED.last_reserved, updated_at = now()
+            RETURNING last_reserved
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BillingProperties properties;
+    private final HikariDataSource reservePool;
+
+    private final AtomicReference<Block> current = new AtomicReference<>();
+
+    @Autowired
+    public InvoiceNumberAllocator(DataSourceProperties dataSourceProperties, BillingProperties properties) {
+        this.reservePool = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        this.reservePool.setPoolName("invoice-number");
+        this.reservePool.setMaximumPoolSize(properties.getInvoiceNumber().getReservePoolSize());
+        this.reservePool.setMinimumIdle(0);
+        this.reservePool.setAutoCommit(true);
+        this.jdbcTemplate = new JdbcTemplate(reservePool);
+        this.properties = properties;
+    }
+
+    // Test: bảng block giả lập, không có pool
+    InvoiceNumberAllocator(JdbcTemplate jdbcTemplate, BillingProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+        this.reservePool = null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (reservePool != null) {
+            reservePool.close();
+        }
+    }
+
+    public String next() {
+        while (true) {
+            LocalDate today = LocalDate.now();
+            Block block = current.get();
+            if (block != null && block.day().equals(today)) {
+                long value = block.next().getAndIncrement();
+                if (value <= block.last()) {
+                    return format(today, value);
+                }
+            }
+            refill(block, today);
+        }
+    }
+
+    // Chỉ một thread giữ block mới, các thread khác thấy block đã đổi thì quay lại lấy số
+    private synchronized void refill(Block exhausted, LocalDate today) {
+        if (current.get() != exhausted) {
+            return;
+        }
+        int size = properties.getInvoiceNumber().getBlockSize();
+        Long reserved = jdbcTemplate.queryForObject(RESERVE_SQL, Long.class, today, size);
+        long first = reserved - size + 1;
+        long capacity = maxSequence();
+        if (first > capacity) {
+            throw new IllegalStateException("Invoice numbers for " + today + " are exhausted (" + capacity
+                    + " per day), increase app.billing.invoice-number.sequence-digits");
+        }
+        // Block vượt quá độ rộng chỉ được dùng tới số lớn nhất còn hợp lệ
+        long last = Math.min(reserved, capacity);
+        current.set(new Block(today, new AtomicLong(first), last));
+        log.debug("Reserved invoice numbers {}..{} for {}", first, last, today);
+    }
+
+    private String format(LocalDate day, long value) {
+        BillingProperties.InvoiceNumber config = properties.getInvoiceNumber();
+        return config.getPrefix() + "-" + DAY_FORMAT.format(day) + "-"
+                + String.format("%0" + config.getSequenceDigits() + "d", value);
+    }
+
+    private long maxSequence() {
+        long max = 1;
+        for (int i = 0; i < properties.getInvoiceNumber().getSequenceDigits(); i++) {
+            max *= 10;
+        }
+        return max - 1;
+    }
+
+    private record Block(LocalDate day, AtomicLong next, long last) {
+    }
+}
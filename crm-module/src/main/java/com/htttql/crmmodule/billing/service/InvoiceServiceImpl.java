@@ -2,63 +2,227 @@ package com.htttql.crmmodule.billing.service;
 
 import com.htttql.crmmodule.billing.dto.InvoiceRequest;
 import com.htttql.crmmodule.billing.dto.InvoiceResponse;
+import com.htttql.crmmodule.billing.config.BillingProperties;
+import com.htttql.crmmodule.billing.dto.InvoicePaidTotal;
+import com.htttql.crmmodule.billing.dto.InvoiceSearchFilter;
+import com.htttql.crmmodule.billing.dto.InvoiceSearchResponse;
+import com.htttql.crmmodule.billing.dto.InvoiceStatusTotal;
 import com.htttql.crmmodule.billing.dto.InvoiceStatusRequest;
+import com.htttql.crmmodule.billing.dto.PromotionQuoteResponse;
 import com.htttql.crmmodule.billing.entity.Invoice;
 import com.htttql.crmmodule.billing.entity.Payment;
-import com.htttql.crmmodule.billing.entity.PointTransaction;
 import com.htttql.crmmodule.billing.repository.IInvoiceRepository;
 import com.htttql.crmmodule.billing.repository.IPaymentRepository;
-import com.htttql.crmmodule.billing.repository.IPointTransactionRepository;
+import com.htttql.crmmodule.common.dto.PageResponse;
 import com.htttql.crmmodule.common.enums.InvoiceStatus;
-import com.htttql.crmmodule.common.enums.PaidStatus;
+import com.htttql.crmmodule.common.enums.PermissionLevel;
 import com.htttql.crmmodule.common.enums.PaymentMethod;
-import com.htttql.crmmodule.common.enums.PointTransactionType;
 import com.htttql.crmmodule.common.exception.BadRequestException;
 import com.htttql.crmmodule.common.exception.ResourceNotFoundException;
+import com.htttql.crmmodule.common.service.KeysetPaginator;
+import com.htttql.crmmodule.common.service.RetryingTransactionExecutor;
+import com.htttql.crmmodule.common.service.SparseFieldsetQuery;
+import com.htttql.crmmodule.common.service.StreamingExporter;
+import com.htttql.crmmodule.common.util.DataMasker;
+import com.htttql.crmmodule.core.dto.StaffFieldPermissions;
 import com.htttql.crmmodule.core.entity.Customer;
 import com.htttql.crmmodule.core.entity.StaffUser;
 import com.htttql.crmmodule.core.repository.ICustomerRepository;
 import com.htttql.crmmodule.core.repository.IStaffUserRepository;
-import com.htttql.crmmodule.core.service.ICustomerTierService;
+import com.htttql.crmmodule.core.service.ICustomerStatsService;
+import com.htttql.crmmodule.core.event.CustomerBalanceChangedEvent;
+import com.htttql.crmmodule.core.service.IStaffFieldPermissionsService;
 import com.htttql.crmmodule.service.entity.CustomerCase;
+import com.htttql.crmmodule.service.event.DashboardCounterEvent;
 import com.htttql.crmmodule.service.repository.ICustomerCaseRepository;
+import com.htttql.crmmodule.service.service.ICaseBalanceService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service("invoiceService")
 @RequiredArgsConstructor
 public class InvoiceServiceImpl implements IInvoiceService {
 
+    // Các field cột của InvoiceResponse có thể chọn qua ?fields= (totalPaid/balanceDue tính từ payments nên không có)
+    private static final SparseFieldsetQuery.Catalog<Invoice, InvoiceResponse> FIELDS =
+            SparseFieldsetQuery.Catalog.of(Invoice.class, InvoiceResponse::new, "invoiceId")
+                    .field("invoiceId", "invoiceId", InvoiceResponse::setInvoiceId)
+                    .field("invoiceNumber", "invoiceNumber", InvoiceResponse::setInvoiceNumber)
+                    .field("customerId", "customer.customerId", InvoiceResponse::setCustomerId)
+                    .field("customerName", "customer.fullName", InvoiceResponse::setCustomerName)
+                    .field("customerPhone", "customer.phone", InvoiceResponse::setCustomerPhone)
+                    .field("caseId", "customerCase.caseId", InvoiceResponse::setCaseId)
+                    .field("userId", "staffUser.staffId", InvoiceResponse::setUserId)
+                    .field("userName", "staffUser.fullName", InvoiceResponse::setUserName)
+                    .field("totalAmount", "totalAmount", InvoiceResponse::setTotalAmount)
+                    .field("status", "status", InvoiceResponse::setStatus)
+                    .field("paidAt", "paidAt", InvoiceResponse::setPaidAt)
+                    .field("dueDate", "dueDate", InvoiceResponse::setDueDate)
+                    .field("notes", "notes", InvoiceResponse::setNotes)
+                    .field("createdAt", "createdAt", InvoiceResponse::setCreatedAt)
+                    .field("updatedAt", "updatedAt", InvoiceResponse::setUpdatedAt);
+
     private final IInvoiceRepository invoiceRepository;
     private final ICustomerRepository customerRepository;
     private final IStaffUserRepository staffUserRepository;
-    private final IPointTransactionRepository pointTransactionRepository;
     private final IPaymentRepository paymentRepository;
-    private final ICustomerTierService customerTierService;
     private final ICustomerCaseRepository customerCaseRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ICustomerStatsService customerStatsService;
+    private final KeysetPaginator keysetPaginator;
+    private final SparseFieldsetQuery sparseFieldsetQuery;
+    private final StreamingExporter streamingExporter;
+    private final IStaffFieldPermissionsService staffFieldPermissionsService;
+    private final InvoiceNumberAllocator invoiceNumberAllocator;
+    private final IPaymentOutboxService paymentOutboxService;
+    private final ICaseBalanceService caseBalanceService;
+    private final RetryingTransactionExecutor retryingTransactionExecutor;
+    private final BillingProperties billingProperties;
+    private final IPromotionEngine promotionEngine;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
     @Override
     @Transactional(readOnly = true)
     public Page<InvoiceResponse> getAllInvoices(Pageable pageable) {
         Page<Invoice> invoices = invoiceRepository.findAll(pageable);
-        return invoices.map(this::toResponse);
+        return new PageImpl<>(toResponses(invoices.getContent()), pageable, invoices.getTotalElements());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public PageResponse<InvoiceResponse> getAllInvoices(String cursor, int size, Sort sort) {
+        return keysetPaginator.scroll(invoiceRepository, Invoice.class, cursor, size, sort,
+                "customer", "customerCase", "staffUser").mapContent(this::toResponses);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public InvoiceSearchResponse searchInvoices(InvoiceSearchFilter filter, String cursor, int size, Sort sort) {
+        if (filter.getCreatedFrom() != null && filter.getCreatedTo() != null
+                && !filter.getCreatedFrom().isBefore(filter.getCreatedTo())) {
+            throw new BadRequestException("createdFrom must be before createdTo");
+        }
+        Specification<Invoice> specification = toSpecification(filter);
+        PageResponse<InvoiceResponse> invoices = keysetPaginator.scroll(invoiceRepository, Invoice.class,
+                        specification, cursor, size, sort, false, "customer", "customerCase", "staffUser")
+                .mapContent(this::toResponses);
+
+        boolean first = cursor == null || cursor.isBlank();
+        return InvoiceSearchResponse.builder()
+                .invoices(invoices)
+                .totals(first ? totalsFor(specification) : null)
+                .build();
+    }
+
+    // Chỉ sinh predicate cho bộ lọc có giá trị: mỗi tổ hợp bộ lọc có kế hoạch riêng dùng đúng index
+    private static Specification<Invoice> toSpecification(InvoiceSearchFilter filter) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (filter.getCustomerId() != null) {
+                predicates.add(cb.equal(root.get("customer").get("customerId"), filter.getCustomerId()));
+            }
+            if (filter.getStatuses() != null && !filter.getStatuses().isEmpty()) {
+                predicates.add(filter.getStatuses().size() == 1
+                        ? cb.equal(root.get("status"), filter.getStatuses().get(0))
+                        : root.get("status").in(filter.getStatuses()));
+            }
+            if (filter.getStaffId() != null) {
+                predicates.add(cb.equal(root.get("staffUser").get("staffId"), filter.getStaffId()));
+            }
+            if (filter.getCreatedFrom() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("createdAt"), filter.getCreatedFrom()));
+            }
+            if (filter.getCreatedTo() != null) {
+                predicates.add(cb.lessThan(root.get("createdAt"), filter.getCreatedTo()));
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    // Tổng theo trạng thái của toàn bộ kết quả lọc bằng một câu GROUP BY, tổng chung cộng trong bộ nhớ
+    private InvoiceSearchResponse.Totals totalsFor(Specification<Invoice> specification) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<InvoiceStatusTotal> query = cb.createQuery(InvoiceStatusTotal.class);
+        Root<Invoice> root = query.from(Invoice.class);
+        query.select(cb.construct(InvoiceStatusTotal.class, root.get("status"), cb.count(root),
+                        cb.coalesce(cb.sum(root.<BigDecimal>get("totalAmount")), BigDecimal.ZERO)))
+                .where(specification.toPredicate(root, query, cb))
+                .groupBy(root.get("status"))
+                .orderBy(cb.asc(root.get("status")));
+        List<InvoiceStatusTotal> byStatus = entityManager.createQuery(query).getResultList();
+
+        return InvoiceSearchResponse.Totals.builder()
+                .invoiceCount(byStatus.stream().mapToLong(InvoiceStatusTotal::invoiceCount).sum())
+                .totalAmount(byStatus.stream().map(InvoiceStatusTotal::totalAmount).reduce(BigDecimal.ZERO, BigDecimal::add))
+                .byStatus(byStatus)
+                .build();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<Map<String, Object>> getAllInvoiceFields(Pageable pageable, String fields) {
+        return sparseFieldsetQuery.find(FIELDS, fields, pageable, null);
+    }
+
+    @Override
+    public StreamingResponseBody exportInvoices(String format, Long staffId) {
+        String resolved = StreamingExporter.resolveFormat(format);
+        StaffFieldPermissions permissions = staffFieldPermissionsService.getForExport(staffId);
+        if (permissions != null && permissions.getInvoiceView() == PermissionLevel.NO) {
+            throw new AccessDeniedException("Staff is not allowed to view invoices");
+        }
+        boolean maskName = permissions != null && permissions.getCustomerName() == PermissionLevel.NO;
+        boolean maskPhone = permissions != null && permissions.getCustomerPhone() == PermissionLevel.NO;
+
+        StreamingExporter.Definition definition = StreamingExporter.Definition
+                .of("invoice", "billing.invoice i JOIN core.customer cu ON cu.customer_id = i.customer_id",
+                        "invoiceId", "i.invoice_id")
+                .column("invoiceNumber", "i.invoice_number")
+                .column("customerId", "i.customer_id")
+                .column("customerName", "cu.full_name", StreamingExporter.maskWhen(maskName, DataMasker::maskName))
+                .column("customerPhone", "cu.phone", StreamingExporter.maskWhen(maskPhone, DataMasker::maskPhone))
+                .column("caseId", "i.case_id")
+                .column("totalAmount", "i.total_amount")
+                .column("status", "i.status")
+                .column("dueDate", "i.due_date")
+                .column("paidAt", "i.paid_at")
+                .column("notes", "i.notes")
+                .column("createdAt", "i.created_at");
+        return streamingExporter.stream(definition, resolved);
     }
 
     @Override
     @Transactional(readOnly = true)
     public InvoiceResponse getInvoiceById(Long id) {
-        Invoice invoice = invoiceRepository.findById(id)
+        Invoice invoice = invoiceRepository.findWithDetailsByInvoiceId(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Invoice", "id", id));
         return toResponse(invoice);
     }
@@ -73,6 +237,10 @@ public class InvoiceServiceImpl implements IInvoiceService {
         if (request.getCaseId() == null) {
             throw new BadRequestException("Case ID is required");
         }
+        // Hóa đơn PAID tự sinh payment mà paid_by bắt buộc: phải có nhân viên thu
+        if (request.getStatus() == InvoiceStatus.PAID && request.getUserId() == null) {
+            throw new BadRequestException("User ID is required to create a PAID invoice");
+        }
 
         Customer customer = customerRepository.findById(request.getCustomerId())
                 .orElseThrow(() -> new ResourceNotFoundException("Customer", "id", request.getCustomerId()));
@@ -89,8 +257,6 @@ public class InvoiceServiceImpl implements IInvoiceService {
             }
         }
 
-        String invoiceNumber = generateInvoiceNumber();
-
         // Validate user if provided
         StaffUser staffUser = null;
         if (request.getUserId() != null && !request.getUserId().toString().trim().isEmpty()) {
@@ -117,6 +283,8 @@ public class InvoiceServiceImpl implements IInvoiceService {
             totalAmount = request.getTotalAmount();
         }
 
+        // Cấp số sau khi mọi kiểm tra đã qua: request lỗi 400/404 không đốt số hóa đơn
+        String invoiceNumber = invoiceNumberAllocator.next();
         Invoice invoice = Invoice.builder()
                 .invoiceNumber(invoiceNumber)
                 .customer(customer)
@@ -124,20 +292,23 @@ public class InvoiceServiceImpl implements IInvoiceService {
                 .staffUser(staffUser)
                 .totalAmount(totalAmount)
                 .status(request.getStatus() != null ? request.getStatus() : InvoiceStatus.DRAFT)
+                .paidAt(request.getStatus() == InvoiceStatus.PAID ? LocalDateTime.now() : null)
                 .notes(request.getNotes())
                 .dueDate(request.getDueDate())
                 .build();
 
         invoice = invoiceRepository.save(invoice);
+        publishRevenueChange(invoice, BigDecimal.ZERO, totalAmount);
 
         // Create payment record if invoice is marked as PAID
         if (invoice.getStatus() == InvoiceStatus.PAID) {
             createPaymentForPaidInvoice(invoice);
+            customerStatsService.recordOrder(customer.getCustomerId(), totalAmount, invoice.getPaidAt());
         }
 
-        // Update case paid status if case is provided
+        // Add the invoice to the case totals (paid amount follows when the outbox applies the payment)
         if (customerCase != null) {
-            updateCasePaidStatus(customerCase);
+            caseBalanceService.applyDelta(customerCase.getCaseId(), totalAmount, BigDecimal.ZERO);
         }
 
         // Note: Point awarding and tier refresh are handled in payment creation
@@ -151,6 +322,8 @@ public class InvoiceServiceImpl implements IInvoiceService {
     public InvoiceResponse updateInvoice(Long id, InvoiceRequest request) {
         Invoice invoice = invoiceRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Invoice", "id", id));
+        Long previousCustomerId = invoice.getCustomer().getCustomerId();
+        BigDecimal previousAmount = invoice.getTotalAmount();
 
         if (request.getCustomerId() != null) {
             Customer customer = customerRepository.findById(request.getCustomerId())
@@ -158,6 +331,11 @@ public class InvoiceServiceImpl implements IInvoiceService {
             invoice.setCustomer(customer);
         }
         if (request.getTotalAmount() != null) {
+            BigDecimal delta = request.getTotalAmount().subtract(invoice.getTotalAmount());
+            publishRevenueChange(invoice, invoice.getTotalAmount(), request.getTotalAmount());
+            if (invoice.getCustomerCase() != null) {
+                caseBalanceService.applyDelta(invoice.getCustomerCase().getCaseId(), delta, BigDecimal.ZERO);
+            }
             invoice.setTotalAmount(request.getTotalAmount());
         }
         if (request.getUserId() != null) {
@@ -171,6 +349,17 @@ public class InvoiceServiceImpl implements IInvoiceService {
             invoice.setDueDate(request.getDueDate());
 
         invoice = invoiceRepository.save(invoice);
+
+        // Hóa đơn đã thanh toán bị sửa khách/số tiền: tính lại chỉ số đơn hàng
+        if (invoice.getStatus() == InvoiceStatus.PAID) {
+            Long customerId = invoice.getCustomer().getCustomerId();
+            if (!customerId.equals(previousCustomerId)) {
+                customerStatsService.recalculate(previousCustomerId);
+                customerStatsService.recalculate(customerId);
+            } else if (invoice.getTotalAmount().compareTo(previousAmount) != 0) {
+                customerStatsService.recalculate(customerId);
+            }
+        }
         return toResponse(invoice);
     }
 
@@ -184,22 +373,45 @@ public class InvoiceServiceImpl implements IInvoiceService {
             throw new BadRequestException("Can only delete invoices with DRAFT or UNPAID status");
         }
 
+        if (invoice.getCustomerCase() != null) {
+            // Chỉ trừ phần đã thanh toán đã được cộng vào case, phần còn chờ trong outbox bị hủy cùng hóa đơn
+            BigDecimal pending = paymentOutboxService.discardPendingForInvoice(id);
+            BigDecimal applied = paymentRepository.sumAmountByInvoiceId(id).subtract(pending);
+            caseBalanceService.applyDelta(invoice.getCustomerCase().getCaseId(),
+                    invoice.getTotalAmount().negate(), applied.negate());
+        } else {
+            paymentOutboxService.discardPendingForInvoice(id);
+        }
+        promotionEngine.release(id);
+
         invoiceRepository.deleteById(id);
+        publishRevenueChange(invoice, invoice.getTotalAmount(), BigDecimal.ZERO);
     }
 
     @Override
-    @Transactional
     public InvoiceResponse updateInvoiceStatus(Long id, InvoiceStatusRequest request) {
+        BillingProperties.Retry retry = billingProperties.getRetry();
+        return retryingTransactionExecutor.execute("Status change of invoice " + id,
+                retry.getMaxAttempts(), retry.getBackoffMillis(), () -> changeInvoiceStatus(id, request));
+    }
+
+    // Hai yêu cầu đổi trạng thái đồng thời: bên thua version được thử lại và kiểm tra chuyển trạng thái với dữ liệu mới
+    private InvoiceResponse changeInvoiceStatus(Long id, InvoiceStatusRequest request) {
         Invoice invoice = invoiceRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Invoice", "id", id));
 
         validateStatusTransition(invoice.getStatus(), request.getStatus());
+        InvoiceStatus previousStatus = invoice.getStatus();
         invoice.setStatus(request.getStatus());
 
+        if (request.getStatus() == InvoiceStatus.VOID) {
+            promotionEngine.release(id);
+        }
+
         if (request.getStatus() == InvoiceStatus.PAID) {
             invoice.setPaidAt(LocalDateTime.now());
             // Update customer tier when invoice is marked as paid
-            customerTierService.refreshCustomerTierInternal(invoice.getCustomer().getCustomerId());
+            eventPublisher.publishEvent(CustomerBalanceChangedEvent.of(invoice.getCustomer()));
         }
 
         if (request.getNotes() != null) {
@@ -208,9 +420,85 @@ public class InvoiceServiceImpl implements IInvoiceService {
         }
 
         invoice = invoiceRepository.save(invoice);
+
+        Long customerId = invoice.getCustomer().getCustomerId();
+        if (request.getStatus() == InvoiceStatus.PAID) {
+            customerStatsService.recordOrder(customerId, invoice.getTotalAmount(), invoice.getPaidAt());
+        } else if (previousStatus == InvoiceStatus.PAID) {
+            customerStatsService.recalculate(customerId);
+        }
         return toResponse(invoice);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public PromotionQuoteResponse getBestPromotion(Long id) {
+        Invoice invoice = invoiceRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Invoice", "id", id));
+        return toQuoteResponse(invoice, promotionEngine.evaluate(invoice));
+    }
+
+    @Override
+    public InvoiceResponse applyBestPromotion(Long id) {
+        BillingProperties.Retry retry = billingProperties.getRetry();
+        return retryingTransactionExecutor.execute("Promotion on invoice " + id,
+                retry.getMaxAttempts(), retry.getBackoffMillis(), () -> applyPromotion(id));
+    }
+
+    // Tăng version hóa đơn: thanh toán hoặc áp khuyến mãi đồng thời trên cùng hóa đơn sẽ xung đột và được thử lại
+    private InvoiceResponse applyPromotion(Long id) {
+        Invoice invoice = invoiceRepository.findForPaymentByInvoiceId(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Invoice", "id", id));
+
+        if (invoice.getStatus() != InvoiceStatus.DRAFT && invoice.getStatus() != InvoiceStatus.UNPAID) {
+            throw new BadRequestException("Promotions can only be applied to DRAFT or UNPAID invoices");
+        }
+        if (invoice.getDiscountAmount() != null && invoice.getDiscountAmount().signum() > 0) {
+            throw new BadRequestException("A promotion has already been applied to this invoice");
+        }
+        if (paymentRepository.sumAmountByInvoiceId(id).signum() > 0) {
+            throw new BadRequestException("Cannot apply a promotion to an invoice with payments");
+        }
+
+        IPromotionEngine.Quote quote = promotionEngine.evaluate(invoice);
+        if (quote.isEmpty()) {
+            throw new BadRequestException("No applicable promotion for this invoice");
+        }
+        promotionEngine.reserve(quote, invoice.getCustomer().getCustomerId(), id);
+
+        BigDecimal discount = quote.totalDiscount();
+        invoice.setDiscountAmount(discount);
+        invoice.setPromotionCodes(quote.promotions().stream()
+                .map(IPromotionEngine.AppliedPromotion::code)
+                .collect(Collectors.joining(",")));
+        BigDecimal previousTotal = invoice.getTotalAmount();
+        invoice.setTotalAmount(previousTotal.subtract(discount));
+        invoice = invoiceRepository.save(invoice);
+
+        if (invoice.getCustomerCase() != null) {
+            caseBalanceService.applyDelta(invoice.getCustomerCase().getCaseId(), discount.negate(), BigDecimal.ZERO);
+        }
+        publishRevenueChange(invoice, previousTotal, invoice.getTotalAmount());
+        log.info("Applied promotions {} to invoice {}: -{}", invoice.getPromotionCodes(), id, discount);
+        return toResponse(invoice, BigDecimal.ZERO);
+    }
+
+    private PromotionQuoteResponse toQuoteResponse(Invoice invoice, IPromotionEngine.Quote quote) {
+        return PromotionQuoteResponse.builder()
+                .invoiceId(invoice.getInvoiceId())
+                .invoiceAmount(invoice.getTotalAmount())
+                .totalDiscount(quote.totalDiscount())
+                .amountAfterDiscount(invoice.getTotalAmount().subtract(quote.totalDiscount()))
+                .promotions(quote.promotions().stream()
+                        .map(applied -> PromotionQuoteResponse.Item.builder()
+                                .promoId(applied.promoId())
+                                .code(applied.code())
+                                .discount(applied.discount())
+                                .build())
+                        .toList())
+                .build();
+    }
+
     private void validateStatusTransition(InvoiceStatus currentStatus, InvoiceStatus newStatus) {
         boolean isValid = switch (currentStatus) {
             case DRAFT -> newStatus == InvoiceStatus.UNPAID || newStatus == InvoiceStatus.VOID;
@@ -225,11 +513,35 @@ public class InvoiceServiceImpl implements IInvoiceService {
         }
     }
 
-    private String generateInvoiceNumber() {
-        return "INV-" + System.currentTimeMillis() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    // Doanh thu dashboard tính theo ngày tạo hóa đơn, chỉ hóa đơn hôm nay ảnh hưởng bộ đếm realtime
+    // Delta theo VND nguyên: hiệu của hai tổng đã làm tròn, không cắt phần lẻ của từng delta (sẽ tích lũy sai lệch)
+    private void publishRevenueChange(Invoice invoice, BigDecimal before, BigDecimal after) {
+        boolean today = invoice.getCreatedAt() == null
+                || invoice.getCreatedAt().toLocalDate().equals(LocalDate.now());
+        long delta = DashboardCounterEvent.wholeVnd(after) - DashboardCounterEvent.wholeVnd(before);
+        if (today && delta != 0L) {
+            eventPublisher.publishEvent(DashboardCounterEvent.of(DashboardCounterEvent.TODAY_REVENUE, delta));
+        }
     }
 
     private InvoiceResponse toResponse(Invoice invoice) {
+        return toResponse(invoice, paymentRepository.sumAmountByInvoiceId(invoice.getInvoiceId()));
+    }
+
+    // Tổng đã thanh toán của cả trang lấy bằng một câu GROUP BY, không duyệt collection payments từng hóa đơn
+    private List<InvoiceResponse> toResponses(List<Invoice> invoices) {
+        if (invoices.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, BigDecimal> paidTotals = paymentRepository
+                .sumAmountByInvoiceIds(invoices.stream().map(Invoice::getInvoiceId).toList()).stream()
+                .collect(Collectors.toMap(InvoicePaidTotal::invoiceId, InvoicePaidTotal::totalPaid));
+        return invoices.stream()
+                .map(invoice -> toResponse(invoice, paidTotals.getOrDefault(invoice.getInvoiceId(), BigDecimal.ZERO)))
+                .toList();
+    }
+
+    private InvoiceResponse toResponse(Invoice invoice, BigDecimal totalPaid) {
         return InvoiceResponse.builder()
                 .invoiceId(invoice.getInvoiceId())
                 .invoiceNumber(invoice.getInvoiceNumber())
@@ -237,114 +549,38 @@ public class InvoiceServiceImpl implements IInvoiceService {
                 .customerName(invoice.getCustomer().getFullName())
                 .caseId(invoice.getCustomerCase() != null ? invoice.getCustomerCase().getCaseId() : null)
                 .totalAmount(invoice.getTotalAmount())
+                .discountAmount(invoice.getDiscountAmount())
+                .promotionCodes(invoice.getPromotionCodes())
                 .status(invoice.getStatus())
                 .notes(invoice.getNotes())
                 .dueDate(invoice.getDueDate())
                 .paidAt(invoice.getPaidAt())
                 .userId(invoice.getStaffUser() != null ? invoice.getStaffUser().getStaffId() : null)
                 .userName(invoice.getStaffUser() != null ? invoice.getStaffUser().getFullName() : null)
-                .totalPaid(invoice.getTotalPaid())
-                .balanceDue(invoice.getBalanceDue())
+                .totalPaid(totalPaid)
+                .balanceDue(invoice.getTotalAmount().subtract(totalPaid))
                 .createdAt(invoice.getCreatedAt())
                 .updatedAt(invoice.getUpdatedAt())
                 .build();
     }
 
-    private void awardPointsForInvoice(Customer customer, Invoice invoice) {
-        try {
-            if (invoice.getTotalAmount() == null || invoice.getTotalAmount().compareTo(BigDecimal.ZERO) <= 0) {
-                return;
-            }
-
-            BigDecimal pointsPer10000VND = BigDecimal.valueOf(10000);
-            BigDecimal pointsDecimal = invoice.getTotalAmount().divide(pointsPer10000VND, 0, RoundingMode.DOWN);
-            int pointsToAward = pointsDecimal.intValue();
-
-            if (pointsToAward > 0) {
-                int currentPoints = customer.getTotalPoints() != null ? customer.getTotalPoints() : 0;
-                int newPointsBalance = currentPoints + pointsToAward;
-
-                // Create point transaction
-                PointTransaction pointTransaction = PointTransaction.builder()
-                        .customer(customer)
-                        .source(PointTransactionType.EARN)
-                        .points(pointsToAward)
-                        .relatedInvoice(invoice)
-                        .note(String.format("Earned %d points for invoice %s (%,.0f VND)",
-                                pointsToAward, invoice.getInvoiceNumber(),
-                                invoice.getTotalAmount().doubleValue()))
-                        .balanceBefore(currentPoints)
-                        .balanceAfter(newPointsBalance)
-                        .build();
-
-                pointTransactionRepository.save(pointTransaction);
-
-                // Update customer points
-                customer.setTotalPoints(newPointsBalance);
-                customerRepository.save(customer);
-            }
-        } catch (Exception e) {
-            // Don't fail the invoice creation if point awarding fails
-        }
-    }
-
-    private void updateCasePaidStatus(CustomerCase customerCase) {
-        try {
-            // Calculate total amount and paid amount for the case
-            BigDecimal totalAmount = invoiceRepository.getTotalAmountByCaseId(customerCase.getCaseId());
-            BigDecimal paidAmount = invoiceRepository.getPaidAmountByCaseId(customerCase.getCaseId());
-
-            PaidStatus newStatus;
-            if (paidAmount.compareTo(BigDecimal.ZERO) == 0) {
-                newStatus = PaidStatus.UNPAID;
-            } else if (paidAmount.compareTo(totalAmount) < 0) {
-                newStatus = PaidStatus.PARTIALLY_PAID;
-            } else if (paidAmount.compareTo(totalAmount) == 0) {
-                newStatus = PaidStatus.FULLY_PAID;
-            } else {
-                newStatus = PaidStatus.OVERPAID;
-            }
+    // Lỗi ghi payment/outbox làm hỏng cả transaction tạo hóa đơn: không để hóa đơn PAID thiếu payment
+    private void createPaymentForPaidInvoice(Invoice invoice) {
+        Payment payment = Payment.builder()
+                .invoice(invoice)
+                .amount(invoice.getTotalAmount())
+                .method(PaymentMethod.CASH) // Default payment method
+                .note("Auto-generated payment for PAID invoice")
+                .paidBy(invoice.getStaffUser()) // Use the staff user from invoice
+                .paidAt(LocalDateTime.now())
+                .build();
 
-            customerCase.setPaidStatus(newStatus);
-            customerCaseRepository.save(customerCase);
+        paymentRepository.save(payment);
 
-            log.info("Updated case {} paid status to {}", customerCase.getCaseId(), newStatus);
-        } catch (Exception e) {
-            log.error("Failed to update case paid status for case {}", customerCase.getCaseId(), e);
-            // Don't fail the invoice creation if case status update fails
-        }
-    }
+        // Points, total spent and tier are applied by the payment outbox workers
+        paymentOutboxService.enqueue(payment, invoice);
 
-    private void createPaymentForPaidInvoice(Invoice invoice) {
-        try {
-            Payment payment = Payment.builder()
-                    .invoice(invoice)
-                    .amount(invoice.getTotalAmount())
-                    .method(PaymentMethod.CASH) // Default payment method
-                    .note("Auto-generated payment for PAID invoice")
-                    .paidBy(invoice.getStaffUser()) // Use the staff user from invoice
-                    .paidAt(LocalDateTime.now())
-                    .build();
-
-            paymentRepository.save(payment);
-
-            // Award points to customer for paid invoice
-            awardPointsForInvoice(invoice.getCustomer(), invoice);
-
-            // Update customer's total spent
-            Customer customer = invoice.getCustomer();
-            BigDecimal currentTotalSpent = customer.getTotalSpent() != null ? customer.getTotalSpent() : BigDecimal.ZERO;
-            customer.setTotalSpent(currentTotalSpent.add(invoice.getTotalAmount()));
-            customerRepository.save(customer);
-
-            // Refresh customer tier after spending update
-            customerTierService.refreshCustomerTierInternal(customer.getCustomerId());
-
-            log.info("Created payment record for PAID invoice {}", invoice.getInvoiceId());
-        } catch (Exception e) {
-            log.error("Failed to create payment for invoice {}", invoice.getInvoiceId(), e);
-            // Don't fail the invoice creation if payment creation fails
-        }
+        log.info("Created payment record for PAID invoice {}", invoice.getInvoiceId());
     }
 
     @Override
@@ -358,8 +594,12 @@ public class InvoiceServiceImpl implements IInvoiceService {
         List<Invoice> invoices = invoiceRepository.findByCustomer_CustomerId(customerId);
 
         // Convert to response DTOs
-        return invoices.stream()
-                .map(this::toResponse)
-                .toList();
+        return toResponses(invoices);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<InvoiceResponse> getRecentInvoicesByCustomerId(Long customerId, int limit) {
+        return toResponses(invoiceRepository.findRecentByCustomerId(customerId, PageRequest.of(0, limit)));
     }
 }
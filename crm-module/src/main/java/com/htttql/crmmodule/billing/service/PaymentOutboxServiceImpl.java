@@ -0,0 +1,310 @@
+package com.htttql.crmmodule.billing.service;
+
+import com.htttql.crmmodule.billing.config.BillingProperties;
+import com.htttql.crmmodule.billing.entity.Invoice;
+import com.htttql.crmmodule.billing.entity.Payment;
+import com.htttql.crmmodule.billing.entity.PaymentOutbox;
+import com.htttql.crmmodule.billing.repository.IPaymentOutboxRepository;
+import com.htttql.crmmodule.common.enums.PointTransactionType;
+import com.htttql.crmmodule.service.service.ICaseBalanceService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Payment side effects through a transactional outbox
+ * The payment transaction only inserts one outbox row. Workers (bounded pool, woken after commit and by a
+ * periodic poll) claim batches with FOR UPDATE SKIP LOCKED and apply them in one transaction per batch:
+ * one point ledger post per customer (atomic balance credit + entries), one set-based paid status update for all cases of the batch,
+ * then mark the rows done in the same transaction, so every payment is applied exactly once.
+ * A failing batch is replayed row by row; a failing row is retried with backoff, then left FAILED.
+ */
+@Slf4j
+@Service
+public class PaymentOutboxServiceImpl implements IPaymentOutboxService {
+
+    private static final BigDecimal VND_PER_POINT = BigDecimal.valueOf(10000);
+
+    private static final String CLAIM_SQL = """
+            SELECT o.outbox_id, o.payment_id, o.invoice_id, o.customer_id, o.case_id, o.amount, i.invoice_number
+            FROM billing.payment_outbox o
+            JOIN billing.invoice i ON i.invoice_id = o.invoice_id
+            WHERE o.status = 'PENDING' AND o.available_at <= now()
+            ORDER BY o.outbox_id
+            LIMIT ?
+            FOR UPDATE OF o SKIP LOCKED
+            """;
+
+    private static final String MARK_DONE_SQL = """
+            UPDATE billing.payment_outbox
+            SET status = 'DONE', attempts = attempts + 1, processed_at = now(), last_error = NULL, updated_at = now()
+            WHERE outbox_id = ANY(?)
+            """;
+
+    // Lỗi lần thứ n: chờ backoff * n rồi thử lại, quá số lần thì để FAILED cho người vận hành xử lý
+    private static final String MARK_FAILED_SQL = """
+            UPDATE billing.payment_outbox
+            SET attempts = attempts + 1,
+                status = CASE WHEN attempts + 1 >= ? THEN 'FAILED' ELSE 'PENDING' END,
+                available_at = now() + make_interval(secs => ? * (attempts + 1)),
+                last_error = ?, updated_at = now()
+            WHERE outbox_id = ?
+            """;
+
+    // Bỏ dòng chưa xử lý; dòng đang được worker giữ thì chờ, nếu worker đã DONE thì không còn khớp điều kiện
+    private static final String DISCARD_PENDING_SQL = """
+            WITH discarded AS (
+                DELETE FROM billing.payment_outbox
+                WHERE %s = ? AND status <> 'DONE'
+                RETURNING amount
+            )
+            SELECT COALESCE(sum(amount), 0) FROM discarded
+            """;
+
+    private static final String UPDATE_PENDING_AMOUNT_SQL = """
+            UPDATE billing.payment_outbox SET amount = ?, updated_at = now()
+            WHERE payment_id = ? AND status <> 'DONE'
+            """;
+
+    private static final String PURGE_SQL = """
+            DELETE FROM billing.payment_outbox
+            WHERE status = 'DONE' AND processed_at < now() - make_interval(days => ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final IPaymentOutboxRepository paymentOutboxRepository;
+    private final IPointLedgerService pointLedgerService;
+    private final ICaseBalanceService caseBalanceService;
+    private final BillingProperties properties;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+
+    public PaymentOutboxServiceImpl(JdbcTemplate jdbcTemplate,
+                                    PlatformTransactionManager transactionManager,
+                                    IPaymentOutboxRepository paymentOutboxRepository,
+                                    IPointLedgerService pointLedgerService,
+                                    ICaseBalanceService caseBalanceService,
+                                    BillingProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.paymentOutboxRepository = paymentOutboxRepository;
+        this.pointLedgerService = pointLedgerService;
+        this.caseBalanceService = caseBalanceService;
+        this.properties = properties;
+    }
+
+    @Override
+    public void enqueue(Payment payment, Invoice invoice) {
+        paymentOutboxRepository.save(PaymentOutbox.builder()
+                .paymentId(payment.getPaymentId())
+                .invoiceId(invoice.getInvoiceId())
+                .customerId(invoice.getCustomer().getCustomerId())
+                .caseId(invoice.getCustomerCase() != null ? invoice.getCustomerCase().getCaseId() : null)
+                .amount(payment.getAmount())
+                .build());
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    wakeUp();
+                }
+            });
+        }
+    }
+
+    @Override
+    public BigDecimal discardPendingForInvoice(Long invoiceId) {
+        return jdbcTemplate.queryForObject(DISCARD_PENDING_SQL.formatted("invoice_id"), BigDecimal.class, invoiceId);
+    }
+
+    @Override
+    public boolean discardPending(Long paymentId) {
+        BigDecimal discarded = jdbcTemplate.queryForObject(DISCARD_PENDING_SQL.formatted("payment_id"),
+                BigDecimal.class, paymentId);
+        return discarded != null && discarded.signum() != 0;
+    }
+
+    @Override
+    public boolean updatePendingAmount(Long paymentId, BigDecimal amount) {
+        return jdbcTemplate.update(UPDATE_PENDING_AMOUNT_SQL, amount, paymentId) > 0;
+    }
+
+    @Scheduled(fixedDelayString = "${app.billing.outbox.poll-millis:1000}")
+    public void poll() {
+        wakeUp();
+    }
+
+    @Scheduled(cron = "${app.billing.outbox.purge-cron:0 20 3 * * ?}")
+    public void purge() {
+        int deleted = jdbcTemplate.update(PURGE_SQL, properties.getOutbox().getRetentionDays());
+        if (deleted > 0) {
+            log.info("Purged {} processed payment outbox rows", deleted);
+        }
+    }
+
+    // Chỉ khởi động thêm worker khi pool chưa đầy, worker đang chạy sẽ tự lấy các dòng mới
+    private void wakeUp() {
+        int active;
+        while ((active = activeWorkers.get()) < properties.getOutbox().getWorkers()) {
+            if (activeWorkers.compareAndSet(active, active + 1)) {
+                try {
+                    executor.submit(() -> {
+                        try {
+                            drain();
+                        } catch (Exception e) {
+                            log.error("Payment outbox worker stopped", e);
+                        } finally {
+                            activeWorkers.decrementAndGet();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    activeWorkers.decrementAndGet();
+                    throw e;
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int drain() {
+        int batchSize = properties.getOutbox().getBatchSize();
+        int processed = 0;
+        int count;
+        do {
+            count = processBatch(batchSize);
+            processed += count;
+            if (count == batchSize) {
+                // Còn tồn đọng: gọi thêm worker (tối đa bằng kích thước pool)
+                wakeUp();
+            }
+        } while (count == batchSize);
+        return processed;
+    }
+
+    private int processBatch(int batchSize) {
+        try {
+            Integer count = transactionTemplate.execute(status -> {
+                List<Pending> events = claim(batchSize);
+                apply(events);
+                return events.size();
+            });
+            return count != null ? count : 0;
+        } catch (Exception e) {
+            log.warn("Payment outbox batch failed, replaying row by row: {}", e.getMessage());
+            return processOneByOne(batchSize);
+        }
+    }
+
+    private int processOneByOne(int limit) {
+        int processed = 0;
+        for (int i = 0; i < limit; i++) {
+            Pending[] current = new Pending[1];
+            try {
+                Integer count = transactionTemplate.execute(status -> {
+                    List<Pending> events = claim(1);
+                    if (!events.isEmpty()) {
+                        current[0] = events.get(0);
+                        apply(events);
+                    }
+                    return events.size();
+                });
+                if (count == null || count == 0) {
+                    break;
+                }
+                processed += count;
+            } catch (Exception e) {
+                if (current[0] == null) {
+                    throw e;
+                }
+                log.error("Payment outbox row {} (payment {}) failed", current[0].outboxId(), current[0].paymentId(), e);
+                BillingProperties.Outbox config = properties.getOutbox();
+                jdbcTemplate.update(MARK_FAILED_SQL, config.getMaxAttempts(), config.getRetryBackoffSeconds(),
+                        String.valueOf(e.getMessage()), current[0].outboxId());
+            }
+        }
+        return processed;
+    }
+
+    private List<Pending> claim(int limit) {
+        return jdbcTemplate.query(CLAIM_SQL, (rs, rowNum) -> new Pending(
+                rs.getLong("outbox_id"),
+                rs.getLong("payment_id"),
+                rs.getLong("invoice_id"),
+                rs.getLong("customer_id"),
+                rs.getObject("case_id", Long.class),
+                rs.getBigDecimal("amount"),
+                rs.getString("invoice_number")), limit);
+    }
+
+    private void apply(List<Pending> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        // Gộp theo khách: một câu UPDATE số dư cho mọi thanh toán của cùng khách trong batch.
+        // Khóa dòng theo thứ tự id để các worker song song không deadlock với nhau
+        Map<Long, List<Pending>> byCustomer = new TreeMap<>();
+        for (Pending event : events) {
+            byCustomer.computeIfAbsent(event.customerId(), id -> new ArrayList<>()).add(event);
+        }
+        byCustomer.forEach(this::creditCustomer);
+
+        // Cộng delta đã thanh toán vào các case, trạng thái thanh toán tính lại trong cùng câu lệnh
+        Map<Long, BigDecimal> paidByCase = new TreeMap<>();
+        for (Pending event : events) {
+            if (event.caseId() != null) {
+                paidByCase.merge(event.caseId(), event.amount(), BigDecimal::add);
+            }
+        }
+        caseBalanceService.applyPaidDeltas(paidByCase);
+
+        jdbcTemplate.update(MARK_DONE_SQL, (Object) events.stream().map(Pending::outboxId).toArray(Long[]::new));
+    }
+
+    private void creditCustomer(Long customerId, List<Pending> events) {
+        BigDecimal spent = BigDecimal.ZERO;
+        List<IPointLedgerService.Entry> entries = new ArrayList<>(events.size());
+        for (Pending event : events) {
+            spent = spent.add(event.amount());
+            int earned = pointsFor(event.amount());
+            entries.add(new IPointLedgerService.Entry(PointTransactionType.EARN, earned, event.invoiceId(),
+                    "PAY-" + event.paymentId(),
+                    String.format("Earned %d points for payment %,.0f VND on invoice %s",
+                            earned, event.amount().doubleValue(), event.invoiceNumber())));
+        }
+        pointLedgerService.post(customerId, spent, entries);
+    }
+
+    private static int pointsFor(BigDecimal amount) {
+        return amount.signum() > 0 ? amount.divide(VND_PER_POINT, 0, RoundingMode.DOWN).intValue() : 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private record Pending(Long outboxId, Long paymentId, Long invoiceId, Long customerId, Long caseId,
+                           BigDecimal amount, String invoiceNumber) {
+    }
+}
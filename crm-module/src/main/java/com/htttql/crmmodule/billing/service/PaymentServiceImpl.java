@@ -1,33 +1,29 @@
 package com.htttql.crmmodule.billing.service;
 
+import com.htttql.crmmodule.billing.config.BillingProperties;
 import com.htttql.crmmodule.billing.dto.PaymentRequest;
 import com.htttql.crmmodule.billing.dto.PaymentResponse;
-import com.htttql.crmmodule.billing.entity.Payment;
 import com.htttql.crmmodule.billing.entity.Invoice;
-import com.htttql.crmmodule.billing.entity.PointTransaction;
+import com.htttql.crmmodule.billing.entity.Payment;
 import com.htttql.crmmodule.billing.repository.IPaymentRepository;
 import com.htttql.crmmodule.billing.repository.IInvoiceRepository;
-import com.htttql.crmmodule.billing.repository.IPointTransactionRepository;
+import com.htttql.crmmodule.common.dto.PageResponse;
 import com.htttql.crmmodule.common.exception.ResourceNotFoundException;
-import com.htttql.crmmodule.common.enums.PointTransactionType;
-import com.htttql.crmmodule.core.entity.Customer;
-import com.htttql.crmmodule.core.entity.Tier;
-import com.htttql.crmmodule.core.repository.ICustomerRepository;
-import com.htttql.crmmodule.core.repository.ITierRepository;
-import com.htttql.crmmodule.core.service.ICustomerTierService;
-import com.htttql.crmmodule.common.enums.TierCode;
-import com.htttql.crmmodule.common.enums.PaidStatus;
-import com.htttql.crmmodule.service.entity.CustomerCase;
-import com.htttql.crmmodule.service.repository.ICustomerCaseRepository;
+import com.htttql.crmmodule.common.service.KeysetPaginator;
+import com.htttql.crmmodule.common.service.RetryingTransactionExecutor;
+import com.htttql.crmmodule.core.entity.StaffUser;
+import com.htttql.crmmodule.core.repository.IStaffUserRepository;
+import com.htttql.crmmodule.security.service.SecurityContextService;
+import com.htttql.crmmodule.service.service.ICaseBalanceService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalDateTime;
 
 @Service
@@ -37,11 +33,13 @@ public class PaymentServiceImpl implements IPaymentService {
 
     private final IPaymentRepository paymentRepository;
     private final IInvoiceRepository invoiceRepository;
-    private final ICustomerRepository customerRepository;
-    private final ITierRepository tierRepository;
-    private final ICustomerCaseRepository customerCaseRepository;
-    private final ICustomerTierService customerTierService;
-    private final IPointTransactionRepository pointTransactionRepository;
+    private final KeysetPaginator keysetPaginator;
+    private final RetryingTransactionExecutor retryingTransactionExecutor;
+    private final BillingProperties billingProperties;
+    private final IPaymentOutboxService paymentOutboxService;
+    private final ICaseBalanceService caseBalanceService;
+    private final IStaffUserRepository staffUserRepository;
+    private final SecurityContextService securityContextService;
 
     @Override
     public Page<PaymentResponse> getAllPayments(Pageable pageable) {
@@ -49,6 +47,11 @@ public class PaymentServiceImpl implements IPaymentService {
         return payments.map(this::mapToResponse);
     }
 
+    @Override
+    public PageResponse<PaymentResponse> getAllPayments(String cursor, int size, Sort sort) {
+        return keysetPaginator.scroll(paymentRepository, Payment.class, cursor, size, sort).map(this::mapToResponse);
+    }
+
     @Override
     public PaymentResponse getPaymentById(Long id) {
         Payment payment = paymentRepository.findById(id)
@@ -57,55 +60,61 @@ public class PaymentServiceImpl implements IPaymentService {
     }
 
     @Override
-    @Transactional
     public PaymentResponse createPayment(PaymentRequest request) {
+        BillingProperties.Retry retry = billingProperties.getRetry();
+        // paid_by là người thu: nhân viên đang đăng nhập, xác định một lần trước vòng thử lại
+        Long collectorId = securityContextService.getCurrentStaffId();
+        return retryingTransactionExecutor.execute("Payment on invoice " + request.getInvoiceId(),
+                retry.getMaxAttempts(), retry.getBackoffMillis(), () -> recordPayment(request, collectorId));
+    }
+
+    // Chạy lại toàn bộ khi thua xung đột version hóa đơn: số tiền còn lại được kiểm tra lại với tổng mới
+    private PaymentResponse recordPayment(PaymentRequest request, Long collectorId) {
         // Fetch and validate invoice
-        var invoice = invoiceRepository.findById(request.getInvoiceId())
+        var invoice = invoiceRepository.findForPaymentByInvoiceId(request.getInvoiceId())
                 .orElseThrow(
                         () -> new ResourceNotFoundException("Invoice not found with id: " + request.getInvoiceId()));
 
         // Validate payment amount doesn't exceed invoice total
-        BigDecimal totalPaid = invoice.getTotalPaid();
+        BigDecimal totalPaid = paymentRepository.sumAmountByInvoiceId(invoice.getInvoiceId());
         BigDecimal remainingAmount = invoice.getTotalAmount().subtract(totalPaid);
         if (request.getAmount().compareTo(remainingAmount) > 0) {
             throw new IllegalArgumentException("Payment amount exceeds remaining invoice amount: " + remainingAmount);
         }
 
+        StaffUser collector = staffUserRepository.findById(collectorId)
+                .orElseThrow(() -> new ResourceNotFoundException("StaffUser", "id", collectorId));
+
         // Create payment linked to invoice
         Payment payment = Payment.builder()
                 .invoice(invoice)
                 .amount(request.getAmount())
                 .method(request.getMethod())
                 .txnRef(request.getTransactionId())
+                .paidBy(collector)
                 .paidAt(LocalDateTime.now())
                 .build();
 
         Payment savedPayment = paymentRepository.save(payment);
 
-        // Award points for this payment (based on payment amount, not invoice total)
-        awardPointsForPayment(invoice.getCustomer(), request.getAmount(), invoice);
-
-        // Update customer's total spent
-        Customer customer = invoice.getCustomer();
-        BigDecimal currentTotalSpent = customer.getTotalSpent() != null ? customer.getTotalSpent() : BigDecimal.ZERO;
-        customer.setTotalSpent(currentTotalSpent.add(request.getAmount()));
-        customerRepository.save(customer);
-
-        updateCustomerTierAfterPayment(customer, request.getAmount());
-
-        // Update case paid status if invoice has a case
-        if (invoice.getCustomerCase() != null) {
-            updateCasePaidStatus(invoice.getCustomerCase());
-        }
+        // Points, total spent, tier and case paid status are applied by the outbox workers
+        paymentOutboxService.enqueue(savedPayment, invoice);
 
         return mapToResponse(savedPayment);
     }
 
     @Override
+    @Transactional
     public PaymentResponse updatePayment(Long id, PaymentRequest request) {
         Payment payment = paymentRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Payment not found with id: " + id));
 
+        // Thanh toán chưa được outbox áp dụng: chỉ sửa số tiền chờ, ngược lại điều chỉnh delta vào case
+        BigDecimal delta = request.getAmount().subtract(payment.getAmount());
+        if (!paymentOutboxService.updatePendingAmount(id, request.getAmount())) {
+            applyCasePaidDelta(payment, delta);
+        }
+
         payment.setAmount(request.getAmount());
         payment.setMethod(request.getMethod());
         payment.setTxnRef(request.getTransactionId());
@@ -115,11 +124,22 @@ public class PaymentServiceImpl implements IPaymentService {
     }
 
     @Override
+    @Transactional
     public void deletePayment(Long id) {
-        if (!paymentRepository.existsById(id)) {
-            throw new ResourceNotFoundException("Payment not found with id: " + id);
+        Payment payment = paymentRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Payment not found with id: " + id));
+
+        if (!paymentOutboxService.discardPending(id)) {
+            applyCasePaidDelta(payment, payment.getAmount().negate());
+        }
+        paymentRepository.delete(payment);
+    }
+
+    private void applyCasePaidDelta(Payment payment, BigDecimal delta) {
+        Invoice invoice = payment.getInvoice();
+        if (invoice != null && invoice.getCustomerCase() != null) {
+            caseBalanceService.applyDelta(invoice.getCustomerCase().getCaseId(), BigDecimal.ZERO, delta);
         }
-        paymentRepository.deleteById(id);
     }
 
     @Override
@@ -147,83 +167,4 @@ public class PaymentServiceImpl implements IPaymentService {
                 .updatedAt(payment.getUpdatedAt())
                 .build();
     }
-
-    private void updateCustomerTierAfterPayment(Customer customer, BigDecimal paymentAmount) {
-        try {
-            customerTierService.refreshCustomerTierInternal(customer.getCustomerId());
-        } catch (Exception e) {
-            // Log error but don't fail payment creation
-            log.error("Failed to refresh customer tier for customer {}: {}", customer.getCustomerId(), e.getMessage());
-        }
-    }
-
-
-    private void updateCasePaidStatus(CustomerCase customerCase) {
-        try {
-            // Calculate total amount and paid amount for the case
-            BigDecimal totalAmount = invoiceRepository.getTotalAmountByCaseId(customerCase.getCaseId());
-            BigDecimal paidAmount = invoiceRepository.getPaidAmountByCaseId(customerCase.getCaseId());
-
-            PaidStatus newStatus;
-            if (paidAmount.compareTo(BigDecimal.ZERO) == 0) {
-                newStatus = PaidStatus.UNPAID;
-            } else if (paidAmount.compareTo(totalAmount) < 0) {
-                newStatus = PaidStatus.PARTIALLY_PAID;
-            } else if (paidAmount.compareTo(totalAmount) == 0) {
-                newStatus = PaidStatus.FULLY_PAID;
-            } else {
-                newStatus = PaidStatus.OVERPAID;
-            }
-
-            customerCase.setPaidStatus(newStatus);
-            customerCaseRepository.save(customerCase);
-
-            log.info("Updated case {} paid status to {}", customerCase.getCaseId(), newStatus);
-        } catch (Exception e) {
-            log.error("Failed to update case paid status for case {}", customerCase.getCaseId(), e);
-            // Don't fail the payment if case status update fails
-        }
-    }
-
-    private void awardPointsForPayment(Customer customer, BigDecimal paymentAmount, Invoice invoice) {
-        try {
-            if (paymentAmount == null || paymentAmount.compareTo(BigDecimal.ZERO) <= 0) {
-                return;
-            }
-
-            BigDecimal pointsPer10000VND = BigDecimal.valueOf(10000);
-            BigDecimal pointsDecimal = paymentAmount.divide(pointsPer10000VND, 0, RoundingMode.DOWN);
-            int pointsToAward = pointsDecimal.intValue();
-
-            if (pointsToAward > 0) {
-                int currentPoints = customer.getTotalPoints() != null ? customer.getTotalPoints() : 0;
-                int newPointsBalance = currentPoints + pointsToAward;
-
-                // Create point transaction
-                PointTransaction pointTransaction = PointTransaction.builder()
-                        .customer(customer)
-                        .source(PointTransactionType.EARN)
-                        .points(pointsToAward)
-                        .relatedInvoice(invoice)
-                        .note(String.format("Earned %d points for payment %,.0f VND on invoice %s",
-                                pointsToAward, paymentAmount.doubleValue(), 
-                                invoice.getInvoiceNumber()))
-                        .balanceBefore(currentPoints)
-                        .balanceAfter(newPointsBalance)
-                        .build();
-
-                pointTransactionRepository.save(pointTransaction);
-
-                // Update customer points
-                customer.setTotalPoints(newPointsBalance);
-                customerRepository.save(customer);
-
-                log.info("Awarded {} points to customer {} for payment of {} VND", 
-                    pointsToAward, customer.getCustomerId(), paymentAmount);
-            }
-        } catch (Exception e) {
-            log.error("Failed to award points for payment: {}", e.getMessage());
-            // Don't fail the payment creation if point awarding fails
-        }
-    }
 }
@@ -0,0 +1,214 @@
+package com.htttql.crmmodule.billing.service;
+
+import com.htttql.crmmodule.billing.config.BillingProperties;
+import com.htttql.crmmodule.core.service.ICustomerTierService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * FIFO point expiry over the ledger
+ * Redemptions (and earlier expiries) consume the oldest lots first, so the unused part of the expired lots of
+ * a customer is max(0, expired EARN points - points consumed so far). A run covers lots expiring in
+ * (previous cutoff, now] and only visits customers owning such lots: they are resolved once when the run starts
+ * (one range scan of the partial expiry index with the window as literal bounds) into point_expiry_run_customer,
+ * then every batch seeks the next ids by (run_id, customer_id). Each batch is one transaction: lock the customers,
+ * compute and subtract the amounts and insert the EXPIRE entries with one statement, and advance the run position.
+ * Re-processing a customer expires nothing more, so an interrupted run simply resumes from its last committed
+ * position.
+ */
+@Slf4j
+@Service
+public class PointExpiryServiceImpl implements IPointExpiryService {
+
+    // Một lần chạy tại một thời điểm trên mọi node
+    private static final long RUN_LOCK_KEY = 0x504F494E54455850L;
+
+    private static final String START_RUN_SQL = """
+            INSERT INTO billing.point_expiry_run (run_id, window_from, cutoff, status, last_customer_id,
+                                                  customers_processed, points_expired, created_at, updated_at)
+            SELECT nextval('billing.point_expiry_run_seq'),
+                   (SELECT max(cutoff) FROM billing.point_expiry_run WHERE status = 'COMPLETED'),
+                   now(), 'RUNNING', 0, 0, 0, now(), now()
+            RETURNING run_id, window_from, cutoff
+            """;
+
+    // Giới hạn cửa sổ truyền dưới dạng tham số (không đọc từ dòng run) để planner dùng range trên
+    // idx_point_txn_earn_expiry
+    private static final String RESOLVE_CUSTOMERS_SQL = """
+            INSERT INTO billing.point_expiry_run_customer (run_customer_id, run_id, customer_id, created_at, updated_at)
+            SELECT nextval('billing.point_expiry_run_customer_seq'), ?, customer_id, now(), now()
+            FROM (
+                SELECT DISTINCT pt.customer_id
+                FROM billing.point_transaction pt
+                WHERE pt.source = 'EARN' AND pt.expires_at <= ? %s
+            ) due
+            """;
+
+    private static final String LOCK_RUN_SQL = """
+            SELECT last_customer_id FROM billing.point_expiry_run
+            WHERE run_id = ? AND status = 'RUNNING'
+            FOR UPDATE
+            """;
+
+    // Chỉ khách có lô EARN hết hạn trong cửa sổ của lần chạy, theo thứ tự customer_id (keyset trên
+    // uk_point_expiry_run_customer)
+    private static final String NEXT_CUSTOMERS_SQL = """
+            SELECT customer_id FROM billing.point_expiry_run_customer
+            WHERE run_id = ? AND customer_id > ?
+            ORDER BY customer_id
+            LIMIT ?
+            """;
+
+    private static final String LOCK_CUSTOMERS_SQL = """
+            SELECT customer_id FROM core.customer
+            WHERE customer_id = ANY(?)
+            ORDER BY customer_id
+            FOR UPDATE
+            """;
+
+    // Chạy sau khi đã khóa khách hàng: snapshot mới thấy mọi bút toán đã commit, không có bút toán nào đang chờ
+    private static final String EXPIRE_SQL = """
+            WITH lots AS (
+                SELECT pt.customer_id,
+                       COALESCE(sum(pt.points) FILTER (WHERE pt.source = 'EARN' AND pt.expires_at <= r.cutoff), 0)
+                           AS expired_earned,
+                       COALESCE(-sum(pt.points) FILTER (WHERE pt.points < 0), 0) AS consumed
+                FROM billing.point_transaction pt
+                JOIN billing.point_expiry_run r ON r.run_id = ?
+                WHERE pt.customer_id = ANY(?)
+                GROUP BY pt.customer_id
+            ), due AS (
+                SELECT l.customer_id, c.total_points AS balance_before,
+                       LEAST(l.expired_earned - l.consumed, c.total_points) AS amount
+                FROM lots l
+                JOIN core.customer c ON c.customer_id = l.customer_id
+                WHERE l.expired_earned > l.consumed AND c.total_points > 0
+            ), expired AS (
+                UPDATE core.customer c
+                SET total_points = c.total_points - d.amount, updated_at = now()
+                FROM due d
+                WHERE c.customer_id = d.customer_id
+                RETURNING c.customer_id, d.balance_before, c.total_points AS balance_after, d.amount
+            )
+            INSERT INTO billing.point_transaction (point_txn_id, customer_id, source, points, balance_before,
+                                                   balance_after, reference_number, note, created_at, updated_at)
+            SELECT nextval('billing.point_transaction_seq'), e.customer_id, 'EXPIRE', -e.amount, e.balance_before,
+                   e.balance_after, 'EXP-' || ? || '-' || e.customer_id,
+                   format('Expired %s points older than %s days', e.amount, ?), now(), now()
+            FROM expired e
+            RETURNING customer_id, -points AS amount
+            """;
+
+    private static final String ADVANCE_RUN_SQL = """
+            UPDATE billing.point_expiry_run
+            SET last_customer_id = ?, customers_processed = customers_processed + ?,
+                points_expired = points_expired + ?, updated_at = now()
+            WHERE run_id = ?
+            """;
+
+    private static final String COMPLETE_RUN_SQL = """
+            UPDATE billing.point_expiry_run
+            SET status = 'COMPLETED', completed_at = now(), updated_at = now()
+            WHERE run_id = ?
+            RETURNING customers_processed, points_expired
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ICustomerTierService customerTierService;
+    private final BillingProperties properties;
+
+    public PointExpiryServiceImpl(JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager,
+                                  ICustomerTierService customerTierService,
+                                  BillingProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.customerTierService = customerTierService;
+        this.properties = properties;
+    }
+
+    @Override
+    @Scheduled(cron = "${app.billing.points.expiry-cron:0 30 2 * * ?}")
+    public Result expire() {
+        long started = System.nanoTime();
+        Long runId = transactionTemplate.execute(status -> startOrResume());
+
+        Batch batch;
+        do {
+            batch = transactionTemplate.execute(status -> processBatch(runId));
+            // Đánh giá lại hạng sau khi batch đã commit (sweeper cập nhật theo tập)
+            batch.expiredCustomerIds().forEach(customerTierService::markDirty);
+        } while (!batch.done());
+
+        Result result = transactionTemplate.execute(status -> {
+            jdbcTemplate.update("DELETE FROM billing.point_expiry_run_customer WHERE run_id = ?", runId);
+            return jdbcTemplate.queryForObject(COMPLETE_RUN_SQL,
+                    (rs, rowNum) -> new Result(runId, rs.getInt("customers_processed"), rs.getLong("points_expired")),
+                    runId);
+        });
+        log.info("Point expiry run {} completed in {} ms: {} customers, {} points expired", runId,
+                (System.nanoTime() - started) / 1_000_000, result.customersProcessed(), result.pointsExpired());
+        return result;
+    }
+
+    // Tiếp tục lần chạy dở dang (vd. node bị dừng giữa chừng) thay vì mở cửa sổ mới
+    private Long startOrResume() {
+        jdbcTemplate.queryForObject("SELECT pg_advisory_xact_lock(?)", Object.class, RUN_LOCK_KEY);
+        List<Long> running = jdbcTemplate.queryForList(
+                "SELECT run_id FROM billing.point_expiry_run WHERE status = 'RUNNING' ORDER BY run_id", Long.class);
+        if (!running.isEmpty()) {
+            log.info("Resuming point expiry run {}", running.get(0));
+            return running.get(0);
+        }
+        Map<String, Object> run = jdbcTemplate.queryForMap(START_RUN_SQL);
+        Long runId = (Long) run.get("run_id");
+        Object windowFrom = run.get("window_from");
+        int customers = windowFrom != null
+                ? jdbcTemplate.update(RESOLVE_CUSTOMERS_SQL.formatted("AND pt.expires_at > ?"), runId, run.get("cutoff"), windowFrom)
+                : jdbcTemplate.update(RESOLVE_CUSTOMERS_SQL.formatted(""), runId, run.get("cutoff"));
+        log.info("Point expiry run {} started: {} customers with lots expiring in ({}, {}]", runId, customers,
+                windowFrom, run.get("cutoff"));
+        return runId;
+    }
+
+    private Batch processBatch(Long runId) {
+        // Khóa dòng của lần chạy: hai node chạy cùng lúc sẽ lần lượt xử lý các batch kế tiếp nhau
+        List<Long> position = jdbcTemplate.queryForList(LOCK_RUN_SQL, Long.class, runId);
+        if (position.isEmpty()) {
+            return new Batch(true, List.of());
+        }
+
+        List<Long> customerIds = jdbcTemplate.queryForList(NEXT_CUSTOMERS_SQL, Long.class,
+                runId, position.get(0), properties.getPoints().getExpiryBatchSize());
+        if (customerIds.isEmpty()) {
+            return new Batch(true, List.of());
+        }
+        Long[] ids = customerIds.toArray(Long[]::new);
+        jdbcTemplate.queryForList(LOCK_CUSTOMERS_SQL, Long.class, (Object) ids);
+
+        // Trừ số dư và ghi bút toán EXPIRE trong cùng một câu lệnh, không round trip theo từng khách
+        List<Long> expiredCustomerIds = new ArrayList<>();
+        long[] expiredPoints = {0};
+        jdbcTemplate.query(EXPIRE_SQL, rs -> {
+            expiredCustomerIds.add(rs.getLong("customer_id"));
+            expiredPoints[0] += rs.getInt("amount");
+        }, runId, ids, runId, properties.getPoints().getLotAgeDays());
+
+        jdbcTemplate.update(ADVANCE_RUN_SQL, ids[ids.length - 1], ids.length, expiredPoints[0], runId);
+        log.debug("Point expiry run {}: {} customers up to {}, {} expired", runId, ids.length,
+                ids[ids.length - 1], expiredPoints[0]);
+        return new Batch(false, expiredCustomerIds);
+    }
+
+    private record Batch(boolean done, List<Long> expiredCustomerIds) {
+    }
+}
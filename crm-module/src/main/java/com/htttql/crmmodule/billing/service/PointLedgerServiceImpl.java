@@ -0,0 +1,202 @@
+package com.htttql.crmmodule.billing.service;
+
+import com.htttql.crmmodule.billing.config.BillingProperties;
+import com.htttql.crmmodule.billing.dto.PointTransactionResponse;
+import com.htttql.crmmodule.billing.entity.Invoice;
+import com.htttql.crmmodule.billing.entity.PointTransaction;
+import com.htttql.crmmodule.billing.repository.IPointTransactionRepository;
+import com.htttql.crmmodule.common.dto.PageResponse;
+import com.htttql.crmmodule.common.enums.PointTransactionType;
+import com.htttql.crmmodule.common.exception.ResourceNotFoundException;
+import com.htttql.crmmodule.common.service.KeysetPaginator;
+import com.htttql.crmmodule.core.entity.Customer;
+import com.htttql.crmmodule.core.repository.ICustomerRepository;
+import com.htttql.crmmodule.core.service.ICustomerBalanceService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Point ledger: entries are only ever inserted, the customer row caches the running balance.
+ * Posting goes through ICustomerBalanceService (UPDATE ... SET total_points = total_points + ?), which takes
+ * the customer row lock and refuses to go below zero, so concurrent earns and redeems of one customer run one
+ * after the other and the ids of a customer's entries increase in commit order.
+ * Nightly checkpoints store the balance up to the last entry per customer (previous checkpoint + newer
+ * entries only, both read by index seeks per customer) and flag customers whose cached balance drifted from
+ * the ledger. Superseded checkpoints are pruned after a retention period.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PointLedgerServiceImpl implements IPointLedgerService {
+
+    private static final Sort HISTORY_SORT = Sort.by(Sort.Direction.DESC, "pointTxnId");
+
+    // Số dư mới = checkpoint trước + tổng các bút toán sau nó. Với mỗi khách: checkpoint mới nhất lấy bằng
+    // idx_point_checkpoint_customer, phần đuôi bằng range scan trên idx_point_txn_customer_txn (customer_id, point_txn_id),
+    // nên chi phí theo số khách và số bút toán mới chứ không theo kích thước sổ cái hay bảng checkpoint
+    private static final String CHECKPOINT_SQL = """
+            WITH tail AS (
+                SELECT c.customer_id, c.total_points, cp.balance AS checkpoint_balance, t.last_id, t.delta
+                FROM core.customer c
+                LEFT JOIN LATERAL (
+                    SELECT last_point_txn_id, balance FROM billing.point_balance_checkpoint
+                    WHERE customer_id = c.customer_id
+                    ORDER BY checkpoint_id DESC
+                    LIMIT 1
+                ) cp ON true
+                CROSS JOIN LATERAL (
+                    SELECT max(pt.point_txn_id) AS last_id, sum(pt.points) AS delta
+                    FROM billing.point_transaction pt
+                    WHERE pt.customer_id = c.customer_id AND pt.point_txn_id > COALESCE(cp.last_point_txn_id, 0)
+                ) t
+                WHERE t.last_id IS NOT NULL
+            )
+            INSERT INTO billing.point_balance_checkpoint
+                (checkpoint_id, customer_id, last_point_txn_id, balance, cached_balance, created_at, updated_at)
+            SELECT nextval('billing.point_balance_checkpoint_seq'), customer_id, last_id,
+                   COALESCE(checkpoint_balance, 0) + delta, total_points, now(), now()
+            FROM tail
+            RETURNING customer_id, balance, cached_balance
+            """;
+
+    // Chỉ cần checkpoint mới nhất để tính số dư; các bản cũ hơn giữ lại một thời gian để đối soát rồi xóa
+    private static final String PRUNE_CHECKPOINTS_SQL = """
+            DELETE FROM billing.point_balance_checkpoint old
+            WHERE old.created_at < now() - make_interval(days => ?)
+              AND EXISTS (SELECT 1 FROM billing.point_balance_checkpoint newer
+                          WHERE newer.customer_id = old.customer_id AND newer.checkpoint_id > old.checkpoint_id)
+            """;
+
+    private final IPointTransactionRepository pointTransactionRepository;
+    private final ICustomerRepository customerRepository;
+    private final ICustomerBalanceService customerBalanceService;
+    private final KeysetPaginator keysetPaginator;
+    private final JdbcTemplate jdbcTemplate;
+    private final BillingProperties properties;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<PointTransaction> post(Long customerId, BigDecimal spentDelta, List<Entry> entries) {
+        int points = entries.stream().mapToInt(Entry::points).sum();
+        Customer customer = entityManager.getReference(Customer.class, customerId);
+        ICustomerBalanceService.Balance balance = customerBalanceService.credit(customer, spentDelta, points);
+
+        // Khóa dòng khách hàng được giữ tới commit: số dư trước/sau suy ra từ số dư sau câu UPDATE
+        int running = balance.totalPoints() - points;
+        LocalDateTime expiresAt = LocalDateTime.now().plusDays(properties.getPoints().getLotAgeDays());
+        List<PointTransaction> saved = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            if (entry.points() == 0) {
+                continue;
+            }
+            saved.add(pointTransactionRepository.save(PointTransaction.builder()
+                    .customer(customer)
+                    .source(entry.source())
+                    .points(entry.points())
+                    .relatedInvoice(entry.relatedInvoiceId() != null
+                            ? entityManager.getReference(Invoice.class, entry.relatedInvoiceId())
+                            : null)
+                    .referenceNumber(entry.referenceNumber())
+                    .note(entry.note())
+                    .expiresAt(entry.source() == PointTransactionType.EARN ? expiresAt : null)
+                    .balanceBefore(running)
+                    .balanceAfter(running + entry.points())
+                    .build()));
+            running += entry.points();
+        }
+        return saved;
+    }
+
+    @Override
+    @Transactional
+    public PointTransactionResponse redeem(Long customerId, int points, String note) {
+        List<PointTransaction> saved = post(customerId, BigDecimal.ZERO,
+                List.of(new Entry(PointTransactionType.REDEEM, -points, null, null,
+                        note != null ? note : String.format("Redeemed %d points", points))));
+        log.info("Customer {} redeemed {} points", customerId, points);
+        return toResponse(saved.get(0));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public int getBalance(Long customerId) {
+        return customerRepository.findTotalPointsByCustomerId(customerId)
+                .orElseThrow(() -> new ResourceNotFoundException("Customer", "id", customerId));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public PageResponse<PointTransactionResponse> getHistory(Long customerId, String cursor, int size) {
+        if (!customerRepository.existsById(customerId)) {
+            throw new ResourceNotFoundException("Customer", "id", customerId);
+        }
+        Specification<PointTransaction> ofCustomer = (root, query, cb) ->
+                cb.equal(root.get("customer").get("customerId"), customerId);
+        return keysetPaginator.scroll(pointTransactionRepository, PointTransaction.class, ofCustomer,
+                        cursor, size, HISTORY_SORT, false, "relatedInvoice")
+                .map(this::toResponse);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<PointTransactionResponse> getRecent(Long customerId, int limit) {
+        return pointTransactionRepository.findRecentByCustomerId(customerId, PageRequest.of(0, limit)).stream()
+                .map(this::toResponse)
+                .toList();
+    }
+
+    @Override
+    @Scheduled(cron = "${app.billing.points.checkpoint-cron:0 0 3 * * ?}")
+    @Transactional
+    public int checkpoint() {
+        int[] counts = {0, 0};
+        jdbcTemplate.query(CHECKPOINT_SQL, rs -> {
+            counts[0]++;
+            int balance = rs.getInt("balance");
+            int cached = rs.getInt("cached_balance");
+            if (balance != cached) {
+                counts[1]++;
+                log.warn("Point balance drift for customer {}: ledger {}, cached {}",
+                        rs.getLong("customer_id"), balance, cached);
+            }
+        });
+        int pruned = jdbcTemplate.update(PRUNE_CHECKPOINTS_SQL, properties.getPoints().getCheckpointRetentionDays());
+        log.info("Point ledger checkpoint: {} customers, {} drifted, {} old checkpoints pruned",
+                counts[0], counts[1], pruned);
+        return counts[0];
+    }
+
+    private PointTransactionResponse toResponse(PointTransaction transaction) {
+        Invoice invoice = transaction.getRelatedInvoice();
+        return PointTransactionResponse.builder()
+                .pointTxnId(transaction.getPointTxnId())
+                .source(transaction.getSource())
+                .points(transaction.getPoints())
+                .balanceBefore(transaction.getBalanceBefore())
+                .balanceAfter(transaction.getBalanceAfter())
+                .relatedInvoiceId(invoice != null ? invoice.getInvoiceId() : null)
+                .relatedInvoiceNumber(invoice != null ? invoice.getInvoiceNumber() : null)
+                .note(transaction.getNote())
+                .expiresAt(transaction.getExpiresAt())
+                .createdAt(transaction.getCreatedAt())
+                .build();
+    }
+}
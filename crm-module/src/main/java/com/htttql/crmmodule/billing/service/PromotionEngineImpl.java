@@ -0,0 +1,248 @@
+package com.htttql.crmmodule.billing.service;
+
+import com.htttql.crmmodule.billing.entity.Invoice;
+import com.htttql.crmmodule.billing.repository.IPromotionRepository;
+import com.htttql.crmmodule.common.enums.TierCode;
+import com.htttql.crmmodule.common.exception.BadRequestException;
+import com.htttql.crmmodule.common.exception.ResourceNotFoundException;
+import com.htttql.crmmodule.service.entity.SpaService;
+import com.htttql.crmmodule.service.repository.IServiceRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Promotion engine
+ * Active promotions are compiled into an immutable PromotionRuleIndex swapped atomically on rebuild; a cheap
+ * fingerprint (row count + last update + the set of exhausted promotions) is polled so changes made anywhere,
+ * including usage reaching or falling back under a limit, are picked up without a restart.
+ * Evaluation never touches the database beyond loading the invoice context.
+ * Reservation increments usage_count with a guarded UPDATE: the promotion row lock serializes concurrent
+ * checkouts and the limit is re-checked on the latest committed count, so a promotion is never over-redeemed;
+ * the per-customer limit is checked while holding the same lock.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PromotionEngineImpl implements IPromotionEngine {
+
+    // Chỉ việc hết lượt mới làm đổi kết quả đánh giá, nên fingerprint theo tập khuyến mãi đã hết lượt
+    // chứ không theo usage_count: mỗi lượt dùng không bắt các node biên dịch lại
+    private static final String FINGERPRINT_SQL = """
+            SELECT count(*) || ':' || COALESCE(max(updated_at)::text, '') || ':'
+                || md5(COALESCE(string_agg(promo_id::text, ',' ORDER BY promo_id)
+                       FILTER (WHERE usage_limit IS NOT NULL AND usage_count >= usage_limit), ''))
+            FROM billing.promotion
+            """;
+
+    private static final String CONTEXT_SQL = """
+            SELECT t.code AS tier_code, cs.service_id, cs.line_total
+            FROM core.customer c
+            JOIN core.tier t ON t.tier_id = c.tier_id
+            LEFT JOIN service.case_service cs ON cs.case_id = ? AND cs.status <> 'CANCELLED'
+            WHERE c.customer_id = ?
+            """;
+
+    private static final String CUSTOMER_USAGE_SQL = """
+            SELECT promo_id, count(*) AS used FROM billing.promotion_redemption
+            WHERE customer_id = ?
+            GROUP BY promo_id
+            """;
+
+    // Điều kiện được kiểm tra lại trên bản ghi mới nhất sau khi chờ khóa dòng: không vượt usage_limit
+    private static final String RESERVE_SQL = """
+            UPDATE billing.promotion
+            SET usage_count = COALESCE(usage_count, 0) + 1
+            WHERE promo_id = ? AND is_active AND start_at <= now() AND end_at > now()
+              AND (usage_limit IS NULL OR COALESCE(usage_count, 0) < usage_limit)
+            RETURNING usage_count, usage_limit, usage_limit_per_customer
+            """;
+
+    private static final String CUSTOMER_COUNT_SQL =
+            "SELECT count(*) FROM billing.promotion_redemption WHERE promo_id = ? AND customer_id = ?";
+
+    private static final String INSERT_REDEMPTION_SQL = """
+            INSERT INTO billing.promotion_redemption
+                (redemption_id, promo_id, customer_id, invoice_id, discount_amount, created_at, updated_at)
+            VALUES (nextval('billing.promotion_redemption_seq'), ?, ?, ?, ?, now(), now())
+            """;
+
+    private static final String RELEASE_SQL = """
+            WITH released AS (
+                DELETE FROM billing.promotion_redemption WHERE invoice_id = ? RETURNING promo_id
+            )
+            UPDATE billing.promotion p
+            SET usage_count = GREATEST(COALESCE(p.usage_count, 0) - 1, 0)
+            FROM released r
+            WHERE p.promo_id = r.promo_id
+            RETURNING p.usage_limit IS NOT NULL AND p.usage_count + 1 >= p.usage_limit AS was_exhausted
+            """;
+
+    private final IPromotionRepository promotionRepository;
+    private final IServiceRepository serviceRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile PromotionRuleIndex index = PromotionRuleIndex.EMPTY;
+    private volatile String fingerprint;
+
+    // Biên dịch lại sau commit chạy trên luồng riêng, không chặn request checkout; các yêu cầu dồn lại gộp làm một
+    private final ExecutorService rebuilder = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${app.billing.promotion.refresh-millis:30000}")
+    public void refreshIfChanged() {
+        try {
+            String current = jdbcTemplate.queryForObject(FINGERPRINT_SQL, String.class);
+            if (!current.equals(fingerprint)) {
+                rebuild();
+            }
+        } catch (Exception e) {
+            log.warn("Promotion index refresh failed: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public synchronized void rebuild() {
+        long started = System.nanoTime();
+        // Lấy fingerprint trước khi nạp: thay đổi xảy ra giữa chừng sẽ được phát hiện ở lần kiểm tra sau
+        String current = jdbcTemplate.queryForObject(FINGERPRINT_SQL, String.class);
+        Map<String, Long> serviceIdsByCode = serviceRepository.findAll().stream()
+                .filter(service -> service.getCode() != null)
+                .collect(Collectors.toMap(service -> service.getCode().toUpperCase(), SpaService::getServiceId,
+                        (first, second) -> first));
+        PromotionRuleIndex compiled = PromotionRuleIndex.compile(
+                promotionRepository.findActiveEndingAfter(LocalDateTime.now()), serviceIdsByCode);
+        index = compiled;
+        fingerprint = current;
+        log.info("Promotion index rebuilt with {} promotions in {} ms", compiled.size(),
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Quote evaluate(Invoice invoice) {
+        Long customerId = invoice.getCustomer().getCustomerId();
+        Long caseId = invoice.getCustomerCase() != null ? invoice.getCustomerCase().getCaseId() : null;
+
+        TierCode[] tier = {null};
+        Map<Long, BigDecimal> amountByService = new HashMap<>();
+        jdbcTemplate.query(CONTEXT_SQL, rs -> {
+            tier[0] = TierCode.valueOf(rs.getString("tier_code"));
+            long serviceId = rs.getLong("service_id");
+            if (!rs.wasNull()) {
+                amountByService.merge(serviceId, rs.getBigDecimal("line_total"), BigDecimal::add);
+            }
+        }, caseId, customerId);
+        if (tier[0] == null) {
+            throw new ResourceNotFoundException("Customer", "id", customerId);
+        }
+
+        Map<Long, Integer> usedByPromo = new HashMap<>();
+        jdbcTemplate.query(CUSTOMER_USAGE_SQL, rs -> {
+            usedByPromo.put(rs.getLong("promo_id"), rs.getInt("used"));
+        }, customerId);
+
+        return evaluate(new Context(tier[0], invoice.getTotalAmount(), amountByService, usedByPromo,
+                LocalDateTime.now()));
+    }
+
+    @Override
+    public Quote evaluate(Context context) {
+        if (context.total() == null || context.total().signum() <= 0) {
+            return Quote.NONE;
+        }
+        return index.best(context);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void reserve(Quote quote, Long customerId, Long invoiceId) {
+        boolean exhausted = false;
+        // Quote đã sắp theo promo_id: mọi checkout khóa các khuyến mãi theo cùng thứ tự, không deadlock
+        for (AppliedPromotion applied : quote.promotions()) {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(RESERVE_SQL, applied.promoId());
+            if (rows.isEmpty()) {
+                throw new BadRequestException("Promotion " + applied.code() + " is no longer available");
+            }
+            Map<String, Object> row = rows.get(0);
+            Integer perCustomerLimit = (Integer) row.get("usage_limit_per_customer");
+            if (perCustomerLimit != null) {
+                Long used = jdbcTemplate.queryForObject(CUSTOMER_COUNT_SQL, Long.class, applied.promoId(), customerId);
+                if (used != null && used >= perCustomerLimit) {
+                    throw new BadRequestException("Customer has reached the usage limit of promotion " + applied.code());
+                }
+            }
+            jdbcTemplate.update(INSERT_REDEMPTION_SQL, applied.promoId(), customerId, invoiceId, applied.discount());
+
+            Integer usageLimit = (Integer) row.get("usage_limit");
+            exhausted |= usageLimit != null && ((Integer) row.get("usage_count")) >= usageLimit;
+        }
+
+        // Khuyến mãi vừa hết lượt: biên dịch lại sau commit để không còn được đề xuất
+        if (exhausted) {
+            rebuildAfterCommit();
+        }
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int release(Long invoiceId) {
+        List<Boolean> released = jdbcTemplate.queryForList(RELEASE_SQL, Boolean.class, invoiceId);
+        // Trả lại lượt cho khuyến mãi đã hết: được đề xuất lại ngay sau commit
+        if (released.contains(Boolean.TRUE)) {
+            rebuildAfterCommit();
+        }
+        return released.size();
+    }
+
+    private void rebuildAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                if (rebuildQueued.compareAndSet(false, true)) {
+                    rebuilder.submit(() -> {
+                        rebuildQueued.set(false);
+                        try {
+                            rebuild();
+                        } catch (Exception e) {
+                            log.warn("Promotion index rebuild failed: {}", e.getMessage());
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuilder.shutdownNow();
+    }
+}
@@ -0,0 +1,271 @@
+package com.htttql.crmmodule.billing.service;
+
+import com.htttql.crmmodule.billing.entity.Promotion;
+import com.htttql.crmmodule.common.enums.PromotionType;
+import com.htttql.crmmodule.common.enums.TierCode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Immutable compiled form of the active promotions
+ * Rules are bucketed by tier, then by service id (rules without service restriction in one bucket per tier),
+ * so an evaluation only looks at rules that can match the invoice; applicable services, tiers and the
+ * conditions json are parsed once here instead of on every evaluation.
+ */
+@Slf4j
+final class PromotionRuleIndex {
+
+    static final PromotionRuleIndex EMPTY = new PromotionRuleIndex(new EnumMap<>(TierCode.class),
+            new EnumMap<>(TierCode.class), 0);
+
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+    private static final Rule[] NO_RULES = new Rule[0];
+
+    private final Map<TierCode, Map<Long, Rule[]>> byService;
+    private final Map<TierCode, Rule[]> anyService;
+    private final int size;
+
+    private PromotionRuleIndex(Map<TierCode, Map<Long, Rule[]>> byService, Map<TierCode, Rule[]> anyService,
+                               int size) {
+        this.byService = byService;
+        this.anyService = anyService;
+        this.size = size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    static PromotionRuleIndex compile(List<Promotion> promotions, Map<String, Long> serviceIdsByCode) {
+        Map<TierCode, Map<Long, List<Rule>>> byService = new EnumMap<>(TierCode.class);
+        Map<TierCode, List<Rule>> anyService = new EnumMap<>(TierCode.class);
+        int size = 0;
+
+        for (Promotion promotion : promotions) {
+            Rule rule;
+            try {
+                rule = compile(promotion, serviceIdsByCode);
+            } catch (RuntimeException e) {
+                // Điều kiện không hiểu được: bỏ qua khuyến mãi thay vì áp dụng sai (và không làm hỏng cả lần build)
+                log.warn("Promotion {} skipped: {}", promotion.getCode(), e.toString());
+                continue;
+            }
+            for (TierCode tier : rule.tiers()) {
+                if (rule.serviceIds() == null) {
+                    anyService.computeIfAbsent(tier, t -> new ArrayList<>()).add(rule);
+                } else {
+                    Map<Long, List<Rule>> services = byService.computeIfAbsent(tier, t -> new HashMap<>());
+                    rule.serviceIds().forEach(id -> services.computeIfAbsent(id, s -> new ArrayList<>()).add(rule));
+                }
+            }
+            size++;
+        }
+
+        Map<TierCode, Map<Long, Rule[]>> frozenByService = new EnumMap<>(TierCode.class);
+        byService.forEach((tier, services) -> {
+            Map<Long, Rule[]> frozen = new HashMap<>();
+            services.forEach((id, rules) -> frozen.put(id, rules.toArray(NO_RULES)));
+            frozenByService.put(tier, frozen);
+        });
+        Map<TierCode, Rule[]> frozenAny = new EnumMap<>(TierCode.class);
+        anyService.forEach((tier, rules) -> frozenAny.put(tier, rules.toArray(NO_RULES)));
+        return new PromotionRuleIndex(frozenByService, frozenAny, size);
+    }
+
+    /**
+     * Best discount for the context: the single best promotion, or the combinable promotions taken largest first
+     * until the invoice total is covered if that gives more; never more than the invoice total
+     */
+    IPromotionEngine.Quote best(IPromotionEngine.Context context) {
+        Rule bestRule = null;
+        BigDecimal bestDiscount = BigDecimal.ZERO;
+        List<IPromotionEngine.AppliedPromotion> combinable = new ArrayList<>();
+
+        for (Rule rule : candidates(context)) {
+            BigDecimal discount = rule.discount(context);
+            if (discount.signum() <= 0) {
+                continue;
+            }
+            int compared = discount.compareTo(bestDiscount);
+            if (compared > 0 || (compared == 0 && bestRule != null && rule.promoId() < bestRule.promoId())) {
+                bestRule = rule;
+                bestDiscount = discount;
+            }
+            if (rule.combinable()) {
+                combinable.add(new IPromotionEngine.AppliedPromotion(rule.promoId(), rule.code(), discount));
+            }
+        }
+
+        if (bestRule == null) {
+            return IPromotionEngine.Quote.NONE;
+        }
+        bestDiscount = bestDiscount.min(context.total());
+
+        if (combinable.size() > 1) {
+            // Chỉ giữ các khuyến mãi thật sự cần để đạt mức giảm, không giữ lượt của khuyến mãi thừa
+            combinable.sort(Comparator.comparing(IPromotionEngine.AppliedPromotion::discount).reversed()
+                    .thenComparing(IPromotionEngine.AppliedPromotion::promoId));
+            List<IPromotionEngine.AppliedPromotion> taken = new ArrayList<>();
+            BigDecimal combined = BigDecimal.ZERO;
+            for (IPromotionEngine.AppliedPromotion applied : combinable) {
+                BigDecimal remaining = context.total().subtract(combined);
+                if (remaining.signum() <= 0) {
+                    break;
+                }
+                BigDecimal discount = applied.discount().min(remaining);
+                taken.add(new IPromotionEngine.AppliedPromotion(applied.promoId(), applied.code(), discount));
+                combined = combined.add(discount);
+            }
+            if (taken.size() > 1 && combined.compareTo(bestDiscount) > 0) {
+                taken.sort(Comparator.comparing(IPromotionEngine.AppliedPromotion::promoId));
+                return new IPromotionEngine.Quote(List.copyOf(taken), combined);
+            }
+        }
+        return new IPromotionEngine.Quote(
+                List.of(new IPromotionEngine.AppliedPromotion(bestRule.promoId(), bestRule.code(), bestDiscount)),
+                bestDiscount);
+    }
+
+    // Một khuyến mãi có thể nằm trong nhiều bucket dịch vụ: khử trùng lặp theo tham chiếu
+    private Collection<Rule> candidates(IPromotionEngine.Context context) {
+        Set<Rule> candidates = Collections.newSetFromMap(new IdentityHashMap<>());
+        Collections.addAll(candidates, anyService.getOrDefault(context.tier(), NO_RULES));
+        Map<Long, Rule[]> services = byService.get(context.tier());
+        if (services != null) {
+            for (Long serviceId : context.amountByService().keySet()) {
+                Collections.addAll(candidates, services.getOrDefault(serviceId, NO_RULES));
+            }
+        }
+        return candidates;
+    }
+
+    private static Rule compile(Promotion promotion, Map<String, Long> serviceIdsByCode) {
+        Set<Long> serviceIds = null;
+        List<String> serviceTokens = tokens(promotion.getApplicableServices());
+        if (!serviceTokens.isEmpty()) {
+            serviceIds = new HashSet<>();
+            for (String token : serviceTokens) {
+                Long id = token.chars().allMatch(Character::isDigit)
+                        ? Long.valueOf(token)
+                        : serviceIdsByCode.get(token.toUpperCase());
+                if (id == null) {
+                    throw new IllegalArgumentException("unknown service " + token);
+                }
+                serviceIds.add(id);
+            }
+        }
+
+        EnumSet<TierCode> tiers = EnumSet.allOf(TierCode.class);
+        List<String> tierTokens = tokens(promotion.getApplicableTiers());
+        if (!tierTokens.isEmpty()) {
+            tiers = EnumSet.noneOf(TierCode.class);
+            for (String token : tierTokens) {
+                tiers.add(TierCode.valueOf(token.toUpperCase()));
+            }
+        }
+
+        Set<DayOfWeek> daysOfWeek = null;
+        int minServiceCount = 0;
+        Map<String, Object> conditions = promotion.getConditions() != null ? promotion.getConditions() : Map.of();
+        for (Map.Entry<String, Object> condition : conditions.entrySet()) {
+            switch (condition.getKey()) {
+                case "daysOfWeek" -> daysOfWeek = parseDays(condition.getValue());
+                case "minServiceCount" -> minServiceCount = parseCount(condition.getValue());
+                default -> throw new IllegalArgumentException("unsupported condition " + condition.getKey());
+            }
+        }
+
+        return new Rule(promotion.getPromoId(), promotion.getCode(), promotion.getType(), promotion.getValue(),
+                promotion.getMinPurchaseAmount(), promotion.getMaxDiscountAmount(), promotion.getUsageLimit(),
+                promotion.getUsageCount() != null ? promotion.getUsageCount() : 0,
+                promotion.getUsageLimitPerCustomer(), serviceIds, tiers,
+                Boolean.TRUE.equals(promotion.getIsCombinable()), promotion.getStartAt(), promotion.getEndAt(),
+                daysOfWeek, minServiceCount);
+    }
+
+    private static Set<DayOfWeek> parseDays(Object value) {
+        if (!(value instanceof Collection<?> days)) {
+            throw new IllegalArgumentException("daysOfWeek must be a list");
+        }
+        EnumSet<DayOfWeek> parsed = EnumSet.noneOf(DayOfWeek.class);
+        for (Object day : days) {
+            if (day instanceof Integer number && number >= 1 && number <= 7) {
+                parsed.add(DayOfWeek.of(number));
+            } else if (day instanceof String name) {
+                parsed.add(DayOfWeek.valueOf(name.toUpperCase()));
+            } else {
+                throw new IllegalArgumentException("daysOfWeek entries must be 1-7 or day names, got " + day);
+            }
+        }
+        return parsed;
+    }
+
+    private static int parseCount(Object value) {
+        if (!(value instanceof Integer count) || count < 0) {
+            throw new IllegalArgumentException("minServiceCount must be a non-negative integer, got " + value);
+        }
+        return count;
+    }
+
+    private static List<String> tokens(String value) {
+        if (value == null || value.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(value.split("[,;\\s]+")).filter(token -> !token.isEmpty()).toList();
+    }
+
+    private record Rule(Long promoId, String code, PromotionType type, BigDecimal value, BigDecimal minPurchase,
+                        BigDecimal maxDiscount, Integer usageLimit, int usageCount, Integer perCustomerLimit,
+                        Set<Long> serviceIds, Set<TierCode> tiers, boolean combinable, LocalDateTime startAt,
+                        LocalDateTime endAt, Set<DayOfWeek> daysOfWeek, int minServiceCount) {
+
+        BigDecimal discount(IPromotionEngine.Context context) {
+            LocalDateTime at = context.at();
+            if (at.isBefore(startAt) || !at.isBefore(endAt)) {
+                return BigDecimal.ZERO;
+            }
+            // Số lượt trong bộ nhớ chỉ để lọc sớm, giới hạn thật được kiểm tra khi giữ lượt trong database
+            if (usageLimit != null && usageCount >= usageLimit) {
+                return BigDecimal.ZERO;
+            }
+            if (perCustomerLimit != null && context.usedByPromo().getOrDefault(promoId, 0) >= perCustomerLimit) {
+                return BigDecimal.ZERO;
+            }
+            if (daysOfWeek != null && !daysOfWeek.contains(at.getDayOfWeek())) {
+                return BigDecimal.ZERO;
+            }
+            if (context.amountByService().size() < minServiceCount) {
+                return BigDecimal.ZERO;
+            }
+            if (minPurchase != null && context.total().compareTo(minPurchase) < 0) {
+                return BigDecimal.ZERO;
+            }
+
+            // Khuyến mãi theo dịch vụ chỉ giảm trên phần tiền của các dịch vụ đó
+            BigDecimal base = context.total();
+            if (serviceIds != null) {
+                base = BigDecimal.ZERO;
+                for (Long serviceId : serviceIds) {
+                    BigDecimal amount = context.amountByService().get(serviceId);
+                    if (amount != null) {
+                        base = base.add(amount);
+                    }
+                }
+                base = base.min(context.total());
+            }
+            if (base.signum() <= 0) {
+                return BigDecimal.ZERO;
+            }
+
+            BigDecimal discount = type == PromotionType.PERCENT
+                    ? base.multiply(value).divide(HUNDRED, 2, RoundingMode.DOWN)
+                    : value.min(base);
+            return maxDiscount != null ? discount.min(maxDiscount) : discount;
+        }
+    }
+}
@@ -34,13 +34,15 @@ public class CorsConfig {
                         "Accept",
                         "Origin",
                         "Access-Control-Request-Method",
-                        "Access-Control-Request-Headers");
+                        "Access-Control-Request-Headers",
+                        "Idempotency-Key");
 
         private static final List<String> EXPOSED_HEADERS = List.of(
                         "Authorization",
                         "Content-Type",
                         "X-Requested-With",
-                        "X-Total-Count");
+                        "X-Total-Count",
+                        "Idempotent-Replayed");
 
         @Bean
         public CorsConfigurationSource corsConfigurationSource() {
@@ -0,0 +1,39 @@
+package com.htttql.crmmodule.common.config;
+
+import com.htttql.crmmodule.common.service.StreamingExporter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Long async timeout for streaming exports only: requests marked by StreamingExporter get
+ * app.export.request-timeout, every other async request keeps the default
+ */
+@Configuration
+@RequiredArgsConstructor
+public class ExportAsyncConfig implements WebMvcConfigurer {
+
+    private final ExportProperties properties;
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.registerCallableInterceptors(new CallableProcessingInterceptor() {
+            @Override
+            public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+                // Chạy ngay trước startAsync nên timeout mới được áp dụng cho AsyncContext
+                if (request instanceof AsyncWebRequest asyncRequest
+                        && request.getAttribute(StreamingExporter.EXPORT_REQUEST_ATTRIBUTE,
+                        RequestAttributes.SCOPE_REQUEST) != null) {
+                    asyncRequest.setTimeout(properties.getRequestTimeout().toMillis());
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,39 @@
+package com.htttql.crmmodule.common.config;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+
+/**
+ * Cấu hình export dữ liệu dạng stream (CSV/NDJSON)
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.export")
+@Validated
+public class ExportProperties {
+
+    /**
+     * Số dòng mỗi chunk; mỗi chunk đọc trong một transaction read-only ngắn
+     */
+    @Min(100) @Max(100000)
+    private int chunkSize = 5000;
+
+    /**
+     * JDBC fetch size của cursor trong mỗi chunk (số dòng giữ trong bộ nhớ cùng lúc)
+     */
+    @Min(10) @Max(10000)
+    private int fetchSize = 500;
+
+    /**
+     * Timeout async riêng cho request export (các request async khác giữ timeout mặc định)
+     */
+    @NotNull
+    private Duration requestTimeout = Duration.ofHours(1);
+}
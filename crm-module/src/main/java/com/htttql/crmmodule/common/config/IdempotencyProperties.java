@@ -0,0 +1,69 @@
+package com.htttql.crmmodule.common.config;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+import java.util.List;
+
+/**
+ * Idempotency-Key replay configuration
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.idempotency")
+@Validated
+public class IdempotencyProperties {
+
+    /**
+     * Bật/tắt xử lý header Idempotency-Key
+     */
+    private boolean enabled = true;
+
+    /**
+     * Các đường dẫn POST được bảo vệ (so khớp chính xác)
+     */
+    @NotEmpty
+    private List<String> paths = List.of("/api/payments", "/api/invoices");
+
+    /**
+     * Thời gian giữ response đầu tiên để phát lại (giây)
+     */
+    @Min(60) @Max(604800)
+    private int ttlSeconds = 86400;
+
+    /**
+     * Thời gian sống của dấu "đang xử lý" (giây), hết hạn nếu node xử lý bị dừng giữa chừng
+     */
+    @Min(5) @Max(600)
+    private int lockSeconds = 60;
+
+    /**
+     * Thời gian tối đa một request trùng chờ request đang xử lý (ms), quá thì trả 409
+     */
+    @Min(100) @Max(60000)
+    private long waitMillis = 10000;
+
+    /**
+     * Chu kỳ kiểm tra lại khi request đang xử lý ở node khác (ms)
+     */
+    @Min(5) @Max(5000)
+    private long pollMillis = 50;
+
+    /**
+     * Kích thước body tối đa được lưu/so khớp (byte), lớn hơn thì xử lý bình thường không idempotency
+     */
+    @Min(1024) @Max(10485760)
+    private int maxBodyBytes = 262144;
+
+    /**
+     * Redis key prefix
+     */
+    @NotBlank
+    private String keyPrefix = "IDEMPOTENCY:";
+}
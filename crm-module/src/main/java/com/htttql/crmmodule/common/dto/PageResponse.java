@@ -8,10 +8,13 @@ import lombok.NoArgsConstructor;
 import org.springframework.data.domain.Page;
 
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * Simplified page response to replace Spring Boot Page object
- * Eliminates redundant pagination metadata in API responses
+ * Eliminates redundant pagination metadata in API responses.
+ * In cursor (keyset) mode currentPage/totalPages/totalElements are omitted:
+ * nextCursor continues the listing and estimatedTotal comes from planner statistics.
  *
  * @param <T> Type of content items
  */
@@ -22,9 +25,9 @@ import java.util.List;
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class PageResponse<T> {
     private List<T> content;
-    private int currentPage;
-    private int totalPages;
-    private long totalElements;
+    private Integer currentPage;
+    private Integer totalPages;
+    private Long totalElements;
     private int pageSize;
     private boolean hasNext;
     private boolean hasPrevious;
@@ -32,6 +35,8 @@ public class PageResponse<T> {
     private boolean isLast;
     private int numberOfElements;
     private boolean empty;
+    private String nextCursor;
+    private Long estimatedTotal;
 
     public static <T> PageResponse<T> from(Page<T> page) {
         return PageResponse.<T>builder()
@@ -48,4 +53,29 @@ public class PageResponse<T> {
                 .empty(page.isEmpty())
                 .build();
     }
+
+    public <R> PageResponse<R> map(Function<? super T, ? extends R> mapper) {
+        return mapContent(items -> items.stream().<R>map(mapper).toList());
+    }
+
+    /**
+     * Maps the whole content at once, for mappers that batch-load data for the page
+     */
+    public <R> PageResponse<R> mapContent(Function<List<T>, List<R>> mapper) {
+        return PageResponse.<R>builder()
+                .content(mapper.apply(content))
+                .currentPage(currentPage)
+                .totalPages(totalPages)
+                .totalElements(totalElements)
+                .pageSize(pageSize)
+                .hasNext(hasNext)
+                .hasPrevious(hasPrevious)
+                .isFirst(isFirst)
+                .isLast(isLast)
+                .numberOfElements(numberOfElements)
+                .empty(empty)
+                .nextCursor(nextCursor)
+                .estimatedTotal(estimatedTotal)
+                .build();
+    }
 }
@@ -0,0 +1,49 @@
+package com.htttql.crmmodule.common.enums;
+
+import lombok.Getter;
+
+/**
+ * RFM segment, assigned by the nightly segmentation batch
+ */
+@Getter
+public enum CustomerSegment {
+    CHAMPIONS("Khách hàng tốt nhất"),
+    LOYAL("Trung thành"),
+    POTENTIAL("Tiềm năng"),
+    NEW("Khách mới"),
+    NEED_ATTENTION("Cần chăm sóc"),
+    AT_RISK("Có nguy cơ rời bỏ"),
+    HIBERNATING("Ngủ đông"),
+    INACTIVE("Chưa phát sinh giao dịch");
+
+    private final String description;
+
+    CustomerSegment(String description) {
+        this.description = description;
+    }
+
+    /**
+     * Map R/F/M scores (1..5, 5 = best) to a segment
+     */
+    public static CustomerSegment fromScores(int recency, int frequency, int monetary) {
+        if (recency >= 4 && frequency >= 4 && monetary >= 4) {
+            return CHAMPIONS;
+        }
+        if (frequency >= 4 && recency >= 3) {
+            return LOYAL;
+        }
+        if (recency <= 2 && frequency >= 3) {
+            return AT_RISK;
+        }
+        if (recency <= 2) {
+            return HIBERNATING;
+        }
+        if (recency >= 4 && frequency <= 1) {
+            return NEW;
+        }
+        if (recency >= 3 && (frequency >= 2 || monetary >= 3)) {
+            return POTENTIAL;
+        }
+        return NEED_ATTENTION;
+    }
+}
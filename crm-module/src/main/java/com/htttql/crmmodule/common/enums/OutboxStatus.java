@@ -0,0 +1,19 @@
+package com.htttql.crmmodule.common.enums;
+
+import lombok.Getter;
+
+/**
+ * Processing status of an outbox row
+ */
+@Getter
+public enum OutboxStatus {
+    PENDING("Pending"),
+    DONE("Done"),
+    FAILED("Failed");
+
+    private final String description;
+
+    OutboxStatus(String description) {
+        this.description = description;
+    }
+}
@@ -0,0 +1,18 @@
+package com.htttql.crmmodule.common.enums;
+
+import lombok.Getter;
+
+/**
+ * Status of a point expiry run
+ */
+@Getter
+public enum PointExpiryRunStatus {
+    RUNNING("Running"),
+    COMPLETED("Completed");
+
+    private final String description;
+
+    PointExpiryRunStatus(String description) {
+        this.description = description;
+    }
+}
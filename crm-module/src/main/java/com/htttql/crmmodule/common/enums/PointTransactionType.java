@@ -8,7 +8,8 @@ import lombok.RequiredArgsConstructor;
 public enum PointTransactionType {
     EARN("Earn points"),
     REDEEM("Redeem points"),
-    ADJUST("Manual adjustment");
+    ADJUST("Manual adjustment"),
+    EXPIRE("Expired points");
 
     private final String description;
 }
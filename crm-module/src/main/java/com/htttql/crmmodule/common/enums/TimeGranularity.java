@@ -0,0 +1,18 @@
+package com.htttql.crmmodule.common.enums;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.Duration;
+
+@Getter
+@RequiredArgsConstructor
+public enum TimeGranularity {
+    MINUTE("Per minute", Duration.ofMinutes(1), Duration.ofDays(1)),
+    HOUR("Per hour", Duration.ofHours(1), Duration.ofDays(31)),
+    DAY("Per day", Duration.ofDays(1), Duration.ofDays(366));
+
+    private final String description;
+    private final Duration bucketSize;
+    private final Duration maxRange;
+}
@@ -14,6 +14,7 @@ import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -149,6 +150,19 @@ public class GlobalExceptionHandler {
                                                 .build());
         }
 
+        @ExceptionHandler(ResponseStatusException.class)
+        public ResponseEntity<ApiResponse<Void>> handleResponseStatusException(
+                        ResponseStatusException ex, HttpServletRequest request) {
+                log.error("Request failed with status {}: {}", ex.getStatusCode(), ex.getReason());
+                return ResponseEntity.status(ex.getStatusCode()).body(
+                                ApiResponse.<Void>builder()
+                                                .success(false)
+                                                .error(ex.getReason())
+                                                .errorCode(ex.getStatusCode().value())
+                                                .path(request.getRequestURI())
+                                                .build());
+        }
+
         @ExceptionHandler(Exception.class)
         public ResponseEntity<ApiResponse<Void>> handleGlobalException(
                         Exception ex, HttpServletRequest request) {
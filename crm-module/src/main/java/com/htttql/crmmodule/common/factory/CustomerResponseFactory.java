@@ -3,7 +3,9 @@ package com.htttql.crmmodule.common.factory;
 import com.htttql.crmmodule.core.dto.CustomerResponse;
 import com.htttql.crmmodule.core.dto.CustomerDetailResponse;
 import com.htttql.crmmodule.core.dto.CustomerBusinessResponse;
+import com.htttql.crmmodule.core.dto.CustomerListView;
 import com.htttql.crmmodule.core.entity.Customer;
+import com.htttql.crmmodule.core.entity.CustomerStats;
 import com.htttql.crmmodule.common.enums.TierCode;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
@@ -55,10 +57,31 @@ public class CustomerResponseFactory {
                 .build();
     }
 
+    /**
+     * Create full customer response from a list projection (same fields as createFullResponse)
+     */
+    public CustomerResponse createFullResponse(CustomerListView view) {
+        return CustomerResponse.builder()
+                .customerId(view.customerId())
+                .fullName(view.fullName())
+                .phone(view.phone())
+                .email(view.email())
+                .displayAddress(view.address())
+                .dob(view.dob())
+                .notes(view.notes())
+                .tierCode(view.tierCode().name())
+                .tierName(view.tierCode().getDescription())
+                .isVip(view.isVip())
+                .totalSpent(view.totalSpent())
+                .totalPoints(view.totalPoints())
+                .build();
+    }
+
     /**
      * Create detailed response for authorized staff
+     * Stats come from the customer_stats projection (null = no activity yet)
      */
-    public CustomerDetailResponse createDetailResponse(Customer customer) {
+    public CustomerDetailResponse createDetailResponse(Customer customer, CustomerStats stats) {
         return CustomerDetailResponse.builder()
                 .customerId(customer.getCustomerId())
                 .fullName(customer.getFullName())
@@ -71,24 +94,24 @@ public class CustomerResponseFactory {
                 .tierName(customer.getTier().getCode().getDescription())
                 .isVip(customer.getIsVip())
                 .memberSince(calculateMembershipDuration(customer.getCreatedAt()))
-                .visitCount(calculateVisitCount(customer))
+                .visitCount(calculateVisitCount(stats))
                 .build();
     }
 
     /**
      * Create business response for managers only
      */
-    public CustomerBusinessResponse createBusinessResponse(Customer customer) {
+    public CustomerBusinessResponse createBusinessResponse(Customer customer, CustomerStats stats) {
         return CustomerBusinessResponse.builder()
                 .customerId(customer.getCustomerId())
                 .fullName(customer.getFullName())
                 .totalPoints(customer.getTotalPoints())
                 .totalSpent(customer.getTotalSpent())
-                .averageOrderValue(calculateAverageOrderValue(customer))
-                .totalOrders(calculateTotalOrders(customer))
-                .customerSegment(determineCustomerSegment(customer))
-                .lastVisit(calculateLastVisit(customer))
-                .riskLevel(assessChurnRisk(customer))
+                .averageOrderValue(calculateAverageOrderValue(stats))
+                .totalOrders(calculateTotalOrders(stats))
+                .customerSegment(determineCustomerSegment(customer, stats))
+                .lastVisit(calculateLastVisit(stats))
+                .riskLevel(assessChurnRisk(customer, stats))
                 .createdAt(customer.getCreatedAt())
                 .lastUpdated(customer.getUpdatedAt())
                 .notes(customer.getNotes())
@@ -136,28 +159,22 @@ public class CustomerResponseFactory {
         return (months / 12) + " years";
     }
 
-    private Integer calculateVisitCount(Customer customer) {
-        // This would typically query appointment/case count
-        // For now, return a placeholder
-        return 0; // TODO: Implement actual visit count
+    private Integer calculateVisitCount(CustomerStats stats) {
+        return stats != null ? stats.getVisitCount() : 0;
     }
 
-    private java.math.BigDecimal calculateAverageOrderValue(Customer customer) {
-        if (customer.getTotalSpent() == null)
-            return java.math.BigDecimal.ZERO;
-        Integer totalOrders = calculateTotalOrders(customer);
-        if (totalOrders == 0)
-            return java.math.BigDecimal.ZERO;
-        return customer.getTotalSpent().divide(java.math.BigDecimal.valueOf(totalOrders), 2,
-                java.math.RoundingMode.HALF_UP);
+    private java.math.BigDecimal calculateAverageOrderValue(CustomerStats stats) {
+        return stats != null ? stats.getAverageOrderValue() : java.math.BigDecimal.ZERO;
     }
 
-    private Integer calculateTotalOrders(Customer customer) {
-        // TODO: Implement actual order count
-        return 0;
+    private Integer calculateTotalOrders(CustomerStats stats) {
+        return stats != null ? stats.getOrderCount() : 0;
     }
 
-    private String determineCustomerSegment(Customer customer) {
+    private String determineCustomerSegment(Customer customer, CustomerStats stats) {
+        // Ưu tiên phân khúc RFM từ batch hằng đêm, ngưỡng cố định chỉ dùng khi chưa chấm điểm
+        if (stats != null && stats.getSegment() != null)
+            return stats.getSegment().name();
         if (customer.getTotalSpent() == null)
             return "NEW";
 
@@ -173,13 +190,50 @@ public class CustomerResponseFactory {
         return "NEW";
     }
 
-    private String calculateLastVisit(Customer customer) {
-        // TODO: Implement last appointment/case date
-        return "Unknown";
+    private String calculateLastVisit(CustomerStats stats) {
+        if (stats == null || stats.getLastVisitAt() == null)
+            return "Never";
+
+        long days = ChronoUnit.DAYS.between(stats.getLastVisitAt().toLocalDate(), LocalDateTime.now().toLocalDate());
+        if (days <= 0)
+            return "Today";
+        if (days < 7)
+            return days + " days ago";
+        if (days < 30)
+            return (days / 7) + " weeks ago";
+        if (days < 365)
+            return (days / 30) + " months ago";
+        return (days / 365) + " years ago";
     }
 
-    private String assessChurnRisk(Customer customer) {
-        // TODO: Implement churn risk assessment based on last visit, spending pattern
-        return "LOW";
+    private String assessChurnRisk(Customer customer, CustomerStats stats) {
+        if (stats != null && stats.getChurnScore() != null) {
+            if (stats.getChurnScore() >= 0.7)
+                return "HIGH";
+            return stats.getChurnScore() >= 0.4 ? "MEDIUM" : "LOW";
+        }
+
+        // Khách chưa từng ghé: chỉ rủi ro khi đã là thành viên lâu
+        if (stats == null || stats.getLastVisitAt() == null) {
+            if (customer.getCreatedAt() == null)
+                return "LOW";
+            return ChronoUnit.DAYS.between(customer.getCreatedAt(), LocalDateTime.now()) > 90 ? "HIGH" : "LOW";
+        }
+
+        long daysSinceLastVisit = ChronoUnit.DAYS.between(stats.getLastVisitAt(), LocalDateTime.now());
+        if (daysSinceLastVisit > 180)
+            return "HIGH";
+
+        // So với nhịp ghé trung bình của chính khách hàng
+        if (stats.getVisitCount() > 1 && stats.getFirstVisitAt() != null) {
+            long span = ChronoUnit.DAYS.between(stats.getFirstVisitAt(), stats.getLastVisitAt());
+            long averageGap = Math.max(1, span / (stats.getVisitCount() - 1));
+            if (daysSinceLastVisit > averageGap * 3 && daysSinceLastVisit > 60)
+                return "HIGH";
+            if (daysSinceLastVisit > averageGap * 2 && daysSinceLastVisit > 30)
+                return "MEDIUM";
+            return "LOW";
+        }
+        return daysSinceLastVisit > 90 ? "MEDIUM" : "LOW";
     }
 }
@@ -0,0 +1,272 @@
+package com.htttql.crmmodule.common.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.htttql.crmmodule.common.config.IdempotencyProperties;
+import com.htttql.crmmodule.common.dto.ApiResponse;
+import com.htttql.crmmodule.common.service.IdempotencyStore;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Idempotency-Key support for creation endpoints (POST /api/payments, POST /api/invoices)
+ * The first request with a key runs and its response (status, content type, body bytes) is stored; duplicates
+ * within the TTL get that response replayed without touching the controller. A duplicate arriving while the
+ * first one is still running waits for it (on a local future when it runs on this node, by polling otherwise)
+ * instead of running twice. Keys are scoped by user and path; reusing a key with a different body is 422.
+ * Runs after the security chain, so unauthenticated requests never reach the store.
+ */
+@Slf4j
+@Component
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyStore store;
+    private final IdempotencyProperties properties;
+    private final ObjectMapper objectMapper;
+
+    // Request đang chạy trên node này: request trùng chờ future thay vì hỏi Redis liên tục
+    private final Map<String, CompletableFuture<Void>> running = new ConcurrentHashMap<>();
+
+    public IdempotencyFilter(IdempotencyStore store, IdempotencyProperties properties, ObjectMapper objectMapper) {
+        this.store = store;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        return !properties.isEnabled()
+                || !HttpMethod.POST.matches(request.getMethod())
+                || !StringUtils.hasText(request.getHeader(HEADER))
+                || !properties.getPaths().contains(request.getRequestURI());
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+        String clientKey = request.getHeader(HEADER).trim();
+        if (clientKey.length() > MAX_KEY_LENGTH) {
+            writeError(request, response, HttpServletResponse.SC_BAD_REQUEST,
+                    HEADER + " must not exceed " + MAX_KEY_LENGTH + " characters");
+            return;
+        }
+        if (request.getContentLengthLong() > properties.getMaxBodyBytes()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        byte[] body = request.getInputStream().readNBytes(properties.getMaxBodyBytes() + 1);
+        if (body.length > properties.getMaxBodyBytes()) {
+            log.warn("Request body over {} bytes, {} ignored for {}", properties.getMaxBodyBytes(), HEADER,
+                    request.getRequestURI());
+            filterChain.doFilter(new CachedBodyRequest(request, body), response);
+            return;
+        }
+
+        String key = properties.getKeyPrefix() + principal() + ":" + request.getRequestURI() + ":" + clientKey;
+        String fingerprint = fingerprint(request, body);
+        long deadline = System.currentTimeMillis() + properties.getWaitMillis();
+
+        while (true) {
+            IdempotencyStore.StoredResponse existing = store.tryAcquire(key, fingerprint);
+            if (existing == null) {
+                execute(key, fingerprint, new CachedBodyRequest(request, body), response, filterChain);
+                return;
+            }
+            if (!fingerprint.equals(existing.fingerprint())) {
+                writeError(request, response, 422, HEADER + " was already used with a different request");
+                return;
+            }
+            if (existing.completed()) {
+                replay(existing, response);
+                return;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                writeError(request, response, HttpServletResponse.SC_CONFLICT,
+                        "A request with this " + HEADER + " is still being processed");
+                return;
+            }
+            awaitRunning(key, remaining);
+        }
+    }
+
+    private void execute(String key, String fingerprint, HttpServletRequest request, HttpServletResponse response,
+                         FilterChain filterChain) throws ServletException, IOException {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        running.put(key, done);
+        ContentCachingResponseWrapper captured = new ContentCachingResponseWrapper(response);
+        boolean stored = false;
+        try {
+            filterChain.doFilter(request, captured);
+            // Lỗi 5xx không được lưu: client thử lại sẽ chạy lại từ đầu
+            if (captured.getStatus() < HttpServletResponse.SC_INTERNAL_SERVER_ERROR) {
+                store.complete(key, new IdempotencyStore.StoredResponse(true, fingerprint, captured.getStatus(),
+                        captured.getContentType(), captured.getContentAsByteArray()));
+                stored = true;
+            }
+        } finally {
+            if (!stored) {
+                store.release(key);
+            }
+            running.remove(key, done);
+            done.complete(null);
+            captured.copyBodyToResponse();
+        }
+    }
+
+    private void awaitRunning(String key, long remainingMillis) throws IOException {
+        CompletableFuture<Void> local = running.get(key);
+        try {
+            if (local != null) {
+                local.get(remainingMillis, TimeUnit.MILLISECONDS);
+            } else {
+                Thread.sleep(Math.min(properties.getPollMillis(), remainingMillis));
+            }
+        } catch (TimeoutException | ExecutionException e) {
+            // Vòng lặp kiểm tra lại trạng thái và hạn chờ
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for in-flight request", e);
+        }
+    }
+
+    private void replay(IdempotencyStore.StoredResponse stored, HttpServletResponse response) throws IOException {
+        response.setStatus(stored.status());
+        if (stored.contentType() != null) {
+            response.setContentType(stored.contentType());
+        }
+        response.setHeader(REPLAYED_HEADER, "true");
+        byte[] body = stored.body() != null ? stored.body() : new byte[0];
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    private void writeError(HttpServletRequest request, HttpServletResponse response, int status, String message)
+            throws IOException {
+        response.setStatus(status);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(),
+                ApiResponse.error(message, status, request.getRequestURI()));
+    }
+
+    private static String principal() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null ? authentication.getName() : "anonymous";
+    }
+
+    private static String fingerprint(HttpServletRequest request, byte[] body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(request.getRequestURI().getBytes(StandardCharsets.UTF_8));
+            digest.update(body);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Request whose body was already read by the filter, served again from memory
+     */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return input.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    // Body đã nằm trong bộ nhớ nên luôn sẵn sàng: báo ngay cho listener (non-blocking read)
+                    try {
+                        if (!isFinished()) {
+                            listener.onDataAvailable();
+                        }
+                        if (isFinished()) {
+                            listener.onAllDataRead();
+                        }
+                    } catch (IOException e) {
+                        listener.onError(e);
+                    }
+                }
+
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    return input.read(buffer, offset, length);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding() != null ? getCharacterEncoding() : StandardCharsets.UTF_8.name();
+            return new BufferedReader(new InputStreamReader(getInputStream(), Charset.forName(encoding)));
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.htttql.crmmodule.common.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.htttql.crmmodule.common.config.IdempotencyProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Idempotency records in Redis (shared by all nodes) with a local in-memory fallback when Redis is unavailable
+ * A key is first claimed with SET NX and a short TTL (in flight), then overwritten with the captured response
+ * and the replay TTL, or deleted if the request failed so that a retry can run again.
+ */
+@Slf4j
+@Service
+public class IdempotencyStore {
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final IdempotencyProperties properties;
+
+    // Dự phòng khi Redis lỗi: chỉ chống trùng trong phạm vi một node
+    private final Map<String, LocalRecord> local = new ConcurrentHashMap<>();
+
+    public IdempotencyStore(RedisTemplate<String, String> redisTemplate, ObjectMapper objectMapper,
+                            IdempotencyProperties properties) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+    }
+
+    /**
+     * Claims the key for the caller
+     *
+     * @return null if claimed, otherwise the current record (in flight or completed)
+     */
+    public StoredResponse tryAcquire(String key, String fingerprint) {
+        StoredResponse inFlight = StoredResponse.inFlight(fingerprint);
+        Duration lockTtl = Duration.ofSeconds(properties.getLockSeconds());
+        try {
+            Boolean claimed = redisTemplate.opsForValue().setIfAbsent(key, write(inFlight), lockTtl);
+            if (Boolean.TRUE.equals(claimed)) {
+                return null;
+            }
+            String existing = redisTemplate.opsForValue().get(key);
+            // Bản ghi vừa hết hạn giữa hai lệnh: thử lại ở vòng sau
+            return existing != null ? read(existing) : StoredResponse.inFlight(fingerprint);
+        } catch (Exception e) {
+            log.warn("Redis unavailable for idempotency, using local store: {}", e.getMessage());
+            long now = System.currentTimeMillis();
+            LocalRecord[] previous = {null};
+            local.compute(key, (k, current) -> {
+                if (current != null && current.expiresAt() > now) {
+                    previous[0] = current;
+                    return current;
+                }
+                return new LocalRecord(inFlight, now + lockTtl.toMillis());
+            });
+            return previous[0] != null ? previous[0].response() : null;
+        }
+    }
+
+    public void complete(String key, StoredResponse response) {
+        Duration ttl = Duration.ofSeconds(properties.getTtlSeconds());
+        try {
+            redisTemplate.opsForValue().set(key, write(response), ttl);
+            local.remove(key);
+        } catch (Exception e) {
+            log.warn("Redis unavailable for idempotency, storing response locally: {}", e.getMessage());
+            local.put(key, new LocalRecord(response, System.currentTimeMillis() + ttl.toMillis()));
+        }
+    }
+
+    public void release(String key) {
+        local.remove(key);
+        try {
+            redisTemplate.delete(key);
+        } catch (Exception e) {
+            log.warn("Cannot release idempotency key {}: {}", key, e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        local.values().removeIf(record -> record.expiresAt() <= now);
+    }
+
+    private String write(StoredResponse response) {
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot serialize idempotent response", e);
+        }
+    }
+
+    private StoredResponse read(String value) {
+        try {
+            return objectMapper.readValue(value, StoredResponse.class);
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot deserialize idempotent response", e);
+        }
+    }
+
+    /**
+     * Captured response; body is kept as raw bytes (base64 in Redis) so the replay is byte-for-byte identical
+     */
+    public record StoredResponse(boolean completed, String fingerprint, int status, String contentType, byte[] body) {
+
+        static StoredResponse inFlight(String fingerprint) {
+            return new StoredResponse(false, fingerprint, 0, null, null);
+        }
+    }
+
+    private record LocalRecord(StoredResponse response, long expiresAt) {
+    }
+}
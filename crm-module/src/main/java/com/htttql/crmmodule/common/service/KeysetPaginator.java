@@ -0,0 +1,229 @@
+package com.htttql.crmmodule.common.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.htttql.crmmodule.common.dto.PageResponse;
+import com.htttql.crmmodule.common.exception.BadRequestException;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Table;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.SingularAttribute;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keyset (seek) pagination for list endpoints
+ * The opaque cursor carries the sort and the key values of the last row, so every page is an index
+ * range scan of pageSize + 1 rows regardless of depth and no COUNT(*) is issued. The first page reports
+ * an estimated total from pg_class.reltuples instead.
+ * Only the id and createdAt (both non-null) can be sort keys; the id is always added as tie-breaker.
+ * Optional fetch paths are loaded with an entity graph in the same statement (no lazy load per row).
+ */
+@Slf4j
+@Service
+public class KeysetPaginator {
+
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private static final String CREATED_AT = "createdAt";
+    private static final TypeReference<Map<String, Object>> TOKEN_TYPE = new TypeReference<>() {
+    };
+
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final JdbcTemplate jdbcTemplate;
+
+    public KeysetPaginator(EntityManager entityManager, ObjectMapper objectMapper, JdbcTemplate jdbcTemplate) {
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public <E> PageResponse<E> scroll(JpaSpecificationExecutor<E> repository, Class<E> entityClass,
+                                      String cursor, int size, Sort sort, String... fetch) {
+        return scroll(repository, entityClass, (root, query, cb) -> null, cursor, size, sort, true, fetch);
+    }
+
+    /**
+     * @param cursor        null/blank for the first page, otherwise the nextCursor of the previous page
+     *                      (its sort takes precedence over the requested one)
+     * @param estimateTotal whether to report the planner row estimate on the first page
+     *                      (only meaningful when specification does not filter)
+     * @param fetch         to-one associations to load with the page
+     */
+    public <E> PageResponse<E> scroll(JpaSpecificationExecutor<E> repository, Class<E> entityClass,
+                                      Specification<E> specification, String cursor, int size, Sort sort,
+                                      boolean estimateTotal, String... fetch) {
+        EntityType<E> entityType = entityManager.getMetamodel().entity(entityClass);
+        String idProperty = entityType.getId(entityType.getIdType().getJavaType()).getName();
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        boolean first = cursor == null || cursor.isBlank();
+
+        Sort effectiveSort;
+        ScrollPosition position;
+        if (first) {
+            effectiveSort = normalize(sort, idProperty);
+            position = ScrollPosition.keyset();
+        } else {
+            Map<String, Object> token = decode(cursor);
+            effectiveSort = normalize(parseSort(token.get("s")), idProperty);
+            position = ScrollPosition.forward(toKeys(entityType, effectiveSort, token.get("k")));
+        }
+
+        Sort querySort = effectiveSort;
+        Window<E> window = repository.findBy(withFetch(specification, fetch),
+                query -> query.sortBy(querySort).limit(limit).scroll(position));
+
+        List<E> content = window.getContent();
+        String nextCursor = null;
+        if (window.hasNext() && !content.isEmpty()) {
+            KeysetScrollPosition last = (KeysetScrollPosition) window.positionAt(content.size() - 1);
+            nextCursor = encode(effectiveSort, last.getKeys());
+        }
+
+        return PageResponse.<E>builder()
+                .content(content)
+                .pageSize(limit)
+                .hasNext(nextCursor != null)
+                .hasPrevious(!first)
+                .isFirst(first)
+                .isLast(nextCursor == null)
+                .numberOfElements(content.size())
+                .empty(content.isEmpty())
+                .nextCursor(nextCursor)
+                .estimatedTotal(first && estimateTotal ? estimateRows(entityClass) : null)
+                .build();
+    }
+
+    // FluentQuery.project không áp dụng entity graph cho câu keyset, nên fetch join ngay trong specification
+    private static <E> Specification<E> withFetch(Specification<E> specification, String... fetch) {
+        if (fetch.length == 0) {
+            return specification;
+        }
+        return (root, query, cb) -> {
+            if (!Long.class.equals(query.getResultType())) {
+                for (String association : fetch) {
+                    root.fetch(association, JoinType.LEFT);
+                }
+            }
+            return specification.toPredicate(root, query, cb);
+        };
+    }
+
+    // Chỉ cho phép id và createdAt làm khóa sắp xếp, luôn thêm id để thứ tự là duy nhất
+    private Sort normalize(Sort sort, String idProperty) {
+        List<Sort.Order> orders = new ArrayList<>();
+        Sort.Direction idDirection = null;
+        for (Sort.Order order : sort == null ? Sort.unsorted() : sort) {
+            String property = order.getProperty();
+            if (property.equals(idProperty)) {
+                idDirection = order.getDirection();
+                break;
+            }
+            if (!property.equals(CREATED_AT)) {
+                throw new BadRequestException("Cursor pagination only supports sorting by "
+                        + idProperty + " or " + CREATED_AT);
+            }
+            if (orders.isEmpty()) {
+                orders.add(order);
+            }
+        }
+        if (idDirection == null) {
+            idDirection = orders.isEmpty() ? Sort.Direction.DESC : orders.get(0).getDirection();
+        }
+        orders.add(new Sort.Order(idDirection, idProperty));
+        return Sort.by(orders);
+    }
+
+    private String encode(Sort sort, Map<String, ?> keys) {
+        List<String> orders = new ArrayList<>();
+        for (Sort.Order order : sort) {
+            orders.add(order.getProperty() + ":" + order.getDirection().name());
+        }
+        Map<String, Object> token = new LinkedHashMap<>();
+        token.put("s", String.join(",", orders));
+        token.put("k", keys);
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(token));
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot encode pagination cursor", e);
+        }
+    }
+
+    private Map<String, Object> decode(String cursor) {
+        try {
+            return objectMapper.readValue(Base64.getUrlDecoder().decode(cursor.trim()), TOKEN_TYPE);
+        } catch (Exception e) {
+            throw new BadRequestException("Invalid pagination cursor");
+        }
+    }
+
+    private Sort parseSort(Object value) {
+        if (!(value instanceof String text) || text.isBlank()) {
+            throw new BadRequestException("Invalid pagination cursor");
+        }
+        List<Sort.Order> orders = new ArrayList<>();
+        for (String part : text.split(",")) {
+            String[] pair = part.split(":");
+            Sort.Direction direction = pair.length == 2 ? Sort.Direction.fromOptionalString(pair[1]).orElse(null) : null;
+            if (direction == null) {
+                throw new BadRequestException("Invalid pagination cursor");
+            }
+            orders.add(new Sort.Order(direction, pair[0]));
+        }
+        return Sort.by(orders);
+    }
+
+    // Chuyển giá trị khóa trong cursor về đúng kiểu Java của thuộc tính (Long, LocalDateTime, ...)
+    private Map<String, Object> toKeys(EntityType<?> entityType, Sort sort, Object raw) {
+        if (!(raw instanceof Map<?, ?> values)) {
+            throw new BadRequestException("Invalid pagination cursor");
+        }
+        Map<String, Object> keys = new LinkedHashMap<>();
+        for (Sort.Order order : sort) {
+            Object value = values.get(order.getProperty());
+            if (value == null) {
+                throw new BadRequestException("Invalid pagination cursor");
+            }
+            try {
+                // Thuộc tính lạ trong cursor bị sửa cũng là cursor không hợp lệ (400), không phải lỗi 500
+                SingularAttribute<?, ?> attribute = entityType.getSingularAttribute(order.getProperty());
+                keys.put(order.getProperty(), objectMapper.convertValue(value, attribute.getJavaType()));
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Invalid pagination cursor");
+            }
+        }
+        return keys;
+    }
+
+    private Long estimateRows(Class<?> entityClass) {
+        Table table = entityClass.getAnnotation(Table.class);
+        if (table == null) {
+            return null;
+        }
+        String name = table.schema().isEmpty() ? table.name() : table.schema() + "." + table.name();
+        try {
+            List<Long> rows = jdbcTemplate.queryForList(
+                    "SELECT reltuples::bigint FROM pg_class WHERE oid = to_regclass(?)", Long.class, name);
+            // reltuples = -1 khi bảng chưa từng được ANALYZE
+            return rows.isEmpty() || rows.get(0) == null || rows.get(0) < 0 ? null : rows.get(0);
+        } catch (Exception e) {
+            log.debug("Cannot estimate row count for {}", name, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.htttql.crmmodule.common.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Fan-out executor for independent read queries
+ * Each query runs on a virtual thread in its own read-only transaction (own connection),
+ * all queries share one deadline and the call never outlives it: unfinished queries are cancelled.
+ * Failures are reported per key so callers can return partial results.
+ */
+@Slf4j
+@Service
+public class ParallelQueryExecutor {
+
+    private final PlatformTransactionManager transactionManager;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Giới hạn số query chạy song song để không chiếm hết connection pool
+    private final Semaphore permits;
+
+    public ParallelQueryExecutor(PlatformTransactionManager transactionManager,
+                                 @Value("${app.parallel-query.max-concurrency:6}") int maxConcurrency) {
+        this.transactionManager = transactionManager;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    public <T> Results<T> run(Map<String, Supplier<T>> queries, Duration deadline) {
+        long deadlineAt = System.nanoTime() + deadline.toNanos();
+
+        List<String> keys = new ArrayList<>(queries.keySet());
+        List<Callable<T>> tasks = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            Supplier<T> query = queries.get(key);
+            tasks.add(() -> runReadOnly(query, deadlineAt));
+        }
+
+        List<Future<T>> futures;
+        try {
+            futures = executor.invokeAll(tasks, deadline.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for parallel queries", e);
+        }
+
+        Map<String, T> values = new LinkedHashMap<>();
+        Map<String, Throwable> failures = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            Future<T> future = futures.get(i);
+            try {
+                values.put(key, future.get());
+            } catch (CancellationException e) {
+                failures.put(key, new TimeoutException("Query '" + key + "' exceeded deadline of " + deadline.toMillis() + "ms"));
+            } catch (ExecutionException e) {
+                failures.put(key, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures.put(key, e);
+            }
+        }
+        return new Results<>(values, failures);
+    }
+
+    private <T> T runReadOnly(Supplier<T> query, long deadlineAt) throws Exception {
+        long remaining = deadlineAt - System.nanoTime();
+        if (remaining <= 0 || !permits.tryAcquire(remaining, TimeUnit.NANOSECONDS)) {
+            throw new TimeoutException("No query slot available before deadline");
+        }
+        try {
+            TransactionTemplate template = new TransactionTemplate(transactionManager);
+            template.setReadOnly(true);
+            // Statement timeout theo thời gian còn lại, để DB cũng dừng query quá hạn
+            long remainingSeconds = TimeUnit.NANOSECONDS.toSeconds(deadlineAt - System.nanoTime());
+            template.setTimeout((int) Math.max(1, remainingSeconds + 1));
+            return template.execute(status -> query.get());
+        } finally {
+            permits.release();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Per-key outcome of a fan-out call
+     */
+    public static class Results<T> {
+        private final Map<String, T> values;
+        private final Map<String, Throwable> failures;
+
+        private Results(Map<String, T> values, Map<String, Throwable> failures) {
+            this.values = Collections.unmodifiableMap(values);
+            this.failures = Collections.unmodifiableMap(failures);
+        }
+
+        public boolean isAvailable(String key) {
+            return values.containsKey(key);
+        }
+
+        public T get(String key) {
+            return values.get(key);
+        }
+
+        public Map<String, T> getValues() {
+            return values;
+        }
+
+        public Set<String> getFailedKeys() {
+            return failures.keySet();
+        }
+
+        public Throwable getFailure(String key) {
+            return failures.get(key);
+        }
+
+        public boolean isComplete() {
+            return failures.isEmpty();
+        }
+
+        public boolean isAllFailed() {
+            return values.isEmpty() && !failures.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.htttql.crmmodule.common.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Runs a unit of work in its own transaction and re-runs it when it loses a concurrency race
+ * (optimistic version conflict, deadlock, lock timeout). The work must re-read everything it checks,
+ * so each attempt validates against the state committed by the winner.
+ * Inside an existing transaction the work runs once, the outermost caller owns the retry.
+ */
+@Slf4j
+@Service
+public class RetryingTransactionExecutor {
+
+    private final TransactionTemplate transactionTemplate;
+
+    public RetryingTransactionExecutor(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public <T> T execute(String operation, int maxAttempts, long backoffMillis, Supplier<T> work) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return work.get();
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> work.get());
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= maxAttempts) {
+                    log.warn("{} failed after {} attempts: {}", operation, attempt, e.getMessage());
+                    throw e;
+                }
+                log.debug("{} lost a concurrent update (attempt {}), retrying", operation, attempt);
+                backoff(backoffMillis, attempt);
+            }
+        }
+    }
+
+    // Backoff tăng dần có jitter để các giao dịch tranh chấp không va chạm lại cùng lúc
+    private static void backoff(long backoffMillis, int attempt) {
+        if (backoffMillis <= 0) {
+            return;
+        }
+        long ceiling = backoffMillis << Math.min(attempt - 1, 6);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(backoffMillis, ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying", e);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.htttql.crmmodule.common.service;
+
+import com.htttql.crmmodule.common.exception.BadRequestException;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.From;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Sparse fieldsets (?fields=a,b,c) for list endpoints
+ * Requested response fields are resolved through a per-resource Catalog into entity paths and run as one
+ * Criteria tuple query: only those columns are selected and only the associations they need are LEFT JOINed.
+ * Rows are returned as maps holding just the requested (non-null) fields.
+ */
+@Service
+public class SparseFieldsetQuery {
+
+    private final EntityManager entityManager;
+
+    public SparseFieldsetQuery(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * @param fields      comma-separated response field names (the id field is always included)
+     * @param postProcess applied to each partially filled response before it is flattened (e.g. masking)
+     */
+    public <E, R> Page<Map<String, Object>> find(Catalog<E, R> catalog, String fields, Pageable pageable,
+                                                 Consumer<R> postProcess) {
+        Set<String> requested = catalog.parse(fields);
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<E> root = query.from(catalog.entityClass);
+        Map<String, From<?, ?>> joins = new HashMap<>();
+
+        // Nhiều field có thể dùng chung một cột (vd. tierCode/tierName cùng tier.code)
+        Map<String, String> aliases = new LinkedHashMap<>();
+        List<Selection<?>> selections = new ArrayList<>();
+        for (String field : requested) {
+            String path = catalog.fields.get(field).path();
+            if (!aliases.containsKey(path)) {
+                String alias = "c" + aliases.size();
+                aliases.put(path, alias);
+                selections.add(resolve(root, joins, path).alias(alias));
+            }
+        }
+        query.multiselect(selections);
+
+        List<Order> orders = new ArrayList<>();
+        for (Sort.Order order : pageable.getSort()) {
+            Catalog.Field<R> field = catalog.fields.get(order.getProperty());
+            if (field == null) {
+                throw new BadRequestException("Cannot sort by " + order.getProperty());
+            }
+            Path<?> path = resolve(root, joins, field.path());
+            orders.add(order.isAscending() ? cb.asc(path) : cb.desc(path));
+        }
+        query.orderBy(orders);
+
+        TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
+        if (pageable.isPaged()) {
+            typedQuery.setFirstResult((int) pageable.getOffset());
+            typedQuery.setMaxResults(pageable.getPageSize());
+        }
+
+        List<Map<String, Object>> content = new ArrayList<>();
+        for (Tuple tuple : typedQuery.getResultList()) {
+            R response = catalog.factory.get();
+            for (String field : requested) {
+                Catalog.Field<R> mapping = catalog.fields.get(field);
+                Object value = tuple.get(aliases.get(mapping.path()));
+                if (value != null) {
+                    mapping.setter().accept(response, value);
+                }
+            }
+            if (postProcess != null) {
+                postProcess.accept(response);
+            }
+            content.add(flatten(response, requested));
+        }
+
+        return PageableExecutionUtils.getPage(content, pageable, () -> count(catalog.entityClass));
+    }
+
+    private long count(Class<?> entityClass) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        query.select(cb.count(query.from(entityClass)));
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    // "customer.fullName" -> LEFT JOIN customer, mỗi association chỉ join một lần
+    private static Path<?> resolve(Root<?> root, Map<String, From<?, ?>> joins, String path) {
+        String[] parts = path.split("\\.");
+        From<?, ?> from = root;
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < parts.length - 1; i++) {
+            prefix.append(i == 0 ? "" : ".").append(parts[i]);
+            From<?, ?> parent = from;
+            String name = parts[i];
+            from = joins.computeIfAbsent(prefix.toString(), key -> parent.join(name, JoinType.LEFT));
+        }
+        return from.get(parts[parts.length - 1]);
+    }
+
+    private static Map<String, Object> flatten(Object response, Set<String> fields) {
+        BeanWrapper wrapper = new BeanWrapperImpl(response);
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (String field : fields) {
+            Object value = wrapper.getPropertyValue(field);
+            if (value != null) {
+                row.put(field, value);
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Response field name -> entity path + setter on the response DTO
+     */
+    public static final class Catalog<E, R> {
+
+        private final Class<E> entityClass;
+        private final Supplier<R> factory;
+        private final String idField;
+        private final Map<String, Field<R>> fields = new LinkedHashMap<>();
+
+        private Catalog(Class<E> entityClass, Supplier<R> factory, String idField) {
+            this.entityClass = entityClass;
+            this.factory = factory;
+            this.idField = idField;
+        }
+
+        public static <E, R> Catalog<E, R> of(Class<E> entityClass, Supplier<R> factory, String idField) {
+            return new Catalog<>(entityClass, factory, idField);
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T> Catalog<E, R> field(String name, String path, BiConsumer<R, T> setter) {
+            fields.put(name, new Field<>(path, (BiConsumer<R, Object>) setter));
+            return this;
+        }
+
+        public Set<String> fieldNames() {
+            return fields.keySet();
+        }
+
+        private Set<String> parse(String value) {
+            Set<String> requested = new LinkedHashSet<>();
+            requested.add(idField);
+            for (String part : value.split(",")) {
+                String name = part.trim();
+                if (name.isEmpty()) {
+                    continue;
+                }
+                if (!fields.containsKey(name)) {
+                    throw new BadRequestException("Unknown field '" + name + "', allowed: " + String.join(",", fields.keySet()));
+                }
+                requested.add(name);
+            }
+            return requested;
+        }
+
+        private record Field<R>(String path, BiConsumer<R, Object> setter) {
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.htttql.crmmodule.common.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.htttql.crmmodule.common.config.ExportProperties;
+import com.htttql.crmmodule.common.exception.BadRequestException;
+import com.htttql.crmmodule.common.util.CsvWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.UnaryOperator;
+
+/**
+ * Constant-memory CSV/NDJSON export straight from JDBC into the HTTP response
+ * Rows are read in keyset chunks (id > last id ORDER BY id LIMIT chunkSize), each chunk in its own short
+ * read-only transaction so no snapshot is held for the whole export. Inside a chunk the PostgreSQL driver
+ * streams through a forward-only cursor of fetchSize rows, and every row is masked and written as soon as
+ * it is read: heap usage does not depend on the number of exported rows.
+ */
+@Slf4j
+@Service
+public class StreamingExporter {
+
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_NDJSON = "ndjson";
+
+    public static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv;charset=UTF-8");
+    /**
+     * Request attribute marking an export response; ExportAsyncConfig gives such requests the export timeout
+     */
+    public static final String EXPORT_REQUEST_ATTRIBUTE = StreamingExporter.class.getName() + ".EXPORT";
+
+    public static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson;charset=UTF-8");
+
+    private final JdbcTemplate cursorJdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ObjectMapper objectMapper;
+    private final ExportProperties properties;
+
+    public StreamingExporter(DataSource dataSource,
+                             PlatformTransactionManager transactionManager,
+                             ObjectMapper objectMapper,
+                             ExportProperties properties) {
+        // JdbcTemplate riêng có fetch size: trong transaction (autocommit off) driver PG dùng cursor thay vì đọc hết
+        this.cursorJdbcTemplate = new JdbcTemplate(dataSource);
+        this.cursorJdbcTemplate.setFetchSize(properties.getFetchSize());
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+    }
+
+    /**
+     * @return the normalized format, or BadRequest when it is not csv/ndjson
+     */
+    public static String resolveFormat(String format) {
+        String resolved = format == null ? FORMAT_CSV : format.trim().toLowerCase(Locale.ROOT);
+        if (!resolved.equals(FORMAT_CSV) && !resolved.equals(FORMAT_NDJSON)) {
+            throw new BadRequestException("Unsupported export format: " + format);
+        }
+        return resolved;
+    }
+
+    public static MediaType mediaType(String format) {
+        return FORMAT_NDJSON.equals(format) ? APPLICATION_NDJSON : TEXT_CSV;
+    }
+
+    /**
+     * Column mask active only when condition holds (null = no masking)
+     */
+    public static UnaryOperator<Object> maskWhen(boolean condition, UnaryOperator<String> masker) {
+        return condition ? value -> masker.apply(value.toString()) : null;
+    }
+
+    /**
+     * Lazily streams the definition; nothing is queried until the response body is written.
+     * Called on the request thread, it also marks the current request as an export
+     */
+    public StreamingResponseBody stream(Definition definition, String format) {
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null) {
+            request.setAttribute(EXPORT_REQUEST_ATTRIBUTE, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+        }
+        String sql = definition.sql();
+        int chunkSize = properties.getChunkSize();
+        return out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 16 * 1024);
+            RowSink sink = FORMAT_NDJSON.equals(format) ? new NdjsonSink(writer, objectMapper) : new CsvSink(writer);
+            sink.header(definition.names);
+
+            Object[] values = new Object[definition.columns.size()];
+            long[] lastId = {Long.MIN_VALUE};
+            long total = 0;
+            int read;
+            try {
+                do {
+                    int[] count = {0};
+                    long after = lastId[0];
+                    readOnlyTransaction.executeWithoutResult(status ->
+                            cursorJdbcTemplate.query(sql, rs -> {
+                                lastId[0] = rs.getLong(1);
+                                definition.read(rs, values);
+                                try {
+                                    sink.row(definition.names, values);
+                                } catch (IOException e) {
+                                    throw new UncheckedIOException(e);
+                                }
+                                count[0]++;
+                            }, after, chunkSize));
+                    read = count[0];
+                    total += read;
+                    sink.flush();
+                } while (read == chunkSize);
+            } catch (UncheckedIOException e) {
+                // Client ngắt kết nối giữa chừng
+                log.debug("Export {} aborted after {} rows", definition.name, total);
+                throw e.getCause();
+            }
+            log.info("Exported {} {} rows as {}", total, definition.name, format);
+        };
+    }
+
+    /**
+     * Export columns over one FROM clause, keyed by a bigint id column (always the first column)
+     */
+    public static final class Definition {
+
+        private final String name;
+        private final String from;
+        private final String idExpression;
+        private final List<Column> columns = new ArrayList<>();
+        private final List<String> names = new ArrayList<>();
+
+        private Definition(String name, String from, String idName, String idExpression) {
+            this.name = name;
+            this.from = from;
+            this.idExpression = idExpression;
+            column(idName, idExpression);
+        }
+
+        /**
+         * @param from         FROM clause with joins, e.g. "core.customer c JOIN core.tier t ON t.tier_id = c.tier_id"
+         * @param idExpression unique non-null bigint column used as keyset, e.g. "c.customer_id"
+         */
+        public static Definition of(String name, String from, String idName, String idExpression) {
+            return new Definition(name, from, idName, idExpression);
+        }
+
+        public Definition column(String name, String expression) {
+            return column(name, expression, null);
+        }
+
+        /**
+         * @param mask applied to non-null values (e.g. per-staff masking), may return null to hide the value
+         */
+        public Definition column(String name, String expression, UnaryOperator<Object> mask) {
+            columns.add(new Column(expression, mask));
+            names.add(name);
+            return this;
+        }
+
+        private String sql() {
+            StringBuilder sql = new StringBuilder("SELECT ");
+            for (int i = 0; i < columns.size(); i++) {
+                sql.append(i == 0 ? "" : ", ").append(columns.get(i).expression());
+            }
+            return sql.append(" FROM ").append(from)
+                    .append(" WHERE ").append(idExpression).append(" > ?")
+                    .append(" ORDER BY ").append(idExpression)
+                    .append(" LIMIT ?")
+                    .toString();
+        }
+
+        private void read(ResultSet rs, Object[] values) throws SQLException {
+            for (int i = 0; i < values.length; i++) {
+                Object value = rs.getObject(i + 1);
+                if (value instanceof Timestamp timestamp) {
+                    value = timestamp.toLocalDateTime();
+                } else if (value instanceof java.sql.Date date) {
+                    value = date.toLocalDate();
+                }
+                UnaryOperator<Object> mask = columns.get(i).mask();
+                values[i] = value != null && mask != null ? mask.apply(value) : value;
+            }
+        }
+
+        private record Column(String expression, UnaryOperator<Object> mask) {
+        }
+    }
+
+    private interface RowSink {
+        void header(List<String> names) throws IOException;
+
+        void row(List<String> names, Object[] values) throws IOException;
+
+        void flush() throws IOException;
+    }
+
+    private static final class CsvSink implements RowSink {
+        private final Writer writer;
+        private final CsvWriter csv;
+
+        private CsvSink(Writer writer) {
+            this.writer = writer;
+            this.csv = new CsvWriter(writer);
+        }
+
+        @Override
+        public void header(List<String> names) throws IOException {
+            // BOM để Excel nhận UTF-8 (CsvReader bỏ qua BOM khi import lại)
+            writer.write('\uFEFF');
+            for (String name : names) {
+                csv.field(name);
+            }
+            csv.endRecord();
+        }
+
+        @Override
+        public void row(List<String> names, Object[] values) throws IOException {
+            for (Object value : values) {
+                csv.field(value);
+            }
+            csv.endRecord();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            csv.flush();
+        }
+    }
+
+    private static final class NdjsonSink implements RowSink {
+        private final JsonGenerator generator;
+
+        private NdjsonSink(Writer writer, ObjectMapper objectMapper) {
+            try {
+                this.generator = objectMapper.getFactory().createGenerator(writer)
+                        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                // Mỗi object một dòng, không chèn dấu cách giữa các root value
+                this.generator.setRootValueSeparator(null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void header(List<String> names) {
+        }
+
+        @Override
+        public void row(List<String> names, Object[] values) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    generator.writeFieldName(names.get(i));
+                    // Ngày giờ xuất dạng ISO-8601 thay vì mảng số
+                    if (values[i] instanceof Number || values[i] instanceof Boolean) {
+                        generator.writeObject(values[i]);
+                    } else {
+                        generator.writeString(values[i].toString());
+                    }
+                }
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            generator.flush();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.htttql.crmmodule.common.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Minimal streaming RFC 4180 writer, counterpart of CsvReader: fields containing a comma, quote or
+ * line break are double-quoted with "" escapes, records end with CRLF. Writes straight through.
+ * Text cells that a spreadsheet would evaluate as a formula are prefixed with a single quote.
+ */
+public final class CsvWriter {
+
+    private final Writer writer;
+    private boolean firstField = true;
+
+    public CsvWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    public CsvWriter field(Object value) throws IOException {
+        if (!firstField) {
+            writer.write(',');
+        }
+        firstField = false;
+        if (value == null) {
+            return this;
+        }
+        String text = value.toString();
+        // Số thì không thể là công thức, giữ nguyên số âm
+        if (!(value instanceof Number) && isFormulaLike(text)) {
+            text = "'" + text;
+        }
+        if (needsQuoting(text)) {
+            writer.write('"');
+            writer.write(text.replace("\"", "\"\""));
+            writer.write('"');
+        } else {
+            writer.write(text);
+        }
+        return this;
+    }
+
+    public void endRecord() throws IOException {
+        writer.write("\r\n");
+        firstField = true;
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    // CSV injection: Excel/Sheets coi ô bắt đầu bằng =, +, -, @, tab, CR là công thức
+    private static boolean isFormulaLike(String text) {
+        if (text.isEmpty()) {
+            return false;
+        }
+        char c = text.charAt(0);
+        return c == '=' || c == '+' || c == '-' || c == '@' || c == '\t' || c == '\r';
+    }
+
+    private static boolean needsQuoting(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,42 @@
+package com.htttql.crmmodule.common.util;
+
+/**
+ * Masking helpers for sensitive customer data (field-level permission NO)
+ */
+public final class DataMasker {
+
+    private DataMasker() {
+    }
+
+    public static String maskName(String name) {
+        if (name == null || name.length() <= 2) return "***";
+        return name.charAt(0) + "***" + name.charAt(name.length() - 1);
+    }
+
+    public static String maskPhone(String phone) {
+        if (phone == null) return "***";
+        String cleanPhone = phone.replaceAll("\\D", "");
+        if (cleanPhone.length() <= 4) return "***";
+        return cleanPhone.substring(0, 3) + "***" + cleanPhone.substring(cleanPhone.length() - 2);
+    }
+
+    public static String maskEmail(String email) {
+        if (email == null) return "***";
+        int atIndex = email.indexOf('@');
+        if (atIndex <= 1) return "***";
+        String localPart = email.substring(0, atIndex);
+        String domain = email.substring(atIndex);
+        if (localPart.length() <= 2) return "***" + domain;
+        return localPart.charAt(0) + "***" + domain;
+    }
+
+    public static String maskAddress(String address) {
+        if (address == null || address.length() <= 10) return "***";
+        return address.substring(0, 5) + "***" + address.substring(address.length() - 5);
+    }
+
+    public static String maskText(String text) {
+        if (text == null || text.length() <= 5) return "***";
+        return text.substring(0, 3) + "***";
+    }
+}
@@ -0,0 +1,265 @@
+package com.htttql.crmmodule.common.util;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.LongPredicate;
+
+/**
+ * Compact radix tree (compressed trie) from string keys to long values
+ * Edges carry char[] labels, children are kept in arrays sorted by first char (binary search),
+ * so a node costs a few dozen bytes and a prefix lookup is O(prefix length + results).
+ * Values of a key are kept sorted in a growable array: popular keys (common name tokens hold tens of
+ * thousands of values) insert in amortized O(1) for ascending ids and dedupe by binary search.
+ * Not thread-safe: callers guard it with a read/write lock.
+ */
+public final class RadixIndex {
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final long[] NO_VALUES = new long[0];
+
+    private final Node root = new Node(new char[0]);
+    private long size;
+
+    public void put(String key, long value) {
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            int idx = findChild(node, key.charAt(i));
+            if (idx < 0) {
+                Node leaf = new Node(key.substring(i).toCharArray());
+                node.children = insertAt(node.children, -idx - 1, leaf);
+                node = leaf;
+                break;
+            }
+            Node child = node.children[idx];
+            int common = commonPrefix(child.label, key, i);
+            if (common < child.label.length) {
+                // Tách cạnh: child.label = [common][rest]
+                Node mid = new Node(Arrays.copyOf(child.label, common));
+                child.label = Arrays.copyOfRange(child.label, common, child.label.length);
+                mid.children = new Node[]{child};
+                node.children[idx] = mid;
+                child = mid;
+            }
+            node = child;
+            i += common;
+        }
+        if (node.addValue(value)) {
+            size++;
+        }
+    }
+
+    public boolean remove(String key, long value) {
+        return remove(root, key, 0, value);
+    }
+
+    /**
+     * Values whose key starts with prefix, shortest/lexicographically smallest keys first
+     * (largest value first within a key), de-duplicated, at most limit values accepted by filter
+     */
+    public Set<Long> prefixSearch(String prefix, int limit, LongPredicate filter) {
+        Set<Long> result = new LinkedHashSet<>();
+        Node start = locate(prefix);
+        if (start == null || limit <= 0) {
+            return result;
+        }
+
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(start);
+        while (!stack.isEmpty() && result.size() < limit) {
+            Node node = stack.pop();
+            for (int v = node.valueCount - 1; v >= 0; v--) {
+                long value = node.values[v];
+                if (filter == null || filter.test(value)) {
+                    result.add(value);
+                    if (result.size() >= limit) {
+                        return result;
+                    }
+                }
+            }
+            for (int c = node.children.length - 1; c >= 0; c--) {
+                stack.push(node.children[c]);
+            }
+        }
+        return result;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Structure statistics with a shallow-size estimate (64-bit JVM, compressed oops)
+     */
+    public Footprint footprint() {
+        long nodes = 0;
+        long bytes = 0;
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            nodes++;
+            bytes += 24; // header + 3 references
+            bytes += align(16 + 2L * node.label.length);
+            if (node.children != NO_CHILDREN) {
+                bytes += align(16 + 4L * node.children.length);
+            }
+            if (node.values != NO_VALUES) {
+                bytes += align(16 + 8L * node.values.length);
+            }
+            for (Node child : node.children) {
+                stack.push(child);
+            }
+        }
+        return new Footprint(nodes, size, bytes);
+    }
+
+    private Node locate(String prefix) {
+        Node node = root;
+        int i = 0;
+        while (i < prefix.length()) {
+            int idx = findChild(node, prefix.charAt(i));
+            if (idx < 0) {
+                return null;
+            }
+            Node child = node.children[idx];
+            int common = commonPrefix(child.label, prefix, i);
+            if (i + common == prefix.length()) {
+                return child; // prefix kết thúc giữa hoặc cuối cạnh
+            }
+            if (common < child.label.length) {
+                return null;
+            }
+            node = child;
+            i += common;
+        }
+        return node;
+    }
+
+    private boolean remove(Node node, String key, int i, long value) {
+        if (i == key.length()) {
+            if (!node.removeValue(value)) {
+                return false;
+            }
+            size--;
+            return true;
+        }
+        int idx = findChild(node, key.charAt(i));
+        if (idx < 0) {
+            return false;
+        }
+        Node child = node.children[idx];
+        int common = commonPrefix(child.label, key, i);
+        if (common < child.label.length || !remove(child, key, i + common, value)) {
+            return false;
+        }
+
+        // Dọn node rỗng và gộp lại cạnh chỉ còn một nhánh
+        if (child.valueCount == 0 && child.children.length == 0) {
+            node.children = removeAt(node.children, idx);
+        } else if (child.valueCount == 0 && child.children.length == 1) {
+            Node grandChild = child.children[0];
+            char[] merged = Arrays.copyOf(child.label, child.label.length + grandChild.label.length);
+            System.arraycopy(grandChild.label, 0, merged, child.label.length, grandChild.label.length);
+            grandChild.label = merged;
+            node.children[idx] = grandChild;
+        }
+        return true;
+    }
+
+    private static int findChild(Node node, char c) {
+        Node[] children = node.children;
+        int lo = 0;
+        int hi = children.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char m = children[mid].label[0];
+            if (m < c) {
+                lo = mid + 1;
+            } else if (m > c) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    private static int commonPrefix(char[] label, String key, int offset) {
+        int max = Math.min(label.length, key.length() - offset);
+        int n = 0;
+        while (n < max && label[n] == key.charAt(offset + n)) {
+            n++;
+        }
+        return n;
+    }
+
+    private static Node[] insertAt(Node[] array, int pos, Node node) {
+        Node[] result = new Node[array.length + 1];
+        System.arraycopy(array, 0, result, 0, pos);
+        result[pos] = node;
+        System.arraycopy(array, pos, result, pos + 1, array.length - pos);
+        return result;
+    }
+
+    private static Node[] removeAt(Node[] array, int pos) {
+        if (array.length == 1) {
+            return NO_CHILDREN;
+        }
+        Node[] result = new Node[array.length - 1];
+        System.arraycopy(array, 0, result, 0, pos);
+        System.arraycopy(array, pos + 1, result, pos, array.length - pos - 1);
+        return result;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private static final class Node {
+        private char[] label;
+        private Node[] children = NO_CHILDREN;
+        private long[] values = NO_VALUES;
+        private int valueCount;
+
+        private Node(char[] label) {
+            this.label = label;
+        }
+
+        private boolean addValue(long value) {
+            int pos = valueCount == 0 || values[valueCount - 1] < value
+                    ? -(valueCount + 1)
+                    : Arrays.binarySearch(values, 0, valueCount, value);
+            if (pos >= 0) {
+                return false;
+            }
+            pos = -pos - 1;
+            if (valueCount == values.length) {
+                values = Arrays.copyOf(values, Math.max(1, valueCount + (valueCount >> 1) + (valueCount < 4 ? 1 : 0)));
+            }
+            System.arraycopy(values, pos, values, pos + 1, valueCount - pos);
+            values[pos] = value;
+            valueCount++;
+            return true;
+        }
+
+        private boolean removeValue(long value) {
+            int pos = Arrays.binarySearch(values, 0, valueCount, value);
+            if (pos < 0) {
+                return false;
+            }
+            System.arraycopy(values, pos + 1, values, pos, valueCount - pos - 1);
+            valueCount--;
+            if (valueCount == 0) {
+                values = NO_VALUES;
+            }
+            return true;
+        }
+    }
+
+    public record Footprint(long nodes, long values, long estimatedBytes) {
+    }
+}
@@ -0,0 +1,35 @@
+package com.htttql.crmmodule.common.util;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Text folding for search keys
+ * "Nguyễn Văn Đức" -> "nguyen van duc", so queries typed with or without diacritics hit the same key
+ */
+public final class TextNormalizer {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern NON_DIGITS = Pattern.compile("[^0-9]");
+
+    private TextNormalizer() {
+    }
+
+    public static String fold(String text) {
+        if (text == null) {
+            return null;
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        String stripped = COMBINING_MARKS.matcher(decomposed).replaceAll("")
+                // đ/Đ không phải ký tự tổ hợp nên NFD không tách được
+                .replace('đ', 'd')
+                .replace('Đ', 'd');
+        return WHITESPACE.matcher(stripped.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    public static String digitsOnly(String text) {
+        return text == null ? null : NON_DIGITS.matcher(text).replaceAll("");
+    }
+}
@@ -0,0 +1,102 @@
+package com.htttql.crmmodule.core.config;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Configuration properties for Customer module
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.customer")
+@Validated
+public class CustomerProperties {
+
+    private Segmentation segmentation = new Segmentation();
+    private Import bulkImport = new Import();
+
+    private TierEvaluation tier = new TierEvaluation();
+
+    private Overview overview = new Overview();
+
+    @Data
+    public static class Segmentation {
+        private boolean enabled = true;
+
+        /**
+         * Số customer_id trong một khoảng keyset (một chunk = một transaction ghi)
+         */
+        @Min(100) @Max(100000)
+        private int chunkSize = 5000;
+
+        /**
+         * Số chunk xử lý song song, không vượt quá connection pool
+         */
+        @Min(1) @Max(32)
+        private int parallelism = 4;
+
+        /**
+         * Nhịp ghé mặc định (ngày) cho khách mới chỉ có một lần ghé
+         */
+        @Min(1) @Max(365)
+        private int defaultCadenceDays = 60;
+
+        /**
+         * Thời gian giữ khóa chạy batch giữa các node (phút)
+         */
+        @Min(1) @Max(1440)
+        private int lockTtlMinutes = 60;
+    }
+
+    @Data
+    public static class Import {
+        /**
+         * Số dòng mỗi chunk: một lần kiểm tra trùng phone, một lần cấp id và một câu INSERT
+         */
+        @Min(100) @Max(10000)
+        private int batchSize = 1000;
+
+        /**
+         * Số lỗi theo dòng tối đa trả về trong kết quả (các lỗi sau vẫn được đếm)
+         */
+        @Min(0) @Max(100000)
+        private int maxErrors = 1000;
+    }
+
+    @Data
+    public static class TierEvaluation {
+        /**
+         * Chu kỳ quét các khách "dirty" chưa được đánh giá hạng (ms)
+         */
+        @Min(1000)
+        private long sweepMillis = 60000;
+
+        /**
+         * Số customer_id mỗi câu UPDATE của sweeper
+         */
+        @Min(1) @Max(10000)
+        private int sweepBatchSize = 1000;
+    }
+
+    @Data
+    public static class Overview {
+        /**
+         * Ngân sách thời gian cho toàn bộ các query con của trang tổng quan khách hàng (ms)
+         */
+        @Min(100) @Max(30000)
+        private long deadlineMillis = 2000;
+
+        /**
+         * Số dòng mặc định và tối đa của mỗi danh sách gần đây (hóa đơn, hồ sơ, lịch hẹn, điểm)
+         */
+        @Min(1) @Max(50)
+        private int sliceSize = 5;
+
+        @Min(1) @Max(100)
+        private int maxSliceSize = 20;
+    }
+}
@@ -0,0 +1,87 @@
+package com.htttql.crmmodule.core.config;
+
+import com.htttql.crmmodule.common.util.TextNormalizer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Creates the trigram indexes used by customer search (ddl-auto cannot declare GIN indexes)
+ * and backfills search_name for rows created before the column existed. Without pg_trgm customer search
+ * falls back to queries that do not call similarity()
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CustomerSearchIndexInitializer {
+
+    private static final int BACKFILL_BATCH = 1000;
+
+    private static final List<String> INDEX_DDL = List.of(
+            "CREATE INDEX IF NOT EXISTS idx_customer_search_name_trgm ON core.customer USING gin (search_name gin_trgm_ops)",
+            "CREATE INDEX IF NOT EXISTS idx_customer_phone_trgm ON core.customer USING gin (phone gin_trgm_ops)",
+            // Truy vấn 1-2 ký tự không dùng được trigram, chỉ tìm theo tiền tố
+            "CREATE INDEX IF NOT EXISTS idx_customer_search_name_prefix ON core.customer (search_name text_pattern_ops)",
+            "CREATE INDEX IF NOT EXISTS idx_customer_phone_prefix ON core.customer (phone text_pattern_ops)");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Mặc định false: request đến trước khi kiểm tra xong dùng truy vấn không cần pg_trgm
+    private volatile boolean trigramAvailable;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        backfillSearchNames();
+        createIndexes();
+    }
+
+    public boolean isTrigramAvailable() {
+        return trigramAvailable;
+    }
+
+    private void createIndexes() {
+        try {
+            jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+            trigramAvailable = true;
+        } catch (Exception e) {
+            log.warn("Cannot create pg_trgm extension (needs a privileged user), customer search falls back to "
+                    + "LIKE without similarity ranking: {}", e.getMessage());
+            return;
+        }
+        for (String ddl : INDEX_DDL) {
+            try {
+                jdbcTemplate.execute(ddl);
+            } catch (Exception e) {
+                log.warn("Cannot create customer search index: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void backfillSearchNames() {
+        try {
+            int total = 0;
+            List<Object[]> batch;
+            do {
+                batch = jdbcTemplate.query(
+                        "SELECT customer_id, full_name FROM core.customer WHERE search_name IS NULL ORDER BY customer_id LIMIT ?",
+                        (rs, i) -> new Object[]{TextNormalizer.fold(rs.getString("full_name")), rs.getLong("customer_id")},
+                        BACKFILL_BATCH);
+                if (!batch.isEmpty()) {
+                    jdbcTemplate.batchUpdate("UPDATE core.customer SET search_name = ? WHERE customer_id = ?", batch);
+                    total += batch.size();
+                }
+            } while (batch.size() == BACKFILL_BATCH);
+
+            if (total > 0) {
+                log.info("Backfilled search_name for {} customers", total);
+            }
+        } catch (Exception e) {
+            log.error("Error backfilling customer search names", e);
+        }
+    }
+}
@@ -2,8 +2,21 @@ package com.htttql.crmmodule.core.controller;
 
 import com.htttql.crmmodule.common.dto.ApiResponse;
 import com.htttql.crmmodule.common.dto.PageResponse;
+import com.htttql.crmmodule.common.exception.BadRequestException;
+import com.htttql.crmmodule.common.service.StreamingExporter;
+import com.htttql.crmmodule.core.dto.AutocompleteStatsResponse;
+import com.htttql.crmmodule.core.dto.AutocompleteSuggestion;
+import com.htttql.crmmodule.core.dto.CustomerBusinessResponse;
+import com.htttql.crmmodule.core.dto.CustomerDetailResponse;
+import com.htttql.crmmodule.core.dto.CustomerImportResponse;
+import com.htttql.crmmodule.core.dto.CustomerOverviewResponse;
 import com.htttql.crmmodule.core.dto.CustomerRequest;
 import com.htttql.crmmodule.core.dto.CustomerResponse;
+import com.htttql.crmmodule.core.dto.SegmentationStatusResponse;
+import com.htttql.crmmodule.core.service.IAutocompleteService;
+import com.htttql.crmmodule.core.service.ICustomerImportService;
+import com.htttql.crmmodule.core.service.ICustomerOverviewService;
+import com.htttql.crmmodule.core.service.ICustomerSegmentationService;
 import com.htttql.crmmodule.core.service.ICustomerService;
 import com.htttql.crmmodule.security.service.SecurityContextService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -15,10 +28,17 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
 
 @Tag(name = "Customer Management", description = "Customer CRUD operations")
 @RestController
@@ -27,22 +47,28 @@ import org.springframework.web.bind.annotation.*;
 public class CustomerController {
 
     private final ICustomerService customerService;
+    private final ICustomerSegmentationService segmentationService;
+    private final IAutocompleteService autocompleteService;
+    private final ICustomerImportService customerImportService;
+    private final ICustomerOverviewService customerOverviewService;
     private final SecurityContextService securityContextService;
 
-    @Operation(summary = "Get all customers with pagination")
+    @Operation(summary = "Get all customers with pagination", description = "Pass cursor (empty for the first page, then nextCursor) to switch to keyset pagination without total count. " +
+                    "Pass fields=a,b,c to return only those fields (selected in SQL, page mode only)")
     @SecurityRequirement(name = "Bearer Authentication")
     @PreAuthorize("hasAnyRole('MANAGER', 'RECEPTIONIST', 'TECHNICIAN')")
     @GetMapping
-    public ResponseEntity<ApiResponse<PageResponse<CustomerResponse>>> getAllCustomers(
+    public ResponseEntity<ApiResponse<PageResponse<?>>> getAllCustomers(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size,
             @RequestParam(defaultValue = "customerId") String sortBy,
-            @RequestParam(defaultValue = "desc") String sortDir) {
+            @RequestParam(defaultValue = "desc") String sortDir,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String fields) {
 
         Sort sort = sortDir.equalsIgnoreCase("desc")
                 ? Sort.by(sortBy).descending()
                 : Sort.by(sortBy).ascending();
-        Pageable pageable = PageRequest.of(page, size, sort);
 
         Long staffId = null;
         try {
@@ -50,9 +76,155 @@ public class CustomerController {
         } catch (Exception ignored) {
         }
 
+        if (cursor != null && fields != null) {
+            throw new BadRequestException("fields cannot be combined with cursor pagination");
+        }
+        if (cursor != null) {
+            PageResponse<CustomerResponse> slice = customerService.getAllCustomers(cursor, size, sort, staffId);
+            return ResponseEntity.ok(ApiResponse.<PageResponse<?>>success(slice, "Customers retrieved successfully"));
+        }
+
+        Pageable pageable = PageRequest.of(page, size, sort);
+        if (fields != null) {
+            Page<Map<String, Object>> rows = customerService.getAllCustomerFields(pageable, fields, staffId);
+            return ResponseEntity.ok(ApiResponse.<PageResponse<?>>success(PageResponse.from(rows), "Customers retrieved successfully"));
+        }
         Page<CustomerResponse> customers = customerService.getAllCustomers(pageable, staffId);
         PageResponse<CustomerResponse> response = PageResponse.from(customers);
-        return ResponseEntity.ok(ApiResponse.success(response, "Customers retrieved successfully"));
+        return ResponseEntity.ok(ApiResponse.<PageResponse<?>>success(response, "Customers retrieved successfully"));
+    }
+
+    @Operation(summary = "Search customers by partial phone, name (with or without diacritics) or email",
+            description = "Results are ranked: exact match, prefix, word prefix/suffix, then partial matches")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @PreAuthorize("hasAnyRole('MANAGER', 'RECEPTIONIST', 'TECHNICIAN')")
+    @GetMapping("/search")
+    public ResponseEntity<ApiResponse<PageResponse<CustomerResponse>>> searchCustomers(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+
+        Long staffId = null;
+        try {
+            staffId = securityContextService.getCurrentStaffId();
+        } catch (Exception ignored) {
+        }
+
+        Pageable pageable = PageRequest.of(page, Math.min(size, 100));
+        Page<CustomerResponse> customers = customerService.searchCustomers(q, pageable, staffId);
+        return ResponseEntity.ok(ApiResponse.success(PageResponse.from(customers), "Customers retrieved successfully"));
+    }
+
+    @Operation(summary = "Autocomplete customers and leads by phone prefix or name token prefix",
+            description = "Served from a node-local in-memory index, does not query the database")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @PreAuthorize("hasAnyRole('MANAGER', 'RECEPTIONIST')")
+    @GetMapping("/autocomplete")
+    public ResponseEntity<ApiResponse<List<AutocompleteSuggestion>>> autocomplete(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "10") int limit) {
+        List<AutocompleteSuggestion> suggestions = autocompleteService.suggest(q, limit);
+        return ResponseEntity.ok(ApiResponse.success(suggestions, "Suggestions retrieved successfully"));
+    }
+
+    @Operation(summary = "Get size and memory footprint of the autocomplete index")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER')")
+    @GetMapping("/autocomplete/stats")
+    public ResponseEntity<ApiResponse<AutocompleteStatsResponse>> getAutocompleteStats() {
+        return ResponseEntity.ok(ApiResponse.success(autocompleteService.getStats(), "Autocomplete stats retrieved successfully"));
+    }
+
+    @Operation(summary = "Export all customers as CSV or NDJSON",
+            description = "Rows are streamed from the database as they are read, with the staff's field masking applied. " +
+                    "Requires the history export permission")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @PreAuthorize("hasAnyRole('MANAGER', 'RECEPTIONIST', 'TECHNICIAN')")
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportCustomers(@RequestParam(defaultValue = "csv") String format) {
+        Long staffId = null;
+        try {
+            staffId = securityContextService.getCurrentStaffId();
+        } catch (Exception ignored) {
+        }
+        String resolved = StreamingExporter.resolveFormat(format);
+        StreamingResponseBody body = customerService.exportCustomers(resolved, staffId);
+        return ResponseEntity.ok()
+                .contentType(StreamingExporter.mediaType(resolved))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"customers." + resolved + "\"")
+                .body(body);
+    }
+
+    @Operation(summary = "Bulk import customers from a CSV or NDJSON stream",
+            description = "CSV needs a header with at least fullName and phone (also email, dob, gender, address, notes, isVip). " +
+                    "The body is parsed incrementally and written in batches; invalid or duplicate rows are reported per row")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER')")
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson", "application/octet-stream", "text/plain"})
+    public ResponseEntity<ApiResponse<CustomerImportResponse>> importCustomers(
+            @RequestParam(required = false) String format,
+            @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+            InputStream body) throws IOException {
+        String resolved = format != null ? format.toLowerCase()
+                : contentType != null && contentType.contains("json") ? ICustomerImportService.FORMAT_NDJSON
+                : ICustomerImportService.FORMAT_CSV;
+        if (!resolved.equals(ICustomerImportService.FORMAT_CSV) && !resolved.equals(ICustomerImportService.FORMAT_NDJSON)) {
+            throw new BadRequestException("Unsupported import format: " + format);
+        }
+        CustomerImportResponse result = customerImportService.importCustomers(body, resolved);
+        return ResponseEntity.ok(ApiResponse.success(result, "Customer import completed"));
+    }
+
+    @Operation(summary = "Get customers with visit statistics")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @PreAuthorize("hasAnyRole('MANAGER', 'RECEPTIONIST', 'TECHNICIAN')")
+    @GetMapping("/details")
+    public ResponseEntity<ApiResponse<PageResponse<CustomerDetailResponse>>> getCustomerDetails(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "customerId") String sortBy,
+            @RequestParam(defaultValue = "desc") String sortDir) {
+
+        Sort sort = sortDir.equalsIgnoreCase("desc")
+                ? Sort.by(sortBy).descending()
+                : Sort.by(sortBy).ascending();
+        Page<CustomerDetailResponse> customers = customerService.getCustomerDetails(PageRequest.of(page, size, sort));
+        return ResponseEntity.ok(ApiResponse.success(PageResponse.from(customers), "Customers retrieved successfully"));
+    }
+
+    @Operation(summary = "Get customers with business insights (orders, last visit, churn risk)")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER')")
+    @GetMapping("/business")
+    public ResponseEntity<ApiResponse<PageResponse<CustomerBusinessResponse>>> getCustomerBusinessInsights(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "customerId") String sortBy,
+            @RequestParam(defaultValue = "desc") String sortDir) {
+
+        Sort sort = sortDir.equalsIgnoreCase("desc")
+                ? Sort.by(sortBy).descending()
+                : Sort.by(sortBy).ascending();
+        Page<CustomerBusinessResponse> customers = customerService.getCustomerBusinessInsights(PageRequest.of(page, size, sort));
+        return ResponseEntity.ok(ApiResponse.success(PageResponse.from(customers), "Customer insights retrieved successfully"));
+    }
+
+    @Operation(summary = "Get customer overview", description = "Profile, summary aggregates and the most recent invoices, cases, appointments " +
+                    "and point transactions in one call. Sections are loaded in parallel; those that fail or miss the latency budget are listed in unavailable")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER', 'RECEPTIONIST', 'TECHNICIAN')")
+    @GetMapping("/{id}/overview")
+    public ResponseEntity<ApiResponse<CustomerOverviewResponse>> getCustomerOverview(
+            @PathVariable Long id,
+            @RequestParam(required = false) Integer limit) {
+        Long staffId = null;
+        try {
+            staffId = securityContextService.getCurrentStaffId();
+        } catch (Exception ignored) {
+        }
+
+        CustomerOverviewResponse overview = customerOverviewService.getOverview(id, limit, staffId);
+        return ResponseEntity.ok(ApiResponse.success(overview, "Customer overview retrieved successfully"));
     }
 
     @Operation(summary = "Get customer by ID")
@@ -113,8 +285,26 @@ public class CustomerController {
     @SecurityRequirement(name = "Bearer Authentication")
     @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER')")
     @PostMapping("/refresh-all-tiers")
-    public ResponseEntity<ApiResponse<Void>> refreshAllCustomerTiers() {
-        customerService.refreshAllCustomerTiers();
-        return ResponseEntity.ok(ApiResponse.success("All customer tiers refreshed successfully"));
+    public ResponseEntity<ApiResponse<Integer>> refreshAllCustomerTiers() {
+        int updated = customerService.refreshAllCustomerTiers();
+        return ResponseEntity.ok(ApiResponse.success(updated, updated + " customers changed tier"));
+    }
+
+    @Operation(summary = "Start RFM segmentation and churn scoring in the background")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER')")
+    @PostMapping("/segmentation/run")
+    public ResponseEntity<ApiResponse<SegmentationStatusResponse>> runSegmentation() {
+        SegmentationStatusResponse status = segmentationService.startAsync();
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(ApiResponse.success(status, "Customer segmentation started"));
+    }
+
+    @Operation(summary = "Get progress of the RFM segmentation batch")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER')")
+    @GetMapping("/segmentation/status")
+    public ResponseEntity<ApiResponse<SegmentationStatusResponse>> getSegmentationStatus() {
+        return ResponseEntity.ok(ApiResponse.success(segmentationService.getStatus(), "Segmentation status retrieved successfully"));
     }
 }
@@ -0,0 +1,36 @@
+package com.htttql.crmmodule.core.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Size and memory footprint of the node-local autocomplete index
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AutocompleteStatsResponse {
+
+    private boolean ready;
+    private long entries;
+    private long customers;
+    private long leads;
+    private long phoneKeys;
+    private long nameKeys;
+    private long treeNodes;
+
+    // Ước lượng shallow size (JVM 64-bit, compressed oops)
+    private long treeBytes;
+    private long entryBytes;
+    private long totalBytes;
+    private long bytesPerEntry;
+    private long bytesPerMillionEntries;
+
+    private long buildMillis;
+    private LocalDateTime builtAt;
+}
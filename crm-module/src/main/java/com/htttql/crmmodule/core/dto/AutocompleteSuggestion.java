@@ -0,0 +1,21 @@
+package com.htttql.crmmodule.core.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Autocomplete hit for the check-in desk
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AutocompleteSuggestion {
+
+    private String type; // CUSTOMER, LEAD
+    private Long id;
+    private String fullName;
+    private String phone;
+}
@@ -0,0 +1,42 @@
+package com.htttql.crmmodule.core.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Result of a bulk customer import
+ * Rows that fail validation or duplicate an existing phone are reported individually, the run continues.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CustomerImportResponse {
+
+    private String format;
+    private long totalRows;
+    private long imported;
+    private long duplicates;
+    private long failed;
+    private long durationMillis;
+
+    private List<RowError> errors;
+    private boolean errorsTruncated;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class RowError {
+        private long row;
+        private String phone;
+        private String message;
+    }
+}
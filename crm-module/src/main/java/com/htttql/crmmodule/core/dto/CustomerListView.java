@@ -0,0 +1,24 @@
+package com.htttql.crmmodule.core.dto;
+
+import com.htttql.crmmodule.common.enums.TierCode;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Column projection of a customer row for list endpoints
+ * Selected together with the tier code in one statement, no entity or lazy proxy is materialized.
+ */
+public record CustomerListView(
+        Long customerId,
+        String fullName,
+        String phone,
+        String email,
+        String address,
+        LocalDate dob,
+        String notes,
+        TierCode tierCode,
+        Boolean isVip,
+        BigDecimal totalSpent,
+        Integer totalPoints) {
+}
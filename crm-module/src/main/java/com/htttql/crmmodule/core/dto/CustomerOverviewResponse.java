@@ -0,0 +1,54 @@
+package com.htttql.crmmodule.core.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.htttql.crmmodule.billing.dto.InvoiceResponse;
+import com.htttql.crmmodule.billing.dto.PointTransactionResponse;
+import com.htttql.crmmodule.lead.dto.AppointmentResponse;
+import com.htttql.crmmodule.service.dto.CustomerCaseResponse;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Customer 360 overview: profile, summary aggregates and the most recent slice of each related list
+ * Sections that failed or missed the latency budget are null and listed in unavailable
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CustomerOverviewResponse {
+
+    private CustomerResponse customer;
+    private Summary summary;
+
+    private List<InvoiceResponse> recentInvoices;
+    private List<CustomerCaseResponse> recentCases;
+    private List<AppointmentResponse> recentAppointments;
+    private List<PointTransactionResponse> recentPointTransactions;
+
+    private List<String> unavailable;
+    private long durationMillis;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Summary {
+        private Long invoiceCount;
+        private BigDecimal totalInvoiced;
+        private BigDecimal totalPaid;
+        private BigDecimal balanceDue;
+        private Long caseCount;
+        private Long appointmentCount;
+        private LocalDateTime nextAppointmentAt;
+        private Integer visitCount;
+        private LocalDateTime lastVisitAt;
+    }
+}
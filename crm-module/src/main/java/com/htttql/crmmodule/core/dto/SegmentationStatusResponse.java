@@ -0,0 +1,32 @@
+package com.htttql.crmmodule.core.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Progress of the RFM segmentation batch (last or current run on this node)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SegmentationStatusResponse {
+
+    private String state; // IDLE, RUNNING, COMPLETED, FAILED
+    private long totalCustomers;
+    private long processedCustomers;
+    private int totalChunks;
+    private int completedChunks;
+    private int failedChunks;
+    private double percent;
+    private double customersPerSecond;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private String error;
+}
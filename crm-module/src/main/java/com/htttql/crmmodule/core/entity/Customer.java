@@ -3,6 +3,7 @@ package com.htttql.crmmodule.core.entity;
 import com.htttql.crmmodule.common.config.SchemaConstants;
 import com.htttql.crmmodule.common.entity.BaseEntity;
 import com.htttql.crmmodule.common.enums.Gender;
+import com.htttql.crmmodule.common.util.TextNormalizer;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -15,7 +16,8 @@ import java.time.LocalDate;
         @Index(name = "idx_customer_email", columnList = "email"),
         @Index(name = "idx_customer_tier", columnList = "tier_id"),
         @Index(name = "idx_customer_total_spent", columnList = "total_spent"),
-        @Index(name = "idx_customer_total_points", columnList = "total_points")
+        @Index(name = "idx_customer_total_points", columnList = "total_points"),
+        @Index(name = "idx_customer_created", columnList = "created_at DESC, customer_id DESC")
 })
 @Getter
 @Setter
@@ -38,6 +40,10 @@ public class Customer extends BaseEntity {
     @Column(name = "full_name", nullable = false, length = 200)
     private String fullName;
 
+    // Tên đã bỏ dấu, chữ thường - dùng cho tìm kiếm (GIN trigram index)
+    @Column(name = "search_name", length = 200)
+    private String searchName;
+
     @Column(name = "phone", nullable = false, unique = true, length = 20)
     private String phone;
 
@@ -58,11 +64,13 @@ public class Customer extends BaseEntity {
     @JoinColumn(name = "tier_id", nullable = false, foreignKey = @ForeignKey(name = "fk_customer_tier"))
     private Tier tier;
 
-    @Column(name = "total_points", nullable = false)
+    // Số dư cache của sổ điểm và tổng chi tiêu: chỉ thay đổi bằng delta SQL (ICustomerBalanceService),
+    // entity không ghi đè khi update để không làm mất cập nhật đồng thời
+    @Column(name = "total_points", nullable = false, updatable = false)
     @Builder.Default
     private Integer totalPoints = 0;
 
-    @Column(name = "total_spent", nullable = false, precision = 12, scale = 2)
+    @Column(name = "total_spent", nullable = false, updatable = false, precision = 12, scale = 2)
     @Builder.Default
     private BigDecimal totalSpent = BigDecimal.ZERO;
 
@@ -77,13 +85,14 @@ public class Customer extends BaseEntity {
     @PreUpdate
     private void normalizeData() {
         if (phone != null) {
-            phone = phone.replaceAll("[^0-9]", "");
+            phone = TextNormalizer.digitsOnly(phone);
         }
         if (email != null) {
             email = email.toLowerCase().trim();
         }
         if (fullName != null) {
             fullName = fullName.trim();
+            searchName = TextNormalizer.fold(fullName);
         }
     }
 }
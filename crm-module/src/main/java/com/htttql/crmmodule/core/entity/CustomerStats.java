@@ -0,0 +1,83 @@
+package com.htttql.crmmodule.core.entity;
+
+import com.htttql.crmmodule.common.config.SchemaConstants;
+import com.htttql.crmmodule.common.entity.BaseEntity;
+import com.htttql.crmmodule.common.enums.CustomerSegment;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+
+/**
+ * Per-customer activity projection (one row per customer)
+ * Maintained incrementally when appointments complete and invoices are paid,
+ * read together with the customer in a single join for list/detail pages.
+ */
+@Entity
+@Table(name = "customer_stats", schema = SchemaConstants.CORE_SCHEMA, indexes = {
+        @Index(name = "idx_customer_stats_last_visit", columnList = "last_visit_at"),
+        @Index(name = "idx_customer_stats_segment", columnList = "segment")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CustomerStats extends BaseEntity {
+
+    // Dùng chung khóa với customer, không có sequence riêng
+    @Id
+    @Column(name = "customer_id")
+    private Long customerId;
+
+    @Column(name = "visit_count", nullable = false)
+    @Builder.Default
+    private Integer visitCount = 0;
+
+    @Column(name = "first_visit_at", columnDefinition = "TIMESTAMPTZ")
+    private LocalDateTime firstVisitAt;
+
+    @Column(name = "last_visit_at", columnDefinition = "TIMESTAMPTZ")
+    private LocalDateTime lastVisitAt;
+
+    @Column(name = "order_count", nullable = false)
+    @Builder.Default
+    private Integer orderCount = 0;
+
+    @Column(name = "total_order_value", nullable = false, precision = 14, scale = 2)
+    @Builder.Default
+    private BigDecimal totalOrderValue = BigDecimal.ZERO;
+
+    @Column(name = "last_order_at", columnDefinition = "TIMESTAMPTZ")
+    private LocalDateTime lastOrderAt;
+
+    // Kết quả batch phân khúc RFM hằng đêm (null cho tới lần chạy đầu tiên)
+    @Column(name = "recency_score")
+    private Integer recencyScore;
+
+    @Column(name = "frequency_score")
+    private Integer frequencyScore;
+
+    @Column(name = "monetary_score")
+    private Integer monetaryScore;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "segment", length = 30)
+    private CustomerSegment segment;
+
+    // Xác suất rời bỏ ước lượng, 0..1
+    @Column(name = "churn_score")
+    private Double churnScore;
+
+    @Column(name = "scored_at", columnDefinition = "TIMESTAMPTZ")
+    private LocalDateTime scoredAt;
+
+    public BigDecimal getAverageOrderValue() {
+        if (orderCount == null || orderCount == 0 || totalOrderValue == null) {
+            return BigDecimal.ZERO;
+        }
+        return totalOrderValue.divide(BigDecimal.valueOf(orderCount), 2, RoundingMode.HALF_UP);
+    }
+}
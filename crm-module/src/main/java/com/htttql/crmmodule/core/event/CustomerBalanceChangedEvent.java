@@ -0,0 +1,23 @@
+package com.htttql.crmmodule.core.event;
+
+import com.htttql.crmmodule.core.entity.Customer;
+import lombok.Getter;
+
+/**
+ * Total spent and/or total points of a customer changed in the current transaction
+ * Published by billing services with the managed entity, consumed synchronously by the tier service
+ * which re-evaluates the tier in memory (no reload, no tier lookup)
+ */
+@Getter
+public class CustomerBalanceChangedEvent {
+
+    private final Customer customer;
+
+    private CustomerBalanceChangedEvent(Customer customer) {
+        this.customer = customer;
+    }
+
+    public static CustomerBalanceChangedEvent of(Customer customer) {
+        return new CustomerBalanceChangedEvent(customer);
+    }
+}
@@ -1,7 +1,11 @@
 package com.htttql.crmmodule.core.repository;
 
+import com.htttql.crmmodule.core.dto.CustomerListView;
 import com.htttql.crmmodule.core.entity.Customer;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -12,21 +16,104 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface ICustomerRepository extends JpaRepository<Customer, Long> {
+public interface ICustomerRepository extends JpaRepository<Customer, Long>, JpaSpecificationExecutor<Customer> {
+
+    /**
+     * Customer list page as column projections, tier joined in the same statement
+     */
+    @Query(value = "SELECT new com.htttql.crmmodule.core.dto.CustomerListView(" +
+            "c.customerId, c.fullName, c.phone, c.email, c.address, c.dob, c.notes, " +
+            "t.code, c.isVip, c.totalSpent, c.totalPoints) " +
+            "FROM Customer c JOIN c.tier t",
+            countQuery = "SELECT COUNT(c) FROM Customer c")
+    Page<CustomerListView> findAllListViews(Pageable pageable);
 
     Optional<Customer> findByPhone(String phone);
 
+    /**
+     * Current point balance (cached on the customer row, maintained with the ledger)
+     */
+    @Query("SELECT c.totalPoints FROM Customer c WHERE c.customerId = :customerId")
+    Optional<Integer> findTotalPointsByCustomerId(@Param("customerId") Long customerId);
+
     Optional<Customer> findByEmail(String email);
 
     boolean existsByPhone(String phone);
 
     boolean existsByEmail(String email);
 
-    @Query("SELECT c FROM Customer c WHERE " +
-            "(:search IS NULL OR LOWER(c.fullName) LIKE LOWER(CONCAT('%', :search, '%')) " +
-            "OR c.phone LIKE CONCAT('%', :search, '%') " +
-            "OR LOWER(c.email) LIKE LOWER(CONCAT('%', :search, '%')))")
-    java.util.List<Customer> searchCustomers(@Param("search") String search);
+    /**
+     * Name search on the accent-folded search_name (GIN trigram index), best matches first:
+     * exact, prefix, word prefix, then trigram similarity
+     */
+    @Query(value = """
+            SELECT c.* FROM core.customer c
+            WHERE c.search_name LIKE :contains
+            ORDER BY CASE WHEN c.search_name = :term THEN 0
+                          WHEN c.search_name LIKE :prefix THEN 1
+                          WHEN c.search_name LIKE :wordPrefix THEN 2
+                          ELSE 3 END,
+                     similarity(c.search_name, :term) DESC,
+                     c.customer_id DESC
+            """,
+            countQuery = "SELECT COUNT(*) FROM core.customer c WHERE c.search_name LIKE :contains",
+            nativeQuery = true)
+    Page<Customer> searchByName(@Param("term") String term,
+                                @Param("contains") String contains,
+                                @Param("prefix") String prefix,
+                                @Param("wordPrefix") String wordPrefix,
+                                Pageable pageable);
+
+    /**
+     * Same as {@link #searchByName} for databases without pg_trgm: shorter names rank first instead of similarity
+     */
+    @Query(value = """
+            SELECT c.* FROM core.customer c
+            WHERE c.search_name LIKE :contains
+            ORDER BY CASE WHEN c.search_name = :term THEN 0
+                          WHEN c.search_name LIKE :prefix THEN 1
+                          WHEN c.search_name LIKE :wordPrefix THEN 2
+                          ELSE 3 END,
+                     length(c.search_name),
+                     c.customer_id DESC
+            """,
+            countQuery = "SELECT COUNT(*) FROM core.customer c WHERE c.search_name LIKE :contains",
+            nativeQuery = true)
+    Page<Customer> searchByNameWithoutTrigram(@Param("term") String term,
+                                             @Param("contains") String contains,
+                                             @Param("prefix") String prefix,
+                                             @Param("wordPrefix") String wordPrefix,
+                                             Pageable pageable);
+
+    /**
+     * Partial phone search on digits-only phone (GIN trigram index): exact, prefix, suffix, then contains
+     */
+    @Query(value = """
+            SELECT c.* FROM core.customer c
+            WHERE c.phone LIKE :contains
+            ORDER BY CASE WHEN c.phone = :term THEN 0
+                          WHEN c.phone LIKE :prefix THEN 1
+                          WHEN c.phone LIKE :suffix THEN 2
+                          ELSE 3 END,
+                     c.customer_id DESC
+            """,
+            countQuery = "SELECT COUNT(*) FROM core.customer c WHERE c.phone LIKE :contains",
+            nativeQuery = true)
+    Page<Customer> searchByPhone(@Param("term") String term,
+                                 @Param("contains") String contains,
+                                 @Param("prefix") String prefix,
+                                 @Param("suffix") String suffix,
+                                 Pageable pageable);
+
+    Page<Customer> findByEmail(String email, Pageable pageable);
+
+    /**
+     * Customers with tier and activity stats in one query: each row is [Customer, CustomerStats or null]
+     */
+    @Query(value = "SELECT c, s FROM Customer c JOIN FETCH c.tier " +
+            "LEFT JOIN CustomerStats s ON s.customerId = c.customerId",
+            countQuery = "SELECT COUNT(c) FROM Customer c")
+    Page<Object[]> findAllWithStats(Pageable pageable);
 
     /**
      * Count customers created on specific date
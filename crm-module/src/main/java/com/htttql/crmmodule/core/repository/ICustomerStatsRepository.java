@@ -0,0 +1,93 @@
+package com.htttql.crmmodule.core.repository;
+
+import com.htttql.crmmodule.core.entity.CustomerStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Repository
+public interface ICustomerStatsRepository extends JpaRepository<CustomerStats, Long> {
+
+    // Tính lại toàn bộ chỉ số từ dữ liệu gốc (lịch hẹn DONE, hóa đơn PAID)
+    String REBUILD_SQL = """
+            INSERT INTO core.customer_stats (customer_id, visit_count, first_visit_at, last_visit_at,
+                                             order_count, total_order_value, last_order_at, created_at, updated_at)
+            SELECT c.customer_id,
+                   COALESCE(v.cnt, 0), v.first_at, v.last_at,
+                   COALESCE(o.cnt, 0), COALESCE(o.total, 0), o.last_at,
+                   now(), now()
+            FROM core.customer c
+            LEFT JOIN (SELECT a.customer_id, COUNT(*) AS cnt, MIN(a.start_at) AS first_at, MAX(a.start_at) AS last_at
+                       FROM lead.appointment a
+                       WHERE a.status = 'DONE' AND a.customer_id IS NOT NULL
+                       GROUP BY a.customer_id) v ON v.customer_id = c.customer_id
+            LEFT JOIN (SELECT i.customer_id, COUNT(*) AS cnt, SUM(i.total_amount) AS total, MAX(COALESCE(i.paid_at, i.updated_at)) AS last_at
+                       FROM billing.invoice i
+                       WHERE i.status = 'PAID'
+                       GROUP BY i.customer_id) o ON o.customer_id = c.customer_id
+            """;
+
+    String REBUILD_CONFLICT = """
+            ON CONFLICT (customer_id) DO UPDATE SET
+                visit_count = EXCLUDED.visit_count,
+                first_visit_at = EXCLUDED.first_visit_at,
+                last_visit_at = EXCLUDED.last_visit_at,
+                order_count = EXCLUDED.order_count,
+                total_order_value = EXCLUDED.total_order_value,
+                last_order_at = EXCLUDED.last_order_at,
+                updated_at = now()
+            """;
+
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            INSERT INTO core.customer_stats (customer_id, visit_count, first_visit_at, last_visit_at,
+                                             order_count, total_order_value, created_at, updated_at)
+            VALUES (:customerId, 1, :visitAt, :visitAt, 0, 0, now(), now())
+            ON CONFLICT (customer_id) DO UPDATE SET
+                visit_count = customer_stats.visit_count + 1,
+                first_visit_at = LEAST(customer_stats.first_visit_at, EXCLUDED.first_visit_at),
+                last_visit_at = GREATEST(customer_stats.last_visit_at, EXCLUDED.last_visit_at),
+                updated_at = now()
+            """, nativeQuery = true)
+    int incrementVisit(@Param("customerId") Long customerId, @Param("visitAt") LocalDateTime visitAt);
+
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            INSERT INTO core.customer_stats (customer_id, visit_count, order_count, total_order_value,
+                                             last_order_at, created_at, updated_at)
+            VALUES (:customerId, 0, 1, :amount, :paidAt, now(), now())
+            ON CONFLICT (customer_id) DO UPDATE SET
+                order_count = customer_stats.order_count + 1,
+                total_order_value = customer_stats.total_order_value + EXCLUDED.total_order_value,
+                last_order_at = GREATEST(customer_stats.last_order_at, EXCLUDED.last_order_at),
+                updated_at = now()
+            """, nativeQuery = true)
+    int incrementOrder(@Param("customerId") Long customerId, @Param("amount") BigDecimal amount,
+                       @Param("paidAt") LocalDateTime paidAt);
+
+    @Modifying(flushAutomatically = true)
+    @Query(value = REBUILD_SQL + " WHERE c.customer_id = :customerId " + REBUILD_CONFLICT, nativeQuery = true)
+    int rebuildForCustomer(@Param("customerId") Long customerId);
+
+    @Modifying(flushAutomatically = true)
+    @Query(value = REBUILD_SQL + REBUILD_CONFLICT, nativeQuery = true)
+    int rebuildAll();
+
+    /**
+     * Create empty rows for customers without any activity yet
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO core.customer_stats (customer_id, visit_count, order_count, total_order_value, created_at, updated_at)
+            SELECT c.customer_id, 0, 0, 0, now(), now()
+            FROM core.customer c
+            WHERE NOT EXISTS (SELECT 1 FROM core.customer_stats s WHERE s.customer_id = c.customer_id)
+            ON CONFLICT (customer_id) DO NOTHING
+            """, nativeQuery = true)
+    int insertMissing();
+}
@@ -0,0 +1,27 @@
+package com.htttql.crmmodule.core.service;
+
+import com.htttql.crmmodule.core.dto.AutocompleteStatsResponse;
+import com.htttql.crmmodule.core.dto.AutocompleteSuggestion;
+
+import java.util.List;
+
+/**
+ * Node-local prefix index over customer/lead phones and name tokens
+ * Index updates are applied after the surrounding transaction commits
+ */
+public interface IAutocompleteService {
+
+    List<AutocompleteSuggestion> suggest(String query, int limit);
+
+    void indexCustomer(Long customerId, String fullName, String phone);
+
+    void removeCustomer(Long customerId);
+
+    void indexLead(Long leadId, String fullName, String phone);
+
+    void removeLead(Long leadId);
+
+    AutocompleteStatsResponse getStats();
+
+    void rebuild();
+}
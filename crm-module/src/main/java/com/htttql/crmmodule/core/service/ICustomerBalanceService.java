@@ -0,0 +1,24 @@
+package com.htttql.crmmodule.core.service;
+
+import com.htttql.crmmodule.core.entity.Customer;
+
+import java.math.BigDecimal;
+
+/**
+ * Atomic updates of customer total spent / total points
+ * Must be called inside the transaction that records the payment
+ */
+public interface ICustomerBalanceService {
+
+    /**
+     * Adds to the customer's totals with one UPDATE ... SET x = x + ? (row lock held until commit)
+     * and publishes CustomerBalanceChangedEvent
+     * Negative points are only applied if the balance stays non-negative (BadRequestException otherwise)
+     *
+     * @return balances after the update
+     */
+    Balance credit(Customer customer, BigDecimal spent, int points);
+
+    record Balance(BigDecimal totalSpent, int totalPoints) {
+    }
+}
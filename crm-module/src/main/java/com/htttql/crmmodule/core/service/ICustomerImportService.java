@@ -0,0 +1,16 @@
+package com.htttql.crmmodule.core.service;
+
+import com.htttql.crmmodule.core.dto.CustomerImportResponse;
+
+import java.io.InputStream;
+
+/**
+ * Bulk customer import from CSV or NDJSON streams
+ */
+public interface ICustomerImportService {
+
+    String FORMAT_CSV = "csv";
+    String FORMAT_NDJSON = "ndjson";
+
+    CustomerImportResponse importCustomers(InputStream input, String format);
+}
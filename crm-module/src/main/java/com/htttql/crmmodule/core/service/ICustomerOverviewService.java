@@ -0,0 +1,14 @@
+package com.htttql.crmmodule.core.service;
+
+import com.htttql.crmmodule.core.dto.CustomerOverviewResponse;
+
+/**
+ * Customer 360 overview assembled from parallel bounded sub-queries
+ */
+public interface ICustomerOverviewService {
+
+    /**
+     * @param limit size of each recent list (null = configured default, capped at the configured maximum)
+     */
+    CustomerOverviewResponse getOverview(Long customerId, Integer limit, Long staffId);
+}
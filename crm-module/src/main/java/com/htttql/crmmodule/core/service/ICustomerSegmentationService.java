@@ -0,0 +1,18 @@
+package com.htttql.crmmodule.core.service;
+
+import com.htttql.crmmodule.core.dto.SegmentationStatusResponse;
+
+public interface ICustomerSegmentationService {
+
+    /**
+     * Start a run in the background, returns the initial status
+     */
+    SegmentationStatusResponse startAsync();
+
+    /**
+     * Run to completion on the calling thread
+     */
+    SegmentationStatusResponse runSegmentation();
+
+    SegmentationStatusResponse getStatus();
+}
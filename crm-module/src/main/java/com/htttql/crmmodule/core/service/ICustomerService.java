@@ -1,16 +1,38 @@
 package com.htttql.crmmodule.core.service;
 
+import com.htttql.crmmodule.common.dto.PageResponse;
+import com.htttql.crmmodule.core.dto.CustomerBusinessResponse;
+import com.htttql.crmmodule.core.dto.CustomerDetailResponse;
 import com.htttql.crmmodule.core.dto.CustomerRequest;
 import com.htttql.crmmodule.core.dto.CustomerResponse;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Map;
 
 public interface ICustomerService {
 
     Page<CustomerResponse> getAllCustomers(Pageable pageable, Long staffId);
 
+    PageResponse<CustomerResponse> getAllCustomers(String cursor, int size, Sort sort, Long staffId);
+
+    Page<Map<String, Object>> getAllCustomerFields(Pageable pageable, String fields, Long staffId);
+
+    /**
+     * Stream all customers as CSV/NDJSON with the staff's field masking applied
+     */
+    StreamingResponseBody exportCustomers(String format, Long staffId);
+
     CustomerResponse getCustomerById(Long id, Long staffId);
 
+    Page<CustomerResponse> searchCustomers(String query, Pageable pageable, Long staffId);
+
+    Page<CustomerDetailResponse> getCustomerDetails(Pageable pageable);
+
+    Page<CustomerBusinessResponse> getCustomerBusinessInsights(Pageable pageable);
+
     CustomerResponse createCustomer(CustomerRequest request);
 
     CustomerResponse updateCustomer(Long id, CustomerRequest request);
@@ -19,5 +41,5 @@ public interface ICustomerService {
 
     CustomerResponse refreshCustomerTier(Long customerId);
 
-    void refreshAllCustomerTiers();
+    int refreshAllCustomerTiers();
 }
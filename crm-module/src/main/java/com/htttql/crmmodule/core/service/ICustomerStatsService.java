@@ -0,0 +1,22 @@
+package com.htttql.crmmodule.core.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Incremental maintenance of the customer_stats projection
+ * Must be called inside the transaction that changes the source row
+ */
+public interface ICustomerStatsService {
+
+    void recordVisit(Long customerId, LocalDateTime visitAt);
+
+    void recordOrder(Long customerId, BigDecimal amount, LocalDateTime paidAt);
+
+    /**
+     * Recompute one customer from source data (used when a visit/order is reverted)
+     */
+    void recalculate(Long customerId);
+
+    int recalculateAll();
+}
@@ -7,7 +7,16 @@ public interface ICustomerTierService {
 
     CustomerResponse refreshCustomerTier(Long customerId);
 
-    void refreshAllCustomerTiers();
+    /**
+     * Recalculate every customer's tier, returns how many customers changed tier
+     */
+    int refreshAllCustomerTiers();
 
     void refreshCustomerTierInternal(Long customerId);
+
+    /**
+     * Mark a customer whose spend/points changed outside the entity (e.g. SQL update)
+     * for re-evaluation by the periodic tier sweeper
+     */
+    void markDirty(Long customerId);
 }
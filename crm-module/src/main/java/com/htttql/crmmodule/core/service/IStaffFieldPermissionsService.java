@@ -17,6 +17,11 @@ public interface IStaffFieldPermissionsService {
      */
     StaffFieldPermissions getByStaffId(Long staffId);
 
+    /**
+     * Get permissions for a data export, denied when historyExport is NO (null = no restriction)
+     */
+    StaffFieldPermissions getForExport(Long staffId);
+
     /**
      * Update permissions for a staff member
      */
@@ -0,0 +1,364 @@
+package com.htttql.crmmodule.core.service.impl;
+
+import com.htttql.crmmodule.common.util.RadixIndex;
+import com.htttql.crmmodule.common.util.TextNormalizer;
+import com.htttql.crmmodule.core.dto.AutocompleteStatsResponse;
+import com.htttql.crmmodule.core.dto.AutocompleteSuggestion;
+import com.htttql.crmmodule.core.service.IAutocompleteService;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Autocomplete for the check-in desk, served entirely from memory
+ * Two radix trees (digits-only phone, accent-folded name tokens) point to compact entry refs;
+ * reads take a shared lock and never touch Postgres. The index is built at startup from a
+ * streaming query and kept current from customer/lead writes after commit.
+ */
+@Slf4j
+@Service
+public class AutocompleteServiceImpl implements IAutocompleteService {
+
+    private static final int MAX_LIMIT = 50;
+    private static final int FETCH_SIZE = 5000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Indexes indexes = new Indexes();
+    // Khác null khi đang build: các thay đổi trong lúc build được áp lại lên index mới
+    private List<Consumer<Indexes>> replay;
+
+    private volatile boolean ready;
+    private volatile long buildMillis;
+    private volatile LocalDateTime builtAt;
+
+    public AutocompleteServiceImpl(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        Thread.ofVirtual().name("autocomplete-build").start(this::rebuild);
+    }
+
+    @Override
+    public List<AutocompleteSuggestion> suggest(String query, int limit) {
+        String raw = query != null ? query.trim() : "";
+        if (raw.isEmpty()) {
+            return List.of();
+        }
+        boolean phoneQuery = raw.matches("[0-9+ .()-]+");
+        String digits = phoneQuery ? TextNormalizer.digitsOnly(raw) : null;
+        // "--", "()" ... không còn chữ số nào: tiền tố rỗng sẽ khớp mọi số điện thoại
+        if (phoneQuery && digits.isEmpty()) {
+            return List.of();
+        }
+        int max = Math.max(1, Math.min(limit, MAX_LIMIT));
+
+        lock.readLock().lock();
+        try {
+            Indexes current = indexes;
+            Set<Long> refs;
+            if (phoneQuery) {
+                refs = current.phones.prefixSearch(digits, max, null);
+            } else {
+                String[] tokens = TextNormalizer.fold(raw).split(" ");
+                // Tra cây theo từ dài nhất (chọn lọc nhất), các từ còn lại lọc trên entry
+                String probe = tokens[0];
+                for (String token : tokens) {
+                    if (token.length() > probe.length()) {
+                        probe = token;
+                    }
+                }
+                LongPredicate filter = tokens.length == 1 ? null : ref -> matchesAll(current.entries.get(ref), tokens);
+                refs = current.names.prefixSearch(probe, max, filter);
+            }
+
+            List<AutocompleteSuggestion> suggestions = new ArrayList<>(refs.size());
+            for (Long ref : refs) {
+                Entry entry = current.entries.get(ref);
+                if (entry != null) {
+                    suggestions.add(AutocompleteSuggestion.builder()
+                            .type(isLead(ref) ? "LEAD" : "CUSTOMER")
+                            .id(ref >>> 1)
+                            .fullName(entry.fullName())
+                            .phone(entry.phone())
+                            .build());
+                }
+            }
+            return suggestions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void indexCustomer(Long customerId, String fullName, String phone) {
+        if (customerId != null) {
+            long ref = customerRef(customerId);
+            mutate(idx -> idx.put(ref, fullName, phone));
+        }
+    }
+
+    @Override
+    public void removeCustomer(Long customerId) {
+        if (customerId != null) {
+            long ref = customerRef(customerId);
+            mutate(idx -> idx.remove(ref));
+        }
+    }
+
+    @Override
+    public void indexLead(Long leadId, String fullName, String phone) {
+        if (leadId != null) {
+            long ref = leadRef(leadId);
+            mutate(idx -> idx.put(ref, fullName, phone));
+        }
+    }
+
+    @Override
+    public void removeLead(Long leadId) {
+        if (leadId != null) {
+            long ref = leadRef(leadId);
+            mutate(idx -> idx.remove(ref));
+        }
+    }
+
+    @Override
+    public AutocompleteStatsResponse getStats() {
+        lock.readLock().lock();
+        try {
+            RadixIndex.Footprint phones = indexes.phones.footprint();
+            RadixIndex.Footprint names = indexes.names.footprint();
+            long entries = indexes.entries.size();
+            long treeBytes = phones.estimatedBytes() + names.estimatedBytes();
+            long totalBytes = treeBytes + indexes.entryBytes;
+            long perEntry = entries > 0 ? totalBytes / entries : 0;
+            return AutocompleteStatsResponse.builder()
+                    .ready(ready)
+                    .entries(entries)
+                    .customers(indexes.customers)
+                    .leads(entries - indexes.customers)
+                    .phoneKeys(phones.values())
+                    .nameKeys(names.values())
+                    .treeNodes(phones.nodes() + names.nodes())
+                    .treeBytes(treeBytes)
+                    .entryBytes(indexes.entryBytes)
+                    .totalBytes(totalBytes)
+                    .bytesPerEntry(perEntry)
+                    .bytesPerMillionEntries(perEntry * 1_000_000L)
+                    .buildMillis(buildMillis)
+                    .builtAt(builtAt)
+                    .build();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            if (replay != null) {
+                log.info("Autocomplete index build already in progress");
+                return;
+            }
+            replay = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long started = System.nanoTime();
+        Indexes fresh = new Indexes();
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                stream("SELECT customer_id, full_name, phone FROM core.customer",
+                        rs -> fresh.put(customerRef(rs.getLong(1)), rs.getString(2), rs.getString(3)));
+                stream("SELECT lead_id, full_name, phone FROM lead.lead",
+                        rs -> fresh.put(leadRef(rs.getLong(1)), rs.getString(2), rs.getString(3)));
+            });
+
+            lock.writeLock().lock();
+            try {
+                replay.forEach(change -> change.accept(fresh));
+                indexes = fresh;
+                ready = true;
+            } finally {
+                replay = null;
+                lock.writeLock().unlock();
+            }
+            buildMillis = (System.nanoTime() - started) / 1_000_000;
+            builtAt = LocalDateTime.now();
+            log.info("Autocomplete index built: {} entries in {} ms", fresh.entries.size(), buildMillis);
+        } catch (Exception e) {
+            lock.writeLock().lock();
+            try {
+                replay = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.error("Error building autocomplete index", e);
+        }
+    }
+
+    private void stream(String sql, RowCallbackHandler handler) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setFetchSize(FETCH_SIZE);
+            return statement;
+        }, handler);
+    }
+
+    // Chỉ áp lên index sau khi transaction ghi đã commit
+    private void mutate(Consumer<Indexes> change) {
+        Runnable apply = () -> {
+            lock.writeLock().lock();
+            try {
+                change.accept(indexes);
+                if (replay != null) {
+                    replay.add(change);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply.run();
+                }
+            });
+        } else {
+            apply.run();
+        }
+    }
+
+    private static boolean matchesAll(Entry entry, String[] tokens) {
+        if (entry == null || entry.fullName() == null) {
+            return false;
+        }
+        String[] words = TextNormalizer.fold(entry.fullName()).split(" ");
+        for (String token : tokens) {
+            boolean found = false;
+            for (String word : words) {
+                if (word.startsWith(token)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long customerRef(long customerId) {
+        return customerId << 1;
+    }
+
+    private static long leadRef(long leadId) {
+        return (leadId << 1) | 1L;
+    }
+
+    private static boolean isLead(long ref) {
+        return (ref & 1L) == 1L;
+    }
+
+    private record Entry(String fullName, String phone) {
+    }
+
+    private static final class Indexes {
+        private final RadixIndex phones = new RadixIndex();
+        private final RadixIndex names = new RadixIndex();
+        private final Map<Long, Entry> entries = new HashMap<>();
+        private long customers;
+        private long entryBytes;
+
+        private void put(long ref, String fullName, String phone) {
+            remove(ref);
+            String digits = TextNormalizer.digitsOnly(phone);
+            Entry entry = new Entry(fullName, digits);
+            entries.put(ref, entry);
+            if (digits != null && !digits.isEmpty()) {
+                phones.put(digits, ref);
+            }
+            for (String token : tokens(fullName)) {
+                names.put(token, ref);
+            }
+            if (!isLead(ref)) {
+                customers++;
+            }
+            entryBytes += estimateBytes(entry);
+        }
+
+        private void remove(long ref) {
+            Entry entry = entries.remove(ref);
+            if (entry == null) {
+                return;
+            }
+            if (entry.phone() != null && !entry.phone().isEmpty()) {
+                phones.remove(entry.phone(), ref);
+            }
+            for (String token : tokens(entry.fullName())) {
+                names.remove(token, ref);
+            }
+            if (!isLead(ref)) {
+                customers--;
+            }
+            entryBytes -= estimateBytes(entry);
+        }
+
+        private static Set<String> tokens(String fullName) {
+            Set<String> tokens = new LinkedHashSet<>();
+            String folded = TextNormalizer.fold(fullName);
+            if (folded != null) {
+                for (String token : folded.split(" ")) {
+                    if (!token.isEmpty()) {
+                        tokens.add(token);
+                    }
+                }
+            }
+            return tokens;
+        }
+
+        // HashMap node (32) + Long key (16) + record (24) + 2 String (24 + mảng byte)
+        private static long estimateBytes(Entry entry) {
+            return 72 + stringBytes(entry.fullName()) + stringBytes(entry.phone());
+        }
+
+        private static long stringBytes(String value) {
+            if (value == null) {
+                return 0;
+            }
+            boolean latin1 = value.chars().allMatch(c -> c < 256);
+            long array = 16 + (long) value.length() * (latin1 ? 1 : 2);
+            return 24 + ((array + 7) & ~7L);
+        }
+    }
+}
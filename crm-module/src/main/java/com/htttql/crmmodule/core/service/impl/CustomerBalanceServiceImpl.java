@@ -0,0 +1,74 @@
+package com.htttql.crmmodule.core.service.impl;
+
+import com.htttql.crmmodule.common.exception.BadRequestException;
+import com.htttql.crmmodule.common.exception.ResourceNotFoundException;
+import com.htttql.crmmodule.core.entity.Customer;
+import com.htttql.crmmodule.core.event.CustomerBalanceChangedEvent;
+import com.htttql.crmmodule.core.service.ICustomerBalanceService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Customer balances are only ever changed relative to the stored value, so concurrent payments of the
+ * same customer serialize on the row lock instead of overwriting each other's read-modify-write.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CustomerBalanceServiceImpl implements ICustomerBalanceService {
+
+    private static final String CREDIT_SQL = """
+            UPDATE core.customer
+            SET total_spent = total_spent + ?, total_points = total_points + ?, updated_at = now()
+            WHERE customer_id = ? AND total_points + ? >= 0
+            RETURNING total_spent, total_points
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Balance credit(Customer customer, BigDecimal spent, int points) {
+        Long customerId = customer.getCustomerId();
+        // Ghi các thay đổi đang chờ trước khi UPDATE bằng JDBC để refresh bên dưới không làm mất chúng
+        entityManager.flush();
+
+        List<Balance> rows = jdbcTemplate.query(CREDIT_SQL,
+                (rs, rowNum) -> new Balance(rs.getBigDecimal("total_spent"), rs.getInt("total_points")),
+                spent != null ? spent : BigDecimal.ZERO, points, customerId, points);
+        if (rows.isEmpty()) {
+            // Không có dòng nào: hoặc khách không tồn tại, hoặc số điểm không đủ để trừ
+            Integer exists = jdbcTemplate.query("SELECT 1 FROM core.customer WHERE customer_id = ?",
+                    rs -> rs.next() ? 1 : null, customerId);
+            if (exists == null) {
+                throw new ResourceNotFoundException("Customer", "id", customerId);
+            }
+            throw new BadRequestException("Insufficient points balance");
+        }
+
+        // Entity đã nạp giữ giá trị cũ: nạp lại để lần flush sau (vd. đổi hạng) không ghi đè số dư mới.
+        // Proxy chưa khởi tạo sẽ tự đọc giá trị mới khi được truy cập.
+        if (entityManager.contains(customer)
+                && entityManager.getEntityManagerFactory().getPersistenceUnitUtil().isLoaded(customer)) {
+            entityManager.refresh(customer);
+        }
+
+        eventPublisher.publishEvent(CustomerBalanceChangedEvent.of(customer));
+        log.debug("Credited customer {}: spent +{}, points +{}", customerId, spent, points);
+        return rows.get(0);
+    }
+}
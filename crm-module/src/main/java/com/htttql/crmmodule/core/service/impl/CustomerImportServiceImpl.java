@@ -0,0 +1,480 @@
+package com.htttql.crmmodule.core.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.htttql.crmmodule.common.enums.Gender;
+import com.htttql.crmmodule.common.enums.TierCode;
+import com.htttql.crmmodule.common.exception.BadRequestException;
+import com.htttql.crmmodule.common.util.CsvReader;
+import com.htttql.crmmodule.common.util.TextNormalizer;
+import com.htttql.crmmodule.core.config.CustomerProperties;
+import com.htttql.crmmodule.core.dto.CustomerImportResponse;
+import com.htttql.crmmodule.core.dto.CustomerRequest;
+import com.htttql.crmmodule.core.entity.Tier;
+import com.htttql.crmmodule.core.repository.ITierRepository;
+import com.htttql.crmmodule.core.service.IAutocompleteService;
+import com.htttql.crmmodule.core.service.ICustomerImportService;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Streaming bulk import of customers
+ * The input is parsed record by record and processed in chunks: per chunk one query finds existing phones
+ * and emails, one query reserves all ids from customer_seq (generate_series), and one INSERT ... SELECT
+ * FROM unnest(arrays) ON CONFLICT (phone) DO NOTHING RETURNING writes the rows. Each chunk commits on its
+ * own, so a bad row or chunk is reported and the run continues.
+ */
+@Slf4j
+@Service
+public class CustomerImportServiceImpl implements ICustomerImportService {
+
+    private static final DateTimeFormatter VN_DATE = DateTimeFormatter.ofPattern("d/M/yyyy");
+
+    private static final String INSERT_SQL = """
+            INSERT INTO core.customer (customer_id, full_name, search_name, phone, email, dob, gender,
+                                       address, notes, is_vip, tier_id, total_points, total_spent,
+                                       created_at, updated_at)
+            SELECT r.id, r.full_name, r.search_name, r.phone, r.email, r.dob::date, r.gender,
+                   r.address, r.notes, r.is_vip, ?, 0, 0, now(), now()
+            FROM unnest(?::bigint[], ?::text[], ?::text[], ?::text[], ?::text[], ?::text[], ?::text[],
+                        ?::text[], ?::text[], ?::boolean[])
+                 AS r(id, full_name, search_name, phone, email, dob, gender, address, notes, is_vip)
+            ON CONFLICT (phone) DO NOTHING
+            RETURNING customer_id, phone
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ITierRepository tierRepository;
+    private final IAutocompleteService autocompleteService;
+    private final CustomerProperties properties;
+    private final Validator validator;
+    private final ObjectReader requestReader;
+
+    public CustomerImportServiceImpl(JdbcTemplate jdbcTemplate,
+                                     PlatformTransactionManager transactionManager,
+                                     ITierRepository tierRepository,
+                                     IAutocompleteService autocompleteService,
+                                     CustomerProperties properties,
+                                     Validator validator,
+                                     ObjectMapper objectMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.tierRepository = tierRepository;
+        this.autocompleteService = autocompleteService;
+        this.properties = properties;
+        this.validator = validator;
+        this.requestReader = objectMapper.readerFor(CustomerRequest.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    @Override
+    public CustomerImportResponse importCustomers(InputStream input, String format) {
+        long started = System.nanoTime();
+        Tier defaultTier = tierRepository.findByCode(TierCode.REGULAR)
+                .orElseThrow(() -> new BadRequestException("Default tier not found"));
+
+        Run run = new Run(defaultTier.getTierId(), properties.getBulkImport().getMaxErrors());
+        int batchSize = properties.getBulkImport().getBatchSize();
+        List<Row> chunk = new ArrayList<>(batchSize);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            RowSource source = FORMAT_NDJSON.equals(format) ? ndjson(reader) : csv(reader);
+            Row row;
+            while ((row = source.next()) != null) {
+                chunk.add(row);
+                if (chunk.size() >= batchSize) {
+                    processChunk(chunk, run);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                processChunk(chunk, run);
+            }
+        } catch (IOException e) {
+            // Lỗi đọc luồng giữa chừng: các chunk trước đã commit, báo lại phần đã xử lý
+            if (!chunk.isEmpty()) {
+                processChunk(chunk, run);
+            }
+            log.warn("Customer import stream aborted after {} rows", run.totalRows, e);
+            run.error(run.totalRows + 1, null, "Input stream error: " + e.getMessage());
+        }
+
+        long durationMillis = (System.nanoTime() - started) / 1_000_000;
+        log.info("Customer import ({}) finished: {} rows, {} imported, {} duplicates, {} failed in {} ms",
+                format, run.totalRows, run.imported, run.duplicates, run.failed, durationMillis);
+
+        return CustomerImportResponse.builder()
+                .format(format)
+                .totalRows(run.totalRows)
+                .imported(run.imported)
+                .duplicates(run.duplicates)
+                .failed(run.failed)
+                .durationMillis(durationMillis)
+                .errors(run.errors)
+                .errorsTruncated(run.errorsTruncated)
+                .build();
+    }
+
+    private void processChunk(List<Row> rows, Run run) {
+        // 1. Validate + chuẩn hóa theo Customer.normalizeData, loại trùng trong chính file
+        List<Row> candidates = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            run.totalRows++;
+            if (row.error() != null) {
+                run.fail(row, row.error());
+                continue;
+            }
+            CustomerRequest request = normalize(row.request());
+            String violation = validate(request);
+            if (violation != null) {
+                run.fail(row, violation);
+            } else if (!run.seenPhones.add(request.getPhone())) {
+                run.duplicate(row, "Duplicate phone in file");
+            } else if (request.getEmail() != null && !run.seenEmails.add(request.getEmail())) {
+                run.fail(row, "Duplicate email in file");
+            } else {
+                candidates.add(row);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        List<Outcome> outcomes;
+        try {
+            outcomes = transactionTemplate.execute(status -> insertChunk(candidates, run.tierId));
+        } catch (Exception e) {
+            log.warn("Customer import chunk of {} rows failed", candidates.size(), e);
+            for (Row row : candidates) {
+                run.fail(row, "Batch insert failed: " + rootMessage(e));
+            }
+            return;
+        }
+        // Chỉ ghi nhận kết quả sau khi chunk đã commit
+        for (Outcome outcome : outcomes) {
+            if (outcome.customerId() != null) {
+                run.imported++;
+            } else if (outcome.duplicate()) {
+                run.duplicate(outcome.row(), outcome.message());
+            } else {
+                run.fail(outcome.row(), outcome.message());
+            }
+        }
+    }
+
+    private List<Outcome> insertChunk(List<Row> candidates, Long tierId) {
+        String[] phones = candidates.stream().map(r -> r.request().getPhone()).toArray(String[]::new);
+        String[] emails = candidates.stream().map(r -> r.request().getEmail())
+                .filter(e -> e != null).toArray(String[]::new);
+
+        Set<String> existingPhones = queryStrings("SELECT phone FROM core.customer WHERE phone = ANY(?)", phones);
+        Set<String> existingEmails = emails.length == 0 ? Set.of()
+                : queryStrings("SELECT email FROM core.customer WHERE email = ANY(?)", emails);
+
+        List<Outcome> outcomes = new ArrayList<>(candidates.size());
+        List<Row> inserts = new ArrayList<>(candidates.size());
+        for (Row row : candidates) {
+            CustomerRequest request = row.request();
+            if (existingPhones.contains(request.getPhone())) {
+                outcomes.add(new Outcome(row, null, true, "Phone number already exists"));
+            } else if (request.getEmail() != null && existingEmails.contains(request.getEmail())) {
+                outcomes.add(new Outcome(row, null, false, "Email already exists"));
+            } else {
+                inserts.add(row);
+            }
+        }
+        if (inserts.isEmpty()) {
+            return outcomes;
+        }
+
+        // Cấp toàn bộ id của chunk trong một round-trip thay vì một nextval mỗi dòng
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT nextval('core.customer_seq') FROM generate_series(1, ?)", Long.class, inserts.size());
+
+        Map<String, Long> inserted = insertRows(inserts, ids, tierId);
+        for (Row row : inserts) {
+            CustomerRequest request = row.request();
+            Long customerId = inserted.get(request.getPhone());
+            if (customerId == null) {
+                // Bị chèn đồng thời bởi request khác sau bước kiểm tra
+                outcomes.add(new Outcome(row, null, true, "Phone number already exists"));
+            } else {
+                outcomes.add(new Outcome(row, customerId, false, null));
+                autocompleteService.indexCustomer(customerId, request.getFullName(), request.getPhone());
+            }
+        }
+        return outcomes;
+    }
+
+    private Map<String, Long> insertRows(List<Row> rows, List<Long> ids, Long tierId) {
+        int n = rows.size();
+        Long[] idArray = ids.toArray(new Long[0]);
+        String[] names = new String[n];
+        String[] searchNames = new String[n];
+        String[] phones = new String[n];
+        String[] emails = new String[n];
+        String[] dobs = new String[n];
+        String[] genders = new String[n];
+        String[] addresses = new String[n];
+        String[] notes = new String[n];
+        Boolean[] vips = new Boolean[n];
+        for (int i = 0; i < n; i++) {
+            CustomerRequest request = rows.get(i).request();
+            names[i] = request.getFullName();
+            searchNames[i] = TextNormalizer.fold(request.getFullName());
+            phones[i] = request.getPhone();
+            emails[i] = request.getEmail();
+            dobs[i] = request.getDob() != null ? request.getDob().toString() : null;
+            genders[i] = request.getGender() != null ? request.getGender().name() : null;
+            addresses[i] = request.getAddress();
+            notes[i] = request.getNotes();
+            vips[i] = Boolean.TRUE.equals(request.getIsVip());
+        }
+
+        return jdbcTemplate.execute((ConnectionCallback<Map<String, Long>>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+                statement.setLong(1, tierId);
+                statement.setArray(2, connection.createArrayOf("bigint", idArray));
+                Object[][] columns = {names, searchNames, phones, emails, dobs, genders, addresses, notes};
+                for (int c = 0; c < columns.length; c++) {
+                    statement.setArray(3 + c, connection.createArrayOf("text", columns[c]));
+                }
+                statement.setArray(3 + columns.length, connection.createArrayOf("boolean", vips));
+
+                Map<String, Long> result = new HashMap<>(n * 2);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        result.put(rs.getString(2), rs.getLong(1));
+                    }
+                }
+                return result;
+            }
+        });
+    }
+
+    private Set<String> queryStrings(String sql, String[] values) {
+        return jdbcTemplate.execute((ConnectionCallback<Set<String>>) connection -> {
+            Array array = connection.createArrayOf("text", values);
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setArray(1, array);
+                Set<String> result = new HashSet<>();
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        result.add(rs.getString(1));
+                    }
+                }
+                return result;
+            } finally {
+                array.free();
+            }
+        });
+    }
+
+    // Cùng quy tắc với Customer.normalizeData
+    private static CustomerRequest normalize(CustomerRequest request) {
+        if (request.getFullName() != null) {
+            request.setFullName(request.getFullName().trim());
+        }
+        request.setPhone(TextNormalizer.digitsOnly(request.getPhone()));
+        if (request.getEmail() != null) {
+            String email = request.getEmail().toLowerCase(Locale.ROOT).trim();
+            request.setEmail(email.isEmpty() ? null : email);
+        }
+        return request;
+    }
+
+    private String validate(CustomerRequest request) {
+        Set<ConstraintViolation<CustomerRequest>> violations = validator.validate(request);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable root = e;
+        while (root.getCause() != null) {
+            root = root.getCause();
+        }
+        return root.getMessage();
+    }
+
+    // ==================== PARSERS ====================
+
+    private interface RowSource {
+        Row next() throws IOException;
+    }
+
+    private RowSource ndjson(BufferedReader reader) {
+        long[] line = {0};
+        return () -> {
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line[0]++;
+                if (text.isBlank()) {
+                    continue;
+                }
+                try {
+                    return new Row(line[0], requestReader.readValue(text), null);
+                } catch (JsonProcessingException e) {
+                    return new Row(line[0], null, "Invalid JSON: " + e.getOriginalMessage());
+                }
+            }
+            return null;
+        };
+    }
+
+    private RowSource csv(BufferedReader reader) throws IOException {
+        CsvReader csv = new CsvReader(reader);
+        List<String> header = csv.next();
+        if (header == null) {
+            return () -> null;
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).toLowerCase(Locale.ROOT).replaceAll("[^a-z]", ""), i);
+        }
+        if (!columns.containsKey("fullname") || !columns.containsKey("phone")) {
+            throw new BadRequestException("CSV header must contain fullName and phone columns");
+        }
+
+        long[] record = {0};
+        return () -> {
+            List<String> fields = csv.next();
+            if (fields == null) {
+                return null;
+            }
+            record[0]++;
+            try {
+                CustomerRequest request = CustomerRequest.builder()
+                        .fullName(field(fields, columns, "fullname"))
+                        .phone(field(fields, columns, "phone"))
+                        .email(field(fields, columns, "email"))
+                        .dob(parseDate(field(fields, columns, "dob")))
+                        .gender(parseGender(field(fields, columns, "gender")))
+                        .address(field(fields, columns, "address"))
+                        .notes(field(fields, columns, "notes"))
+                        .isVip(parseFlag(field(fields, columns, columns.containsKey("isvip") ? "isvip" : "vip")))
+                        .build();
+                return new Row(record[0], request, null);
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                return new Row(record[0], null, e.getMessage());
+            }
+        };
+    }
+
+    private static String field(List<String> fields, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        if (index == null || index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static LocalDate parseDate(String value) {
+        if (value == null) {
+            return null;
+        }
+        return value.contains("/") ? LocalDate.parse(value, VN_DATE) : LocalDate.parse(value);
+    }
+
+    private static Gender parseGender(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Gender.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid gender: " + value);
+        }
+    }
+
+    private static Boolean parseFlag(String value) {
+        if (value == null) {
+            return null;
+        }
+        return switch (value.toLowerCase(Locale.ROOT)) {
+            case "true", "1", "yes", "y", "x" -> true;
+            default -> false;
+        };
+    }
+
+    private record Row(long number, CustomerRequest request, String error) {
+    }
+
+    private record Outcome(Row row, Long customerId, boolean duplicate, String message) {
+    }
+
+    private static final class Run {
+        private final Long tierId;
+        private final int maxErrors;
+        private final Set<String> seenPhones = new HashSet<>();
+        private final Set<String> seenEmails = new HashSet<>();
+        private final List<CustomerImportResponse.RowError> errors = new ArrayList<>();
+        private boolean errorsTruncated;
+        private long totalRows;
+        private long imported;
+        private long duplicates;
+        private long failed;
+
+        private Run(Long tierId, int maxErrors) {
+            this.tierId = tierId;
+            this.maxErrors = maxErrors;
+        }
+
+        private void fail(Row row, String message) {
+            failed++;
+            error(row.number(), row.request() != null ? row.request().getPhone() : null, message);
+        }
+
+        private void duplicate(Row row, String message) {
+            duplicates++;
+            error(row.number(), row.request().getPhone(), message);
+        }
+
+        private void error(long rowNumber, String phone, String message) {
+            if (errors.size() < maxErrors) {
+                errors.add(CustomerImportResponse.RowError.builder()
+                        .row(rowNumber)
+                        .phone(phone)
+                        .message(message)
+                        .build());
+            } else {
+                errorsTruncated = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.htttql.crmmodule.core.service.impl;
+
+import com.htttql.crmmodule.billing.dto.InvoiceResponse;
+import com.htttql.crmmodule.billing.dto.PointTransactionResponse;
+import com.htttql.crmmodule.billing.service.IInvoiceService;
+import com.htttql.crmmodule.billing.service.IPointLedgerService;
+import com.htttql.crmmodule.common.enums.PermissionLevel;
+import com.htttql.crmmodule.common.exception.ResourceNotFoundException;
+import com.htttql.crmmodule.common.service.ParallelQueryExecutor;
+import com.htttql.crmmodule.core.config.CustomerProperties;
+import com.htttql.crmmodule.core.dto.CustomerOverviewResponse;
+import com.htttql.crmmodule.core.dto.CustomerResponse;
+import com.htttql.crmmodule.core.dto.StaffFieldPermissions;
+import com.htttql.crmmodule.core.service.ICustomerOverviewService;
+import com.htttql.crmmodule.core.service.ICustomerService;
+import com.htttql.crmmodule.core.service.IStaffFieldPermissionsService;
+import com.htttql.crmmodule.lead.dto.AppointmentResponse;
+import com.htttql.crmmodule.lead.service.IAppointmentService;
+import com.htttql.crmmodule.service.dto.CustomerCaseResponse;
+import com.htttql.crmmodule.service.service.ICustomerCaseService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Customer 360 overview
+ * Profile, summary aggregates and the most recent slice of each related list are loaded in parallel through
+ * ParallelQueryExecutor (one read-only transaction per section, shared deadline), so the latency is that of
+ * the slowest section. Every list is bounded by LIMIT in SQL. Only the profile is mandatory: other sections
+ * that fail or miss the deadline are left out and reported in unavailable.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CustomerOverviewServiceImpl implements ICustomerOverviewService {
+
+    private static final String CUSTOMER = "customer";
+    private static final String SUMMARY = "summary";
+    private static final String INVOICES = "recentInvoices";
+    private static final String CASES = "recentCases";
+    private static final String APPOINTMENTS = "recentAppointments";
+    private static final String POINTS = "recentPointTransactions";
+
+    // Một round trip cho tất cả chỉ số tổng hợp, mỗi subquery dùng index theo customer_id
+    private static final String SUMMARY_SQL = """
+            SELECT
+                (SELECT count(*) FROM billing.invoice i WHERE i.customer_id = :id) AS invoice_count,
+                (SELECT COALESCE(sum(i.total_amount), 0) FROM billing.invoice i
+                  WHERE i.customer_id = :id AND i.status IN ('UNPAID', 'PAID')) AS total_invoiced,
+                (SELECT COALESCE(sum(p.amount), 0) FROM billing.payment p
+                  JOIN billing.invoice i ON i.invoice_id = p.invoice_id WHERE i.customer_id = :id) AS total_paid,
+                (SELECT count(*) FROM service.customer_case cc WHERE cc.customer_id = :id) AS case_count,
+                (SELECT count(*) FROM lead.appointment a WHERE a.customer_id = :id) AS appointment_count,
+                (SELECT min(a.start_at) FROM lead.appointment a
+                  WHERE a.customer_id = :id AND a.start_at >= now()
+                    AND a.status IN ('SCHEDULED', 'CONFIRMED')) AS next_appointment_at,
+                (SELECT s.visit_count FROM core.customer_stats s WHERE s.customer_id = :id) AS visit_count,
+                (SELECT s.last_visit_at FROM core.customer_stats s WHERE s.customer_id = :id) AS last_visit_at
+            """;
+
+    private final ICustomerService customerService;
+    private final IInvoiceService invoiceService;
+    private final ICustomerCaseService customerCaseService;
+    private final IAppointmentService appointmentService;
+    private final IPointLedgerService pointLedgerService;
+    private final IStaffFieldPermissionsService staffFieldPermissionsService;
+    private final ParallelQueryExecutor queryExecutor;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final CustomerProperties properties;
+
+    @Override
+    public CustomerOverviewResponse getOverview(Long customerId, Integer limit, Long staffId) {
+        long started = System.nanoTime();
+        CustomerProperties.Overview config = properties.getOverview();
+        int slice = Math.max(1, Math.min(limit != null ? limit : config.getSliceSize(), config.getMaxSliceSize()));
+
+        StaffFieldPermissions permissions = staffFieldPermissionsService.getByStaffId(staffId);
+        boolean invoicesVisible = permissions == null || permissions.getInvoiceView() != PermissionLevel.NO;
+        boolean appointmentsVisible = permissions == null || permissions.getAppointmentView() != PermissionLevel.NO;
+        boolean pointsVisible = permissions == null || permissions.getCustomerTotalPoints() != PermissionLevel.NO;
+
+        Map<String, Supplier<Object>> queries = new LinkedHashMap<>();
+        queries.put(CUSTOMER, () -> customerService.getCustomerById(customerId, staffId));
+        queries.put(SUMMARY, () -> loadSummary(customerId));
+        if (invoicesVisible) {
+            queries.put(INVOICES, () -> invoiceService.getRecentInvoicesByCustomerId(customerId, slice));
+        }
+        queries.put(CASES, () -> customerCaseService.getRecentCasesByCustomerId(customerId, slice));
+        if (appointmentsVisible) {
+            queries.put(APPOINTMENTS, () -> appointmentService.getRecentCustomerAppointments(customerId, slice));
+        }
+        if (pointsVisible) {
+            queries.put(POINTS, () -> pointLedgerService.getRecent(customerId, slice));
+        }
+
+        ParallelQueryExecutor.Results<Object> results = queryExecutor.run(queries,
+                Duration.ofMillis(config.getDeadlineMillis()));
+
+        if (!results.isAvailable(CUSTOMER)) {
+            Throwable failure = results.getFailure(CUSTOMER);
+            if (failure instanceof ResourceNotFoundException notFound) {
+                throw notFound;
+            }
+            log.error("Error loading overview of customer {}", customerId, failure);
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Customer overview is temporarily unavailable");
+        }
+        if (!results.isComplete()) {
+            log.warn("Partial overview of customer {}: unavailable {}", customerId, results.getFailedKeys());
+        }
+
+        CustomerOverviewResponse.Summary summary = (CustomerOverviewResponse.Summary) results.get(SUMMARY);
+        if (summary != null && !invoicesVisible) {
+            summary.setInvoiceCount(null);
+            summary.setTotalInvoiced(null);
+            summary.setTotalPaid(null);
+            summary.setBalanceDue(null);
+        }
+        if (summary != null && !appointmentsVisible) {
+            summary.setAppointmentCount(null);
+            summary.setNextAppointmentAt(null);
+        }
+
+        return CustomerOverviewResponse.builder()
+                .customer((CustomerResponse) results.get(CUSTOMER))
+                .summary(summary)
+                .recentInvoices(withoutCustomer(castList(results.get(INVOICES))))
+                .recentCases(CustomerOverviewServiceImpl.<CustomerCaseResponse>castList(results.get(CASES)))
+                .recentAppointments(CustomerOverviewServiceImpl.<AppointmentResponse>castList(results.get(APPOINTMENTS)))
+                .recentPointTransactions(CustomerOverviewServiceImpl.<PointTransactionResponse>castList(results.get(POINTS)))
+                .unavailable(results.isComplete() ? null : new ArrayList<>(results.getFailedKeys()))
+                .durationMillis((System.nanoTime() - started) / 1_000_000)
+                .build();
+    }
+
+    private CustomerOverviewResponse.Summary loadSummary(Long customerId) {
+        return namedParameterJdbcTemplate.queryForObject(SUMMARY_SQL, Map.of("id", customerId), (rs, rowNum) -> {
+            BigDecimal totalInvoiced = rs.getBigDecimal("total_invoiced");
+            BigDecimal totalPaid = rs.getBigDecimal("total_paid");
+            return CustomerOverviewResponse.Summary.builder()
+                    .invoiceCount(rs.getLong("invoice_count"))
+                    .totalInvoiced(totalInvoiced)
+                    .totalPaid(totalPaid)
+                    .balanceDue(totalInvoiced.subtract(totalPaid).max(BigDecimal.ZERO))
+                    .caseCount(rs.getLong("case_count"))
+                    .appointmentCount(rs.getLong("appointment_count"))
+                    .nextAppointmentAt(toLocalDateTime(rs.getTimestamp("next_appointment_at")))
+                    .visitCount((Integer) rs.getObject("visit_count"))
+                    .lastVisitAt(toLocalDateTime(rs.getTimestamp("last_visit_at")))
+                    .build();
+        });
+    }
+
+    // Thông tin khách đã có (và đã được che) ở phần customer, không lặp lại trong từng hóa đơn
+    private static List<InvoiceResponse> withoutCustomer(List<InvoiceResponse> invoices) {
+        if (invoices != null) {
+            invoices.forEach(invoice -> {
+                invoice.setCustomerName(null);
+                invoice.setCustomerPhone(null);
+            });
+        }
+        return invoices;
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> castList(Object value) {
+        return (List<T>) value;
+    }
+}
@@ -0,0 +1,416 @@
+package com.htttql.crmmodule.core.service.impl;
+
+import com.htttql.crmmodule.common.enums.CustomerSegment;
+import com.htttql.crmmodule.common.exception.BadRequestException;
+import com.htttql.crmmodule.core.config.CustomerProperties;
+import com.htttql.crmmodule.core.dto.SegmentationStatusResponse;
+import com.htttql.crmmodule.core.repository.ICustomerStatsRepository;
+import com.htttql.crmmodule.core.service.ICustomerSegmentationService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Nightly RFM segmentation and churn scoring
+ * Quintile cut points are computed once in SQL (percentile_cont over customer_stats), then the id space
+ * is split into keyset ranges that are scored in parallel on virtual threads, each range read with one
+ * query and written back with one JDBC batch in its own transaction.
+ */
+@Slf4j
+@Service
+public class CustomerSegmentationServiceImpl implements ICustomerSegmentationService {
+
+    private static final String LOCK_KEY = "LOCK:CUSTOMER_SEGMENTATION";
+    private static final double[] QUINTILES = {0.2, 0.4, 0.6, 0.8};
+
+    private static final String CUT_POINTS_SQL = """
+            SELECT
+              percentile_cont(ARRAY[0.2, 0.4, 0.6, 0.8]) WITHIN GROUP (
+                ORDER BY EXTRACT(EPOCH FROM (now() - GREATEST(last_visit_at, last_order_at))) / 86400)
+                FILTER (WHERE COALESCE(last_visit_at, last_order_at) IS NOT NULL) AS recency,
+              percentile_cont(ARRAY[0.2, 0.4, 0.6, 0.8]) WITHIN GROUP (ORDER BY visit_count + order_count)
+                FILTER (WHERE visit_count + order_count > 0) AS frequency,
+              percentile_cont(ARRAY[0.2, 0.4, 0.6, 0.8]) WITHIN GROUP (ORDER BY total_order_value)
+                FILTER (WHERE total_order_value > 0) AS monetary,
+              COUNT(*) AS total,
+              MIN(customer_id) AS min_id,
+              MAX(customer_id) AS max_id
+            FROM core.customer_stats
+            """;
+
+    private static final String CHUNK_SQL = """
+            SELECT s.customer_id, s.visit_count, s.order_count, s.total_order_value,
+                   s.first_visit_at, s.last_visit_at, s.last_order_at, c.created_at
+            FROM core.customer_stats s
+            JOIN core.customer c ON c.customer_id = s.customer_id
+            WHERE s.customer_id >= ? AND s.customer_id < ?
+            """;
+
+    private static final String WRITE_SQL = """
+            UPDATE core.customer_stats
+            SET recency_score = ?, frequency_score = ?, monetary_score = ?, segment = ?,
+                churn_score = ?, scored_at = ?
+            WHERE customer_id = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate writeTransaction;
+    private final ICustomerStatsRepository customerStatsRepository;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final CustomerProperties properties;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // Progress of the current / last run
+    private final AtomicLong totalCustomers = new AtomicLong();
+    private final AtomicLong processedCustomers = new AtomicLong();
+    private final AtomicInteger totalChunks = new AtomicInteger();
+    private final AtomicInteger completedChunks = new AtomicInteger();
+    private final AtomicInteger failedChunks = new AtomicInteger();
+    private volatile String state = "IDLE";
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+    private volatile String lastError;
+
+    private final Counter processedCounter;
+    private final Timer runTimer;
+
+    public CustomerSegmentationServiceImpl(JdbcTemplate jdbcTemplate,
+                                           PlatformTransactionManager transactionManager,
+                                           ICustomerStatsRepository customerStatsRepository,
+                                           RedisTemplate<String, String> redisTemplate,
+                                           CustomerProperties properties,
+                                           MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.customerStatsRepository = customerStatsRepository;
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+
+        this.processedCounter = Counter.builder("crm.segmentation.customers")
+                .description("Customers scored by the RFM segmentation batch")
+                .register(meterRegistry);
+        this.runTimer = Timer.builder("crm.segmentation.duration")
+                .description("Duration of RFM segmentation runs")
+                .register(meterRegistry);
+        Gauge.builder("crm.segmentation.progress", this, s -> s.progressRatio())
+                .description("Progress of the current segmentation run (0..1)")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(cron = "${app.customer.segmentation.cron:0 30 1 * * ?}")
+    public void scheduledRun() {
+        if (!properties.getSegmentation().isEnabled()) {
+            return;
+        }
+        try {
+            runSegmentation();
+        } catch (BadRequestException e) {
+            log.info("Skipping scheduled segmentation: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public SegmentationStatusResponse startAsync() {
+        if (running.get()) {
+            throw new BadRequestException("Customer segmentation is already running");
+        }
+        executor.execute(() -> {
+            try {
+                runSegmentation();
+            } catch (Exception e) {
+                log.warn("Background segmentation run not started: {}", e.getMessage());
+            }
+        });
+        return getStatus();
+    }
+
+    @Override
+    public SegmentationStatusResponse runSegmentation() {
+        if (!running.compareAndSet(false, true)) {
+            throw new BadRequestException("Customer segmentation is already running");
+        }
+        Duration lockTtl = Duration.ofMinutes(properties.getSegmentation().getLockTtlMinutes());
+        if (!Boolean.TRUE.equals(acquireLock(lockTtl))) {
+            running.set(false);
+            throw new BadRequestException("Customer segmentation is running on another node");
+        }
+
+        resetProgress();
+        long started = System.nanoTime();
+        try {
+            execute();
+            state = failedChunks.get() == 0 ? "COMPLETED" : "FAILED";
+        } catch (Exception e) {
+            log.error("Customer segmentation failed", e);
+            lastError = e.getMessage();
+            state = "FAILED";
+        } finally {
+            finishedAt = LocalDateTime.now();
+            runTimer.record(Duration.ofNanos(System.nanoTime() - started));
+            releaseLock();
+            running.set(false);
+        }
+
+        log.info("Customer segmentation {}: {} customers in {} chunks ({} failed), {} ms",
+                state, processedCustomers.get(), completedChunks.get(), failedChunks.get(),
+                Duration.ofNanos(System.nanoTime() - started).toMillis());
+        return getStatus();
+    }
+
+    @Override
+    public SegmentationStatusResponse getStatus() {
+        LocalDateTime end = finishedAt != null ? finishedAt : LocalDateTime.now();
+        double seconds = startedAt != null ? Math.max(0.001, Duration.between(startedAt, end).toMillis() / 1000.0) : 0;
+        return SegmentationStatusResponse.builder()
+                .state(state)
+                .totalCustomers(totalCustomers.get())
+                .processedCustomers(processedCustomers.get())
+                .totalChunks(totalChunks.get())
+                .completedChunks(completedChunks.get())
+                .failedChunks(failedChunks.get())
+                .percent(Math.round(progressRatio() * 1000) / 10.0)
+                .customersPerSecond(seconds > 0 ? Math.round(processedCustomers.get() / seconds) : 0)
+                .startedAt(startedAt)
+                .finishedAt(finishedAt)
+                .error(lastError)
+                .build();
+    }
+
+    private void execute() throws InterruptedException {
+        // Khách chưa có dòng thống kê vẫn cần được phân khúc (INACTIVE)
+        writeTransaction.executeWithoutResult(status -> customerStatsRepository.insertMissing());
+
+        CutPoints cutPoints = jdbcTemplate.queryForObject(CUT_POINTS_SQL, (rs, i) -> CutPoints.from(rs));
+        if (cutPoints == null || cutPoints.total == 0) {
+            return;
+        }
+        totalCustomers.set(cutPoints.total);
+
+        List<long[]> ranges = new ArrayList<>();
+        long chunkSize = properties.getSegmentation().getChunkSize();
+        for (long lo = cutPoints.minId; lo <= cutPoints.maxId; lo += chunkSize) {
+            ranges.add(new long[]{lo, Math.min(lo + chunkSize, cutPoints.maxId + 1)});
+        }
+        totalChunks.set(ranges.size());
+
+        LocalDateTime scoredAt = LocalDateTime.now();
+        Semaphore permits = new Semaphore(properties.getSegmentation().getParallelism());
+        List<Future<?>> futures = new ArrayList<>(ranges.size());
+        for (long[] range : ranges) {
+            permits.acquire();
+            futures.add(executor.submit(() -> {
+                try {
+                    scoreRange(range[0], range[1], cutPoints, scoredAt);
+                    completedChunks.incrementAndGet();
+                } catch (Exception e) {
+                    failedChunks.incrementAndGet();
+                    lastError = e.getMessage();
+                    log.error("Segmentation chunk [{}, {}) failed", range[0], range[1], e);
+                } finally {
+                    permits.release();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                log.error("Segmentation chunk task failed", e.getCause());
+            }
+        }
+    }
+
+    private void scoreRange(long fromId, long toId, CutPoints cutPoints, LocalDateTime scoredAt) {
+        List<Object[]> updates = jdbcTemplate.query(CHUNK_SQL,
+                (rs, i) -> score(rs, cutPoints, scoredAt), fromId, toId);
+        if (updates.isEmpty()) {
+            return;
+        }
+        writeTransaction.executeWithoutResult(status -> jdbcTemplate.batchUpdate(WRITE_SQL, updates));
+        processedCustomers.addAndGet(updates.size());
+        processedCounter.increment(updates.size());
+    }
+
+    private Object[] score(ResultSet rs, CutPoints cutPoints, LocalDateTime now) throws SQLException {
+        long customerId = rs.getLong("customer_id");
+        int visits = rs.getInt("visit_count");
+        int frequency = visits + rs.getInt("order_count");
+        double monetary = rs.getBigDecimal("total_order_value").doubleValue();
+        LocalDateTime firstVisit = toLocalDateTime(rs.getTimestamp("first_visit_at"));
+        LocalDateTime lastVisit = toLocalDateTime(rs.getTimestamp("last_visit_at"));
+        LocalDateTime lastOrder = toLocalDateTime(rs.getTimestamp("last_order_at"));
+        LocalDateTime memberSince = toLocalDateTime(rs.getTimestamp("created_at"));
+
+        LocalDateTime lastActivity = latest(lastVisit, lastOrder);
+        if (lastActivity == null || frequency == 0) {
+            double churn = inactiveChurn(memberSince, now);
+            return new Object[]{1, 1, 1, CustomerSegment.INACTIVE.name(), churn, Timestamp.valueOf(now), customerId};
+        }
+
+        double recencyDays = Math.max(0, Duration.between(lastActivity, now).toMinutes() / 1440.0);
+        // Recency: càng gần càng tốt nên đảo thứ hạng
+        int r = 6 - quintile(recencyDays, cutPoints.recency);
+        int f = quintile(frequency, cutPoints.frequency);
+        int m = monetary > 0 ? quintile(monetary, cutPoints.monetary) : 1;
+
+        double churn = churn(recencyDays, visits, firstVisit, lastVisit);
+        CustomerSegment segment = CustomerSegment.fromScores(r, f, m);
+        return new Object[]{r, f, m, segment.name(), churn, Timestamp.valueOf(now), customerId};
+    }
+
+    /**
+     * Churn probability from time since last activity relative to the customer's own visit cadence:
+     * missing two usual visits gives 50%, four gives 75%.
+     */
+    private double churn(double recencyDays, int visits, LocalDateTime firstVisit, LocalDateTime lastVisit) {
+        double cadence = properties.getSegmentation().getDefaultCadenceDays();
+        if (visits > 1 && firstVisit != null && lastVisit != null) {
+            double span = Duration.between(firstVisit, lastVisit).toMinutes() / 1440.0;
+            cadence = Math.max(7, span / (visits - 1));
+        }
+        double p = 1 - Math.pow(0.5, recencyDays / (2 * cadence));
+        return round4(p);
+    }
+
+    private double inactiveChurn(LocalDateTime memberSince, LocalDateTime now) {
+        if (memberSince == null) {
+            return 0.5;
+        }
+        double days = Duration.between(memberSince, now).toMinutes() / 1440.0;
+        return round4(Math.min(1.0, 0.3 + days / 180.0 * 0.6));
+    }
+
+    // 1..5: số điểm cắt nhỏ hơn giá trị + 1
+    private static int quintile(double value, double[] cuts) {
+        if (cuts == null) {
+            return 3;
+        }
+        int score = 1;
+        for (double cut : cuts) {
+            if (value > cut) {
+                score++;
+            }
+        }
+        return score;
+    }
+
+    private double progressRatio() {
+        long total = totalCustomers.get();
+        return total == 0 ? 0 : Math.min(1.0, (double) processedCustomers.get() / total);
+    }
+
+    private void resetProgress() {
+        totalCustomers.set(0);
+        processedCustomers.set(0);
+        totalChunks.set(0);
+        completedChunks.set(0);
+        failedChunks.set(0);
+        lastError = null;
+        finishedAt = null;
+        startedAt = LocalDateTime.now();
+        state = "RUNNING";
+    }
+
+    private Boolean acquireLock(Duration ttl) {
+        try {
+            return redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, nodeId, ttl);
+        } catch (Exception e) {
+            // Redis không khả dụng: vẫn chạy, chỉ bảo vệ trong node này
+            log.warn("Cannot acquire segmentation lock in Redis, running without cluster lock: {}", e.getMessage());
+            return true;
+        }
+    }
+
+    private void releaseLock() {
+        try {
+            if (nodeId.equals(redisTemplate.opsForValue().get(LOCK_KEY))) {
+                redisTemplate.delete(LOCK_KEY);
+            }
+        } catch (Exception e) {
+            log.warn("Cannot release segmentation lock: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static LocalDateTime latest(LocalDateTime a, LocalDateTime b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+
+    private static double round4(double value) {
+        return Math.round(value * 10000) / 10000.0;
+    }
+
+    private record CutPoints(double[] recency, double[] frequency, double[] monetary,
+                             long total, long minId, long maxId) {
+
+        static CutPoints from(ResultSet rs) throws SQLException {
+            return new CutPoints(
+                    toDoubles(rs.getArray("recency")),
+                    toDoubles(rs.getArray("frequency")),
+                    toDoubles(rs.getArray("monetary")),
+                    rs.getLong("total"),
+                    rs.getLong("min_id"),
+                    rs.getLong("max_id"));
+        }
+
+        private static double[] toDoubles(Array array) throws SQLException {
+            if (array == null) {
+                return null;
+            }
+            Object[] values = (Object[]) array.getArray();
+            if (values.length != QUINTILES.length) {
+                return null;
+            }
+            double[] result = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                result[i] = ((Number) values[i]).doubleValue();
+            }
+            return result;
+        }
+    }
+}
@@ -1,17 +1,29 @@
 package com.htttql.crmmodule.core.service.impl;
 
+import com.htttql.crmmodule.common.dto.PageResponse;
 import com.htttql.crmmodule.common.enums.PermissionLevel;
 import com.htttql.crmmodule.common.enums.TierCode;
 import com.htttql.crmmodule.common.exception.BadRequestException;
 import com.htttql.crmmodule.common.exception.ResourceNotFoundException;
 import com.htttql.crmmodule.common.factory.CustomerResponseFactory;
+import com.htttql.crmmodule.common.service.KeysetPaginator;
+import com.htttql.crmmodule.common.service.SparseFieldsetQuery;
+import com.htttql.crmmodule.common.service.StreamingExporter;
+import com.htttql.crmmodule.common.util.DataMasker;
+import com.htttql.crmmodule.common.util.TextNormalizer;
+import com.htttql.crmmodule.core.config.CustomerSearchIndexInitializer;
+import com.htttql.crmmodule.core.dto.CustomerBusinessResponse;
+import com.htttql.crmmodule.core.dto.CustomerDetailResponse;
+import com.htttql.crmmodule.core.dto.CustomerListView;
 import com.htttql.crmmodule.core.dto.CustomerRequest;
 import com.htttql.crmmodule.core.dto.CustomerResponse;
 import com.htttql.crmmodule.core.dto.StaffFieldPermissions;
 import com.htttql.crmmodule.core.entity.Customer;
+import com.htttql.crmmodule.core.entity.CustomerStats;
 import com.htttql.crmmodule.core.entity.Tier;
 import com.htttql.crmmodule.core.repository.ICustomerRepository;
 import com.htttql.crmmodule.core.repository.ITierRepository;
+import com.htttql.crmmodule.core.service.IAutocompleteService;
 import com.htttql.crmmodule.core.service.ICustomerService;
 import com.htttql.crmmodule.core.service.ICustomerTierService;
 import com.htttql.crmmodule.core.service.IStaffFieldPermissionsService;
@@ -21,36 +33,75 @@ import org.slf4j.LoggerFactory;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Map;
+import java.util.function.Function;
+
+import static com.htttql.crmmodule.common.service.StreamingExporter.maskWhen;
 
 @Service("customerService")
 public class CustomerServiceImpl implements ICustomerService {
 
     private static final Logger logger = LoggerFactory.getLogger(CustomerServiceImpl.class);
 
+    // Các field của CustomerResponse có thể chọn qua ?fields=
+    private static final SparseFieldsetQuery.Catalog<Customer, CustomerResponse> FIELDS =
+            SparseFieldsetQuery.Catalog.of(Customer.class, CustomerResponse::new, "customerId")
+                    .field("customerId", "customerId", CustomerResponse::setCustomerId)
+                    .field("fullName", "fullName", CustomerResponse::setFullName)
+                    .field("phone", "phone", CustomerResponse::setPhone)
+                    .field("email", "email", CustomerResponse::setEmail)
+                    .field("displayAddress", "address", CustomerResponse::setDisplayAddress)
+                    .field("dob", "dob", CustomerResponse::setDob)
+                    .field("notes", "notes", CustomerResponse::setNotes)
+                    .field("tierCode", "tier.code", (CustomerResponse r, TierCode code) -> r.setTierCode(code.name()))
+                    .field("tierName", "tier.code", (CustomerResponse r, TierCode code) -> r.setTierName(code.getDescription()))
+                    .field("isVip", "isVip", CustomerResponse::setIsVip)
+                    .field("totalSpent", "totalSpent", CustomerResponse::setTotalSpent)
+                    .field("totalPoints", "totalPoints", CustomerResponse::setTotalPoints);
+
     private final ICustomerRepository customerRepository;
     private final ITierRepository tierRepository;
     private final ICustomerTierService customerTierService;
     private final CustomerResponseFactory responseFactory;
     private final IStaffFieldPermissionsService staffFieldPermissionsService;
+    private final IAutocompleteService autocompleteService;
+    private final KeysetPaginator keysetPaginator;
+    private final SparseFieldsetQuery sparseFieldsetQuery;
+    private final StreamingExporter streamingExporter;
+    private final CustomerSearchIndexInitializer searchIndexInitializer;
 
     public CustomerServiceImpl(ICustomerRepository customerRepository,
                               ITierRepository tierRepository,
                               ICustomerTierService customerTierService,
                               CustomerResponseFactory responseFactory,
-                              IStaffFieldPermissionsService staffFieldPermissionsService) {
+                              IStaffFieldPermissionsService staffFieldPermissionsService,
+                              IAutocompleteService autocompleteService,
+                              KeysetPaginator keysetPaginator,
+                              SparseFieldsetQuery sparseFieldsetQuery,
+                              StreamingExporter streamingExporter,
+                              CustomerSearchIndexInitializer searchIndexInitializer) {
         this.customerRepository = customerRepository;
         this.tierRepository = tierRepository;
         this.customerTierService = customerTierService;
         this.responseFactory = responseFactory;
         this.staffFieldPermissionsService = staffFieldPermissionsService;
+        this.autocompleteService = autocompleteService;
+        this.keysetPaginator = keysetPaginator;
+        this.sparseFieldsetQuery = sparseFieldsetQuery;
+        this.streamingExporter = streamingExporter;
+        this.searchIndexInitializer = searchIndexInitializer;
     }
 
     @Override
     @Transactional(readOnly = true)
     public Page<CustomerResponse> getAllCustomers(Pageable pageable, Long staffId) {
-        Page<Customer> customers = customerRepository.findAll(pageable);
+        // Projection có join tier: một câu SELECT cho cả trang (cộng COUNT), không lazy load từng dòng
+        Page<CustomerListView> customers = customerRepository.findAllListViews(pageable);
 
         // Get staff permissions
         StaffFieldPermissions staffPermissions = null;
@@ -62,7 +113,44 @@ public class CustomerServiceImpl implements ICustomerService {
         }
 
         final StaffFieldPermissions finalPermissions = staffPermissions;
-        return customers.map(customer -> toResponseWithPermissions(customer, finalPermissions));
+        return customers.map(customer -> withPermissions(responseFactory.createFullResponse(customer), finalPermissions));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public PageResponse<CustomerResponse> getAllCustomers(String cursor, int size, Sort sort, Long staffId) {
+        PageResponse<Customer> customers = keysetPaginator.scroll(customerRepository, Customer.class,
+                cursor, size, sort, "tier");
+        StaffFieldPermissions permissions = findPermissions(staffId);
+        return customers.map(customer -> toResponseWithPermissions(customer, permissions));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<Map<String, Object>> getAllCustomerFields(Pageable pageable, String fields, Long staffId) {
+        StaffFieldPermissions permissions = findPermissions(staffId);
+        return sparseFieldsetQuery.find(FIELDS, fields, pageable, response -> withPermissions(response, permissions));
+    }
+
+    @Override
+    public StreamingResponseBody exportCustomers(String format, Long staffId) {
+        String resolved = StreamingExporter.resolveFormat(format);
+        StaffFieldPermissions p = staffFieldPermissionsService.getForExport(staffId);
+        StreamingExporter.Definition definition = StreamingExporter.Definition
+                .of("customer", "core.customer c JOIN core.tier t ON t.tier_id = c.tier_id", "customerId", "c.customer_id")
+                .column("fullName", "c.full_name", maskWhen(hidden(p, StaffFieldPermissions::getCustomerName), DataMasker::maskName))
+                .column("phone", "c.phone", maskWhen(hidden(p, StaffFieldPermissions::getCustomerPhone), DataMasker::maskPhone))
+                .column("email", "c.email", maskWhen(hidden(p, StaffFieldPermissions::getCustomerEmail), DataMasker::maskEmail))
+                .column("dob", "c.dob", maskWhen(hidden(p, StaffFieldPermissions::getCustomerDob), v -> null))
+                .column("gender", "c.gender", maskWhen(hidden(p, StaffFieldPermissions::getCustomerGender), v -> null))
+                .column("address", "c.address", maskWhen(hidden(p, StaffFieldPermissions::getCustomerAddress), DataMasker::maskAddress))
+                .column("tierCode", "t.code", maskWhen(hidden(p, StaffFieldPermissions::getCustomerTier), v -> null))
+                .column("isVip", "c.is_vip", maskWhen(hidden(p, StaffFieldPermissions::getCustomerVipStatus), v -> null))
+                .column("totalSpent", "c.total_spent", maskWhen(hidden(p, StaffFieldPermissions::getCustomerTotalSpent), v -> null))
+                .column("totalPoints", "c.total_points", maskWhen(hidden(p, StaffFieldPermissions::getCustomerTotalPoints), v -> null))
+                .column("notes", "c.notes", maskWhen(hidden(p, StaffFieldPermissions::getCustomerNotes), DataMasker::maskText))
+                .column("createdAt", "c.created_at");
+        return streamingExporter.stream(definition, resolved);
     }
 
     @Override
@@ -83,6 +171,57 @@ public class CustomerServiceImpl implements ICustomerService {
         return toResponseWithPermissions(customer, staffPermissions);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public Page<CustomerResponse> searchCustomers(String query, Pageable pageable, Long staffId) {
+        String raw = query != null ? query.trim() : "";
+        if (raw.length() < 2) {
+            throw new BadRequestException("Search query must have at least 2 characters");
+        }
+
+        Page<Customer> customers;
+        if (raw.contains("@")) {
+            customers = customerRepository.findByEmail(raw.toLowerCase(), pageable);
+        } else if (raw.matches("[0-9+ .()-]+")) {
+            String digits = TextNormalizer.digitsOnly(raw);
+            // "--", "()" ... không còn chữ số nào: LIKE '%' sẽ khớp toàn bộ bảng
+            if (digits.length() < 2) {
+                throw new BadRequestException("Phone search query must have at least 2 digits");
+            }
+            String term = escapeLike(digits);
+            // Dưới 3 ký tự trigram không có tác dụng: chỉ tìm theo tiền tố (btree text_pattern_ops)
+            String contains = digits.length() < 3 ? term + "%" : "%" + term + "%";
+            customers = customerRepository.searchByPhone(digits, contains, term + "%", "%" + term, pageable);
+        } else {
+            String folded = TextNormalizer.fold(raw);
+            // Nhiều từ khóa: "nguyen an" khớp "nguyen van an"
+            String term = escapeLike(folded).replace(' ', '%');
+            String contains = folded.length() < 3 ? term + "%" : "%" + term + "%";
+            String prefix = term + "%";
+            String wordPrefix = "% " + term + "%";
+            customers = searchIndexInitializer.isTrigramAvailable()
+                    ? customerRepository.searchByName(folded, contains, prefix, wordPrefix, pageable)
+                    : customerRepository.searchByNameWithoutTrigram(folded, contains, prefix, wordPrefix, pageable);
+        }
+
+        StaffFieldPermissions permissions = findPermissions(staffId);
+        return customers.map(customer -> toResponseWithPermissions(customer, permissions));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<CustomerDetailResponse> getCustomerDetails(Pageable pageable) {
+        return customerRepository.findAllWithStats(pageable)
+                .map(row -> responseFactory.createDetailResponse((Customer) row[0], (CustomerStats) row[1]));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<CustomerBusinessResponse> getCustomerBusinessInsights(Pageable pageable) {
+        return customerRepository.findAllWithStats(pageable)
+                .map(row -> responseFactory.createBusinessResponse((Customer) row[0], (CustomerStats) row[1]));
+    }
+
     @Override
     @Transactional
     public CustomerResponse createCustomer(CustomerRequest request) {
@@ -109,6 +248,7 @@ public class CustomerServiceImpl implements ICustomerService {
                 .build();
 
         customer = customerRepository.save(customer);
+        autocompleteService.indexCustomer(customer.getCustomerId(), customer.getFullName(), customer.getPhone());
         return toResponse(customer);
     }
 
@@ -147,6 +287,7 @@ public class CustomerServiceImpl implements ICustomerService {
             customer.setIsVip(request.getIsVip());
 
         customer = customerRepository.save(customer);
+        autocompleteService.indexCustomer(customer.getCustomerId(), customer.getFullName(), customer.getPhone());
         return toResponse(customer);
     }
 
@@ -157,6 +298,7 @@ public class CustomerServiceImpl implements ICustomerService {
             throw new ResourceNotFoundException("Customer", "id", id);
         }
         customerRepository.deleteById(id);
+        autocompleteService.removeCustomer(id);
     }
 
     /**
@@ -173,13 +315,33 @@ public class CustomerServiceImpl implements ICustomerService {
      */
     @Override
     @Transactional
-    public void refreshAllCustomerTiers() {
-        customerTierService.refreshAllCustomerTiers();
+    public int refreshAllCustomerTiers() {
+        return customerTierService.refreshAllCustomerTiers();
+    }
+
+    private StaffFieldPermissions findPermissions(Long staffId) {
+        try {
+            return staffFieldPermissionsService.getByStaffId(staffId);
+        } catch (Exception e) {
+            // If permissions not found, return full data
+            logger.debug("No permissions found for staff ID: {}, returning full data", staffId);
+            return null;
+        }
+    }
+
+    private static boolean hidden(StaffFieldPermissions permissions, Function<StaffFieldPermissions, PermissionLevel> field) {
+        return permissions != null && field.apply(permissions) == PermissionLevel.NO;
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
     }
 
     private CustomerResponse toResponseWithPermissions(Customer customer, StaffFieldPermissions permissions) {
-        CustomerResponse response = responseFactory.createFullResponse(customer);
+        return withPermissions(responseFactory.createFullResponse(customer), permissions);
+    }
 
+    private CustomerResponse withPermissions(CustomerResponse response, StaffFieldPermissions permissions) {
         // Apply field-level permissions if permissions exist
         if (permissions != null) {
             applyFieldMasking(response, permissions);
@@ -195,17 +357,17 @@ public class CustomerServiceImpl implements ICustomerService {
 
         // Mask customer name based on permission
         if (permissions.getCustomerName() == PermissionLevel.NO) {
-            response.setFullName(maskName(response.getFullName()));
+            response.setFullName(DataMasker.maskName(response.getFullName()));
         }
 
         // Mask phone based on permission
         if (permissions.getCustomerPhone() == PermissionLevel.NO) {
-            response.setPhone(maskPhone(response.getPhone()));
+            response.setPhone(DataMasker.maskPhone(response.getPhone()));
         }
 
         // Mask email based on permission
         if (permissions.getCustomerEmail() == PermissionLevel.NO) {
-            response.setEmail(maskEmail(response.getEmail()));
+            response.setEmail(DataMasker.maskEmail(response.getEmail()));
         }
 
         // Mask DOB based on permission
@@ -215,12 +377,12 @@ public class CustomerServiceImpl implements ICustomerService {
 
         // Mask address based on permission
         if (permissions.getCustomerAddress() == PermissionLevel.NO) {
-            response.setDisplayAddress(maskAddress(response.getDisplayAddress()));
+            response.setDisplayAddress(DataMasker.maskAddress(response.getDisplayAddress()));
         }
 
         // Mask notes based on permission
         if (permissions.getCustomerNotes() == PermissionLevel.NO) {
-            response.setNotes(maskText(response.getNotes()));
+            response.setNotes(DataMasker.maskText(response.getNotes()));
         }
 
         // Financial data - only show if VIEW or EDIT permission
@@ -246,37 +408,4 @@ public class CustomerServiceImpl implements ICustomerService {
     private CustomerResponse toResponse(Customer customer) {
         return responseFactory.createBasicResponse(customer);
     }
-
-    // Helper methods for masking sensitive data
-    private String maskName(String name) {
-        if (name == null || name.length() <= 2) return "***";
-        return name.charAt(0) + "***" + name.charAt(name.length() - 1);
-    }
-
-    private String maskPhone(String phone) {
-        if (phone == null) return "***";
-        String cleanPhone = phone.replaceAll("\\D", "");
-        if (cleanPhone.length() <= 4) return "***";
-        return cleanPhone.substring(0, 3) + "***" + cleanPhone.substring(cleanPhone.length() - 2);
-    }
-
-    private String maskEmail(String email) {
-        if (email == null) return "***";
-        int atIndex = email.indexOf('@');
-        if (atIndex <= 1) return "***";
-        String localPart = email.substring(0, atIndex);
-        String domain = email.substring(atIndex);
-        if (localPart.length() <= 2) return "***" + domain;
-        return localPart.charAt(0) + "***" + domain;
-    }
-
-    private String maskAddress(String address) {
-        if (address == null || address.length() <= 10) return "***";
-        return address.substring(0, 5) + "***" + address.substring(address.length() - 5);
-    }
-
-    private String maskText(String text) {
-        if (text == null || text.length() <= 5) return "***";
-        return text.substring(0, 3) + "***";
-    }
 }
@@ -0,0 +1,80 @@
+package com.htttql.crmmodule.core.service.impl;
+
+import com.htttql.crmmodule.core.repository.ICustomerRepository;
+import com.htttql.crmmodule.core.repository.ICustomerStatsRepository;
+import com.htttql.crmmodule.core.service.ICustomerStatsService;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Tăng dần khi có lượt ghé (lịch hẹn DONE) / đơn hàng (hóa đơn PAID) bằng upsert một câu SQL,
+ * các thao tác hoàn tác (bỏ DONE, VOID hóa đơn đã trả) tính lại từ dữ liệu gốc cho riêng khách đó.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CustomerStatsServiceImpl implements ICustomerStatsService {
+
+    private final ICustomerStatsRepository customerStatsRepository;
+    private final ICustomerRepository customerRepository;
+
+    @Override
+    @Transactional
+    public void recordVisit(Long customerId, LocalDateTime visitAt) {
+        if (customerId == null) {
+            return;
+        }
+        customerStatsRepository.incrementVisit(customerId, visitAt != null ? visitAt : LocalDateTime.now());
+    }
+
+    @Override
+    @Transactional
+    public void recordOrder(Long customerId, BigDecimal amount, LocalDateTime paidAt) {
+        if (customerId == null) {
+            return;
+        }
+        customerStatsRepository.incrementOrder(customerId,
+                amount != null ? amount : BigDecimal.ZERO,
+                paidAt != null ? paidAt : LocalDateTime.now());
+    }
+
+    @Override
+    @Transactional
+    public void recalculate(Long customerId) {
+        if (customerId == null) {
+            return;
+        }
+        customerStatsRepository.rebuildForCustomer(customerId);
+    }
+
+    @Override
+    @Transactional
+    public int recalculateAll() {
+        int rows = customerStatsRepository.rebuildAll();
+        log.info("Customer stats recalculated for {} customers", rows);
+        return rows;
+    }
+
+    /**
+     * Backfill the projection once for databases created before it existed
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void backfillIfEmpty() {
+        try {
+            if (customerStatsRepository.count() == 0 && customerRepository.count() > 0) {
+                recalculateAll();
+            }
+        } catch (Exception e) {
+            log.error("Error backfilling customer stats", e);
+        }
+    }
+}
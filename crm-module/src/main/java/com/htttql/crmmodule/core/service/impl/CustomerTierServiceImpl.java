@@ -2,29 +2,63 @@ package com.htttql.crmmodule.core.service.impl;
 
 import com.htttql.crmmodule.common.enums.TierCode;
 import com.htttql.crmmodule.common.exception.ResourceNotFoundException;
+import com.htttql.crmmodule.core.config.CustomerProperties;
 import com.htttql.crmmodule.core.dto.CustomerResponse;
 import com.htttql.crmmodule.core.entity.Customer;
 import com.htttql.crmmodule.core.entity.Tier;
+import com.htttql.crmmodule.core.event.CustomerBalanceChangedEvent;
 import com.htttql.crmmodule.core.repository.ICustomerRepository;
 import com.htttql.crmmodule.core.repository.ITierRepository;
 import com.htttql.crmmodule.core.service.ICustomerTierService;
 
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class CustomerTierServiceImpl implements ICustomerTierService {
 
+    private static final List<TierCode> TIERS_BY_RANK = Arrays.stream(TierCode.values())
+            .sorted(Comparator.comparingLong(TierCode::getMinSpent).reversed())
+            .toList();
+
+    private static final String REFRESH_ALL_SQL = buildRefreshSql("");
+    private static final String REFRESH_DIRTY_SQL = buildRefreshSql(" AND c.customer_id = ANY(?)");
+
     private final ICustomerRepository customerRepository;
     private final ITierRepository tierRepository;
     private final ModelMapper modelMapper;
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+    private final CustomerProperties properties;
+
+    // Khách có số dư thay đổi nhưng chưa đánh giá được hạng trong transaction, sweeper sẽ xử lý
+    private final Set<Long> dirtyCustomers = ConcurrentHashMap.newKeySet();
+
+    // tier_id <-> TierCode, bảng tier gần như không đổi nên chỉ nạp một lần
+    private volatile Map<TierCode, Long> tierIds = Map.of();
+    private volatile Map<Long, TierCode> tierCodes = Map.of();
 
     @Override
     @Transactional
@@ -39,24 +73,24 @@ public class CustomerTierServiceImpl implements ICustomerTierService {
         return toResponse(customer);
     }
 
+    /**
+     * One set-based UPDATE ... FROM core.tier: the target tier code is computed in SQL from the
+     * TierCode thresholds and only customers whose tier actually changes are written
+     * (no entity is loaded, a single scan of core.customer)
+     */
     @Override
     @Transactional
-    public void refreshAllCustomerTiers() {
-        Iterable<Customer> allCustomers = customerRepository.findAll();
-        int updatedCount = 0;
-
-        for (Customer customer : allCustomers) {
-            try {
-                if (refreshCustomerTierInternal(customer)) {
-                    updatedCount++;
-                }
-            } catch (Exception e) {
-                // Log error silently, don't fail the batch operation
-                log.error("Error refreshing tier for customer {}: {}", customer.getCustomerId(), e.getMessage());
-            }
-        }
-
-        log.info("Customer tier refresh completed. Updated {} customers", updatedCount);
+    public int refreshAllCustomerTiers() {
+        long started = System.nanoTime();
+        Map<String, Integer> changedByTier = new LinkedHashMap<>();
+        jdbcTemplate.query(REFRESH_ALL_SQL, rs -> {
+            changedByTier.put(rs.getString("code"), rs.getInt("changed"));
+        });
+        int updatedCount = changedByTier.values().stream().mapToInt(Integer::intValue).sum();
+
+        log.info("Customer tier refresh completed in {} ms. Updated {} customers {}",
+                (System.nanoTime() - started) / 1_000_000, updatedCount, changedByTier);
+        return updatedCount;
     }
 
     @Override
@@ -68,51 +102,142 @@ public class CustomerTierServiceImpl implements ICustomerTierService {
         refreshCustomerTierInternal(customer);
     }
 
+    /**
+     * Re-evaluate the tier of the managed customer carried by the event, in the publisher's transaction.
+     * Failures never break the billing write: the customer is left for the sweeper instead.
+     */
+    @EventListener
+    public void onBalanceChanged(CustomerBalanceChangedEvent event) {
+        Customer customer = event.getCustomer();
+        try {
+            refreshCustomerTierInternal(customer);
+        } catch (Exception e) {
+            log.warn("Deferred tier evaluation of customer {}: {}", customer.getCustomerId(), e.getMessage());
+            markDirty(customer.getCustomerId());
+        }
+    }
+
+    @Override
+    public void markDirty(Long customerId) {
+        if (customerId != null) {
+            dirtyCustomers.add(customerId);
+        }
+    }
+
+    /**
+     * Periodically re-evaluates dirty customers with the set-based UPDATE restricted to their ids
+     */
+    @Scheduled(fixedDelayString = "${app.customer.tier.sweep-millis:60000}")
+    public void sweepDirtyCustomers() {
+        int batchSize = properties.getTier().getSweepBatchSize();
+        while (!dirtyCustomers.isEmpty()) {
+            List<Long> batch = new ArrayList<>(Math.min(batchSize, dirtyCustomers.size()));
+            Iterator<Long> iterator = dirtyCustomers.iterator();
+            while (iterator.hasNext() && batch.size() < batchSize) {
+                batch.add(iterator.next());
+                iterator.remove();
+            }
+            try {
+                int[] changed = {0};
+                jdbcTemplate.query(REFRESH_DIRTY_SQL, rs -> {
+                    changed[0] += rs.getInt("changed");
+                }, (Object) batch.toArray(new Long[0]));
+                log.debug("Tier sweep evaluated {} dirty customers, {} changed tier", batch.size(), changed[0]);
+            } catch (Exception e) {
+                // Trả lại để lần quét sau thử lại
+                dirtyCustomers.addAll(batch);
+                log.warn("Tier sweep failed for {} customers: {}", batch.size(), e.getMessage());
+                return;
+            }
+        }
+    }
+
+    // Chỉ so sánh và gán tham chiếu tier theo id: không đọc lại customer, không tra bảng tier
     private boolean refreshCustomerTierInternal(Customer customer) {
         BigDecimal totalSpent = customer.getTotalSpent() != null ? customer.getTotalSpent() : BigDecimal.ZERO;
         Integer totalPoints = customer.getTotalPoints() != null ? customer.getTotalPoints() : 0;
 
         TierCode appropriateTierCode = determineTierCode(totalSpent, totalPoints);
-        Tier currentTier = customer.getTier();
+        Long currentTierId = customer.getTier() != null ? customer.getTier().getTierId() : null;
 
         // Only update if tier has changed
-        if (currentTier == null || !currentTier.getCode().equals(appropriateTierCode)) {
-            Tier newTier = tierRepository.findByCode(appropriateTierCode)
-                    .orElseThrow(() -> new RuntimeException("Tier not found: " + appropriateTierCode));
-
-            // Update tier in database
-            customer.setTier(newTier);
+        if (currentTierId == null || tierCode(currentTierId) != appropriateTierCode) {
+            // Dirty checking ghi thay đổi khi transaction commit
+            customer.setTier(entityManager.getReference(Tier.class, tierId(appropriateTierCode)));
 
             // Update VIP flag based on tier
-            boolean isVip = appropriateTierCode == TierCode.VIP;
-            customer.setIsVip(isVip);
-
-            customerRepository.save(customer);
+            customer.setIsVip(appropriateTierCode == TierCode.VIP);
             return true;
         }
 
         return false;
     }
 
-    private TierCode determineTierCode(BigDecimal totalSpent, Integer totalPoints) {
-        if (totalSpent.compareTo(BigDecimal.valueOf(TierCode.VIP.getMinSpent())) >= 0 &&
-                totalPoints >= TierCode.VIP.getMinPoints()) {
-            return TierCode.VIP;
+    private Long tierId(TierCode code) {
+        Long id = tierIds.get(code);
+        if (id == null) {
+            loadTiers();
+            id = tierIds.get(code);
+        }
+        if (id == null) {
+            throw new IllegalStateException("Tier not found: " + code);
         }
+        return id;
+    }
 
-        if (totalSpent.compareTo(BigDecimal.valueOf(TierCode.GOLD.getMinSpent())) >= 0 &&
-                totalPoints >= TierCode.GOLD.getMinPoints()) {
-            return TierCode.GOLD;
+    private TierCode tierCode(Long tierId) {
+        TierCode code = tierCodes.get(tierId);
+        if (code == null) {
+            loadTiers();
+            code = tierCodes.get(tierId);
         }
+        return code;
+    }
 
-        if (totalSpent.compareTo(BigDecimal.valueOf(TierCode.SILVER.getMinSpent())) >= 0 &&
-                totalPoints >= TierCode.SILVER.getMinPoints()) {
-            return TierCode.SILVER;
+    private synchronized void loadTiers() {
+        Map<TierCode, Long> ids = new EnumMap<>(TierCode.class);
+        Map<Long, TierCode> codes = new HashMap<>();
+        for (Tier tier : tierRepository.findAll()) {
+            ids.put(tier.getCode(), tier.getTierId());
+            codes.put(tier.getTierId(), tier.getCode());
         }
+        tierCodes = codes;
+        tierIds = ids;
+    }
 
+    private TierCode determineTierCode(BigDecimal totalSpent, Integer totalPoints) {
+        for (TierCode code : TIERS_BY_RANK) {
+            if (totalSpent.compareTo(BigDecimal.valueOf(code.getMinSpent())) >= 0 &&
+                    totalPoints >= code.getMinPoints()) {
+                return code;
+            }
+        }
         return TierCode.REGULAR;
     }
 
+    // CASE WHEN theo cùng thứ tự ngưỡng với determineTierCode (hạng cao nhất trước)
+    private static String buildRefreshSql(String filter) {
+        StringBuilder target = new StringBuilder("CASE");
+        for (TierCode code : TIERS_BY_RANK) {
+            target.append(" WHEN c.total_spent >= ").append(code.getMinSpent())
+                    .append(" AND c.total_points >= ").append(code.getMinPoints())
+                    .append(" THEN '").append(code.name()).append("'");
+        }
+        target.append(" ELSE '").append(TierCode.REGULAR.name()).append("' END");
+
+        return """
+                WITH changed AS (
+                    UPDATE core.customer c
+                    SET tier_id = t.tier_id, is_vip = (t.code = '%s'), updated_at = now()
+                    FROM core.tier t
+                    WHERE t.code = %s
+                      AND c.tier_id <> t.tier_id%s
+                    RETURNING t.code
+                )
+                SELECT code, count(*) AS changed FROM changed GROUP BY code
+                """.formatted(TierCode.VIP.name(), target, filter);
+    }
+
     private CustomerResponse toResponse(Customer customer) {
         CustomerResponse response = modelMapper.map(customer, CustomerResponse.class);
         if (customer.getTier() != null) {
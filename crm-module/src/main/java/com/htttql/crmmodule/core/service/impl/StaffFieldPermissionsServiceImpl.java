@@ -8,6 +8,7 @@ import com.htttql.crmmodule.core.repository.IStaffFieldPermissionsRepository;
 import com.htttql.crmmodule.core.service.IStaffFieldPermissionsService;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -27,6 +28,16 @@ public class StaffFieldPermissionsServiceImpl implements IStaffFieldPermissionsS
                 .orElse(null);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public StaffFieldPermissions getForExport(Long staffId) {
+        StaffFieldPermissions permissions = getByStaffId(staffId);
+        if (permissions != null && permissions.getHistoryExport() == PermissionLevel.NO) {
+            throw new AccessDeniedException("Staff is not allowed to export data");
+        }
+        return permissions;
+    }
+
     @Override
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public StaffFieldPermissions create(Long staffId) {
@@ -67,5 +67,18 @@ public class LeadProperties {
         private int refreshIntervalHours;
 
         private boolean autoUpdate;
+
+        /**
+         * Thời gian giữ bucket theo phút trong Redis (giờ)
+         */
+        @Min(1) @Max(168)
+        private int minuteRetentionHours = 48;
+
+        /**
+         * Thời gian giữ bucket theo giờ và HyperLogLog trong Redis (ngày),
+         * dữ liệu ngày phải được flush xuống lead_intake_daily trước khi hết hạn
+         */
+        @Min(2) @Max(90)
+        private int hourRetentionDays = 7;
     }
 }
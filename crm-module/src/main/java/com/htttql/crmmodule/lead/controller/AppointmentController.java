@@ -2,9 +2,12 @@ package com.htttql.crmmodule.lead.controller;
 
 import com.htttql.crmmodule.common.dto.ApiResponse;
 import com.htttql.crmmodule.common.dto.PageResponse;
+import com.htttql.crmmodule.common.exception.BadRequestException;
+import com.htttql.crmmodule.common.service.StreamingExporter;
 import com.htttql.crmmodule.lead.dto.AppointmentRequest;
 import com.htttql.crmmodule.lead.dto.AppointmentResponse;
 import com.htttql.crmmodule.lead.service.IAppointmentService;
+import com.htttql.crmmodule.security.service.SecurityContextService;
 import com.htttql.crmmodule.common.dto.StatusUpdateRequest;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
@@ -13,10 +16,14 @@ import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Map;
 
 /**
  * Appointment Management Controller
@@ -29,15 +36,51 @@ import org.springframework.web.bind.annotation.*;
 public class AppointmentController {
 
     private final IAppointmentService appointmentService;
+    private final SecurityContextService securityContextService;
 
-    @Operation(summary = "Get all appointments with pagination")
+    @Operation(summary = "Get all appointments with pagination", description = "Pass cursor (empty for the first page, then nextCursor) to switch to keyset pagination without total count. " +
+                    "Pass fields=a,b,c to return only those fields (selected in SQL, page mode only)")
     @SecurityRequirement(name = "Bearer Authentication")
     @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER', 'RECEPTIONIST', 'TECHNICIAN')")
     @GetMapping
-    public ResponseEntity<ApiResponse<PageResponse<AppointmentResponse>>> getAllAppointments(Pageable pageable) {
+    public ResponseEntity<ApiResponse<PageResponse<?>>> getAllAppointments(
+            Pageable pageable,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String fields) {
+        if (cursor != null && fields != null) {
+            throw new BadRequestException("fields cannot be combined with cursor pagination");
+        }
+        if (cursor != null) {
+            PageResponse<AppointmentResponse> slice = appointmentService.getAllAppointments(cursor, pageable.getPageSize(), pageable.getSort());
+            return ResponseEntity.ok(ApiResponse.<PageResponse<?>>success(slice, "Appointments retrieved successfully"));
+        }
+        if (fields != null) {
+            Page<Map<String, Object>> rows = appointmentService.getAllAppointmentFields(pageable, fields);
+            return ResponseEntity.ok(ApiResponse.<PageResponse<?>>success(PageResponse.from(rows), "Appointments retrieved successfully"));
+        }
         Page<AppointmentResponse> appointments = appointmentService.getAllAppointments(pageable);
         PageResponse<AppointmentResponse> response = PageResponse.from(appointments);
-        return ResponseEntity.ok(ApiResponse.success(response, "Appointments retrieved successfully"));
+        return ResponseEntity.ok(ApiResponse.<PageResponse<?>>success(response, "Appointments retrieved successfully"));
+    }
+
+    @Operation(summary = "Export all appointments as CSV or NDJSON",
+            description = "Rows are streamed from the database as they are read, with the staff's field masking applied. " +
+                    "Requires the history export permission")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER', 'RECEPTIONIST', 'TECHNICIAN')")
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportAppointments(@RequestParam(defaultValue = "csv") String format) {
+        Long staffId = null;
+        try {
+            staffId = securityContextService.getCurrentStaffId();
+        } catch (Exception ignored) {
+        }
+        String resolved = StreamingExporter.resolveFormat(format);
+        StreamingResponseBody body = appointmentService.exportAppointments(resolved, staffId);
+        return ResponseEntity.ok()
+                .contentType(StreamingExporter.mediaType(resolved))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"appointments." + resolved + "\"")
+                .body(body);
     }
 
     @Operation(summary = "Get appointment by ID")
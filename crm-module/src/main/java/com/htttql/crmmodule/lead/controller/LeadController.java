@@ -3,6 +3,8 @@ package com.htttql.crmmodule.lead.controller;
 import com.htttql.crmmodule.common.dto.ApiResponse;
 import com.htttql.crmmodule.common.dto.PageResponse;
 import com.htttql.crmmodule.common.enums.LeadStatus;
+import com.htttql.crmmodule.common.enums.TimeGranularity;
+import com.htttql.crmmodule.lead.dto.LeadIntakePoint;
 import com.htttql.crmmodule.lead.dto.LeadRequest;
 import com.htttql.crmmodule.lead.dto.LeadResponse;
 import com.htttql.crmmodule.lead.dto.LeadStatusRequest;
@@ -19,6 +21,7 @@ import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.Pattern;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -29,6 +32,9 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 @Tag(name = "Lead Management", description = "Lead CRUD operations")
 @RestController
 @RequestMapping("/api/leads")
@@ -42,7 +48,7 @@ public class LeadController {
     @Qualifier("leadApiResponseFactory")
     private final ILeadResponseFactory responseFactory;
 
-    @Operation(summary = "Get all leads with pagination")
+    @Operation(summary = "Get all leads with pagination", description = "Pass cursor (empty for the first page, then nextCursor) to switch to keyset pagination without total count")
     @SecurityRequirement(name = "Bearer Authentication")
     @PreAuthorize("hasAnyRole('MANAGER', 'RECEPTIONIST')")
     @GetMapping
@@ -50,9 +56,13 @@ public class LeadController {
             @RequestParam(defaultValue = "0") @Min(0) int page,
             @RequestParam(defaultValue = "20") @Min(1) @Max(100) int size,
             @RequestParam(defaultValue = "leadId") @Pattern(regexp = "^(leadId|fullName|phone|createdAt|status)$") String sortBy,
-            @RequestParam(defaultValue = "desc") @Pattern(regexp = "^(asc|desc)$", flags = Pattern.Flag.CASE_INSENSITIVE) String sortDir) {
+            @RequestParam(defaultValue = "desc") @Pattern(regexp = "^(asc|desc)$", flags = Pattern.Flag.CASE_INSENSITIVE) String sortDir,
+            @RequestParam(required = false) String cursor) {
 
         Pageable pageable = createPageable(page, size, sortBy, sortDir);
+        if (cursor != null) {
+            return responseFactory.success(queryService.getAllLeads(cursor, size, pageable.getSort()), "Leads retrieved successfully");
+        }
         Page<LeadResponse> leads = queryService.getAllLeads(pageable);
         return responseFactory.success(leads, "Leads retrieved successfully");
     }
@@ -113,6 +123,19 @@ public class LeadController {
         return responseFactory.success(stats, "Lead statistics retrieved successfully");
     }
 
+    @Operation(summary = "Get lead intake time series",
+            description = "Bucketed lead counts; DAY buckets also include unique phones/IPs (HyperLogLog estimate)")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @PreAuthorize("hasAnyRole('MANAGER', 'RECEPTIONIST')")
+    @GetMapping("/stats/series")
+    public ResponseEntity<ApiResponse<List<LeadIntakePoint>>> getLeadIntakeSeries(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "HOUR") TimeGranularity granularity) {
+        List<LeadIntakePoint> series = queryService.getLeadIntakeSeries(from, to, granularity);
+        return ResponseEntity.ok(ApiResponse.success(series, "Lead intake series retrieved successfully"));
+    }
+
     @Operation(summary = "Get leads by status")
     @SecurityRequirement(name = "Bearer Authentication")
     @PreAuthorize("hasAnyRole('MANAGER', 'RECEPTIONIST')")
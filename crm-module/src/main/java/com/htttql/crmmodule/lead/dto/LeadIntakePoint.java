@@ -0,0 +1,26 @@
+package com.htttql.crmmodule.lead.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One bucket of the lead intake time series
+ * Unique counters (HyperLogLog, ~1% error) are only filled for DAY granularity
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LeadIntakePoint {
+
+    private LocalDateTime bucketStart;
+    private long count;
+    private Long uniquePhones;
+    private Long uniqueIps;
+}
@@ -0,0 +1,56 @@
+package com.htttql.crmmodule.lead.entity;
+
+import com.htttql.crmmodule.common.config.SchemaConstants;
+import com.htttql.crmmodule.common.entity.BaseEntity;
+import io.hypersistence.utils.hibernate.type.json.JsonType;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.Type;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Daily lead intake history, flushed from the Redis time series
+ * Keeps per-hour buckets and unique phone/IP estimates once minute data has expired
+ */
+@Entity
+@Table(name = "lead_intake_daily", schema = SchemaConstants.LEAD_SCHEMA, indexes = {
+        @Index(name = "idx_lead_intake_date", columnList = "stat_date", unique = true)
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class LeadIntakeDaily extends BaseEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "lead_intake_seq")
+    @SequenceGenerator(name = "lead_intake_seq", sequenceName = SchemaConstants.LEAD_SCHEMA
+            + ".lead_intake_daily_seq", allocationSize = 1)
+    @Column(name = "intake_id")
+    private Long intakeId;
+
+    @Column(name = "stat_date", nullable = false, unique = true)
+    private LocalDate statDate;
+
+    @Column(name = "total_count", nullable = false)
+    @Builder.Default
+    private Long totalCount = 0L;
+
+    @Column(name = "unique_phones", nullable = false)
+    @Builder.Default
+    private Long uniquePhones = 0L;
+
+    @Column(name = "unique_ips", nullable = false)
+    @Builder.Default
+    private Long uniqueIps = 0L;
+
+    // 24 phần tử, index = giờ trong ngày
+    @Type(JsonType.class)
+    @Column(name = "hourly_counts", columnDefinition = "jsonb")
+    @Builder.Default
+    private List<Long> hourlyCounts = new ArrayList<>();
+}
@@ -21,5 +21,7 @@ public interface ILeadResponseFactory {
     
     ResponseEntity<ApiResponse<PageResponse<LeadResponse>>> success(Page<LeadResponse> page, String message);
     
+    ResponseEntity<ApiResponse<PageResponse<LeadResponse>>> success(PageResponse<LeadResponse> page, String message);
+    
     ResponseEntity<ApiResponse<LeadStats>> success(LeadStats data, String message);
 }
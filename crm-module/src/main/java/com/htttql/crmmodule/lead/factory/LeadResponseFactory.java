@@ -52,9 +52,13 @@ public class LeadResponseFactory implements ILeadResponseFactory {
 
     public ResponseEntity<ApiResponse<PageResponse<LeadResponse>>> success(Page<LeadResponse> page, String message) {
         PageResponse<LeadResponse> response = PageResponse.from(page);
+        return success(response, message);
+    }
+
+    public ResponseEntity<ApiResponse<PageResponse<LeadResponse>>> success(PageResponse<LeadResponse> page, String message) {
         return ResponseEntity.ok(ApiResponse.<PageResponse<LeadResponse>>builder()
                 .success(true)
-                .data(response)
+                .data(page)
                 .message(message)
                 .build());
     }
@@ -5,6 +5,7 @@ import com.htttql.crmmodule.common.enums.AppointmentStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -17,13 +18,18 @@ import java.util.List;
  * Repository interface for Appointment entity
  */
 @Repository
-public interface IAppointmentRepository extends JpaRepository<Appointment, Long> {
+public interface IAppointmentRepository extends JpaRepository<Appointment, Long>, JpaSpecificationExecutor<Appointment> {
 
     /**
      * Find appointments by customer ID
      */
     List<Appointment> findByCustomer_CustomerId(Long customerId);
 
+    @Query("SELECT a FROM Appointment a LEFT JOIN FETCH a.customer LEFT JOIN FETCH a.lead LEFT JOIN FETCH a.service " +
+            "LEFT JOIN FETCH a.technician LEFT JOIN FETCH a.receptionist " +
+            "WHERE a.customer.customerId = :customerId ORDER BY a.startAt DESC, a.apptId DESC")
+    List<Appointment> findRecentByCustomerId(@Param("customerId") Long customerId, Pageable pageable);
+
     /**
      * Find appointments by status
      */
@@ -0,0 +1,44 @@
+package com.htttql.crmmodule.lead.repository;
+
+import com.htttql.crmmodule.lead.entity.LeadIntakeDaily;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ILeadIntakeDailyRepository extends JpaRepository<LeadIntakeDaily, Long> {
+
+    Optional<LeadIntakeDaily> findByStatDate(LocalDate statDate);
+
+    List<LeadIntakeDaily> findByStatDateBetweenOrderByStatDateAsc(LocalDate from, LocalDate to);
+
+    /**
+     * Insert or refresh one day; a row with a larger total (flushed before Redis keys partly expired)
+     * is kept. Returns 0 when the existing row was kept
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO lead.lead_intake_daily (intake_id, stat_date, total_count, unique_phones, unique_ips,
+                                                hourly_counts, created_at, updated_at)
+            VALUES (nextval('lead.lead_intake_daily_seq'), :statDate, :total, :uniquePhones, :uniqueIps,
+                    CAST(:hourlyCounts AS jsonb), now(), now())
+            ON CONFLICT (stat_date) DO UPDATE SET
+                total_count = EXCLUDED.total_count,
+                unique_phones = EXCLUDED.unique_phones,
+                unique_ips = EXCLUDED.unique_ips,
+                hourly_counts = EXCLUDED.hourly_counts,
+                updated_at = now()
+            WHERE lead_intake_daily.total_count <= EXCLUDED.total_count
+            """, nativeQuery = true)
+    int upsertDay(@Param("statDate") LocalDate statDate,
+                  @Param("total") long total,
+                  @Param("uniquePhones") long uniquePhones,
+                  @Param("uniqueIps") long uniqueIps,
+                  @Param("hourlyCounts") String hourlyCounts);
+}
@@ -8,10 +8,13 @@ import java.util.List;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface ILeadRepository extends JpaRepository<Lead, Long> {
+public interface ILeadRepository extends JpaRepository<Lead, Long>, JpaSpecificationExecutor<Lead> {
     Page<Lead> findByStatus(LeadStatus status, Pageable pageable);
 
+    long countByStatus(LeadStatus status);
+
 }
\ No newline at end of file
@@ -1,9 +1,15 @@
 package com.htttql.crmmodule.lead.service;
 
+import com.htttql.crmmodule.common.dto.PageResponse;
 import com.htttql.crmmodule.lead.dto.AppointmentRequest;
 import com.htttql.crmmodule.lead.dto.AppointmentResponse;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
+import java.util.Map;
 
 /**
  * Service interface for Appointment operations
@@ -15,6 +21,21 @@ public interface IAppointmentService {
      */
     Page<AppointmentResponse> getAllAppointments(Pageable pageable);
 
+    /**
+     * Get appointments with keyset pagination (no total count)
+     */
+    PageResponse<AppointmentResponse> getAllAppointments(String cursor, int size, Sort sort);
+
+    /**
+     * Get appointments with only the requested fields (sparse fieldset)
+     */
+    Page<Map<String, Object>> getAllAppointmentFields(Pageable pageable, String fields);
+
+    /**
+     * Stream all appointments as CSV/NDJSON with the staff's customer field masking applied
+     */
+    StreamingResponseBody exportAppointments(String format, Long staffId);
+
     /**
      * Get appointment by ID
      */
@@ -59,4 +80,9 @@ public interface IAppointmentService {
      * Get customer's appointments
      */
     Page<AppointmentResponse> getCustomerAppointments(Long customerId, int page, int size);
+
+    /**
+     * Get customer's most recent appointments (at most limit, no count)
+     */
+    List<AppointmentResponse> getRecentCustomerAppointments(Long customerId, int limit);
 }
@@ -1,10 +1,17 @@
 package com.htttql.crmmodule.lead.service;
 
+import com.htttql.crmmodule.common.dto.PageResponse;
 import com.htttql.crmmodule.common.enums.LeadStatus;
+import com.htttql.crmmodule.common.enums.TimeGranularity;
+import com.htttql.crmmodule.lead.dto.LeadIntakePoint;
 import com.htttql.crmmodule.lead.dto.LeadResponse;
 import com.htttql.crmmodule.lead.dto.LeadStats;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * Query operations for Lead (CQRS - Command Query Responsibility Segregation)
@@ -14,9 +21,13 @@ public interface ILeadQueryService {
 
     Page<LeadResponse> getAllLeads(Pageable pageable);
 
+    PageResponse<LeadResponse> getAllLeads(String cursor, int size, Sort sort);
+
     LeadResponse getLeadById(Long id);
 
     LeadStats getLeadStats();
 
+    List<LeadIntakePoint> getLeadIntakeSeries(LocalDateTime from, LocalDateTime to, TimeGranularity granularity);
+
     Page<LeadResponse> getLeadsByStatus(LeadStatus status, Pageable pageable);
 }
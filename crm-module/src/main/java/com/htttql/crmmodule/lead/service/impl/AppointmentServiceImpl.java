@@ -1,9 +1,19 @@
 package com.htttql.crmmodule.lead.service.impl;
 
+import com.htttql.crmmodule.common.dto.PageResponse;
 import com.htttql.crmmodule.common.enums.AppointmentStatus;
+import com.htttql.crmmodule.common.enums.PermissionLevel;
+import com.htttql.crmmodule.common.enums.ServiceCategory;
 import com.htttql.crmmodule.common.exception.ResourceNotFoundException;
+import com.htttql.crmmodule.common.service.KeysetPaginator;
+import com.htttql.crmmodule.common.service.SparseFieldsetQuery;
+import com.htttql.crmmodule.common.service.StreamingExporter;
+import com.htttql.crmmodule.common.util.DataMasker;
+import com.htttql.crmmodule.core.dto.StaffFieldPermissions;
 import com.htttql.crmmodule.core.repository.ICustomerRepository;
 import com.htttql.crmmodule.core.repository.IStaffUserRepository;
+import com.htttql.crmmodule.core.service.ICustomerStatsService;
+import com.htttql.crmmodule.core.service.IStaffFieldPermissionsService;
 import com.htttql.crmmodule.lead.dto.AppointmentRequest;
 import com.htttql.crmmodule.lead.dto.AppointmentResponse;
 import com.htttql.crmmodule.lead.entity.Appointment;
@@ -12,28 +22,69 @@ import com.htttql.crmmodule.lead.repository.IAppointmentRepository;
 import com.htttql.crmmodule.lead.repository.ILeadRepository;
 import com.htttql.crmmodule.lead.service.IAppointmentService;
 import com.htttql.crmmodule.service.entity.SpaService;
+import com.htttql.crmmodule.service.event.DashboardCounterEvent;
 import com.htttql.crmmodule.service.repository.IServiceRepository;
 import com.htttql.crmmodule.core.entity.Customer;
 import com.htttql.crmmodule.core.entity.StaffUser;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.*;
 import org.springframework.http.HttpStatus;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 @Service
 @RequiredArgsConstructor
 public class AppointmentServiceImpl implements IAppointmentService {
 
+    // Các field của AppointmentResponse có thể chọn qua ?fields=
+    private static final SparseFieldsetQuery.Catalog<Appointment, AppointmentResponse> FIELDS =
+            SparseFieldsetQuery.Catalog.of(Appointment.class, AppointmentResponse::new, "apptId")
+                    .field("apptId", "apptId", AppointmentResponse::setApptId)
+                    .field("leadId", "lead.leadId", AppointmentResponse::setLeadId)
+                    .field("leadName", "lead.fullName", AppointmentResponse::setLeadName)
+                    .field("customerId", "customer.customerId", AppointmentResponse::setCustomerId)
+                    .field("customerName", "customer.fullName", AppointmentResponse::setCustomerName)
+                    .field("customerPhone", "customer.phone", AppointmentResponse::setCustomerPhone)
+                    .field("serviceId", "service.serviceId", AppointmentResponse::setServiceId)
+                    .field("serviceName", "service.name", AppointmentResponse::setServiceName)
+                    .field("serviceCategory", "service.category",
+                            (AppointmentResponse r, ServiceCategory category) -> r.setServiceCategory(category.name()))
+                    .field("technicianId", "technician.staffId", AppointmentResponse::setTechnicianId)
+                    .field("technicianName", "technician.fullName", AppointmentResponse::setTechnicianName)
+                    .field("receptionistId", "receptionist.staffId", AppointmentResponse::setReceptionistId)
+                    .field("receptionistName", "receptionist.fullName", AppointmentResponse::setReceptionistName)
+                    .field("startAt", "startAt", AppointmentResponse::setStartAt)
+                    .field("endAt", "endAt", AppointmentResponse::setEndAt)
+                    .field("status", "status", AppointmentResponse::setStatus)
+                    .field("note", "note", AppointmentResponse::setNote)
+                    .field("reminderSent", "reminderSent", AppointmentResponse::setReminderSent)
+                    .field("confirmedAt", "confirmedAt", AppointmentResponse::setConfirmedAt)
+                    .field("cancelledReason", "cancelledReason", AppointmentResponse::setCancelledReason)
+                    .field("createdAt", "createdAt", AppointmentResponse::setCreatedAt)
+                    .field("updatedAt", "updatedAt", AppointmentResponse::setUpdatedAt);
+
     private final IAppointmentRepository appointmentRepository;
     private final ILeadRepository leadRepository;
     private final ICustomerRepository customerRepository;
     private final IServiceRepository serviceRepository;
     private final IStaffUserRepository staffUserRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ICustomerStatsService customerStatsService;
+    private final KeysetPaginator keysetPaginator;
+    private final SparseFieldsetQuery sparseFieldsetQuery;
+    private final StreamingExporter streamingExporter;
+    private final IStaffFieldPermissionsService staffFieldPermissionsService;
 
     // 👉 Mapper nội bộ
     private AppointmentResponse toResponse(Appointment appointment) {
@@ -83,6 +134,50 @@ public class AppointmentServiceImpl implements IAppointmentService {
         return appointmentRepository.findAll(pageable).map(this::toResponse);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public PageResponse<AppointmentResponse> getAllAppointments(String cursor, int size, Sort sort) {
+        return keysetPaginator.scroll(appointmentRepository, Appointment.class, cursor, size, sort).map(this::toResponse);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<Map<String, Object>> getAllAppointmentFields(Pageable pageable, String fields) {
+        return sparseFieldsetQuery.find(FIELDS, fields, pageable, null);
+    }
+
+    @Override
+    public StreamingResponseBody exportAppointments(String format, Long staffId) {
+        String resolved = StreamingExporter.resolveFormat(format);
+        StaffFieldPermissions permissions = staffFieldPermissionsService.getForExport(staffId);
+        if (permissions != null && permissions.getAppointmentView() == PermissionLevel.NO) {
+            throw new AccessDeniedException("Staff is not allowed to view appointments");
+        }
+        boolean maskName = permissions != null && permissions.getCustomerName() == PermissionLevel.NO;
+        boolean maskPhone = permissions != null && permissions.getCustomerPhone() == PermissionLevel.NO;
+
+        // Lịch hẹn của lead chưa thành khách hàng lấy tên/SĐT từ lead
+        StreamingExporter.Definition definition = StreamingExporter.Definition
+                .of("appointment", "lead.appointment a"
+                                + " LEFT JOIN core.customer cu ON cu.customer_id = a.customer_id"
+                                + " LEFT JOIN lead.lead l ON l.lead_id = a.lead_id"
+                                + " LEFT JOIN service.service s ON s.service_id = a.service_id"
+                                + " LEFT JOIN core.staff_user te ON te.staff_id = a.technician_id",
+                        "apptId", "a.appt_id")
+                .column("customerId", "a.customer_id")
+                .column("leadId", "a.lead_id")
+                .column("customerName", "COALESCE(cu.full_name, l.full_name)", StreamingExporter.maskWhen(maskName, DataMasker::maskName))
+                .column("customerPhone", "COALESCE(cu.phone, l.phone)", StreamingExporter.maskWhen(maskPhone, DataMasker::maskPhone))
+                .column("serviceName", "s.name")
+                .column("technicianName", "te.full_name")
+                .column("startAt", "a.start_at")
+                .column("endAt", "a.end_at")
+                .column("status", "a.status")
+                .column("note", "a.note")
+                .column("createdAt", "a.created_at");
+        return streamingExporter.stream(definition, resolved);
+    }
+
     @Override
     public AppointmentResponse getAppointmentById(Long id) {
         Appointment appointment = appointmentRepository.findById(id)
@@ -91,6 +186,7 @@ public class AppointmentServiceImpl implements IAppointmentService {
     }
 
     @Override
+    @Transactional
     public AppointmentResponse createAppointment(AppointmentRequest request) {
         if (request.getLeadId() == null && request.getCustomerId() == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Either leadId or customerId is required");
@@ -133,13 +229,19 @@ public class AppointmentServiceImpl implements IAppointmentService {
                 .orElseThrow(() -> new ResourceNotFoundException("Receptionist not found with id: " + request.getReceptionistId()));
         appointment.setReceptionist(recep);
 
-        return toResponse(appointmentRepository.save(appointment));
+        Appointment saved = appointmentRepository.save(appointment);
+        publishCounterChange(Map.of(), dashboardContribution(saved));
+        syncCustomerStats(VisitState.NONE, VisitState.of(saved));
+        return toResponse(saved);
     }
 
     @Override
+    @Transactional
     public AppointmentResponse updateAppointment(Long id, AppointmentRequest request) {
         Appointment appointment = appointmentRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Appointment not found with id: " + id));
+        Map<String, Long> before = dashboardContribution(appointment);
+        VisitState visitBefore = VisitState.of(appointment);
 
         if (request.getLeadId() != null && request.getCustomerId() != null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Specify either leadId or customerId, not both");
@@ -177,26 +279,39 @@ public class AppointmentServiceImpl implements IAppointmentService {
             appointment.setReceptionist(recep);
         }
 
-        return toResponse(appointmentRepository.save(appointment));
+        Appointment saved = appointmentRepository.save(appointment);
+        publishCounterChange(before, dashboardContribution(saved));
+        syncCustomerStats(visitBefore, VisitState.of(saved));
+        return toResponse(saved);
     }
 
     @Override
+    @Transactional
     public void deleteAppointment(Long id) {
-        if (!appointmentRepository.existsById(id)) {
-            throw new ResourceNotFoundException("Appointment not found with id: " + id);
-        }
-        appointmentRepository.deleteById(id);
+        Appointment appointment = appointmentRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Appointment not found with id: " + id));
+        Map<String, Long> before = dashboardContribution(appointment);
+        VisitState visitBefore = VisitState.of(appointment);
+        appointmentRepository.delete(appointment);
+        publishCounterChange(before, Map.of());
+        syncCustomerStats(visitBefore, VisitState.NONE);
     }
 
     @Override
+    @Transactional
     public AppointmentResponse updateAppointmentStatus(Long id, String status) {
         Appointment appointment = appointmentRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Appointment not found with id: " + id));
 
+        Map<String, Long> before = dashboardContribution(appointment);
+        VisitState visitBefore = VisitState.of(appointment);
         AppointmentStatus appointmentStatus = AppointmentStatus.valueOf(status.toUpperCase());
         appointment.setStatus(appointmentStatus);
 
-        return toResponse(appointmentRepository.save(appointment));
+        Appointment saved = appointmentRepository.save(appointment);
+        publishCounterChange(before, dashboardContribution(saved));
+        syncCustomerStats(visitBefore, VisitState.of(saved));
+        return toResponse(saved);
     }
 
     @Override
@@ -236,4 +351,58 @@ public class AppointmentServiceImpl implements IAppointmentService {
 
         return new PageImpl<>(pageContent, pageable, appointments.size()).map(this::toResponse);
     }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<AppointmentResponse> getRecentCustomerAppointments(Long customerId, int limit) {
+        return appointmentRepository.findRecentByCustomerId(customerId, PageRequest.of(0, limit)).stream()
+                .map(this::toResponse)
+                .toList();
+    }
+
+    // Đóng góp của một lịch hẹn vào bộ đếm dashboard realtime
+    private Map<String, Long> dashboardContribution(Appointment appointment) {
+        boolean today = appointment.getStartAt() != null
+                && appointment.getStartAt().toLocalDate().equals(LocalDate.now());
+        if (!today) {
+            return Map.of();
+        }
+        return Map.of(
+                DashboardCounterEvent.TODAY_APPOINTMENTS, 1L,
+                DashboardCounterEvent.TODAY_COMPLETED, appointment.getStatus() == AppointmentStatus.DONE ? 1L : 0L);
+    }
+
+    private void publishCounterChange(Map<String, Long> before, Map<String, Long> after) {
+        DashboardCounterEvent event = DashboardCounterEvent.diff(before, after);
+        if (!event.isEmpty()) {
+            eventPublisher.publishEvent(event);
+        }
+    }
+
+    // Lượt ghé = lịch hẹn DONE gắn với khách hàng; hoàn tác thì tính lại từ dữ liệu gốc
+    private void syncCustomerStats(VisitState before, VisitState after) {
+        if (before.equals(after)) {
+            return;
+        }
+        if (!before.done()) {
+            if (after.done()) {
+                customerStatsService.recordVisit(after.customerId(), after.startAt());
+            }
+            return;
+        }
+        customerStatsService.recalculate(before.customerId());
+        if (after.done() && !Objects.equals(after.customerId(), before.customerId())) {
+            customerStatsService.recalculate(after.customerId());
+        }
+    }
+
+    private record VisitState(Long customerId, boolean done, LocalDateTime startAt) {
+        static final VisitState NONE = new VisitState(null, false, null);
+
+        static VisitState of(Appointment appointment) {
+            Long customerId = appointment.getCustomer() != null ? appointment.getCustomer().getCustomerId() : null;
+            boolean done = customerId != null && appointment.getStatus() == AppointmentStatus.DONE;
+            return done ? new VisitState(customerId, true, appointment.getStartAt()) : NONE;
+        }
+    }
 }
@@ -1,24 +1,34 @@
 package com.htttql.crmmodule.lead.service.impl;
 
+import com.htttql.crmmodule.common.dto.PageResponse;
 import com.htttql.crmmodule.common.enums.LeadStatus;
+import com.htttql.crmmodule.common.enums.TimeGranularity;
 import com.htttql.crmmodule.common.service.CacheService;
+import com.htttql.crmmodule.common.service.KeysetPaginator;
 import com.htttql.crmmodule.common.service.RequestContextService;
+import com.htttql.crmmodule.core.service.IAutocompleteService;
 import com.htttql.crmmodule.lead.config.LeadProperties;
+import com.htttql.crmmodule.lead.dto.LeadIntakePoint;
 import com.htttql.crmmodule.lead.dto.LeadRequest;
 import com.htttql.crmmodule.lead.dto.LeadResponse;
 import com.htttql.crmmodule.lead.dto.LeadStats;
 import com.htttql.crmmodule.lead.dto.LeadStatusRequest;
 import com.htttql.crmmodule.lead.entity.Lead;
 import com.htttql.crmmodule.lead.repository.ILeadRepository;
+import com.htttql.crmmodule.service.event.DashboardCounterEvent;
 
 import lombok.RequiredArgsConstructor;
 import org.modelmapper.ModelMapper;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * Coordinator service for lead operations
@@ -33,6 +43,9 @@ public class LeadCoordinatorService {
     private final CacheService cacheService;
     private final LeadProperties properties;
     private final RequestContextService requestContextService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final IAutocompleteService autocompleteService;
+    private final KeysetPaginator keysetPaginator;
 
     // Specialized services
     private final LeadRateLimitService rateLimitService;
@@ -45,6 +58,11 @@ public class LeadCoordinatorService {
         return leads.map(this::convertToResponse);
     }
 
+    @Transactional(readOnly = true)
+    public PageResponse<LeadResponse> getAllLeads(String cursor, int size, Sort sort) {
+        return keysetPaginator.scroll(leadRepository, Lead.class, cursor, size, sort).map(this::convertToResponse);
+    }
+
     @Transactional(readOnly = true)
     public LeadResponse getLeadById(Long id) {
         Lead lead = leadRepository.findById(id)
@@ -57,6 +75,10 @@ public class LeadCoordinatorService {
         return statisticsService.getLeadStats();
     }
 
+    public List<LeadIntakePoint> getLeadIntakeSeries(LocalDateTime from, LocalDateTime to, TimeGranularity granularity) {
+        return statisticsService.getIntakeSeries(from, to, granularity);
+    }
+
     @Transactional(readOnly = true)
     public Page<LeadResponse> getLeadsByStatus(LeadStatus status, Pageable pageable) {
         Page<Lead> leads = leadRepository.findByStatus  (status, pageable);
@@ -91,7 +113,9 @@ public class LeadCoordinatorService {
         Lead savedLead = leadRepository.save(lead);
 
         // Update statistics
-        statisticsService.incrementStats();
+        statisticsService.incrementStats(savedLead);
+        publishPendingChange(null, savedLead.getStatus());
+        autocompleteService.indexLead(savedLead.getLeadId(), savedLead.getFullName(), savedLead.getPhone());
 
         // Clean up temp data
         antiSpamService.clearTempData(request.getPhone());
@@ -109,6 +133,7 @@ public class LeadCoordinatorService {
         existingLead.setNote(request.getNote());
 
         Lead updatedLead = leadRepository.save(existingLead);
+        autocompleteService.indexLead(updatedLead.getLeadId(), updatedLead.getFullName(), updatedLead.getPhone());
 
         // Invalidate cache
         evictLeadCache(id);
@@ -118,11 +143,12 @@ public class LeadCoordinatorService {
 
     @Transactional
     public void deleteLead(Long id) {
-        if (!leadRepository.existsById(id)) {
-            throw new com.htttql.crmmodule.lead.exception.LeadNotFoundException(id);
-        }
-        leadRepository.deleteById(id);
+        Lead lead = leadRepository.findById(id)
+                .orElseThrow(() -> new com.htttql.crmmodule.lead.exception.LeadNotFoundException(id));
+        leadRepository.delete(lead);
         evictLeadCache(id);
+        autocompleteService.removeLead(id);
+        publishPendingChange(lead.getStatus(), null);
     }
 
     @Transactional
@@ -130,8 +156,10 @@ public class LeadCoordinatorService {
         Lead existingLead = leadRepository.findById(id)
                 .orElseThrow(() -> new com.htttql.crmmodule.lead.exception.LeadNotFoundException(id));
 
+        LeadStatus previousStatus = existingLead.getStatus();
         existingLead.setStatus(request.getStatus());
         Lead updatedLead = leadRepository.save(existingLead);
+        publishPendingChange(previousStatus, updatedLead.getStatus());
 
         evictLeadCache(id);
         return convertToResponse(updatedLead);
@@ -142,6 +170,13 @@ public class LeadCoordinatorService {
         return response;
     }
 
+    private void publishPendingChange(LeadStatus before, LeadStatus after) {
+        long delta = (after == LeadStatus.NEW ? 1L : 0L) - (before == LeadStatus.NEW ? 1L : 0L);
+        if (delta != 0L) {
+            eventPublisher.publishEvent(DashboardCounterEvent.of(DashboardCounterEvent.PENDING_REQUESTS, delta));
+        }
+    }
+
     private void evictLeadCache(Long leadId) {
         String key = properties.getCache().getPrefix() + leadId;
         cacheService.evict(key);
@@ -0,0 +1,366 @@
+package com.htttql.crmmodule.lead.service.impl;
+
+import com.htttql.crmmodule.common.enums.TimeGranularity;
+import com.htttql.crmmodule.common.exception.BadRequestException;
+import com.htttql.crmmodule.lead.config.LeadProperties;
+import com.htttql.crmmodule.lead.dto.LeadIntakePoint;
+import com.htttql.crmmodule.lead.entity.Lead;
+import com.htttql.crmmodule.lead.entity.LeadIntakeDaily;
+import com.htttql.crmmodule.lead.repository.ILeadIntakeDailyRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Lead intake time series
+ * Redis giữ bucket theo phút (hash mỗi giờ, field = phút) và theo giờ (hash mỗi ngày, field = giờ),
+ * HyperLogLog đếm số điện thoại / IP khác nhau trong ngày. Dữ liệu ngày được flush xuống
+ * bảng lead_intake_daily trước khi key Redis hết hạn; bucket phút chỉ tồn tại trong Redis.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LeadIntakeSeriesService {
+
+    private static final DateTimeFormatter HOUR_KEY = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH");
+    private static final int HOURS_PER_DAY = 24;
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ILeadIntakeDailyRepository dailyRepository;
+    private final LeadProperties properties;
+
+    /**
+     * Record one lead in all buckets, single round trip to Redis
+     */
+    public void record(Lead lead) {
+        LocalDateTime at = LocalDateTime.now();
+        LocalDate day = at.toLocalDate();
+
+        String minuteKey = minuteKey(at);
+        String hourKey = hourKey(day);
+        String phoneKey = uniquePhoneKey(day);
+        String ipKey = uniqueIpKey(day);
+        Duration minuteTtl = Duration.ofHours(properties.getStats().getMinuteRetentionHours());
+        Duration dayTtl = Duration.ofDays(properties.getStats().getHourRetentionDays());
+
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    ops.opsForHash().increment(minuteKey, twoDigits(at.getMinute()), 1);
+                    ops.expire(minuteKey, minuteTtl);
+                    ops.opsForHash().increment(hourKey, twoDigits(at.getHour()), 1);
+                    ops.expire(hourKey, dayTtl);
+                    if (lead.getPhone() != null) {
+                        ops.opsForHyperLogLog().add(phoneKey, lead.getPhone());
+                        ops.expire(phoneKey, dayTtl);
+                    }
+                    if (lead.getIpAddress() != null) {
+                        ops.opsForHyperLogLog().add(ipKey, lead.getIpAddress());
+                        ops.expire(ipKey, dayTtl);
+                    }
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            // Thống kê không được làm hỏng luồng tạo lead
+            log.warn("Cannot record lead intake series: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Day total for a single date, from history if flushed, otherwise from Redis
+     */
+    @Transactional(readOnly = true)
+    public long getDayTotal(LocalDate date) {
+        return dailyRepository.findByStatDate(date)
+                .map(LeadIntakeDaily::getTotalCount)
+                .orElseGet(() -> sum(readHourCounts(date)));
+    }
+
+    @Transactional(readOnly = true)
+    public List<LeadIntakePoint> getSeries(LocalDateTime from, LocalDateTime to, TimeGranularity granularity) {
+        validateRange(from, to, granularity);
+        return switch (granularity) {
+            case MINUTE -> minuteSeries(from, to);
+            case HOUR -> hourSeries(from, to);
+            case DAY -> daySeries(from.toLocalDate(), to.toLocalDate());
+        };
+    }
+
+    /**
+     * Persist one finished day; safe to run on several nodes at once
+     */
+    @Transactional
+    public boolean flushDay(LocalDate date) {
+        List<Long> hourly = readHourCounts(date);
+        long total = sum(hourly);
+        if (total == 0) {
+            return false;
+        }
+        List<Long> uniques = pfCount(List.of(uniquePhoneKey(date), uniqueIpKey(date)));
+
+        // Upsert một câu: node khác flush cùng ngày không gây lỗi unique (lỗi sẽ làm transaction rollback-only),
+        // bản đã flush có tổng lớn hơn (key Redis đã hết hạn một phần) được giữ nguyên
+        String hourlyJson = hourly.stream().map(String::valueOf).collect(Collectors.joining(",", "[", "]"));
+        return dailyRepository.upsertDay(date, total, uniques.get(0), uniques.get(1), hourlyJson) > 0;
+    }
+
+    /**
+     * Days within Redis retention that have no history row yet (excluding today)
+     */
+    @Transactional(readOnly = true)
+    public List<LocalDate> findUnflushedDays() {
+        LocalDate today = LocalDate.now();
+        LocalDate oldest = today.minusDays(properties.getStats().getHourRetentionDays() - 1L);
+        LocalDate yesterday = today.minusDays(1);
+        if (oldest.isAfter(yesterday)) {
+            return List.of();
+        }
+
+        Map<LocalDate, LeadIntakeDaily> flushed = loadHistory(oldest, yesterday);
+        List<LocalDate> days = new ArrayList<>();
+        for (LocalDate d = oldest; !d.isAfter(yesterday); d = d.plusDays(1)) {
+            if (!flushed.containsKey(d)) {
+                days.add(d);
+            }
+        }
+        return days;
+    }
+
+    private List<LeadIntakePoint> minuteSeries(LocalDateTime from, LocalDateTime to) {
+        LocalDateTime start = from.truncatedTo(ChronoUnit.MINUTES);
+        LocalDateTime firstHour = start.truncatedTo(ChronoUnit.HOURS);
+
+        List<String> keys = new ArrayList<>();
+        for (LocalDateTime h = firstHour; !h.isAfter(to); h = h.plusHours(1)) {
+            keys.add(minuteKey(h));
+        }
+        List<Map<String, String>> hashes = hGetAll(keys);
+
+        List<LeadIntakePoint> points = new ArrayList<>();
+        for (LocalDateTime m = start; !m.isAfter(to); m = m.plusMinutes(1)) {
+            int hourIndex = (int) ChronoUnit.HOURS.between(firstHour, m.truncatedTo(ChronoUnit.HOURS));
+            long count = parse(hashes.get(hourIndex).get(twoDigits(m.getMinute())));
+            points.add(point(m, count));
+        }
+        return points;
+    }
+
+    private List<LeadIntakePoint> hourSeries(LocalDateTime from, LocalDateTime to) {
+        LocalDateTime start = from.truncatedTo(ChronoUnit.HOURS);
+        LocalDate firstDay = start.toLocalDate();
+        LocalDate lastDay = to.toLocalDate();
+
+        Map<LocalDate, List<Long>> hoursByDay = loadHourCounts(firstDay, lastDay);
+
+        List<LeadIntakePoint> points = new ArrayList<>();
+        for (LocalDateTime h = start; !h.isAfter(to); h = h.plusHours(1)) {
+            List<Long> hours = hoursByDay.get(h.toLocalDate());
+            points.add(point(h, hours.get(h.getHour())));
+        }
+        return points;
+    }
+
+    private List<LeadIntakePoint> daySeries(LocalDate from, LocalDate to) {
+        Map<LocalDate, LeadIntakeDaily> history = loadHistory(from, to);
+        LocalDate today = LocalDate.now();
+
+        // Ngày chưa flush (hoặc hôm nay) đọc từ Redis trong cùng một pipeline
+        List<LocalDate> live = new ArrayList<>();
+        for (LocalDate d = from; !d.isAfter(to); d = d.plusDays(1)) {
+            if (!history.containsKey(d) || !d.isBefore(today)) {
+                live.add(d);
+            }
+        }
+        List<Map<String, String>> hourHashes = hGetAll(live.stream().map(this::hourKey).toList());
+        List<String> hllKeys = new ArrayList<>(live.size() * 2);
+        for (LocalDate d : live) {
+            hllKeys.add(uniquePhoneKey(d));
+            hllKeys.add(uniqueIpKey(d));
+        }
+        List<Long> uniques = pfCount(hllKeys);
+
+        List<LeadIntakePoint> points = new ArrayList<>();
+        for (LocalDate d = from; !d.isAfter(to); d = d.plusDays(1)) {
+            int liveIndex = live.indexOf(d);
+            if (liveIndex >= 0) {
+                points.add(LeadIntakePoint.builder()
+                        .bucketStart(d.atStartOfDay())
+                        .count(sum(toHourList(hourHashes.get(liveIndex))))
+                        .uniquePhones(uniques.get(liveIndex * 2))
+                        .uniqueIps(uniques.get(liveIndex * 2 + 1))
+                        .build());
+            } else {
+                LeadIntakeDaily daily = history.get(d);
+                points.add(LeadIntakePoint.builder()
+                        .bucketStart(d.atStartOfDay())
+                        .count(daily.getTotalCount())
+                        .uniquePhones(daily.getUniquePhones())
+                        .uniqueIps(daily.getUniqueIps())
+                        .build());
+            }
+        }
+        return points;
+    }
+
+    private Map<LocalDate, List<Long>> loadHourCounts(LocalDate from, LocalDate to) {
+        Map<LocalDate, LeadIntakeDaily> history = loadHistory(from, to);
+        LocalDate today = LocalDate.now();
+
+        List<LocalDate> live = new ArrayList<>();
+        Map<LocalDate, List<Long>> result = new HashMap<>();
+        for (LocalDate d = from; !d.isAfter(to); d = d.plusDays(1)) {
+            LeadIntakeDaily daily = history.get(d);
+            if (daily != null && d.isBefore(today) && daily.getHourlyCounts().size() == HOURS_PER_DAY) {
+                result.put(d, daily.getHourlyCounts());
+            } else {
+                live.add(d);
+            }
+        }
+
+        List<Map<String, String>> hashes = hGetAll(live.stream().map(this::hourKey).toList());
+        for (int i = 0; i < live.size(); i++) {
+            result.put(live.get(i), toHourList(hashes.get(i)));
+        }
+        return result;
+    }
+
+    private Map<LocalDate, LeadIntakeDaily> loadHistory(LocalDate from, LocalDate to) {
+        return dailyRepository.findByStatDateBetweenOrderByStatDateAsc(from, to).stream()
+                .collect(Collectors.toMap(LeadIntakeDaily::getStatDate, Function.identity()));
+    }
+
+    private List<Long> readHourCounts(LocalDate date) {
+        return toHourList(hGetAll(List.of(hourKey(date))).get(0));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, String>> hGetAll(List<String> keys) {
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+        try {
+            List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    for (String key : keys) {
+                        operations.opsForHash().entries(key);
+                    }
+                    return null;
+                }
+            });
+            List<Map<String, String>> hashes = new ArrayList<>(keys.size());
+            for (Object result : results) {
+                hashes.add(result instanceof Map ? (Map<String, String>) result : Collections.emptyMap());
+            }
+            return hashes;
+        } catch (Exception e) {
+            log.warn("Cannot read lead intake series from Redis: {}", e.getMessage());
+            return Collections.nCopies(keys.size(), Collections.emptyMap());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Long> pfCount(List<String> keys) {
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+        try {
+            List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    for (String key : keys) {
+                        operations.opsForHyperLogLog().size(key);
+                    }
+                    return null;
+                }
+            });
+            return results.stream().map(r -> r instanceof Number n ? n.longValue() : 0L).toList();
+        } catch (Exception e) {
+            log.warn("Cannot read lead unique counters from Redis: {}", e.getMessage());
+            return Collections.nCopies(keys.size(), 0L);
+        }
+    }
+
+    private void validateRange(LocalDateTime from, LocalDateTime to, TimeGranularity granularity) {
+        if (from == null || to == null || from.isAfter(to)) {
+            throw new BadRequestException("Invalid time range: 'from' must be before 'to'");
+        }
+        if (Duration.between(from, to).compareTo(granularity.getMaxRange()) > 0) {
+            throw new BadRequestException("Time range too large for " + granularity
+                    + " granularity, maximum is " + granularity.getMaxRange().toDays() + " day(s)");
+        }
+        if (granularity == TimeGranularity.MINUTE) {
+            LocalDateTime oldest = LocalDateTime.now().minusHours(properties.getStats().getMinuteRetentionHours());
+            if (from.isBefore(oldest.truncatedTo(ChronoUnit.HOURS))) {
+                throw new BadRequestException("Minute data is only kept for the last "
+                        + properties.getStats().getMinuteRetentionHours() + " hour(s)");
+            }
+        }
+    }
+
+    private static List<Long> toHourList(Map<String, String> hash) {
+        List<Long> hours = new ArrayList<>(HOURS_PER_DAY);
+        for (int h = 0; h < HOURS_PER_DAY; h++) {
+            hours.add(parse(hash.get(twoDigits(h))));
+        }
+        return hours;
+    }
+
+    private static LeadIntakePoint point(LocalDateTime bucketStart, long count) {
+        return LeadIntakePoint.builder().bucketStart(bucketStart).count(count).build();
+    }
+
+    private static long sum(List<Long> values) {
+        return values.stream().mapToLong(Long::longValue).sum();
+    }
+
+    private static long parse(String value) {
+        return value == null ? 0L : Long.parseLong(value);
+    }
+
+    private static String twoDigits(int value) {
+        return value < 10 ? "0" + value : String.valueOf(value);
+    }
+
+    private String prefix() {
+        return properties.getCache().getStatsPrefix();
+    }
+
+    private String minuteKey(LocalDateTime at) {
+        return prefix() + "TS:M:" + at.format(HOUR_KEY);
+    }
+
+    private String hourKey(LocalDate date) {
+        return prefix() + "TS:H:" + date;
+    }
+
+    private String uniquePhoneKey(LocalDate date) {
+        return prefix() + "HLL:PHONE:" + date;
+    }
+
+    private String uniqueIpKey(LocalDate date) {
+        return prefix() + "HLL:IP:" + date;
+    }
+}
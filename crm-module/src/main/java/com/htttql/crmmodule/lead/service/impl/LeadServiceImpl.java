@@ -1,6 +1,9 @@
 package com.htttql.crmmodule.lead.service.impl;
 
+import com.htttql.crmmodule.common.dto.PageResponse;
 import com.htttql.crmmodule.common.enums.LeadStatus;
+import com.htttql.crmmodule.common.enums.TimeGranularity;
+import com.htttql.crmmodule.lead.dto.LeadIntakePoint;
 import com.htttql.crmmodule.lead.dto.LeadRequest;
 import com.htttql.crmmodule.lead.dto.LeadResponse;
 import com.htttql.crmmodule.lead.dto.LeadStats;
@@ -11,8 +14,12 @@ import com.htttql.crmmodule.lead.service.ILeadQueryService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 /**
  * Service implementation for lead management following CQRS pattern
  * Thin layer that delegates to LeadCoordinatorService
@@ -29,6 +36,11 @@ public class LeadServiceImpl implements ILeadQueryService, ILeadCommandService {
         return coordinatorService.getAllLeads(pageable);
     }
 
+    @Override
+    public PageResponse<LeadResponse> getAllLeads(String cursor, int size, Sort sort) {
+        return coordinatorService.getAllLeads(cursor, size, sort);
+    }
+
     @Override
     public LeadResponse getLeadById(Long id) {
         return coordinatorService.getLeadById(id);
@@ -39,6 +51,11 @@ public class LeadServiceImpl implements ILeadQueryService, ILeadCommandService {
         return coordinatorService.getLeadStats();
     }
 
+    @Override
+    public List<LeadIntakePoint> getLeadIntakeSeries(LocalDateTime from, LocalDateTime to, TimeGranularity granularity) {
+        return coordinatorService.getLeadIntakeSeries(from, to, granularity);
+    }
+
     @Override
     public Page<LeadResponse> getLeadsByStatus(LeadStatus status, Pageable pageable) {
         return coordinatorService.getLeadsByStatus(status, pageable);
@@ -1,37 +1,45 @@
 package com.htttql.crmmodule.lead.service.impl;
 
+import com.htttql.crmmodule.common.enums.TimeGranularity;
 import com.htttql.crmmodule.common.service.CacheService;
 import com.htttql.crmmodule.lead.config.LeadProperties;
+import com.htttql.crmmodule.lead.dto.LeadIntakePoint;
 import com.htttql.crmmodule.lead.dto.LeadStats;
+import com.htttql.crmmodule.lead.entity.Lead;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * Service for managing lead statistics
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class LeadStatisticsService {
 
     private final CacheService cacheService;
     private final LeadProperties properties;
+    private final LeadIntakeSeriesService seriesService;
 
     public LeadStats getLeadStats() {
         try {
             String todayKey = buildTodayKey();
             String totalKey = buildTotalKey();
 
-            String todayCount = cacheService.get(todayKey);
-            String totalCount = cacheService.get(totalKey);
+            // Counter được INCR trực tiếp, serializer JSON trả về Integer chứ không phải String
+            Object todayCount = cacheService.get(todayKey);
+            Object totalCount = cacheService.get(totalKey);
 
             return LeadStats.builder()
-                    .todayCount(todayCount != null ? Integer.parseInt(todayCount) : 0)
-                    .totalCount(totalCount != null ? Integer.parseInt(totalCount) : 0)
+                    .todayCount(toInt(todayCount))
+                    .totalCount(toInt(totalCount))
                     .lastUpdated(LocalDateTime.now().toString())
                     .build();
         } catch (Exception e) {
@@ -39,11 +47,13 @@ public class LeadStatisticsService {
         }
     }
 
-    public void incrementStats() {
+    public void incrementStats(Lead lead) {
         if (!properties.getStats().isAutoUpdate()) {
             return;
         }
 
+        seriesService.record(lead);
+
         try {
             String todayKey = buildTodayKey();
             String totalKey = buildTotalKey();
@@ -59,14 +69,34 @@ public class LeadStatisticsService {
         }
     }
 
+    /**
+     * Flush finished days of the intake series to history (yesterday plus any day missed while down)
+     */
+    @Scheduled(cron = "${app.lead.stats.flush-cron:0 10 0 * * ?}")
     public void refreshStats() {
+        try {
+            for (LocalDate date : seriesService.findUnflushedDays()) {
+                if (seriesService.flushDay(date)) {
+                    log.info("Flushed lead intake series for {}", date);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error flushing lead intake series", e);
+        }
+    }
+
+    public List<LeadIntakePoint> getIntakeSeries(LocalDateTime from, LocalDateTime to, TimeGranularity granularity) {
+        return seriesService.getSeries(from, to, granularity);
     }
 
     @Scheduled(cron = "0 0 2 * * ?")
     public void cleanupOldStats() {
         try {
-            String pattern = properties.getCache().getStatsPrefix() + "*:20*";
-            cacheService.evictPattern(pattern);
+            // Chỉ xoá counter TODAY của các ngày trước, không đụng tới key time series (có TTL riêng)
+            LocalDate today = LocalDate.now();
+            for (int i = 1; i <= 7; i++) {
+                cacheService.evict(properties.getCache().getStatsPrefix() + "TODAY:" + today.minusDays(i));
+            }
         } catch (Exception e) {
         }
     }
@@ -78,11 +108,10 @@ public class LeadStatisticsService {
 
     public LeadStats getStatsForDate(LocalDate date) {
         try {
-            String dateKey = buildDateKey(date);
-            String count = cacheService.get(dateKey);
+            long count = seriesService.getDayTotal(date);
 
             return LeadStats.builder()
-                    .todayCount(count != null ? Integer.parseInt(count) : 0)
+                    .todayCount((int) count)
                     .totalCount(0)
                     .lastUpdated(LocalDateTime.now().toString())
                     .build();
@@ -99,8 +128,8 @@ public class LeadStatisticsService {
         return properties.getCache().getStatsPrefix() + "TOTAL";
     }
 
-    private String buildDateKey(LocalDate date) {
-        return properties.getCache().getStatsPrefix() + "DATE:" + date;
+    private static int toInt(Object value) {
+        return value != null ? Integer.parseInt(value.toString()) : 0;
     }
 
     private LeadStats createEmptyStats() {
@@ -2,6 +2,7 @@ package com.htttql.crmmodule.security.config;
 
 import com.htttql.crmmodule.security.jwt.JwtAuthenticationEntryPoint;
 import com.htttql.crmmodule.security.jwt.JwtAuthenticationFilter;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -85,6 +86,7 @@ public class SecurityConfig {
                         .sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll() // Allow all OPTIONS requests (CORS preflight)
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll() // SSE async dispatch, already authorized on the original request
                         .requestMatchers(PUBLIC_URLS).permitAll()
                         .requestMatchers("/api/admin/**").hasRole("MANAGER") // Admin functions require MANAGER role
                         .requestMatchers("/api/technician/**").hasAnyRole("TECHNICIAN", "MANAGER")
@@ -0,0 +1,51 @@
+package com.htttql.crmmodule.service.config;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Configuration properties for Dashboard module
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.dashboard")
+@Validated
+public class DashboardProperties {
+
+    private Stream stream = new Stream();
+    private Query query = new Query();
+
+    @Data
+    public static class Stream {
+        /**
+         * Số kết nối SSE tối đa trên mỗi node
+         */
+        @Min(1) @Max(10000)
+        private int maxSubscribers = 200;
+
+        /**
+         * Thời gian sống của một kết nối SSE (phút), client tự kết nối lại khi hết hạn
+         */
+        @Min(1) @Max(1440)
+        private int emitterTimeoutMinutes = 30;
+
+        /**
+         * Kết nối bị coi là treo nếu một lần gửi kéo dài quá số giây này
+         */
+        @Min(1) @Max(600)
+        private int stallTimeoutSeconds = 30;
+    }
+
+    @Data
+    public static class Query {
+        /**
+         * Deadline chung cho mỗi lần fan-out query dashboard (ms)
+         */
+        @Min(100) @Max(60000)
+        private long deadlineMillis = 3000;
+    }
+}
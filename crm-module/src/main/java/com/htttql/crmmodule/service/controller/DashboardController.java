@@ -1,14 +1,17 @@
 package com.htttql.crmmodule.service.controller;
 
 import com.htttql.crmmodule.common.dto.ApiResponse;
+import com.htttql.crmmodule.service.service.DashboardStreamService;
 import com.htttql.crmmodule.service.service.IDashboardService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.Map;
@@ -20,6 +23,7 @@ import java.util.Map;
 public class DashboardController {
 
     private final IDashboardService dashboardService;
+    private final DashboardStreamService dashboardStreamService;
 
     @Operation(summary = "Get receptionist dashboard counts")
     @SecurityRequirement(name = "Bearer Authentication")
@@ -74,4 +78,13 @@ public class DashboardController {
         Map<String, Long> data = dashboardService.getMonthlyPerformance();
         return ResponseEntity.ok(ApiResponse.success(data, "Monthly performance counts"));
     }
+
+    @Operation(summary = "Stream live dashboard counters (SSE)",
+            description = "Sends a 'snapshot' event on connect, then 'delta' events as appointments, leads and invoices change")
+    @SecurityRequirement(name = "Bearer Authentication")
+    @PreAuthorize("hasAnyRole('ADMIN', 'MANAGER', 'RECEPTIONIST')")
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamDashboardCounters() {
+        return dashboardStreamService.subscribe();
+    }
 }
@@ -53,6 +53,8 @@ public class CustomerCaseResponse {
 
     // Financial summary
     private BigDecimal totalAmount;
+    private BigDecimal invoicedAmount;
+    private BigDecimal paidAmount;
 
     // Technician notes summary
     private Integer notesCount;
@@ -67,11 +67,21 @@ public class CustomerCase extends BaseEntity {
     @Builder.Default
     private CaseStatus status = CaseStatus.INTAKE;
 
+    // Suy ra từ invoiced_amount / paid_amount bởi ICaseBalanceService, entity không ghi đè khi update
     @Enumerated(EnumType.STRING)
-    @Column(name = "paid_status", nullable = true, length = 20, columnDefinition = "VARCHAR(20) DEFAULT 'UNPAID'")
+    @Column(name = "paid_status", nullable = true, updatable = false, length = 20, columnDefinition = "VARCHAR(20) DEFAULT 'UNPAID'")
     @Builder.Default
     private PaidStatus paidStatus = PaidStatus.UNPAID;
 
+    // Tổng hóa đơn / tổng đã thanh toán của case, chỉ thay đổi bằng delta SQL (xem ICaseBalanceService)
+    @Column(name = "invoiced_amount", nullable = false, insertable = false, updatable = false,
+            precision = 12, scale = 2, columnDefinition = "NUMERIC(12,2) DEFAULT 0")
+    private BigDecimal invoicedAmount;
+
+    @Column(name = "paid_amount", nullable = false, insertable = false, updatable = false,
+            precision = 12, scale = 2, columnDefinition = "NUMERIC(12,2) DEFAULT 0")
+    private BigDecimal paidAmount;
+
     @Column(name = "start_date")
     private LocalDate startDate;
 
@@ -0,0 +1,58 @@
+package com.htttql.crmmodule.service.event;
+
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Delta of live dashboard counters caused by a single write
+ * Published by write services, consumed by DashboardStreamService after commit.
+ * Revenue is counted in whole VND: every invoice amount is rounded half-up on its own (see {@link #wholeVnd}),
+ * both in the deltas and in the snapshot, so the live total never drifts from the database sum.
+ */
+@Getter
+public class DashboardCounterEvent {
+
+    public static final String TODAY_APPOINTMENTS = "todayAppointments";
+    public static final String TODAY_COMPLETED = "todayCompleted";
+    public static final String PENDING_REQUESTS = "pendingRequests";
+    public static final String TODAY_REVENUE = "todayRevenue";
+
+    private final Map<String, Long> deltas;
+
+    private DashboardCounterEvent(Map<String, Long> deltas) {
+        this.deltas = Collections.unmodifiableMap(deltas);
+    }
+
+    public static DashboardCounterEvent of(String counter, long delta) {
+        Map<String, Long> deltas = new LinkedHashMap<>();
+        deltas.put(counter, delta);
+        return new DashboardCounterEvent(deltas);
+    }
+
+    /**
+     * Build event from the counter contribution of an entity before and after a write
+     */
+    public static DashboardCounterEvent diff(Map<String, Long> before, Map<String, Long> after) {
+        Map<String, Long> deltas = new LinkedHashMap<>();
+        after.forEach((counter, value) -> deltas.merge(counter, value, Long::sum));
+        before.forEach((counter, value) -> deltas.merge(counter, -value, Long::sum));
+        deltas.values().removeIf(delta -> delta == 0L);
+        return new DashboardCounterEvent(deltas);
+    }
+
+    /**
+     * Invoice amount as counted by TODAY_REVENUE (same rounding as ROUND(total_amount) in PostgreSQL)
+     */
+    public static long wholeVnd(BigDecimal amount) {
+        return amount == null ? 0L : amount.setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    public boolean isEmpty() {
+        return deltas.isEmpty();
+    }
+}
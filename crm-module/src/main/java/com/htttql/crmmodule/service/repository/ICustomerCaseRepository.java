@@ -2,7 +2,10 @@ package com.htttql.crmmodule.service.repository;
 
 import com.htttql.crmmodule.service.entity.CustomerCase;
 import com.htttql.crmmodule.service.enums.CaseServiceStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -17,6 +20,13 @@ public interface ICustomerCaseRepository extends JpaRepository<CustomerCase, Lon
      * Find customer cases by customer ID
      */
     List<CustomerCase> findByCustomer_CustomerId(Long customerId);
+
+    /**
+     * Most recent cases of a customer with customer and primary service loaded
+     */
+    @Query("SELECT c FROM CustomerCase c JOIN FETCH c.customer LEFT JOIN FETCH c.primaryService " +
+            "WHERE c.customer.customerId = :customerId ORDER BY c.createdAt DESC, c.caseId DESC")
+    List<CustomerCase> findRecentByCustomerId(@Param("customerId") Long customerId, Pageable pageable);
     
     /**
      * Find customer cases by status
@@ -0,0 +1,185 @@
+package com.htttql.crmmodule.service.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Incremental case paid status
+ * customer_case.invoiced_amount / paid_amount are moved by deltas under the row lock and paid_status is
+ * recomputed from the new values in the same UPDATE, no aggregate over invoices or payments on the write path.
+ * A nightly job recomputes the amounts from source tables to detect (and repair) drift; the same repair
+ * backfills the amounts at startup while the columns still hold their DEFAULT 0.
+ */
+@Slf4j
+@Service
+public class CaseBalanceServiceImpl implements ICaseBalanceService {
+
+    // cc.* là giá trị hiện tại của dòng (đọc lại sau khi chờ khóa), d.* là delta
+    private static final String APPLY_DELTAS_SQL = """
+            UPDATE service.customer_case cc
+            SET invoiced_amount = cc.invoiced_amount + d.invoiced,
+                paid_amount = cc.paid_amount + d.paid,
+                paid_status = CASE
+                    WHEN cc.paid_amount + d.paid = 0 THEN 'UNPAID'
+                    WHEN cc.paid_amount + d.paid < cc.invoiced_amount + d.invoiced THEN 'PARTIALLY_PAID'
+                    WHEN cc.paid_amount + d.paid = cc.invoiced_amount + d.invoiced THEN 'FULLY_PAID'
+                    ELSE 'OVERPAID' END,
+                updated_at = now()
+            FROM unnest(?, ?, ?) AS d(case_id, invoiced, paid)
+            WHERE cc.case_id = d.case_id
+            """;
+
+    // Thanh toán còn chờ trong outbox chưa được cộng vào paid_amount nên không tính là lệch
+    private static final String ACTUAL_AMOUNTS = """
+            SELECT cc.case_id,
+                   (SELECT COALESCE(sum(i.total_amount), 0) FROM billing.invoice i
+                     WHERE i.case_id = cc.case_id) AS invoiced,
+                   (SELECT COALESCE(sum(p.amount), 0) FROM billing.payment p
+                     JOIN billing.invoice i ON i.invoice_id = p.invoice_id
+                     WHERE i.case_id = cc.case_id
+                       AND NOT EXISTS (SELECT 1 FROM billing.payment_outbox o
+                                       WHERE o.payment_id = p.payment_id AND o.status <> 'DONE')) AS paid
+            FROM service.customer_case cc
+            """;
+
+    private static final String DETECT_DRIFT_SQL = "SELECT a.case_id FROM (" + ACTUAL_AMOUNTS + ") a "
+            + "JOIN service.customer_case cc ON cc.case_id = a.case_id "
+            + "WHERE cc.invoiced_amount <> a.invoiced OR cc.paid_amount <> a.paid";
+
+    private static final String LOCK_CASE_SQL = "SELECT case_id FROM service.customer_case WHERE case_id = ? FOR UPDATE";
+
+    // Chạy sau khi đã giữ khóa dòng nên snapshot của câu lệnh thấy mọi delta đã commit
+    private static final String REPAIR_SQL = """
+            UPDATE service.customer_case cc
+            SET invoiced_amount = a.invoiced,
+                paid_amount = a.paid,
+                paid_status = CASE
+                    WHEN a.paid = 0 THEN 'UNPAID'
+                    WHEN a.paid < a.invoiced THEN 'PARTIALLY_PAID'
+                    WHEN a.paid = a.invoiced THEN 'FULLY_PAID'
+                    ELSE 'OVERPAID' END,
+                updated_at = now()
+            FROM (%s WHERE cc.case_id = ?) a
+            WHERE cc.case_id = a.case_id
+            RETURNING a.invoiced, a.paid
+            """.formatted(ACTUAL_AMOUNTS.strip());
+
+    // Cột thêm bằng ddl-auto có DEFAULT 0: case có hóa đơn khác 0 mà invoiced_amount = 0 là chưa backfill
+    private static final String NEEDS_BACKFILL_SQL = """
+            SELECT EXISTS (SELECT 1 FROM service.customer_case cc
+                           WHERE cc.invoiced_amount = 0
+                             AND EXISTS (SELECT 1 FROM billing.invoice i
+                                         WHERE i.case_id = cc.case_id AND i.total_amount <> 0))
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate repairTransaction;
+    private final boolean repairDrift;
+
+    public CaseBalanceServiceImpl(JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${app.case.balance.repair-drift:true}") boolean repairDrift) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.repairTransaction = new TransactionTemplate(transactionManager);
+        this.repairDrift = repairDrift;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void applyDelta(Long caseId, BigDecimal invoicedDelta, BigDecimal paidDelta) {
+        if (caseId == null) {
+            return;
+        }
+        BigDecimal invoiced = invoicedDelta != null ? invoicedDelta : BigDecimal.ZERO;
+        BigDecimal paid = paidDelta != null ? paidDelta : BigDecimal.ZERO;
+        if (invoiced.signum() == 0 && paid.signum() == 0) {
+            return;
+        }
+        update(new Long[]{caseId}, new BigDecimal[]{invoiced}, new BigDecimal[]{paid});
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void applyPaidDeltas(Map<Long, BigDecimal> paidDeltas) {
+        // Khóa các dòng theo thứ tự case_id để các transaction song song không deadlock
+        Map<Long, BigDecimal> sorted = new TreeMap<>(paidDeltas);
+        sorted.values().removeIf(delta -> delta == null || delta.signum() == 0);
+        if (sorted.isEmpty()) {
+            return;
+        }
+        BigDecimal[] zeros = new BigDecimal[sorted.size()];
+        Arrays.fill(zeros, BigDecimal.ZERO);
+        update(sorted.keySet().toArray(Long[]::new), zeros, sorted.values().toArray(BigDecimal[]::new));
+    }
+
+    private void update(Long[] caseIds, BigDecimal[] invoiced, BigDecimal[] paid) {
+        jdbcTemplate.update(APPLY_DELTAS_SQL, ps -> {
+            ps.setArray(1, ps.getConnection().createArrayOf("bigint", caseIds));
+            ps.setArray(2, ps.getConnection().createArrayOf("numeric", invoiced));
+            ps.setArray(3, ps.getConnection().createArrayOf("numeric", paid));
+        });
+    }
+
+    @Override
+    @Scheduled(cron = "${app.case.balance.reconcile-cron:0 45 2 * * ?}")
+    public int reconcile() {
+        return reconcile(repairDrift);
+    }
+
+    /**
+     * Backfill the amounts once for databases created before the columns existed,
+     * instead of serving zeros until the nightly reconciliation
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfNeeded() {
+        try {
+            if (Boolean.TRUE.equals(jdbcTemplate.queryForObject(NEEDS_BACKFILL_SQL, Boolean.class))) {
+                log.info("Case balances not initialized, backfilling from invoices and payments");
+                reconcile(true);
+            }
+        } catch (Exception e) {
+            log.error("Error backfilling case balances", e);
+        }
+    }
+
+    private int reconcile(boolean repair) {
+        List<Long> drifted = jdbcTemplate.queryForList(DETECT_DRIFT_SQL, Long.class);
+        if (drifted.isEmpty()) {
+            log.info("Case balance reconciliation: no drift");
+            return 0;
+        }
+        log.warn("Case balance reconciliation: {} drifted cases {}", drifted.size(),
+                drifted.size() > 20 ? drifted.subList(0, 20) + "..." : drifted);
+        if (repair) {
+            for (Long caseId : drifted) {
+                try {
+                    repairTransaction.executeWithoutResult(status -> {
+                        jdbcTemplate.queryForList(LOCK_CASE_SQL, Long.class, caseId);
+                        jdbcTemplate.query(REPAIR_SQL, rs -> {
+                            log.info("Repaired case {}: invoiced={}, paid={}", caseId,
+                                    rs.getBigDecimal("invoiced"), rs.getBigDecimal("paid"));
+                        }, caseId);
+                    });
+                } catch (Exception e) {
+                    log.error("Failed to repair balance of case {}", caseId, e);
+                }
+            }
+        }
+        return drifted.size();
+    }
+}
@@ -15,6 +15,7 @@ import com.htttql.crmmodule.core.repository.ICustomerRepository;
 import com.htttql.crmmodule.common.exception.ResourceNotFoundException;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
@@ -58,6 +59,13 @@ public class CustomerCaseServiceImpl implements ICustomerCaseService {
                 allCases.size()).map(this::mapToResponse);
     }
 
+    @Override
+    public List<CustomerCaseResponse> getRecentCasesByCustomerId(Long customerId, int limit) {
+        return customerCaseRepository.findRecentByCustomerId(customerId, PageRequest.of(0, limit)).stream()
+                .map(this::mapToResponse)
+                .toList();
+    }
+
     @Override
     public CustomerCaseResponse updateCustomerCaseStatus(Long id, String status) {
         CustomerCase customerCase = customerCaseRepository.findById(id)
@@ -204,6 +212,8 @@ public class CustomerCaseServiceImpl implements ICustomerCaseService {
                 .endDate(customerCase.getEndDate())
                 .intakeNote(customerCase.getIntakeNote())
                 .totalAmount(customerCase.getTotalAmount())
+                .invoicedAmount(customerCase.getInvoicedAmount())
+                .paidAmount(customerCase.getPaidAmount())
                 .createdAt(customerCase.getCreatedAt())
                 .updatedAt(customerCase.getUpdatedAt())
                 .build();
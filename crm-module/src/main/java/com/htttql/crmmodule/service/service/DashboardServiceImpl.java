@@ -1,21 +1,35 @@
 package com.htttql.crmmodule.service.service;
 
 import com.htttql.crmmodule.common.enums.AppointmentStatus;
+import com.htttql.crmmodule.common.enums.LeadStatus;
+import com.htttql.crmmodule.common.service.ParallelQueryExecutor;
 import com.htttql.crmmodule.core.repository.ICustomerRepository;
 import com.htttql.crmmodule.lead.repository.IAppointmentRepository;
 import com.htttql.crmmodule.lead.repository.ILeadRepository;
 import com.htttql.crmmodule.billing.repository.IInvoiceRepository;
-import com.htttql.crmmodule.service.repository.IServiceRepository;
+import com.htttql.crmmodule.service.config.DashboardProperties;
+import com.htttql.crmmodule.service.event.DashboardCounterEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
-
+import java.util.function.Supplier;
+
+/**
+ * Dashboard statistics
+ * Các query độc lập được chạy song song qua ParallelQueryExecutor (mỗi query một transaction read-only),
+ * độ trễ = query chậm nhất thay vì tổng các query. Chỉ số lỗi/quá hạn bị bỏ khỏi kết quả,
+ * nếu toàn bộ lỗi thì trả về 503 thay vì số liệu giả.
+ */
 @Slf4j
 @Service("dashboardService")
 @RequiredArgsConstructor
@@ -25,195 +39,160 @@ public class DashboardServiceImpl implements IDashboardService {
     private final IAppointmentRepository appointmentRepository;
     private final ILeadRepository leadRepository;
     private final IInvoiceRepository invoiceRepository;
-    private final IServiceRepository serviceRepository;
+    private final ParallelQueryExecutor queryExecutor;
+    private final DashboardProperties properties;
 
     private static long toLong(BigDecimal v) {
         return v == null ? 0L : v.longValue();
     }
 
     @Override
-    @Transactional(readOnly = true)
     public Map<String, Long> getReceptionistDashboardStats() {
-        Map<String, Long> m = new LinkedHashMap<>();
-
         LocalDate today = LocalDate.now();
         LocalDateTime endOfToday = today.atTime(23, 59, 59);
-        LocalDate weekStart = today.minusDays(6);
-        LocalDate monthStart = today.minusDays(29);
-
-        try {
-            // Today
-            long todayAppointments = appointmentRepository.countByDate(today);
-            long todayDone        = appointmentRepository.countByDateAndStatus(today, AppointmentStatus.DONE);
-            long todayCancelled   = appointmentRepository.countByDateAndStatus(today, AppointmentStatus.CANCELLED);
-            long todayNewCustomers= customerRepository.countByCreatedDate(today);
-
-            // Leads pending (NEW)
-            long pendingRequests  = leadRepository.findAll().stream()
-                    .filter(l -> "NEW".equals(l.getStatus())).count();
-
-            // Week
-            LocalDateTime weekStartTime = weekStart.atStartOfDay();
-            long weekAppointments = appointmentRepository.countByDateRange(weekStartTime, endOfToday);
-            long weekNewCustomers = customerRepository.countByCreatedDateBetween(weekStartTime, endOfToday);
-
-            // Month
-            LocalDateTime monthStartTime = monthStart.atStartOfDay();
-            long monthAppointments = appointmentRepository.countByDateRange(monthStartTime, endOfToday);
-            long monthNewCustomers = customerRepository.countByCreatedDateBetween(monthStartTime, endOfToday);
-
-            // Totals / actives
-            long totalCustomers    = customerRepository.count();
-            long activeCustomers   = appointmentRepository.countActiveCustomersInDateRange(monthStartTime, endOfToday);
-
-            // By status (global)
-            long scheduled  = appointmentRepository.countByStatus(AppointmentStatus.SCHEDULED);
-            long confirmed  = appointmentRepository.countByStatus(AppointmentStatus.CONFIRMED);
-        //     long inProgress = appointmentRepository.countByStatus(AppointmentStatus.IN_PROGRESS);
-            long completed  = appointmentRepository.countByStatus(AppointmentStatus.DONE);
-            long cancelled  = appointmentRepository.countByStatus(AppointmentStatus.CANCELLED);
-
-            m.put("todayAppointments", todayAppointments);
-            m.put("todayCompleted",    todayDone);
-            m.put("todayNoShows",      todayCancelled); // nếu có trạng thái NO_SHOW riêng thì thay bằng count tương ứng
-            m.put("pendingRequests",   pendingRequests);
-            m.put("newCustomersToday", todayNewCustomers);
-
-            m.put("weekAppointments",  weekAppointments);
-            m.put("weekNewCustomers",  weekNewCustomers);
-
-            m.put("monthAppointments", monthAppointments);
-            m.put("monthNewCustomers", monthNewCustomers);
-
-            m.put("totalCustomers",    totalCustomers);
-            m.put("activeCustomers",   activeCustomers);
-
-            m.put("scheduled",         scheduled);
-            m.put("confirmed",         confirmed);
-            // m.put("inProgress",        inProgress);
-            m.put("completed",         completed);
-            m.put("cancelled",         cancelled);
-
-            return m;
-        } catch (Exception e) {
-            log.error("Error calculating receptionist dashboard counts", e);
-            // fallback đơn giản
-            m.put("todayAppointments", 8L);
-            m.put("todayCompleted",    3L);
-            m.put("todayNoShows",      1L);
-            m.put("pendingRequests",   4L);
-            m.put("newCustomersToday", 2L);
-            m.put("weekAppointments",  45L);
-            m.put("weekNewCustomers",  8L);
-            m.put("monthAppointments", 180L);
-            m.put("monthNewCustomers", 25L);
-            m.put("totalCustomers",    320L);
-            m.put("activeCustomers",   145L);
-            m.put("scheduled",         12L);
-            m.put("confirmed",         8L);
-            m.put("inProgress",        3L);
-            m.put("completed",         25L);
-            m.put("cancelled",         2L);
-            return m;
-        }
+        LocalDateTime weekStartTime = today.minusDays(6).atStartOfDay();
+        LocalDateTime monthStartTime = today.minusDays(29).atStartOfDay();
+
+        Map<String, Supplier<Long>> q = new LinkedHashMap<>();
+
+        // Today
+        q.put("todayAppointments", () -> appointmentRepository.countByDate(today));
+        q.put("todayCompleted",    () -> appointmentRepository.countByDateAndStatus(today, AppointmentStatus.DONE));
+        q.put("todayNoShows",      () -> appointmentRepository.countByDateAndStatus(today, AppointmentStatus.CANCELLED)); // nếu có trạng thái NO_SHOW riêng thì thay bằng count tương ứng
+        q.put("pendingRequests",   () -> leadRepository.countByStatus(LeadStatus.NEW));
+        q.put("newCustomersToday", () -> customerRepository.countByCreatedDate(today));
+
+        // Week
+        q.put("weekAppointments",  () -> appointmentRepository.countByDateRange(weekStartTime, endOfToday));
+        q.put("weekNewCustomers",  () -> customerRepository.countByCreatedDateBetween(weekStartTime, endOfToday));
+
+        // Month
+        q.put("monthAppointments", () -> appointmentRepository.countByDateRange(monthStartTime, endOfToday));
+        q.put("monthNewCustomers", () -> customerRepository.countByCreatedDateBetween(monthStartTime, endOfToday));
+
+        // Totals / actives
+        q.put("totalCustomers",    customerRepository::count);
+        q.put("activeCustomers",   () -> appointmentRepository.countActiveCustomersInDateRange(monthStartTime, endOfToday));
+
+        // By status (global)
+        q.put("scheduled",         () -> appointmentRepository.countByStatus(AppointmentStatus.SCHEDULED));
+        q.put("confirmed",         () -> appointmentRepository.countByStatus(AppointmentStatus.CONFIRMED));
+        q.put("completed",         () -> appointmentRepository.countByStatus(AppointmentStatus.DONE));
+        q.put("cancelled",         () -> appointmentRepository.countByStatus(AppointmentStatus.CANCELLED));
+
+        return toCounts(queryExecutor.run(q, deadline()), "receptionist dashboard counts");
     }
 
     @Override
-    @Transactional(readOnly = true)
     public Map<String, Long> getAppointmentStatusChart() {
-        Map<String, Long> m = new LinkedHashMap<>();
+        Map<String, Supplier<Long>> q = new LinkedHashMap<>();
         // Chỉ số theo trạng thái
-        m.put("scheduled",  appointmentRepository.countByStatus(AppointmentStatus.SCHEDULED));
-        m.put("confirmed",  appointmentRepository.countByStatus(AppointmentStatus.CONFIRMED));
-        // m.put("inProgress", appointmentRepository.countByStatus(AppointmentStatus.IN_PROGRESS));
-        m.put("completed",  appointmentRepository.countByStatus(AppointmentStatus.DONE));
-        m.put("cancelled",  appointmentRepository.countByStatus(AppointmentStatus.CANCELLED));
-        return m;
+        q.put("scheduled",  () -> appointmentRepository.countByStatus(AppointmentStatus.SCHEDULED));
+        q.put("confirmed",  () -> appointmentRepository.countByStatus(AppointmentStatus.CONFIRMED));
+        q.put("completed",  () -> appointmentRepository.countByStatus(AppointmentStatus.DONE));
+        q.put("cancelled",  () -> appointmentRepository.countByStatus(AppointmentStatus.CANCELLED));
+        return toCounts(queryExecutor.run(q, deadline()), "appointment status counts");
     }
 
     @Override
-    @Transactional(readOnly = true)
     public List<Long> getAppointmentTrendChart() {
         // 7 ngày gần nhất: oldest -> newest
-        List<Long> counts = new ArrayList<>(7);
+        Map<String, Supplier<Long>> q = new LinkedHashMap<>();
         for (int i = 6; i >= 0; i--) {
             LocalDate date = LocalDate.now().minusDays(i);
-            counts.add(appointmentRepository.countByDate(date));
+            q.put(date.toString(), () -> appointmentRepository.countByDate(date));
         }
-        return counts;
+        return toSeries(q, "appointment trend");
     }
 
     @Override
-    @Transactional(readOnly = true)
     public Map<String, Long> getCustomerTiersChart() {
-        Map<String, Long> m = new LinkedHashMap<>();
-        try {
-            m.put("REGULAR", customerRepository.countByTierCode("REGULAR"));
-            m.put("SILVER",  customerRepository.countByTierCode("SILVER"));
-            m.put("GOLD",    customerRepository.countByTierCode("GOLD"));
-            m.put("VIP",     customerRepository.countByTierCode("VIP"));
-            long none = customerRepository.countByTierIsNull();
-            if (none > 0) m.put("NONE", none);
-        } catch (Exception e) {
-            log.error("Error fetching customer tier counts", e);
-            // fallback
-            m.put("REGULAR", 180L);
-            m.put("SILVER",   95L);
-            m.put("GOLD",     35L);
-            m.put("VIP",      10L);
-        }
+        Map<String, Supplier<Long>> q = new LinkedHashMap<>();
+        q.put("REGULAR", () -> customerRepository.countByTierCode("REGULAR"));
+        q.put("SILVER",  () -> customerRepository.countByTierCode("SILVER"));
+        q.put("GOLD",    () -> customerRepository.countByTierCode("GOLD"));
+        q.put("VIP",     () -> customerRepository.countByTierCode("VIP"));
+        q.put("NONE",    customerRepository::countByTierIsNull);
+
+        Map<String, Long> m = toCounts(queryExecutor.run(q, deadline()), "customer tier counts");
+        m.remove("NONE", 0L);
         return m;
     }
 
     @Override
-    @Transactional(readOnly = true)
     public List<Long> getRevenueTrendChart() {
         // 30 ngày gần nhất (VND) oldest -> newest
-        List<Long> rev = new ArrayList<>(30);
+        Map<String, Supplier<Long>> q = new LinkedHashMap<>();
         for (int i = 29; i >= 0; i--) {
             LocalDate date = LocalDate.now().minusDays(i);
-            rev.add(toLong(invoiceRepository.sumRevenueByDate(date)));
+            q.put(date.toString(), () -> toLong(invoiceRepository.sumRevenueByDate(date)));
         }
-        return rev;
+        return toSeries(q, "revenue trend");
     }
 
     @Override
-    @Transactional(readOnly = true)
     public Map<String, Long> getMonthlyPerformance() {
-        Map<String, Long> m = new LinkedHashMap<>();
         LocalDateTime monthStart = LocalDate.now().withDayOfMonth(1).atStartOfDay();
         LocalDateTime monthEnd   = monthStart.plusMonths(1).minusNanos(1);
 
-        try {
-            long totalAppointments   = appointmentRepository.countByDateRange(monthStart, monthEnd);
-            long completed           = appointmentRepository.countByDateRangeAndStatus(monthStart, monthEnd, AppointmentStatus.DONE);
-            long cancelled           = appointmentRepository.countByDateRangeAndStatus(monthStart, monthEnd, AppointmentStatus.CANCELLED);
-            long totalRevenue        = toLong(invoiceRepository.sumRevenueByDateRange(monthStart, monthEnd));
-            long newCustomers        = customerRepository.countByCreatedDateBetween(monthStart, monthEnd);
-
-            // returningCustomers (>=2 lịch hẹn)
-            long returningCustomers  = customerRepository.findAll().stream()
-                    .filter(c -> appointmentRepository.findByCustomer_CustomerId(c.getCustomerId()).size() > 1)
-                    .count();
-
-            m.put("totalAppointments", totalAppointments);
-            m.put("completedAppointments", completed);
-            m.put("cancelledAppointments", cancelled);
-            m.put("totalRevenue", totalRevenue);
-            m.put("newCustomers", newCustomers);
-            m.put("returningCustomers", returningCustomers);
-
-            return m;
-        } catch (Exception e) {
-            log.error("Error calculating monthly performance counts", e);
-            // fallback
-            m.put("totalAppointments", 180L);
-            m.put("completedAppointments", 165L);
-            m.put("cancelledAppointments", 15L);
-            m.put("totalRevenue", 52_000_000L);
-            m.put("newCustomers", 25L);
-            m.put("returningCustomers", 155L);
-            return m;
+        Map<String, Supplier<Long>> q = new LinkedHashMap<>();
+        q.put("totalAppointments",     () -> appointmentRepository.countByDateRange(monthStart, monthEnd));
+        q.put("completedAppointments", () -> appointmentRepository.countByDateRangeAndStatus(monthStart, monthEnd, AppointmentStatus.DONE));
+        q.put("cancelledAppointments", () -> appointmentRepository.countByDateRangeAndStatus(monthStart, monthEnd, AppointmentStatus.CANCELLED));
+        q.put("totalRevenue",          () -> toLong(invoiceRepository.sumRevenueByDateRange(monthStart, monthEnd)));
+        q.put("newCustomers",          () -> customerRepository.countByCreatedDateBetween(monthStart, monthEnd));
+        // returningCustomers (>=2 lịch hẹn)
+        q.put("returningCustomers",    appointmentRepository::countReturningCustomers);
+
+        return toCounts(queryExecutor.run(q, deadline()), "monthly performance counts");
+    }
+
+    @Override
+    // Một snapshot cho cả bốn câu đếm: cùng mốc thời gian với pending delta của SSE stream
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public Map<String, Long> getLiveCounters() {
+        Map<String, Long> m = new LinkedHashMap<>();
+        LocalDate today = LocalDate.now();
+
+        m.put(DashboardCounterEvent.TODAY_APPOINTMENTS, appointmentRepository.countByDate(today));
+        m.put(DashboardCounterEvent.TODAY_COMPLETED,
+                appointmentRepository.countByDateAndStatus(today, AppointmentStatus.DONE));
+        m.put(DashboardCounterEvent.PENDING_REQUESTS, leadRepository.countByStatus(LeadStatus.NEW));
+        // Cùng cách làm tròn với delta (từng hóa đơn về VND nguyên) để snapshot + delta khớp tổng trong DB
+        m.put(DashboardCounterEvent.TODAY_REVENUE, toLong(invoiceRepository.sumRoundedRevenueByDate(today)));
+        return m;
+    }
+
+    private Duration deadline() {
+        return Duration.ofMillis(properties.getQuery().getDeadlineMillis());
+    }
+
+    // Kết quả từng phần: bỏ các chỉ số lỗi, chỉ báo lỗi khi không có chỉ số nào
+    private Map<String, Long> toCounts(ParallelQueryExecutor.Results<Long> results, String what) {
+        checkAvailable(results, what);
+        return new LinkedHashMap<>(results.getValues());
+    }
+
+    // Chuỗi thời gian giữ nguyên vị trí, ngày lỗi trả về null để biểu đồ hiển thị khoảng trống
+    private List<Long> toSeries(Map<String, Supplier<Long>> queries, String what) {
+        ParallelQueryExecutor.Results<Long> results = queryExecutor.run(queries, deadline());
+        checkAvailable(results, what);
+        List<Long> series = new ArrayList<>(queries.size());
+        for (String key : queries.keySet()) {
+            series.add(results.get(key));
+        }
+        return series;
+    }
+
+    private void checkAvailable(ParallelQueryExecutor.Results<Long> results, String what) {
+        if (results.isAllFailed()) {
+            String key = results.getFailedKeys().iterator().next();
+            log.error("Error calculating {}", what, results.getFailure(key));
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Dashboard " + what + " are temporarily unavailable");
+        }
+        if (!results.isComplete()) {
+            log.warn("Partial {}: unavailable {}", what, results.getFailedKeys());
         }
     }
 }
@@ -0,0 +1,218 @@
+package com.htttql.crmmodule.service.service;
+
+import com.htttql.crmmodule.service.config.DashboardProperties;
+import com.htttql.crmmodule.service.event.DashboardCounterEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Push channel (SSE) for live dashboard counters
+ * Deltas are coalesced per connection, so a slow client never queues more than one pending map
+ */
+@Slf4j
+@Service
+public class DashboardStreamService {
+
+    private static final String EVENT_SNAPSHOT = "snapshot";
+    private static final String EVENT_DELTA = "delta";
+
+    private final IDashboardService dashboardService;
+    private final DashboardProperties properties;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Semaphore slots;
+    private final ExecutorService sender = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile LocalDate counterDate = LocalDate.now();
+
+    public DashboardStreamService(IDashboardService dashboardService, DashboardProperties properties) {
+        this.dashboardService = dashboardService;
+        this.properties = properties;
+        this.slots = new Semaphore(properties.getStream().getMaxSubscribers());
+    }
+
+    public SseEmitter subscribe() {
+        if (!slots.tryAcquire()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Too many dashboard stream subscribers, please fall back to polling");
+        }
+
+        SseEmitter emitter = new SseEmitter(
+                Duration.ofMinutes(properties.getStream().getEmitterTimeoutMinutes()).toMillis());
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+
+        // Đăng ký trước khi đọc snapshot: delta commit trong lúc đọc/gửi snapshot nằm lại trong pending và được
+        // gửi ngay sau snapshot; inFlight giữ flush không gửi delta trước snapshot
+        subscriber.inFlight.set(true);
+        subscriber.sendStartedAt = System.currentTimeMillis();
+        subscribers.add(subscriber);
+        try {
+            emitter.send(SseEmitter.event().name(EVENT_SNAPSHOT).data(snapshotFor(subscriber)));
+        } catch (Exception e) {
+            subscriber.close();
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Cannot open dashboard stream", e);
+        } finally {
+            subscriber.inFlight.set(false);
+        }
+
+        log.debug("Dashboard stream subscriber added, active={}", subscribers.size());
+        return emitter;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCounterEvent(DashboardCounterEvent event) {
+        if (event.isEmpty() || subscribers.isEmpty()) {
+            return;
+        }
+        for (Subscriber subscriber : subscribers) {
+            event.getDeltas().forEach((counter, delta) -> subscriber.pending.merge(counter, delta, Long::sum));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.dashboard.stream.flush-millis:500}")
+    public void flushPendingDeltas() {
+        long stallMillis = Duration.ofSeconds(properties.getStream().getStallTimeoutSeconds()).toMillis();
+        long now = System.currentTimeMillis();
+
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.inFlight.get()) {
+                if (now - subscriber.sendStartedAt > stallMillis) {
+                    log.debug("Dropping stalled dashboard stream subscriber");
+                    subscriber.emitter.complete();
+                    subscriber.close();
+                }
+                continue;
+            }
+            if (!subscriber.pending.isEmpty() || subscriber.resync) {
+                dispatch(subscriber, null);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.dashboard.stream.heartbeat-millis:15000}")
+    public void heartbeat() {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+
+        // Counters are "today" based: push a fresh snapshot once the date rolls over
+        LocalDate today = LocalDate.now();
+        Map<String, Long> snapshot = null;
+        if (!today.equals(counterDate)) {
+            counterDate = today;
+            // Bỏ delta cũ trước khi đọc snapshot chung, delta commit sau đó vẫn được gửi tiếp
+            for (Subscriber subscriber : subscribers) {
+                subscriber.resync = true;
+                subscriber.pending.clear();
+            }
+            snapshot = dashboardService.getLiveCounters();
+        }
+
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.inFlight.get()) {
+                dispatch(subscriber, snapshot);
+            }
+        }
+    }
+
+    private void dispatch(Subscriber subscriber, Map<String, Long> snapshot) {
+        if (!subscriber.inFlight.compareAndSet(false, true)) {
+            return;
+        }
+        subscriber.sendStartedAt = System.currentTimeMillis();
+        sender.execute(() -> {
+            try {
+                if (subscriber.resync) {
+                    Map<String, Long> counters = snapshot != null ? snapshot : snapshotFor(subscriber);
+                    subscriber.resync = false;
+                    subscriber.emitter.send(SseEmitter.event().name(EVENT_SNAPSHOT).data(counters));
+                } else if (!subscriber.pending.isEmpty()) {
+                    Map<String, Long> deltas = subscriber.drain();
+                    if (!deltas.isEmpty()) {
+                        subscriber.emitter.send(SseEmitter.event().name(EVENT_DELTA).data(deltas));
+                    }
+                } else {
+                    subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+                }
+            } catch (IOException | IllegalStateException e) {
+                subscriber.close();
+            } catch (Exception e) {
+                log.error("Error pushing dashboard counters", e);
+                subscriber.emitter.completeWithError(e);
+                subscriber.close();
+            } finally {
+                subscriber.inFlight.set(false);
+            }
+        });
+    }
+
+    /**
+     * Counters for a (re)sync: deltas buffered so far are already in the snapshot and are dropped,
+     * deltas committed from here on stay pending and are sent after it
+     */
+    private Map<String, Long> snapshotFor(Subscriber subscriber) {
+        subscriber.pending.clear();
+        return dashboardService.getLiveCounters();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        sender.shutdownNow();
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final Map<String, Long> pending = new ConcurrentHashMap<>();
+        private final AtomicBoolean inFlight = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile long sendStartedAt;
+        private volatile boolean resync;
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        private Map<String, Long> drain() {
+            Map<String, Long> deltas = new LinkedHashMap<>();
+            for (String counter : pending.keySet()) {
+                Long delta = pending.remove(counter);
+                if (delta != null && delta != 0L) {
+                    deltas.put(counter, delta);
+                }
+            }
+            return deltas;
+        }
+
+        private void close() {
+            if (closed.compareAndSet(false, true)) {
+                subscribers.remove(this);
+                slots.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.htttql.crmmodule.service.service;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Maintained invoiced / paid amounts of customer cases
+ * Amounts change only by atomic deltas, paid status is derived from them in the same statement.
+ * Must be called inside the transaction that changes the invoice or payment.
+ */
+public interface ICaseBalanceService {
+
+    void applyDelta(Long caseId, BigDecimal invoicedDelta, BigDecimal paidDelta);
+
+    /**
+     * Paid deltas of several cases in one statement
+     */
+    void applyPaidDeltas(Map<Long, BigDecimal> paidDeltas);
+
+    /**
+     * Compares maintained amounts with the invoice / payment tables and repairs drifted cases
+     *
+     * @return number of drifted cases
+     */
+    int reconcile();
+}
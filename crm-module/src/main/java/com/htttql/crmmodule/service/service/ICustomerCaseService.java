@@ -5,6 +5,8 @@ import com.htttql.crmmodule.service.dto.CustomerCaseResponse;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.util.List;
+
 /**
  * Service interface for Customer Case operations
  */
@@ -40,6 +42,11 @@ public interface ICustomerCaseService {
      */
     Page<CustomerCaseResponse> getCustomerCasesByCustomerId(Long customerId, Pageable pageable);
 
+    /**
+     * Get the most recent cases of a customer (at most limit, no count)
+     */
+    List<CustomerCaseResponse> getRecentCasesByCustomerId(Long customerId, int limit);
+
     /**
      * Update customer case status
      */
@@ -22,4 +22,7 @@ public interface IDashboardService {
 
     // Tổng hợp tháng hiện tại: toàn số
     Map<String, Long> getMonthlyPerformance();
+
+    // Bộ đếm realtime cho SSE stream: todayAppointments/todayCompleted/pendingRequests/todayRevenue
+    Map<String, Long> getLiveCounters();
 }
@@ -0,0 +1,56 @@
+package com.htttql.crmmodule.billing.service;
+
+import com.htttql.crmmodule.billing.dto.InvoiceRequest;
+import com.htttql.crmmodule.billing.repository.IInvoiceRepository;
+import com.htttql.crmmodule.billing.repository.IPaymentRepository;
+import com.htttql.crmmodule.common.enums.InvoiceStatus;
+import com.htttql.crmmodule.common.exception.BadRequestException;
+import com.htttql.crmmodule.core.repository.ICustomerRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+/**
+ * Validation of InvoiceServiceImpl.createInvoice that must happen before anything is read or written
+ */
+@ExtendWith(MockitoExtension.class)
+class InvoiceCreationTest {
+
+    @Mock
+    private IInvoiceRepository invoiceRepository;
+
+    @Mock
+    private ICustomerRepository customerRepository;
+
+    @Mock
+    private IPaymentRepository paymentRepository;
+
+    @Mock
+    private InvoiceNumberAllocator invoiceNumberAllocator;
+
+    @InjectMocks
+    private InvoiceServiceImpl invoiceService;
+
+    @Test
+    void paidInvoiceWithoutStaffIsRejectedUpFront() {
+        // Payment tự sinh cần paid_by (NOT NULL): trả 400 thay vì lỗi NOT NULL từ database
+        InvoiceRequest request = InvoiceRequest.builder()
+                .customerId(1L)
+                .caseId(2L)
+                .totalAmount(new BigDecimal("500000"))
+                .status(InvoiceStatus.PAID)
+                .build();
+
+        assertThatThrownBy(() -> invoiceService.createInvoice(request))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("User ID");
+        verifyNoInteractions(customerRepository, invoiceRepository, paymentRepository, invoiceNumberAllocator);
+    }
+}
@@ -0,0 +1,192 @@
+package com.htttql.crmmodule.billing.service;
+
+import com.htttql.crmmodule.billing.config.BillingProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * InvoiceNumberAllocator against an in-memory invoice_number_block table shared by several "nodes"
+ */
+@Slf4j
+class InvoiceNumberAllocatorTest {
+
+    private static final int NODES = 3;
+    private static final int THREADS_PER_NODE = 8;
+
+    @Test
+    void concurrentAllocationsAcrossNodesAreUniqueAndOrderedPerThread() throws Exception {
+        BlockTable table = new BlockTable(0);
+        List<InvoiceNumberAllocator> nodes = nodes(table, 50, 6);
+        int perThread = 5_000;
+
+        Set<String> issued = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        List<List<String>> sequences = run(nodes, perThread, number -> {
+            if (!issued.add(number)) {
+                duplicates.incrementAndGet();
+            }
+        });
+
+        assertThat(duplicates).hasValue(0);
+        assertThat(issued).hasSize(NODES * THREADS_PER_NODE * perThread);
+        assertThat(issued).allMatch(number -> number.matches("INV-\\d{8}-\\d{6}"));
+        // Số trong một node tăng dần, nên số một thread nhận được tăng dần cả theo chuỗi
+        for (List<String> sequence : sequences) {
+            assertThat(sequence).isSortedAccordingTo(String::compareTo);
+        }
+        // Không số nào nằm ngoài các block đã giữ trong database
+        long lastReserved = table.rows.get(LocalDate.now()).get();
+        assertThat(issued).allMatch(number -> Long.parseLong(number.substring(13)) <= lastReserved);
+    }
+
+    @Test
+    void numbersPastFiveDigitsStillSortLexically() {
+        BlockTable table = new BlockTable(99_990);
+        InvoiceNumberAllocator allocator = nodes(table, 10, 6).get(0);
+
+        List<String> numbers = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            numbers.add(allocator.next());
+        }
+
+        assertThat(numbers.get(0)).endsWith("-099991");
+        assertThat(numbers).contains(numbers.get(0).substring(0, 13) + "100000");
+        assertThat(numbers).isSortedAccordingTo(String::compareTo);
+    }
+
+    @Test
+    void refusesNumbersBeyondTheSequenceWidth() {
+        BlockTable table = new BlockTable(9_995);
+        InvoiceNumberAllocator allocator = nodes(table, 10, 4).get(0);
+
+        List<String> numbers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            numbers.add(allocator.next());
+        }
+
+        assertThat(numbers.get(3)).endsWith("-9999");
+        assertThatThrownBy(allocator::next).isInstanceOf(IllegalStateException.class);
+    }
+
+    // Benchmark: ghi log số lượt cấp/giây, mỗi lần giữ block mô phỏng một round trip 1 ms tới database.
+    // Chỉ chạy khi bật: mvn test -Dtest=InvoiceNumberAllocatorTest -Dbench.enabled=true
+    @Test
+    @EnabledIfSystemProperty(named = "bench.enabled", matches = "true")
+    void benchmarkAllocationsPerSecond() throws Exception {
+        for (int blockSize : new int[]{1, 50, 500}) {
+            BlockTable table = new BlockTable(0, 1);
+            List<InvoiceNumberAllocator> nodes = nodes(table, blockSize, 9);
+            int perThread = blockSize == 1 ? 100 : 20_000;
+            Set<String> issued = ConcurrentHashMap.newKeySet();
+
+            long started = System.nanoTime();
+            run(nodes, perThread, issued::add);
+            double seconds = (System.nanoTime() - started) / 1e9;
+
+            int total = NODES * THREADS_PER_NODE * perThread;
+            assertThat(issued).hasSize(total);
+            log.info("block size {}: {} numbers by {} threads on {} nodes in {} s = {} allocations/s, {} reservations",
+                    blockSize, total, NODES * THREADS_PER_NODE, NODES, String.format("%.2f", seconds),
+                    Math.round(total / seconds), table.reservations.get());
+            // Mỗi lần giữ block tốn ~1 ms: block lớn phải giảm số lần giữ tương ứng
+            assertThat(table.reservations.get()).isLessThanOrEqualTo(total / blockSize + NODES);
+        }
+    }
+
+    private static List<InvoiceNumberAllocator> nodes(BlockTable table, int blockSize, int digits) {
+        List<InvoiceNumberAllocator> nodes = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            BillingProperties properties = new BillingProperties();
+            properties.getInvoiceNumber().setBlockSize(blockSize);
+            properties.getInvoiceNumber().setSequenceDigits(digits);
+            nodes.add(new InvoiceNumberAllocator(table, properties));
+        }
+        return nodes;
+    }
+
+    private static List<List<String>> run(List<InvoiceNumberAllocator> nodes, int perThread,
+                                          java.util.function.Consumer<String> sink) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(nodes.size() * THREADS_PER_NODE);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (InvoiceNumberAllocator node : nodes) {
+                for (int t = 0; t < THREADS_PER_NODE; t++) {
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        List<String> sequence = new ArrayList<>(perThread);
+                        for (int i = 0; i < perThread; i++) {
+                            String number = node.next();
+                            sink.accept(number);
+                            sequence.add(number);
+                        }
+                        return sequence;
+                    }));
+                }
+            }
+            start.countDown();
+            List<List<String>> sequences = new ArrayList<>();
+            for (Future<List<String>> future : futures) {
+                sequences.add(future.get(2, TimeUnit.MINUTES));
+            }
+            return sequences;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Bảng invoice_number_block trong bộ nhớ: upsert "last_reserved = last_reserved + size RETURNING last_reserved"
+     * là nguyên tử như câu lệnh thật (khóa dòng theo ngày)
+     */
+    private static class BlockTable extends JdbcTemplate {
+
+        private final Map<LocalDate, AtomicLong> rows = new ConcurrentHashMap<>();
+        private final long initial;
+        private final long latencyMillis;
+        private final AtomicInteger reservations = new AtomicInteger();
+
+        BlockTable(long initial) {
+            this(initial, 0);
+        }
+
+        BlockTable(long initial, long latencyMillis) {
+            this.initial = initial;
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public <T> T queryForObject(String sql, Class<T> requiredType, Object... args) {
+            if (latencyMillis > 0) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            reservations.incrementAndGet();
+            long size = ((Number) args[1]).longValue();
+            long last = rows.computeIfAbsent((LocalDate) args[0], day -> new AtomicLong(initial)).addAndGet(size);
+            return requiredType.cast(last);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.htttql.crmmodule.billing.service;
+
+import com.htttql.crmmodule.billing.dto.PaymentRequest;
+import com.htttql.crmmodule.common.enums.PaymentMethod;
+import com.htttql.crmmodule.security.service.SecurityContextService;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+/**
+ * Concurrent payments on one invoice against a real PostgreSQL (findForPaymentByInvoiceId version check +
+ * RetryingTransactionExecutor). Needs a dedicated database whose schema was created by starting the application:
+ * mvn test -Dtest=PaymentConcurrencyIntegrationTest -Dbench.jdbc.url=jdbc:postgresql://localhost:5432/crm_bench
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "bench.jdbc.url", matches = ".+")
+@SpringBootTest(properties = {
+        "app.billing.retry.max-attempts=20",
+        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true"
+})
+class PaymentConcurrencyIntegrationTest {
+
+    private static final long CUSTOMER_ID = 2_000_000_001L;
+    private static final long INVOICE_ID = 2_000_000_001L;
+    private static final int THREADS = 16;
+    private static final int PAYMENTS_PER_THREAD = 5;
+
+    @Autowired
+    private IPaymentService paymentService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Các thread worker không có phiên đăng nhập: người thu là nhân viên đầu tiên, như hóa đơn seed
+    @MockitoBean
+    private SecurityContextService securityContextService;
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> System.getProperty("bench.jdbc.url"));
+    }
+
+    @BeforeEach
+    void seed() {
+        cleanUp();
+        jdbcTemplate.update("""
+                INSERT INTO core.customer (customer_id, tier_id, total_spent, total_points, phone, full_name, created_at, updated_at)
+                VALUES (?, (SELECT min(tier_id) FROM core.tier), 0, 0, '0999000001', 'Payment stress', now(), now())
+                """, CUSTOMER_ID);
+        jdbcTemplate.update("""
+                INSERT INTO billing.invoice (invoice_id, customer_id, user_id, total_amount, status, invoice_number,
+                                             version, created_at, updated_at)
+                VALUES (?, ?, (SELECT min(staff_id) FROM core.staff_user), 1000000, 'UNPAID', 'STRESS-' || ?, 0, now(), now())
+                """, INVOICE_ID, CUSTOMER_ID, INVOICE_ID);
+        when(securityContextService.getCurrentStaffId())
+                .thenReturn(jdbcTemplate.queryForObject("SELECT min(staff_id) FROM core.staff_user", Long.class));
+    }
+
+    @AfterEach
+    void cleanUp() {
+        // Chờ outbox áp dụng xong các thanh toán trước khi xóa dữ liệu thử
+        for (int i = 0; i < 100 && pendingOutbox() > 0; i++) {
+            sleep(100);
+        }
+        jdbcTemplate.update("DELETE FROM billing.point_transaction WHERE customer_id = ?", CUSTOMER_ID);
+        jdbcTemplate.update("DELETE FROM billing.payment_outbox WHERE invoice_id = ?", INVOICE_ID);
+        jdbcTemplate.update("DELETE FROM billing.payment WHERE invoice_id = ?", INVOICE_ID);
+        jdbcTemplate.update("DELETE FROM billing.invoice WHERE invoice_id = ?", INVOICE_ID);
+        jdbcTemplate.update("DELETE FROM core.customer_stats WHERE customer_id = ?", CUSTOMER_ID);
+        jdbcTemplate.update("DELETE FROM core.customer WHERE customer_id = ?", CUSTOMER_ID);
+    }
+
+    @Test
+    void concurrentPaymentsNeverOverAllocateTheInvoice() throws Exception {
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+
+        long started = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < PAYMENTS_PER_THREAD; i++) {
+                        try {
+                            paymentService.createPayment(PaymentRequest.builder().invoiceId(INVOICE_ID)
+                                    .amount(new BigDecimal("100000")).method(PaymentMethod.CASH).build());
+                            succeeded.incrementAndGet();
+                        } catch (IllegalArgumentException e) {
+                            rejected.incrementAndGet();
+                        } catch (ConcurrencyFailureException e) {
+                            conflicts.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        BigDecimal paid = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(sum(amount), 0) FROM billing.payment WHERE invoice_id = ?", BigDecimal.class, INVOICE_ID);
+        Long version = jdbcTemplate.queryForObject(
+                "SELECT version FROM billing.invoice WHERE invoice_id = ?", Long.class, INVOICE_ID);
+        log.info("{} payment attempts by {} threads in {} ms: {} recorded, {} rejected, {} conflicts, invoice version {}",
+                THREADS * PAYMENTS_PER_THREAD, THREADS, (System.nanoTime() - started) / 1_000_000,
+                succeeded.get(), rejected.get(), conflicts.get(), version);
+
+        assertThat(paid).isEqualByComparingTo("1000000");
+        assertThat(succeeded).hasValue(10);
+        assertThat(rejected).hasValue(THREADS * PAYMENTS_PER_THREAD - 10);
+        assertThat(conflicts).hasValue(0);
+        // Mỗi giao dịch thanh toán thành công tăng version đúng một lần
+        assertThat(version).isEqualTo(10L);
+    }
+
+    private int pendingOutbox() {
+        Integer pending = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM billing.payment_outbox WHERE invoice_id = ? AND status = 'PENDING'",
+                Integer.class, INVOICE_ID);
+        return pending != null ? pending : 0;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
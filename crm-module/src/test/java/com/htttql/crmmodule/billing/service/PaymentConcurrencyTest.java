@@ -0,0 +1,230 @@
+package com.htttql.crmmodule.billing.service;
+
+import com.htttql.crmmodule.billing.config.BillingProperties;
+import com.htttql.crmmodule.billing.dto.PaymentRequest;
+import com.htttql.crmmodule.billing.entity.Invoice;
+import com.htttql.crmmodule.billing.entity.Payment;
+import com.htttql.crmmodule.billing.repository.IInvoiceRepository;
+import com.htttql.crmmodule.billing.repository.IPaymentRepository;
+import com.htttql.crmmodule.common.enums.PaymentMethod;
+import com.htttql.crmmodule.common.service.KeysetPaginator;
+import com.htttql.crmmodule.common.service.RetryingTransactionExecutor;
+import com.htttql.crmmodule.core.entity.StaffUser;
+import com.htttql.crmmodule.core.repository.IStaffUserRepository;
+import com.htttql.crmmodule.security.service.SecurityContextService;
+import com.htttql.crmmodule.service.service.ICaseBalanceService;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Concurrent payments on one invoice through PaymentServiceImpl and RetryingTransactionExecutor
+ * The repositories are backed by an in-memory invoice that behaves like findForPaymentByInvoiceId
+ * (OPTIMISTIC_FORCE_INCREMENT): a transaction commits its payments only if the invoice version it read is still
+ * current, otherwise the commit fails with an optimistic locking exception as Hibernate's version check does.
+ */
+class PaymentConcurrencyTest {
+
+    private static final long INVOICE_ID = 42L;
+    private static final int THREADS = 16;
+
+    @Test
+    void concurrentPaymentsNeverOverAllocateTheInvoice() throws Exception {
+        InvoiceStore store = new InvoiceStore(new BigDecimal("1000000"));
+        IPaymentService paymentService = paymentService(store, 50);
+
+        // 16 x 5 lượt thanh toán 100.000 cho hóa đơn 1.000.000: đúng 10 lượt được ghi nhận
+        Outcome outcome = payConcurrently(paymentService, new BigDecimal("100000"), 5);
+
+        assertThat(store.committedTotal()).isEqualByComparingTo("1000000");
+        assertThat(store.committedCount()).isEqualTo(10);
+        assertThat(outcome.succeeded()).hasValue(10);
+        assertThat(outcome.rejected()).hasValue(THREADS * 5 - 10);
+        assertThat(outcome.conflicts()).hasValue(0);
+        // Các giao dịch thua đã được chạy lại (đọc lại tổng đã trả) thay vì bị ghi đè
+        assertThat(store.versionConflicts()).isPositive();
+    }
+
+    @Test
+    void partialAmountsStopAtTheExactRemainder() throws Exception {
+        InvoiceStore store = new InvoiceStore(new BigDecimal("1000000"));
+        IPaymentService paymentService = paymentService(store, 50);
+
+        Outcome outcome = payConcurrently(paymentService, new BigDecimal("300000"), 3);
+
+        assertThat(store.committedTotal()).isEqualByComparingTo("900000");
+        assertThat(outcome.succeeded()).hasValue(3);
+        assertThat(outcome.conflicts()).hasValue(0);
+    }
+
+    @Test
+    void exhaustedRetriesSurfaceAsConcurrencyFailureWithoutOverAllocation() throws Exception {
+        InvoiceStore store = new InvoiceStore(new BigDecimal("1000000"));
+        IPaymentService paymentService = paymentService(store, 1);
+
+        Outcome outcome = payConcurrently(paymentService, new BigDecimal("100000"), 5);
+
+        assertThat(store.committedTotal()).isLessThanOrEqualTo(new BigDecimal("1000000"));
+        assertThat(outcome.succeeded().get()).isEqualTo(store.committedCount());
+        assertThat(outcome.conflicts()).hasValue(store.versionConflicts());
+        assertThat(outcome.succeeded().get() + outcome.rejected().get() + outcome.conflicts().get())
+                .isEqualTo(THREADS * 5);
+    }
+
+    private static Outcome payConcurrently(IPaymentService paymentService, BigDecimal amount, int perThread)
+            throws Exception {
+        Outcome outcome = new Outcome(new AtomicInteger(), new AtomicInteger(), new AtomicInteger());
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        try {
+                            paymentService.createPayment(PaymentRequest.builder()
+                                    .invoiceId(INVOICE_ID).amount(amount).method(PaymentMethod.CASH).build());
+                            outcome.succeeded().incrementAndGet();
+                        } catch (IllegalArgumentException e) {
+                            outcome.rejected().incrementAndGet();
+                        } catch (ConcurrencyFailureException e) {
+                            outcome.conflicts().incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return outcome;
+    }
+
+    private static IPaymentService paymentService(InvoiceStore store, int maxAttempts) {
+        IInvoiceRepository invoiceRepository = mock(IInvoiceRepository.class);
+        when(invoiceRepository.findForPaymentByInvoiceId(INVOICE_ID)).thenAnswer(invocation -> Optional.of(store.read()));
+
+        IPaymentRepository paymentRepository = mock(IPaymentRepository.class);
+        when(paymentRepository.sumAmountByInvoiceId(anyLong())).thenAnswer(invocation -> store.committedTotal());
+        when(paymentRepository.save(any(Payment.class))).thenAnswer(invocation -> store.stage(invocation.getArgument(0)));
+
+        BillingProperties properties = new BillingProperties();
+        properties.getRetry().setMaxAttempts(maxAttempts);
+        properties.getRetry().setBackoffMillis(1);
+
+        SecurityContextService securityContextService = mock(SecurityContextService.class);
+        when(securityContextService.getCurrentStaffId()).thenReturn(1L);
+        IStaffUserRepository staffUserRepository = mock(IStaffUserRepository.class);
+        when(staffUserRepository.findById(1L)).thenReturn(Optional.of(StaffUser.builder().staffId(1L).build()));
+
+        return new PaymentServiceImpl(paymentRepository, invoiceRepository, mock(KeysetPaginator.class),
+                new RetryingTransactionExecutor(store), properties, mock(IPaymentOutboxService.class),
+                mock(ICaseBalanceService.class), staffUserRepository, securityContextService);
+    }
+
+    private record Outcome(AtomicInteger succeeded, AtomicInteger rejected, AtomicInteger conflicts) {
+    }
+
+    /**
+     * Hóa đơn có version và các thanh toán đã commit; mỗi transaction (theo thread) giữ version đã đọc và các
+     * thanh toán chờ, commit chỉ thành công khi version chưa đổi rồi tăng version (OPTIMISTIC_FORCE_INCREMENT)
+     */
+    private static class InvoiceStore implements PlatformTransactionManager {
+
+        private final BigDecimal totalAmount;
+        private final List<BigDecimal> committed = new ArrayList<>();
+        private final ThreadLocal<Transaction> transaction = new ThreadLocal<>();
+        private final AtomicLong paymentIds = new AtomicLong();
+        private final AtomicInteger conflicts = new AtomicInteger();
+        private long version;
+
+        InvoiceStore(BigDecimal totalAmount) {
+            this.totalAmount = totalAmount;
+        }
+
+        synchronized Invoice read() {
+            transaction.get().readVersion = version;
+            return Invoice.builder().invoiceId(INVOICE_ID).totalAmount(totalAmount).version(version).build();
+        }
+
+        Payment stage(Payment payment) {
+            // Nới rộng khoảng thời gian giữa lúc đọc và lúc commit để các giao dịch thật sự chồng lên nhau
+            Thread.yield();
+            payment.setPaymentId(paymentIds.incrementAndGet());
+            transaction.get().pending.add(payment.getAmount());
+            return payment;
+        }
+
+        synchronized BigDecimal committedTotal() {
+            return committed.stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+        }
+
+        synchronized int committedCount() {
+            return committed.size();
+        }
+
+        int versionConflicts() {
+            return conflicts.get();
+        }
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            transaction.set(new Transaction());
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+            Transaction current = transaction.get();
+            transaction.remove();
+            synchronized (this) {
+                if (current.readVersion == null) {
+                    return;
+                }
+                if (current.readVersion != version) {
+                    conflicts.incrementAndGet();
+                    throw new ObjectOptimisticLockingFailureException(Invoice.class, INVOICE_ID);
+                }
+                committed.addAll(current.pending);
+                version++;
+            }
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+            transaction.remove();
+        }
+
+        private static class Transaction {
+            private Long readVersion;
+            private final List<BigDecimal> pending = new ArrayList<>();
+        }
+    }
+}
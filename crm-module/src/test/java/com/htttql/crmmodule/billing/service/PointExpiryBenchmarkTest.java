@@ -0,0 +1,134 @@
+package com.htttql.crmmodule.billing.service;
+
+import com.htttql.crmmodule.billing.config.BillingProperties;
+import com.htttql.crmmodule.core.service.ICustomerTierService;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Point expiry benchmark on a real PostgreSQL ledger of millions of rows
+ * Needs a dedicated database whose schema was created by starting the application once:
+ * mvn test -Dtest=PointExpiryBenchmarkTest -Dbench.jdbc.url=jdbc:postgresql://localhost:5432/crm_bench
+ * (optional -Dbench.jdbc.user, -Dbench.jdbc.password, -Dbench.customers). Seeded rows use customer ids above
+ * 1e9 and are removed afterwards.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "bench.jdbc.url", matches = ".+")
+class PointExpiryBenchmarkTest {
+
+    private static final long BASE_ID = 1_000_000_000L;
+    private static final int LOTS_PER_CUSTOMER = 15;
+    private static final int REDEEMS_PER_CUSTOMER = 3;
+
+    private static JdbcTemplate jdbcTemplate;
+    private static PointExpiryServiceImpl expiryService;
+    private static int customers;
+
+    @BeforeAll
+    static void seed() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(System.getProperty("bench.jdbc.url"),
+                System.getProperty("bench.jdbc.user", "postgres"), System.getProperty("bench.jdbc.password", ""));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        expiryService = new PointExpiryServiceImpl(jdbcTemplate, new DataSourceTransactionManager(dataSource),
+                mock(ICustomerTierService.class), new BillingProperties());
+        customers = Integer.getInteger("bench.customers", 200_000);
+
+        cleanUp();
+        long started = System.nanoTime();
+        jdbcTemplate.update("""
+                INSERT INTO core.customer (customer_id, tier_id, total_spent, total_points, phone, full_name, created_at, updated_at)
+                SELECT ? + g, (SELECT min(tier_id) FROM core.tier), 0, 0, 'B' || g, 'Bench ' || g, now(), now()
+                FROM generate_series(1, ?) g
+                """, BASE_ID, customers);
+        // Lô tích lũy trải đều 3 năm (hạn 365 ngày): khoảng 2/3 đã hết hạn, phần còn lại hết hạn dần trong năm tới
+        jdbcTemplate.update("""
+                INSERT INTO billing.point_transaction (point_txn_id, customer_id, source, points, balance_before,
+                                                       balance_after, expires_at, is_expired, created_at, updated_at)
+                SELECT nextval('billing.point_transaction_seq'), ? + c, 'EARN', 10 + (c * 7 + k) % 90, 0,
+                       10 + (c * 7 + k) % 90, t.ts + interval '365 days', false, t.ts, t.ts
+                FROM generate_series(1, ?) c, generate_series(1, ?) k,
+                     LATERAL (SELECT now() - ((c * 31 + k * 977) % 1095) * interval '1 day' AS ts) t
+                """, BASE_ID, customers, LOTS_PER_CUSTOMER);
+        jdbcTemplate.update("""
+                INSERT INTO billing.point_transaction (point_txn_id, customer_id, source, points, balance_before,
+                                                       balance_after, created_at, updated_at)
+                SELECT nextval('billing.point_transaction_seq'), ? + c, 'REDEEM', -(5 + (c * 3 + k) % 50), 0, 0,
+                       now() - k * interval '30 days', now()
+                FROM generate_series(1, ?) c, generate_series(1, ?) k
+                """, BASE_ID, customers, REDEEMS_PER_CUSTOMER);
+        jdbcTemplate.update("""
+                UPDATE core.customer c SET total_points = GREATEST(s.total, 0)
+                FROM (SELECT customer_id, sum(points) AS total FROM billing.point_transaction
+                      WHERE customer_id > ? GROUP BY customer_id) s
+                WHERE s.customer_id = c.customer_id
+                """, BASE_ID);
+        jdbcTemplate.execute("ANALYZE billing.point_transaction");
+        jdbcTemplate.execute("ANALYZE core.customer");
+        log.info("Seeded {} customers, {} ledger rows in {} ms", customers,
+                (long) customers * (LOTS_PER_CUSTOMER + REDEEMS_PER_CUSTOMER), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        if (jdbcTemplate != null) {
+            // Cửa sổ của lần chạy bắt đầu từ cutoff trước: xóa lịch sử để lần chạy đầu xử lý toàn bộ tồn đọng
+            jdbcTemplate.update("DELETE FROM billing.point_expiry_run_customer");
+            jdbcTemplate.update("DELETE FROM billing.point_expiry_run");
+            jdbcTemplate.update("DELETE FROM billing.point_transaction WHERE customer_id > ?", BASE_ID);
+            jdbcTemplate.update("DELETE FROM core.customer WHERE customer_id > ?", BASE_ID);
+        }
+    }
+
+    @Test
+    void expiresFullBacklogThenNightlyWindow() {
+        IPointExpiryService.Result full = timed("backlog run", expiryService::expire);
+        assertThat(full.customersProcessed()).isGreaterThanOrEqualTo(customers * 9 / 10);
+        assertNoUnusedExpiredPoints();
+
+        // Mô phỏng một đêm: các lô hết hạn trong ngày tới được dời vào cửa sổ (cutoff trước, now]
+        int moved = jdbcTemplate.update("""
+                UPDATE billing.point_transaction SET expires_at = now()
+                WHERE customer_id > ? AND source = 'EARN' AND expires_at > now() AND expires_at <= now() + interval '1 day'
+                """, BASE_ID);
+        IPointExpiryService.Result nightly = timed("nightly run (" + moved + " lots due)", expiryService::expire);
+        assertThat(nightly.customersProcessed()).isLessThanOrEqualTo(moved);
+        assertNoUnusedExpiredPoints();
+    }
+
+    // Bất biến: số dư cache bằng tổng sổ cái, và không khách nào còn điểm của lô đã hết hạn chưa dùng
+    private static void assertNoUnusedExpiredPoints() {
+        Integer violations = jdbcTemplate.queryForObject("""
+                SELECT count(*) FROM (
+                    SELECT c.customer_id, c.total_points,
+                           sum(pt.points) AS ledger,
+                           COALESCE(sum(pt.points) FILTER (WHERE pt.source = 'EARN' AND pt.expires_at <= now()), 0)
+                             + COALESCE(sum(pt.points) FILTER (WHERE pt.points < 0), 0) AS unused_expired
+                    FROM core.customer c
+                    JOIN billing.point_transaction pt ON pt.customer_id = c.customer_id
+                    WHERE c.customer_id > ?
+                    GROUP BY c.customer_id, c.total_points
+                ) s
+                WHERE (s.total_points <> s.ledger AND s.ledger >= 0) OR (s.unused_expired > 0 AND s.total_points > 0)
+                """, Integer.class, BASE_ID);
+        assertThat(violations).isZero();
+    }
+
+    private static IPointExpiryService.Result timed(String label, java.util.function.Supplier<IPointExpiryService.Result> run) {
+        long started = System.nanoTime();
+        IPointExpiryService.Result result = run.get();
+        long millis = (System.nanoTime() - started) / 1_000_000;
+        log.info("{}: {} customers, {} points expired in {} ms ({} ms per customer)", label,
+                result.customersProcessed(), result.pointsExpired(), millis,
+                String.format("%.2f", result.customersProcessed() > 0 ? (double) millis / result.customersProcessed() : 0.0));
+        return result;
+    }
+}
@@ -0,0 +1,50 @@
+package com.htttql.crmmodule.billing.service;
+
+import com.htttql.crmmodule.billing.entity.Promotion;
+import com.htttql.crmmodule.common.enums.PromotionType;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * PromotionRuleIndex.compile with conditions json that does not match the expected types
+ */
+class PromotionRuleIndexTest {
+
+    @Test
+    void malformedConditionsSkipOnlyTheirPromotion() {
+        List<Promotion> promotions = new ArrayList<>();
+        promotions.add(promotion(1L, Map.of("daysOfWeek", List.of(1, "SATURDAY"), "minServiceCount", 2)));
+        // Mỗi khuyến mãi dưới đây từng ném ClassCastException / DateTimeException làm hỏng cả lần build
+        promotions.add(promotion(2L, Map.of("minServiceCount", "2")));
+        promotions.add(promotion(3L, Map.of("minServiceCount", List.of(2))));
+        promotions.add(promotion(4L, Map.of("daysOfWeek", List.of(8))));
+        promotions.add(promotion(5L, Map.of("daysOfWeek", "MONDAY")));
+        promotions.add(promotion(6L, Map.of("daysOfWeek", List.of(Map.of("day", 1)))));
+        promotions.add(promotion(7L, Map.of("minServiceCount", -1)));
+        promotions.add(promotion(8L, Map.of("unknown", true)));
+
+        PromotionRuleIndex index = PromotionRuleIndex.compile(promotions, Map.of());
+
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    private static Promotion promotion(Long id, Map<String, Object> conditions) {
+        return Promotion.builder()
+                .promoId(id)
+                .code("PROMO" + id)
+                .name("Promotion " + id)
+                .type(PromotionType.PERCENT)
+                .value(BigDecimal.TEN)
+                .startAt(LocalDateTime.now().minusDays(1))
+                .endAt(LocalDateTime.now().plusDays(1))
+                .conditions(conditions)
+                .build();
+    }
+}
@@ -0,0 +1,165 @@
+package com.htttql.crmmodule.core.service;
+
+import com.htttql.crmmodule.common.dto.PageResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Statement counts of the customer list paths (page projection, fields= and cursor) against a real PostgreSQL:
+ * each path must issue a fixed number of statements whatever the page size. Needs a dedicated database whose
+ * schema was created by starting the application:
+ * mvn test -Dtest=CustomerListQueryCountTest -Dbench.jdbc.url=jdbc:postgresql://localhost:5432/crm_bench
+ */
+@EnabledIfSystemProperty(named = "bench.jdbc.url", matches = ".+")
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true")
+class CustomerListQueryCountTest {
+
+    private static final long FIRST_ID = 3_000_000_001L;
+    private static final int CUSTOMERS = 60;
+
+    /** Chỉ đếm câu lệnh của thread test, bỏ qua các job @Scheduled chạy cùng context */
+    private static final ThreadLocal<int[]> STATEMENTS = new ThreadLocal<>();
+
+    @Autowired
+    private ICustomerService customerService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> System.getProperty("bench.jdbc.url"));
+    }
+
+    @BeforeEach
+    void seed() {
+        cleanUp();
+        jdbcTemplate.update("""
+                INSERT INTO core.customer (customer_id, tier_id, total_spent, total_points, phone, full_name, created_at, updated_at)
+                SELECT ? + g, (SELECT tier_id FROM core.tier ORDER BY tier_id
+                               OFFSET g % (SELECT count(*) FROM core.tier) LIMIT 1), 0, 0, '0998' || lpad(g::text, 6, '0'),
+                       'Query count ' || g, now(), now()
+                FROM generate_series(0, ? - 1) g
+                """, FIRST_ID, CUSTOMERS);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM core.customer WHERE customer_id BETWEEN ? AND ?",
+                FIRST_ID, FIRST_ID + CUSTOMERS - 1);
+    }
+
+    @Test
+    void pageProjectionIssuesSelectAndCountOnly() {
+        int small = count(() -> customerService.getAllCustomers(PageRequest.of(0, 5), null));
+        int large = count(() -> customerService.getAllCustomers(PageRequest.of(0, 50), null));
+
+        assertThat(small).isEqualTo(2);
+        assertThat(large).isEqualTo(small);
+    }
+
+    @Test
+    void fieldsProjectionIssuesSelectAndCountOnly() {
+        String fields = "customerId,fullName,phone,tierCode,tierName";
+        int small = count(() -> customerService.getAllCustomerFields(PageRequest.of(0, 5), fields, null));
+        int large = count(() -> customerService.getAllCustomerFields(PageRequest.of(0, 50), fields, null));
+
+        assertThat(small).isEqualTo(2);
+        assertThat(large).isEqualTo(small);
+    }
+
+    @Test
+    void cursorIssuesOneSelectPerPage() {
+        Sort sort = Sort.by(Sort.Direction.DESC, "createdAt");
+        PageResponse<?>[] first = new PageResponse<?>[1];
+        int small = count(() -> first[0] = customerService.getAllCustomers(null, 5, sort, null));
+        int large = count(() -> customerService.getAllCustomers(null, 50, sort, null));
+        int next = count(() -> customerService.getAllCustomers(first[0].getNextCursor(), 50, sort, null));
+
+        // Trang đầu thêm một câu đọc pg_class.reltuples cho estimatedTotal
+        assertThat(small).isEqualTo(2);
+        assertThat(large).isEqualTo(small);
+        assertThat(next).isEqualTo(1);
+    }
+
+    private static int count(Supplier<?> call) {
+        int[] counter = new int[1];
+        STATEMENTS.set(counter);
+        try {
+            call.get();
+        } finally {
+            STATEMENTS.remove();
+        }
+        return counter[0];
+    }
+
+    @TestConfiguration
+    static class CountingDataSourceConfig {
+
+        private static final Set<String> STATEMENT_METHODS = Set.of("prepareStatement", "prepareCall", "createStatement");
+
+        @Bean
+        static BeanPostProcessor countingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource dataSource ? wrap(dataSource) : bean;
+                }
+            };
+        }
+
+        private static DataSource wrap(DataSource target) {
+            return proxy(DataSource.class, target, (method, args, result) ->
+                    result instanceof Connection connection && method.getName().equals("getConnection")
+                            ? countingConnection(connection) : result);
+        }
+
+        private static Connection countingConnection(Connection target) {
+            return proxy(Connection.class, target, (method, args, result) -> {
+                int[] counter = STATEMENTS.get();
+                if (counter != null && STATEMENT_METHODS.contains(method.getName())) {
+                    counter[0]++;
+                }
+                return result;
+            });
+        }
+
+        private interface AfterCall {
+            Object apply(Method method, Object[] args, Object result);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, T target,
+                                   AfterCall after) {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (p, method, args) -> {
+                try {
+                    return after.apply(method, args, method.invoke(target, args));
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        }
+    }
+}